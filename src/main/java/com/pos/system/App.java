@@ -47,8 +47,13 @@ public class App extends Application {
             // Initialize Database in background to avoid hanging UI thread
             new Thread(() -> {
                 try {
+                    // Restore the last catalog first, so the POS can scan and sell while the database opens;
+                    // the cache reconciles it once the database is ready
+                    com.pos.system.services.ProductCatalogCache.getInstance().warmStart();
                     com.pos.system.database.DatabaseManager.getInstance();
                     System.out.println("Database initialization completed in background.");
+                    // Products saved before thumbnails existed get theirs in the background
+                    com.pos.system.services.ThumbnailService.getInstance().backfill();
                 } catch (Throwable t) {
                     System.err.println("Database initialization failed in background!");
                     t.printStackTrace();
@@ -73,6 +78,17 @@ public class App extends Application {
         }
     }
 
+    @Override
+    public void stop() {
+        // Keep the catalog for a fast next start; don't hold up closing for long
+        try {
+            com.pos.system.services.ProductCatalogCache.getInstance().saveSnapshot()
+                    .get(5, java.util.concurrent.TimeUnit.SECONDS);
+        } catch (Exception e) {
+            System.err.println("Could not save the catalog snapshot: " + e);
+        }
+    }
+
     public static void setRoot(String fxml) throws IOException {
         currentFxml = fxml;
         if (scene != null) {
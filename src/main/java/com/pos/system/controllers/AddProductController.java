@@ -35,6 +35,7 @@ public class AddProductController {
 
     private Product productToEdit; // To track edit mode
     private byte[] selectedImageData = null; // Changed from String path to byte[]
+    private boolean imageChanged; // a new file was chosen, so thumbnails must be made
     private Runnable onSaveCallback;
     private SecurityService securityService;
 
@@ -80,7 +81,7 @@ public class AddProductController {
             if (selectedImageData != null && selectedImageData.length > 0) {
                 try {
                     java.io.ByteArrayInputStream bis = new java.io.ByteArrayInputStream(selectedImageData);
-                    productImageView.setImage(new javafx.scene.image.Image(bis));
+                    productImageView.setImage(previewImage(bis));
                 } catch (Exception e) {
                     // Ignore image load error
                 }
@@ -88,6 +89,12 @@ public class AddProductController {
         }
     }
 
+    // Decoded at preview size, so a large original is not held as a full-size bitmap
+    private javafx.scene.image.Image previewImage(java.io.InputStream in) {
+        return new javafx.scene.image.Image(in, 2 * productImageView.getFitWidth(),
+                2 * productImageView.getFitHeight(), true, true);
+    }
+
     private void loadCategories() {
         try (com.pos.system.dao.CategoryDAO dao = new com.pos.system.dao.CategoryDAO()) {
             categoryComboBox.setItems(javafx.collections.FXCollections.observableArrayList(dao.getAllCategories()));
@@ -109,8 +116,9 @@ public class AddProductController {
         if (selectedFile != null) {
             try {
                 selectedImageData = java.nio.file.Files.readAllBytes(selectedFile.toPath());
+                imageChanged = true;
                 java.io.ByteArrayInputStream bis = new java.io.ByteArrayInputStream(selectedImageData);
-                productImageView.setImage(new javafx.scene.image.Image(bis));
+                productImageView.setImage(previewImage(bis));
             } catch (java.io.IOException e) {
                 java.util.ResourceBundle b = com.pos.system.App.getBundle();
                 messageLabel.setText(String.format(b.getString("inventory.addProduct.loadImageFail"), e.getMessage()));
@@ -161,12 +169,13 @@ public class AddProductController {
 
                 if (parsedStock > 0) {
                     Product newlyCreated = productDAO.getProductByBarcode(product.getBarcode());
-                    try (java.sql.Connection conn = com.pos.system.database.DatabaseManager.getInstance()
-                            .getConnection()) {
-                        com.pos.system.services.InventoryService invService = new com.pos.system.services.InventoryService();
+                    com.pos.system.services.InventoryService invService = new com.pos.system.services.InventoryService();
+                    Integer userId = SessionManager.getInstance().getCurrentUser().getId();
+                    com.pos.system.database.DatabaseWriter.getInstance().execute(conn -> {
                         invService.addStock(conn, newlyCreated.getId(), parsedStock, newlyCreated.getCostPrice(), null,
-                                "INITIAL-ADD", SessionManager.getInstance().getCurrentUser().getId());
-                    }
+                                "INITIAL-ADD", userId);
+                        return null;
+                    });
                 }
 
                 java.util.ResourceBundle b = com.pos.system.App.getBundle();
@@ -180,6 +189,11 @@ public class AddProductController {
             }
 
             messageLabel.setStyle("-fx-text-fill: green;");
+            com.pos.system.services.ProductCatalogCache.getInstance().productSaved(product.getId());
+            if (imageChanged) {
+                com.pos.system.services.ImageCacheService.getInstance().invalidate(product.getId());
+                com.pos.system.services.ThumbnailService.getInstance().imageSaved(product.getId());
+            }
 
             if (onSaveCallback != null) {
                 onSaveCallback.run();
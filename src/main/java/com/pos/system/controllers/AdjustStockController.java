@@ -1,6 +1,7 @@
 package com.pos.system.controllers;
 
 import com.pos.system.models.Product;
+import com.pos.system.services.ProductCatalogCache;
 import com.pos.system.services.StockAdjustmentService;
 import com.pos.system.utils.NotificationUtils;
 import com.pos.system.utils.SessionManager;
@@ -63,6 +64,8 @@ public class AdjustStockController {
             service.adjustStock(product.getId(), qtyChange, reason,
                     SessionManager.getInstance().getCurrentUser().getId());
 
+            ProductCatalogCache.getInstance().productSaved(product.getId());
+
             NotificationUtils.showSuccess(b.getString("inventory.adjustStock.successTitle"),
                     b.getString("inventory.adjustStock.successMsg"));
 
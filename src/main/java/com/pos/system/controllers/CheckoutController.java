@@ -51,6 +51,7 @@ public class CheckoutController {
     private ObservableList<SaleItem> cartItems;
     private ObservableList<SalePayment> payments = FXCollections.observableArrayList();
     private Runnable onSuccessCallback;
+    private String saleKey;
     private com.pos.system.services.CheckoutService checkoutService = new com.pos.system.services.CheckoutService();
 
     @FXML
@@ -98,7 +99,16 @@ public class CheckoutController {
     }
 
     public void setCheckoutData(ObservableList<SaleItem> cartItems, Runnable onSuccessCallback) {
+        setCheckoutData(cartItems, java.util.UUID.randomUUID().toString(), onSuccessCallback);
+    }
+
+    /**
+     * @param saleKey idempotency key of the cart; confirming again after a
+     *                failure or timeout reuses it, so the sale is recorded once
+     */
+    public void setCheckoutData(ObservableList<SaleItem> cartItems, String saleKey, Runnable onSuccessCallback) {
         this.cartItems = cartItems;
+        this.saleKey = saleKey;
         this.onSuccessCallback = onSuccessCallback;
 
         this.subtotal = cartItems.stream().mapToDouble(SaleItem::getTotal).sum();
@@ -207,6 +217,7 @@ public class CheckoutController {
 
         Sale sale = new Sale(0, currentUser.getId(), subtotal,
                 taxAmt, discountAmt, calculatedTotal, totalProfit, java.time.LocalDateTime.now());
+        sale.setSaleKey(saleKey);
 
         javafx.concurrent.Task<Void> checkoutTask = new javafx.concurrent.Task<>() {
             @Override
@@ -244,12 +255,17 @@ public class CheckoutController {
 
         checkoutTask.setOnFailed(e -> {
             e.getSource().getException().printStackTrace();
+            confirmButton.setDisable(false);
             java.util.ResourceBundle b = com.pos.system.App.getBundle();
             errorLabel
                     .setText(String.format(b.getString("checkout.failed"), e.getSource().getException().getMessage()));
         });
 
-        new Thread(checkoutTask).start();
+        // One attempt at a time; a retry after failure carries the same sale key
+        confirmButton.setDisable(true);
+        Thread checkoutThread = new Thread(checkoutTask, "Checkout");
+        checkoutThread.setDaemon(true);
+        checkoutThread.start();
     }
 
     @FXML
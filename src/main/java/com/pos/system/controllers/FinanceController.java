@@ -1,7 +1,8 @@
 package com.pos.system.controllers;
 
+import com.pos.system.dao.BaseDAO;
 import com.pos.system.dao.ExpenseDAO;
-import com.pos.system.dao.SaleDAO;
+import com.pos.system.dao.SalesRollupDAO;
 import com.pos.system.models.Expense;
 import com.pos.system.services.SecurityService;
 import com.pos.system.utils.NotificationUtils;
@@ -231,8 +232,8 @@ public class FinanceController {
         return new ExpenseDAO();
     }
 
-    protected SaleDAO createSaleDAO() throws SQLException {
-        return new SaleDAO();
+    protected SalesRollupDAO createRollupDAO() throws SQLException {
+        return BaseDAO.forReading(SalesRollupDAO::new);
     }
 
     private void setupPagination() {
@@ -337,10 +338,10 @@ public class FinanceController {
         javafx.concurrent.Task<FinanceSummary> filterTask = new javafx.concurrent.Task<>() {
             @Override
             protected FinanceSummary call() throws Exception {
-                try (SaleDAO saleDAO = new SaleDAO();
+                try (SalesRollupDAO rollupDAO = createRollupDAO();
                         ExpenseDAO expenseDAO = createExpenseDAO()) {
                     FinanceSummary summary = new FinanceSummary();
-                    summary.totalIncome = saleDAO.getTotalSalesBetween(start, end);
+                    summary.totalIncome = rollupDAO.getTotals(start, end).getRevenue();
                     summary.totalExpenses = expenseDAO.getTotalExpensesBetween(start, end);
                     summary.netProfit = summary.totalIncome - summary.totalExpenses;
                     return summary;
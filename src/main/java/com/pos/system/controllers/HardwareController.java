@@ -1,14 +1,22 @@
 package com.pos.system.controllers;
 
 import com.pos.system.App;
+import com.pos.system.services.CheckoutMetrics;
 import com.pos.system.services.HardwareService;
 import javafx.application.Platform;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.collections.FXCollections;
 import javafx.fxml.FXML;
+import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.ProgressIndicator;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.util.StringConverter;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Circle;
 import java.util.ResourceBundle;
+import java.util.function.ToDoubleFunction;
 
 public class HardwareController {
 
@@ -30,18 +38,76 @@ public class HardwareController {
     @FXML
     private ProgressIndicator loadingIndicator;
 
+    @FXML
+    private ComboBox<CheckoutMetrics.Window> latencyWindowCombo;
+    @FXML
+    private TableView<CheckoutMetrics.PhaseStats> latencyTable;
+    @FXML
+    private TableColumn<CheckoutMetrics.PhaseStats, String> latencyPhaseCol;
+    @FXML
+    private TableColumn<CheckoutMetrics.PhaseStats, String> latencyCountCol;
+    @FXML
+    private TableColumn<CheckoutMetrics.PhaseStats, String> latencyP50Col;
+    @FXML
+    private TableColumn<CheckoutMetrics.PhaseStats, String> latencyP95Col;
+    @FXML
+    private TableColumn<CheckoutMetrics.PhaseStats, String> latencyP99Col;
+    @FXML
+    private TableColumn<CheckoutMetrics.PhaseStats, String> latencyMaxCol;
+
     private final HardwareService hardwareService = new HardwareService();
     private ResourceBundle bundle;
 
     @FXML
     public void initialize() {
         bundle = App.getBundle();
+        setupLatencyTable();
         refresh();
     }
 
+    private void setupLatencyTable() {
+        latencyWindowCombo.setConverter(new StringConverter<>() {
+            @Override
+            public String toString(CheckoutMetrics.Window window) {
+                return window == null ? "" : bundle.getString("hardware.latency.window." + window.name());
+            }
+
+            @Override
+            public CheckoutMetrics.Window fromString(String string) {
+                return null;
+            }
+        });
+        latencyWindowCombo.setItems(FXCollections.observableArrayList(CheckoutMetrics.Window.values()));
+        latencyWindowCombo.setValue(CheckoutMetrics.Window.LAST_15_MINUTES);
+        latencyWindowCombo.valueProperty().addListener((obs, oldWindow, newWindow) -> refreshLatency());
+
+        latencyPhaseCol.setCellValueFactory(cellData -> new SimpleStringProperty(
+                bundle.getString("hardware.latency.phase." + cellData.getValue().getPhase().name())));
+        latencyCountCol.setCellValueFactory(
+                cellData -> new SimpleStringProperty(String.valueOf(cellData.getValue().getCount())));
+        latencyP50Col.setCellValueFactory(millis(CheckoutMetrics.PhaseStats::getP50));
+        latencyP95Col.setCellValueFactory(millis(CheckoutMetrics.PhaseStats::getP95));
+        latencyP99Col.setCellValueFactory(millis(CheckoutMetrics.PhaseStats::getP99));
+        latencyMaxCol.setCellValueFactory(millis(CheckoutMetrics.PhaseStats::getMax));
+    }
+
+    private static javafx.util.Callback<TableColumn.CellDataFeatures<CheckoutMetrics.PhaseStats, String>, javafx.beans.value.ObservableValue<String>> millis(
+            ToDoubleFunction<CheckoutMetrics.PhaseStats> getter) {
+        return cellData -> new SimpleStringProperty(cellData.getValue().getCount() == 0 ? "-"
+                : String.format("%,.2f", getter.applyAsDouble(cellData.getValue())));
+    }
+
+    private void refreshLatency() {
+        CheckoutMetrics.Window window = latencyWindowCombo.getValue();
+        if (window != null) {
+            latencyTable.setItems(FXCollections.observableArrayList(CheckoutMetrics.getInstance().snapshot(window)));
+        }
+    }
+
     @FXML
     private void refresh() {
         loadingIndicator.setVisible(true);
+        refreshLatency();
 
         hardwareService.checkStatus().thenAccept(status -> {
             Platform.runLater(() -> {
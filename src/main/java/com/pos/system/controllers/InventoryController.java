@@ -2,9 +2,11 @@ package com.pos.system.controllers;
 
 import com.pos.system.dao.ProductDAO;
 import com.pos.system.models.Product;
+import com.pos.system.models.ProductSearchResult;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
+import javafx.scene.control.Pagination;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import javafx.scene.control.TextField;
@@ -14,17 +16,37 @@ import javafx.scene.image.ImageView;
 import javafx.concurrent.Task;
 import javafx.application.Platform;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import com.pos.system.services.ImageCacheService;
+import com.pos.system.services.ThumbnailService;
+import com.pos.system.services.ProductPageSource;
 import com.pos.system.services.SecurityService;
 import com.pos.system.utils.SessionManager;
 
 public class InventoryController {
+    private static final int LEDGER_VIEW_LIMIT = 500;
+    private static final int SEARCH_RESULT_LIMIT = 500;
+    private static final int PAGE_SIZE = 100;
+
+    // Product pages are read one at a time off the FX thread
+    private static final ExecutorService pageExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "Inventory-Pages");
+        t.setDaemon(true);
+        return t;
+    });
 
     // For Dependency Injection in Tests only
     private ProductDAO injectedProductDAO;
     private SecurityService securityService;
+    // Highlighted names of the current search results, by product ID
+    private final Map<Integer, ProductSearchResult> searchHits = new HashMap<>();
+    // The catalog in name order, a page at a time; null while search results are shown
+    private ProductPageSource pageSource;
 
     public void setProductDAO(ProductDAO productDAO) {
         this.injectedProductDAO = productDAO;
@@ -50,6 +72,8 @@ public class InventoryController {
     private TableColumn<Product, Void> actionCol;
     @FXML
     private TextField searchField;
+    @FXML
+    private Pagination pagination;
 
     @FXML
     public void initialize() {
@@ -70,23 +94,15 @@ public class InventoryController {
                     setGraphic(null);
                 } else {
                     Product p = getTableRow().getItem();
-                    // Check if we have image data already (e.g. from edit)
-                    if (imageData != null && imageData.length > 0) {
-                         try {
-                             imageView.setImage(new Image(new java.io.ByteArrayInputStream(imageData)));
-                             setGraphic(imageView);
-                         } catch (Exception e) { setGraphic(null); }
-                         return;
-                    }
-
-                    // Lazy load via ImageCacheService
-                    Image cached = ImageCacheService.getInstance().getCachedImage(p.getId());
+                    // Lazy load the list thumbnail, even if the row carries the original
+                    Image cached = ImageCacheService.getInstance().getCachedImage(p.getId(),
+                            ThumbnailService.Size.LIST);
                     if (cached != null) {
                         imageView.setImage(cached);
                         setGraphic(imageView);
                     } else {
                         setGraphic(null); // Clear while loading
-                        ImageCacheService.getInstance().loadImage(p.getId(), img -> {
+                        ImageCacheService.getInstance().loadImage(p.getId(), ThumbnailService.Size.LIST, img -> {
                             // Only update if cell still contains same product
                             if (getTableRow() != null && getTableRow().getItem() != null
                                     && getTableRow().getItem().getId() == p.getId()) {
@@ -102,6 +118,34 @@ public class InventoryController {
         // Bind columns
         barcodeCol.setCellValueFactory(new PropertyValueFactory<>("barcode"));
         nameCol.setCellValueFactory(new PropertyValueFactory<>("name"));
+        nameCol.setCellFactory(col -> new javafx.scene.control.TableCell<Product, String>() {
+            @Override
+            protected void updateItem(String name, boolean empty) {
+                super.updateItem(name, empty);
+                ProductSearchResult hit = empty || getTableRow() == null || getTableRow().getItem() == null ? null
+                        : searchHits.get(getTableRow().getItem().getId());
+                if (empty || name == null) {
+                    setText(null);
+                    setGraphic(null);
+                } else if (hit == null) {
+                    setText(name);
+                    setGraphic(null);
+                } else {
+                    // Matched words in bold
+                    javafx.scene.text.TextFlow flow = new javafx.scene.text.TextFlow();
+                    List<String> segments = hit.getNameSegments();
+                    for (int i = 0; i < segments.size(); i++) {
+                        javafx.scene.text.Text text = new javafx.scene.text.Text(segments.get(i));
+                        if (i % 2 == 1) {
+                            text.setStyle("-fx-font-weight: bold;");
+                        }
+                        flow.getChildren().add(text);
+                    }
+                    setText(null);
+                    setGraphic(flow);
+                }
+            }
+        });
         categoryCol.setCellValueFactory(new PropertyValueFactory<>("category"));
         costCol.setCellValueFactory(new PropertyValueFactory<>("costPrice"));
         priceCol.setCellValueFactory(new PropertyValueFactory<>("sellingPrice"));
@@ -133,6 +177,10 @@ public class InventoryController {
 
         // No longer create a stored productDAO here - use try-with-resources in tasks
 
+        pagination.currentPageIndexProperty().addListener((obs, oldIndex, newIndex) -> {
+            showPage(newIndex.intValue());
+        });
+
         loadProducts();
     }
 
@@ -224,6 +272,7 @@ public class InventoryController {
             });
 
             deleteTask.setOnSucceeded(e -> {
+                com.pos.system.services.ProductCatalogCache.getInstance().productDeleted(selectedProduct.getId());
                 if (securityService != null) {
                     securityService.logAction(SessionManager.getInstance().getCurrentUser().getId(),
                             "DELETE_PRODUCT", "Product", String.valueOf(selectedProduct.getId()),
@@ -238,30 +287,44 @@ public class InventoryController {
     }
 
     private void loadProducts() {
-        javafx.concurrent.Task<List<Product>> loadTask = new javafx.concurrent.Task<>() {
-            @Override
-            protected List<Product> call() throws Exception {
-                try (ProductDAO dao = injectedProductDAO != null ? null : new ProductDAO()) {
-                    ProductDAO activeDAO = injectedProductDAO != null ? injectedProductDAO : dao;
-                    return activeDAO.getAllProductsSummary(); // Changed to Summary
-                } catch (java.sql.SQLException e) {
-                    e.printStackTrace();
-                    return java.util.Collections.emptyList();
-                }
+        // Only the visible page is loaded, so opening the screen costs the same for any catalog size
+        ProductPageSource source = new ProductPageSource(
+                () -> injectedProductDAO != null ? injectedProductDAO
+                        : com.pos.system.dao.BaseDAO.forReading(ProductDAO::new),
+                null, PAGE_SIZE, pageExecutor);
+        pageSource = source;
+        source.getTotalCount().whenComplete((count, error) -> Platform.runLater(() -> {
+            if (error != null) {
+                error.printStackTrace();
+                // In a real app, show an Alert
+                return;
             }
-        };
-
-        loadTask.setOnSucceeded(e -> {
-            ObservableList<Product> observableProducts = FXCollections.observableArrayList(loadTask.getValue());
-            productTable.setItems(observableProducts);
-        });
-
-        loadTask.setOnFailed(e -> {
-            e.getSource().getException().printStackTrace();
-            // In a real app, show an Alert
-        });
+            if (source != pageSource) {
+                return;
+            }
+            searchHits.clear();
+            pagination.setVisible(true);
+            pagination.setManaged(true);
+            pagination.setPageCount(source.getPageCount(count));
+            pagination.setCurrentPageIndex(0);
+            showPage(0);
+        }));
+    }
 
-        new Thread(loadTask).start();
+    private void showPage(int pageIndex) {
+        ProductPageSource source = pageSource;
+        if (source == null) {
+            return;
+        }
+        source.getPage(pageIndex).whenComplete((products, error) -> Platform.runLater(() -> {
+            if (error != null) {
+                error.printStackTrace();
+                return;
+            }
+            if (source == pageSource && pagination.getCurrentPageIndex() == pageIndex) {
+                productTable.setItems(FXCollections.observableArrayList(products));
+            }
+        }));
     }
 
     @FXML
@@ -272,18 +335,14 @@ public class InventoryController {
             return;
         }
 
-        String lowerCaseQuery = query.toLowerCase();
-
-        javafx.concurrent.Task<List<Product>> searchTask = new javafx.concurrent.Task<>() {
+        // Searched in the database's full-text index; only the best matches are loaded
+        javafx.concurrent.Task<List<ProductSearchResult>> searchTask = new javafx.concurrent.Task<>() {
             @Override
-            protected List<Product> call() throws Exception {
-                try (ProductDAO dao = injectedProductDAO != null ? null : new ProductDAO()) {
+            protected List<ProductSearchResult> call() throws Exception {
+                try (ProductDAO dao = injectedProductDAO != null ? null
+                        : com.pos.system.dao.BaseDAO.forReading(ProductDAO::new)) {
                     ProductDAO activeDAO = injectedProductDAO != null ? injectedProductDAO : dao;
-                    List<Product> allProducts = activeDAO.getAllProductsSummary(); // Changed to Summary
-                    return allProducts.stream()
-                            .filter(p -> p.getName().toLowerCase().contains(lowerCaseQuery) ||
-                                    (p.getBarcode() != null && p.getBarcode().toLowerCase().contains(lowerCaseQuery)))
-                            .toList();
+                    return activeDAO.searchProducts(query, SEARCH_RESULT_LIMIT, 0);
                 } catch (java.sql.SQLException e) {
                     e.printStackTrace();
                     return java.util.Collections.emptyList();
@@ -292,7 +351,16 @@ public class InventoryController {
         };
 
         searchTask.setOnSucceeded(e -> {
-            ObservableList<Product> observableProducts = FXCollections.observableArrayList(searchTask.getValue());
+            // Search results are already cut to the best matches and are not paged
+            pageSource = null;
+            pagination.setVisible(false);
+            pagination.setManaged(false);
+            searchHits.clear();
+            ObservableList<Product> observableProducts = FXCollections.observableArrayList();
+            for (ProductSearchResult hit : searchTask.getValue()) {
+                searchHits.put(hit.getProduct().getId(), hit);
+                observableProducts.add(hit.getProduct());
+            }
             productTable.setItems(observableProducts);
         });
 
@@ -313,12 +381,15 @@ public class InventoryController {
             return;
         }
 
+        java.util.concurrent.atomic.AtomicInteger ledgerBalance = new java.util.concurrent.atomic.AtomicInteger();
         javafx.concurrent.Task<List<com.pos.system.models.InventoryTransaction>> ledgerTask = new javafx.concurrent.Task<>() {
             @Override
             protected List<com.pos.system.models.InventoryTransaction> call() throws Exception {
                 try (java.sql.Connection conn = com.pos.system.database.DatabaseManager.getInstance().getConnection()) {
                     com.pos.system.services.InventoryService invService = new com.pos.system.services.InventoryService();
-                    return invService.getTransactionHistory(conn, selectedProduct.getId());
+                    // Balance comes from snapshot + tail; only the recent rows are loaded for display
+                    ledgerBalance.set(invService.getStockLevel(conn, selectedProduct.getId()));
+                    return invService.getTransactionHistory(conn, selectedProduct.getId(), LEDGER_VIEW_LIMIT);
                 }
             }
         };
@@ -330,7 +401,8 @@ public class InventoryController {
             javafx.scene.control.Dialog<Void> dialog = new javafx.scene.control.Dialog<>();
             dialog.setTitle(b.getString("inventory.ledger.title") + " - "
                     + selectedProduct.getName());
-            dialog.setHeaderText(b.getString("inventory.ledger.history"));
+            dialog.setHeaderText(b.getString("inventory.ledger.history") + " - "
+                    + String.format(b.getString("inventory.ledger.balance"), ledgerBalance.get()));
 
             javafx.scene.control.TableView<com.pos.system.models.InventoryTransaction> table = new javafx.scene.control.TableView<>();
 
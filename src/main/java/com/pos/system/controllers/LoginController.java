@@ -75,6 +75,10 @@ public class LoginController {
                     com.pos.system.services.StoreMonitorService monitorService = new com.pos.system.services.StoreMonitorService();
                     monitorService.start();
 
+                    com.pos.system.services.StockReconciliationService.startShared();
+
+                    com.pos.system.services.StockSnapshotService.startShared();
+
                     com.pos.system.App.setRoot("dashboard");
                 } catch (java.io.IOException e) {
                     e.printStackTrace();
@@ -1,6 +1,5 @@
 package com.pos.system.controllers;
 
-import com.pos.system.dao.ProductDAO;
 import com.pos.system.models.Product;
 import com.pos.system.models.SaleItem;
 import com.pos.system.utils.NotificationUtils;
@@ -31,6 +30,7 @@ import org.controlsfx.control.GridView;
 import org.controlsfx.control.GridCell;
 
 import com.pos.system.services.ImageCacheService;
+import com.pos.system.services.ThumbnailService;
 
 public class POSController {
 
@@ -58,9 +58,13 @@ public class POSController {
     private Label totalLabel;
 
     private final ObservableList<SaleItem> cartItems = FXCollections.observableArrayList();
+    // Idempotency key for the cart as it stands; every checkout attempt for it reuses the key
+    private String cartSaleKey = java.util.UUID.randomUUID().toString();
     private ProductCatalogViewModel catalogViewModel;
     private String currencySymbol;
     private PauseTransition searchDebounce;
+    private com.pos.system.services.ImagePrefetcher imagePrefetcher;
+    private PauseTransition prefetchDelay;
 
     // For Dependency Injection in Tests
     public void setCatalogViewModel(ProductCatalogViewModel catalogViewModel) {
@@ -143,6 +147,8 @@ public class POSController {
 
         // Refresh grid when cart changes to update active styles
         cartItems.addListener((ListChangeListener<SaleItem>) c -> {
+            // An edited cart is a different sale, so it must not match an earlier attempt
+            cartSaleKey = java.util.UUID.randomUUID().toString();
             // Re-render the current page of the product grid to update active styles
             showPage(pagination.getCurrentPageIndex());
         });
@@ -182,39 +188,32 @@ public class POSController {
      * adds it to cart (or increments qty), clears field, and re-focuses.
      */
     private void handleBarcodeInput(String barcode) {
-        java.util.ResourceBundle b = com.pos.system.App.getBundle();
-
-        Task<Product> task = new Task<>() {
-            @Override
-            protected Product call() throws Exception {
-                try (ProductDAO productDAO = new ProductDAO()) {
-                    return productDAO.getProductByBarcode(barcode);
-                }
-            }
-        };
+        // Clear and re-focus straight away so the next scan in a burst is not cut short
+        searchField.clear();
+        searchField.requestFocus();
 
-        task.setOnSucceeded(e -> {
-            Product product = task.getValue();
-            if (product != null) {
-                updateCartQuantity(product, 1);
+        // Cached scans complete at once on the FX thread. Misses are looked up in
+        // order on the catalog cache's own thread, never on a new one.
+        catalogViewModel.getCatalogCache().lookupBarcode(barcode).whenComplete((product, error) -> {
+            if (Platform.isFxApplicationThread()) {
+                onBarcodeResolved(barcode, product, error);
             } else {
-                NotificationUtils.showWarning(b.getString("dialog.warning"),
-                        String.format(b.getString("pos.barcode.notFound"), barcode));
+                Platform.runLater(() -> onBarcodeResolved(barcode, product, error));
             }
-            // Clear and re-focus for next scan
-            searchField.clear();
-            searchField.requestFocus();
         });
+    }
 
-        task.setOnFailed(e -> {
-            e.getSource().getException().printStackTrace();
+    private void onBarcodeResolved(String barcode, Product product, Throwable error) {
+        java.util.ResourceBundle b = com.pos.system.App.getBundle();
+        if (error != null) {
+            error.printStackTrace();
             NotificationUtils.showError(b.getString("dialog.error"), b.getString("pos.barcode.error"));
-            // Clear and re-focus for next scan
-            searchField.clear();
-            searchField.requestFocus();
-        });
-
-        new Thread(task).start();
+        } else if (product != null) {
+            updateCartQuantity(product, 1);
+        } else {
+            NotificationUtils.showWarning(b.getString("dialog.warning"),
+                    String.format(b.getString("pos.barcode.notFound"), barcode));
+        }
     }
 
     private VBox createProductTile(Product p) {
@@ -238,31 +237,20 @@ public class POSController {
         imageView.setFitWidth(80);
         imageView.setPreserveRatio(true);
 
-        if (p.getImageData() != null && p.getImageData().length > 0) {
-            try {
-                java.io.ByteArrayInputStream bis = new java.io.ByteArrayInputStream(p.getImageData());
-                imageView.setImage(new javafx.scene.image.Image(bis));
-                imageContainer.getChildren().add(imageView);
-                placeholder.setVisible(false);
-            } catch (Exception e) {
-                // Ignore image load error, placeholder remains
-            }
+        // Always the grid thumbnail, never the full-size original
+        Image cached = ImageCacheService.getInstance().getCachedImage(p.getId(), ThumbnailService.Size.GRID);
+        if (cached != null) {
+            imageView.setImage(cached);
+            imageContainer.getChildren().add(imageView);
+            placeholder.setVisible(false);
         } else {
-            // Lazy load via ImageCacheService
-            Image cached = ImageCacheService.getInstance().getCachedImage(p.getId());
-            if (cached != null) {
-                imageView.setImage(cached);
-                imageContainer.getChildren().add(imageView);
-                placeholder.setVisible(false);
-            } else {
-                ImageCacheService.getInstance().loadImage(p.getId(), img -> {
-                    imageView.setImage(img);
-                    if (!imageContainer.getChildren().contains(imageView)) {
-                        imageContainer.getChildren().add(imageView);
-                        placeholder.setVisible(false);
-                    }
-                });
-            }
+            ImageCacheService.getInstance().loadImage(p.getId(), ThumbnailService.Size.GRID, img -> {
+                imageView.setImage(img);
+                if (!imageContainer.getChildren().contains(imageView)) {
+                    imageContainer.getChildren().add(imageView);
+                    placeholder.setVisible(false);
+                }
+            });
         }
 
         card.getChildren().add(imageContainer);
@@ -478,10 +466,7 @@ public class POSController {
     }
 
     private Product findProductById(int id) {
-        return catalogViewModel.getAllProducts().stream()
-                .filter(p -> p.getId() == id)
-                .findFirst()
-                .orElse(null);
+        return catalogViewModel.findProductById(id);
     }
 
     @FXML
@@ -517,13 +502,14 @@ public class POSController {
             javafx.scene.Parent root = loader.load();
 
             CheckoutController controller = loader.getController();
-            controller.setCheckoutData(cartItems, () -> {
+            controller.setCheckoutData(cartItems, cartSaleKey, () -> {
                 Platform.runLater(() -> {
                     NotificationUtils.showSuccess(b.getString("dialog.success"),
                             b.getString("pos.transaction.completed"));
                     cartItems.clear();
                     updateTotal();
-                    catalogViewModel.loadProducts();
+                    // Only the products the sale touched are re-read
+                    catalogViewModel.refreshChangedProducts();
                 });
             });
 
@@ -545,8 +531,22 @@ public class POSController {
     }
 
     private void setupPagination() {
+        // Once a page has been shown for a moment, load the images of the pages either side of it
+        imagePrefetcher = new com.pos.system.services.ImagePrefetcher(ImageCacheService.getInstance(),
+                ThumbnailService.Size.GRID);
+        prefetchDelay = new PauseTransition(Duration.millis(250));
+        prefetchDelay.setOnFinished(event -> imagePrefetcher.prefetchAround(pagination.getCurrentPageIndex(),
+                pagination.getPageCount(), this::readPage));
+
+        catalogViewModel.setBrowsePageSize(ITEMS_PER_PAGE);
+        catalogViewModel.setOnBrowseChanged(this::updatePagination);
         catalogViewModel.getFilteredProducts().addListener((ListChangeListener<Product>) c -> {
-            updatePagination();
+            if (isInPlaceUpdate(c)) {
+                // Same products, fresher data: redraw the page without leaving it
+                showPage(pagination.getCurrentPageIndex());
+            } else {
+                updatePagination();
+            }
         });
 
         pagination.currentPageIndexProperty().addListener((obs, oldIndex, newIndex) -> {
@@ -556,7 +556,37 @@ public class POSController {
         updatePagination();
     }
 
+    private static boolean isInPlaceUpdate(ListChangeListener.Change<? extends Product> c) {
+        boolean any = false;
+        while (c.next()) {
+            // A whole-list setAll is a new result set even when the size matches
+            if (!c.wasReplaced() || c.getAddedSize() != c.getRemovedSize()
+                    || (c.getRemovedSize() == c.getList().size() && c.getList().size() > 1)) {
+                c.reset();
+                return false;
+            }
+            any = true;
+        }
+        c.reset();
+        return any;
+    }
+
     private void updatePagination() {
+        imagePrefetcher.reset();
+        com.pos.system.services.ProductPageSource source = catalogViewModel.getBrowseSource();
+        if (source != null) {
+            source.getTotalCount().thenAccept(count -> Platform.runLater(() -> {
+                if (source == catalogViewModel.getBrowseSource()) {
+                    pagination.setPageCount(source.getPageCount(count));
+                    pagination.setCurrentPageIndex(0);
+                    showPage(0);
+                }
+            })).exceptionally(error -> {
+                error.printStackTrace();
+                return null;
+            });
+            return;
+        }
         ObservableList<Product> allProducts = catalogViewModel.getFilteredProducts();
         int pageCount = (int) Math.ceil((double) allProducts.size() / ITEMS_PER_PAGE);
         if (pageCount <= 0)
@@ -568,6 +598,21 @@ public class POSController {
     }
 
     private void showPage(int pageIndex) {
+        imagePrefetcher.pageShown(pageIndex);
+        prefetchDelay.playFromStart();
+        com.pos.system.services.ProductPageSource source = catalogViewModel.getBrowseSource();
+        if (source != null) {
+            // Only this page is read; the next one is prefetched behind it
+            source.getPage(pageIndex).thenAccept(products -> Platform.runLater(() -> {
+                if (source == catalogViewModel.getBrowseSource() && pagination.getCurrentPageIndex() == pageIndex) {
+                    productGridView.setItems(FXCollections.observableArrayList(products));
+                }
+            })).exceptionally(error -> {
+                error.printStackTrace();
+                return null;
+            });
+            return;
+        }
         ObservableList<Product> allProducts = catalogViewModel.getFilteredProducts();
         int fromIndex = pageIndex * ITEMS_PER_PAGE;
         int toIndex = Math.min(fromIndex + ITEMS_PER_PAGE, allProducts.size());
@@ -579,12 +624,35 @@ public class POSController {
         }
     }
 
+    /** The products on a page of the grid, for prefetching its images. */
+    private java.util.concurrent.CompletableFuture<java.util.List<Product>> readPage(int pageIndex) {
+        com.pos.system.services.ProductPageSource source = catalogViewModel.getBrowseSource();
+        if (source != null) {
+            return source.getPage(pageIndex);
+        }
+        ObservableList<Product> allProducts = catalogViewModel.getFilteredProducts();
+        int fromIndex = pageIndex * ITEMS_PER_PAGE;
+        int toIndex = Math.min(fromIndex + ITEMS_PER_PAGE, allProducts.size());
+        return java.util.concurrent.CompletableFuture.completedFuture(fromIndex < toIndex
+                ? new java.util.ArrayList<>(allProducts.subList(fromIndex, toIndex))
+                : java.util.List.of());
+    }
+
     private void setupCategoryFilter() {
         java.util.ResourceBundle b = com.pos.system.App.getBundle();
         // Dummy "All Categories" category
         com.pos.system.models.Category allCat = new com.pos.system.models.Category(0, b.getString("pos.allCategories"),
                 "");
 
+        // Categories from the catalog snapshot show at once; the database list replaces them when read
+        java.util.List<com.pos.system.models.Category> cached = catalogViewModel.getCachedCategories();
+        if (!cached.isEmpty()) {
+            ObservableList<com.pos.system.models.Category> comboItems = FXCollections.observableArrayList(allCat);
+            comboItems.addAll(cached);
+            categoryFilter.setItems(comboItems);
+            categoryFilter.getSelectionModel().select(allCat);
+        }
+
         Task<ObservableList<com.pos.system.models.Category>> task = new Task<>() {
             @Override
             protected ObservableList<com.pos.system.models.Category> call() throws Exception {
@@ -599,14 +667,22 @@ public class POSController {
         };
 
         task.setOnSucceeded(e -> {
+            if (task.getValue().equals(categoryFilter.getItems())) {
+                return; // Same as the cached list, keep the current filter and page
+            }
+            com.pos.system.models.Category selected = categoryFilter.getSelectionModel().getSelectedItem();
             categoryFilter.setItems(task.getValue());
-            categoryFilter.getSelectionModel().select(allCat);
+            categoryFilter.getSelectionModel().select(task.getValue().stream()
+                    .filter(category -> selected != null && category.getId() == selected.getId())
+                    .findFirst().orElse(allCat));
         });
 
         task.setOnFailed(e -> {
             e.getSource().getException().printStackTrace();
-            categoryFilter.setItems(FXCollections.observableArrayList(allCat));
-            categoryFilter.getSelectionModel().select(allCat);
+            if (categoryFilter.getItems() == null || categoryFilter.getItems().isEmpty()) {
+                categoryFilter.setItems(FXCollections.observableArrayList(allCat));
+                categoryFilter.getSelectionModel().select(allCat);
+            }
         });
 
         new Thread(task).start();
@@ -2,7 +2,9 @@ package com.pos.system.controllers;
 
 import com.pos.system.dao.SaleDAO;
 import com.pos.system.dao.SalePaymentDAO;
+import com.pos.system.dao.SalesRollupDAO;
 import com.pos.system.models.Sale;
+import com.pos.system.models.SalesRollup;
 
 import javafx.collections.FXCollections;
 import javafx.fxml.FXML;
@@ -361,18 +363,24 @@ public class ReportsController {
         // Use final copies for Task
         final LocalDateTime start = startTime;
         final LocalDateTime end = endTime;
+        final LocalDateTime[] chartRange = chartRange(start, end);
 
         javafx.concurrent.Task<ReportData> task = new javafx.concurrent.Task<>() {
             @Override
             protected ReportData call() throws Exception {
                 try (SaleDAO saleDAO = createSaleDAO();
-                        SalePaymentDAO paymentDAO = createPaymentDAO()) {
+                        SalePaymentDAO paymentDAO = createPaymentDAO();
+                        SalesRollupDAO rollupDAO = createRollupDAO()) {
 
+                    // Totals and charts come from the hourly/daily rollups
                     ReportData result = new ReportData();
-                    result.totalSales = saleDAO.getTotalSalesBetween(start, end);
-                    result.totalProfit = saleDAO.getTotalProfitBetween(start, end);
-                    result.allTimeSales = saleDAO.getTotalSalesBetween(
-                            LocalDateTime.of(2000, 1, 1, 0, 0), LocalDateTime.now());
+                    SalesRollup totals = rollupDAO.getTotals(start, end);
+                    result.totalSales = totals.getRevenue();
+                    result.totalProfit = totals.getProfit();
+                    result.allTimeSales = rollupDAO.getTotals(
+                            LocalDateTime.of(2000, 1, 1, 0, 0), LocalDateTime.now()).getRevenue();
+                    result.hourly = rollupDAO.getHourlyTotals(chartRange[0], chartRange[1]);
+                    result.categories = rollupDAO.getTotalsByCategory(chartRange[0], chartRange[1]);
 
                     List<Sale> salesData = saleDAO.getSalesBetween(start, end);
                     if (salesData.isEmpty()) {
@@ -427,7 +435,7 @@ public class ReportsController {
             pagination.setPageCount(Math.max(1, pageCount));
             pagination.setCurrentPageIndex(0);
             updatePage(0);
-            updateCharts(allFilteredSales, start, end);
+            updateCharts(data.hourly, data.categories, chartRange[0], chartRange[1]);
         });
 
         task.setOnFailed(e -> {
@@ -440,11 +448,15 @@ public class ReportsController {
     }
 
     protected SaleDAO createSaleDAO() throws java.sql.SQLException {
-        return new SaleDAO();
+        return com.pos.system.dao.BaseDAO.forReading(SaleDAO::new);
     }
 
     protected SalePaymentDAO createPaymentDAO() throws java.sql.SQLException {
-        return new SalePaymentDAO();
+        return com.pos.system.dao.BaseDAO.forReading(SalePaymentDAO::new);
+    }
+
+    protected SalesRollupDAO createRollupDAO() throws java.sql.SQLException {
+        return com.pos.system.dao.BaseDAO.forReading(SalesRollupDAO::new);
     }
 
     private static class ReportData {
@@ -452,6 +464,8 @@ public class ReportsController {
         double totalProfit;
         double allTimeSales;
         List<Sale> sales;
+        List<SalesRollup> hourly;
+        List<SalesRollup> categories;
     }
 
     @FXML
@@ -521,8 +535,31 @@ public class ReportsController {
         }
     }
 
-    private void updateCharts(List<Sale> data, LocalDateTime start, LocalDateTime end) {
-        if (data == null)
+    /**
+     * The range the charts cover: the filter's, or under "All Time" the
+     * selected year up to now.
+     */
+    private LocalDateTime[] chartRange(LocalDateTime start, LocalDateTime end) {
+        if (dateRangeComboBox.getSelectionModel().getSelectedIndex() == 4) {
+            String selectedYear = analysisYearComboBox.getValue();
+            if (selectedYear != null
+                    && !selectedYear.equals(com.pos.system.App.getBundle().getString("reports.filter.allTime"))) {
+                int y = Integer.parseInt(selectedYear);
+                LocalDateTime yearEnd = LocalDateTime.of(y, 12, 31, 23, 59, 59);
+                return new LocalDateTime[] { LocalDateTime.of(y, 1, 1, 0, 0),
+                        yearEnd.isAfter(LocalDateTime.now()) ? LocalDateTime.now() : yearEnd };
+            }
+        }
+        return new LocalDateTime[] { start, end };
+    }
+
+    /**
+     * Draws the charts from the hourly rollup rows and the per-category
+     * totals of the chart range.
+     */
+    private void updateCharts(List<SalesRollup> hourly, List<SalesRollup> categories, LocalDateTime effectiveStart,
+            LocalDateTime effectiveEnd) {
+        if (hourly == null)
             return;
 
         java.util.ResourceBundle b = com.pos.system.App.getBundle();
@@ -537,26 +574,6 @@ public class ReportsController {
             groupMonthly = (viewIndex == 1); // User selected "Monthly"
         }
 
-        // Filter by selected year if "All Time" is selected
-        LocalDateTime effectiveStart = start;
-        LocalDateTime effectiveEnd = end;
-        if (filterIndex == 4) {
-            String selectedYear = analysisYearComboBox.getValue();
-            if (selectedYear != null && !selectedYear.equals(b.getString("reports.filter.allTime"))) {
-                int y = Integer.parseInt(selectedYear);
-                data = data.stream().filter(s -> s.getSaleDate().getYear() == y)
-                        .collect(java.util.stream.Collectors.toList());
-
-                effectiveStart = LocalDateTime.of(y, 1, 1, 0, 0);
-                LocalDateTime yearEnd = LocalDateTime.of(y, 12, 31, 23, 59, 59);
-                if (yearEnd.isAfter(LocalDateTime.now())) {
-                    effectiveEnd = LocalDateTime.now();
-                } else {
-                    effectiveEnd = yearEnd;
-                }
-            }
-        }
-
         // Formatter for grouping
         java.time.format.DateTimeFormatter formatter;
         if (groupHourly) {
@@ -624,8 +641,8 @@ public class ReportsController {
             // For general 'All time', gather sorting keys from data naturally, but sort
             java.util.Map<String, Double> treeRev = new java.util.TreeMap<>();
             java.util.Map<String, Double> treeProfit = new java.util.TreeMap<>();
-            for (Sale s : data) {
-                String key = s.getSaleDate().format(formatter);
+            for (SalesRollup hour : hourly) {
+                String key = hour.getBucket().format(formatter);
                 treeRev.put(key, 0.0);
                 treeProfit.put(key, 0.0);
             }
@@ -634,10 +651,10 @@ public class ReportsController {
         }
 
         // Apply actual data overrides
-        for (Sale s : data) {
-            String key = s.getSaleDate().format(formatter);
-            orderPreservingRev.put(key, orderPreservingRev.getOrDefault(key, 0.0) + s.getTotalAmount());
-            orderPreservingProfit.put(key, orderPreservingProfit.getOrDefault(key, 0.0) + s.getTotalProfit());
+        for (SalesRollup hour : hourly) {
+            String key = hour.getBucket().format(formatter);
+            orderPreservingRev.put(key, orderPreservingRev.getOrDefault(key, 0.0) + hour.getRevenue());
+            orderPreservingProfit.put(key, orderPreservingProfit.getOrDefault(key, 0.0) + hour.getProfit());
         }
 
         for (String key : orderPreservingRev.keySet()) {
@@ -674,32 +691,16 @@ public class ReportsController {
             itemsPerHour.put(String.format("%02d:00", i), 0.0);
         }
 
-        try (com.pos.system.dao.SaleDAO saleDAO = createSaleDAO()) {
-            List<Integer> saleIds = data.stream().map(Sale::getId).collect(java.util.stream.Collectors.toList());
-            List<com.pos.system.models.SaleItem> allItems = saleDAO.getItemsBySaleIds(saleIds);
-
-            // Group items by sale ID
-            java.util.Map<Integer, List<com.pos.system.models.SaleItem>> itemsBySaleMap = allItems.stream()
-                    .collect(java.util.stream.Collectors.groupingBy(com.pos.system.models.SaleItem::getSaleId));
-
-            for (Sale s : data) {
-                String hourKey = String.format("%02d:00", s.getSaleDate().getHour());
-                double itemsInSale = 0;
-                List<com.pos.system.models.SaleItem> items = itemsBySaleMap.get(s.getId());
-                if (items != null) {
-                    for (com.pos.system.models.SaleItem item : items) {
-                        String cat = item.getCategoryName();
-                        if (cat == null)
-                            cat = "Uncategorized";
-                        revByCat.put(cat,
-                                revByCat.getOrDefault(cat, 0.0) + (item.getQuantity() * item.getPriceAtSale()));
-                        qtyByCat.put(cat, qtyByCat.getOrDefault(cat, 0.0) + item.getQuantity());
-                        itemsInSale += item.getQuantity();
-                    }
-                }
-                itemsPerHour.put(hourKey, itemsPerHour.get(hourKey) + itemsInSale);
-            }
-        } catch (Exception ignored) {
+        for (SalesRollup category : categories) {
+            String cat = category.getCategory();
+            if (cat == null)
+                cat = "Uncategorized";
+            revByCat.put(cat, revByCat.getOrDefault(cat, 0.0) + category.getRevenue());
+            qtyByCat.put(cat, qtyByCat.getOrDefault(cat, 0.0) + category.getQuantity());
+        }
+        for (SalesRollup hour : hourly) {
+            String hourKey = String.format("%02d:00", hour.getBucket().getHour());
+            itemsPerHour.put(hourKey, itemsPerHour.get(hourKey) + hour.getQuantity());
         }
 
         for (java.util.Map.Entry<String, Double> entry : revByCat.entrySet()) {
@@ -724,8 +725,8 @@ public class ReportsController {
         XYChart.Series<String, Number> peakHourSeries = new XYChart.Series<>();
         peakHourSeries.setName(b.getString("reports.chart.avgItems"));
 
-        long uniqueActiveDays = data.stream()
-                .map(s -> s.getSaleDate().toLocalDate())
+        long uniqueActiveDays = hourly.stream()
+                .map(hour -> hour.getBucket().toLocalDate())
                 .distinct()
                 .count();
         if (uniqueActiveDays <= 0)
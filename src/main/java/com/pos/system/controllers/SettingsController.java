@@ -1,6 +1,9 @@
 package com.pos.system.controllers;
 
+import com.pos.system.dao.SalesRollupDAO;
 import com.pos.system.dao.SettingsDAO;
+import com.pos.system.services.CheckoutMetrics;
+import com.pos.system.services.CheckoutService;
 import com.pos.system.utils.NotificationUtils;
 import javafx.concurrent.Task;
 import javafx.fxml.FXML;
@@ -17,6 +20,10 @@ public class SettingsController {
     private TextField taxRateField;
     @FXML
     private TextField printerField;
+    @FXML
+    private javafx.scene.control.CheckBox fastCheckoutCheck;
+    @FXML
+    private javafx.scene.control.CheckBox latencyDumpCheck;
 
     @FXML
     private javafx.scene.control.Label backupStorageLabel;
@@ -78,6 +85,10 @@ public class SettingsController {
                 storeNameField.setText(settings.getOrDefault("store_name", "My Store"));
                 taxRateField.setText(settings.getOrDefault("tax_rate", "0"));
                 printerField.setText(settings.getOrDefault("printer_id", ""));
+                fastCheckoutCheck.setSelected(Boolean.parseBoolean(
+                        settings.getOrDefault(CheckoutService.FAST_CHECKOUT_SETTING, "false")));
+                latencyDumpCheck.setSelected(Boolean.parseBoolean(
+                        settings.getOrDefault(CheckoutMetrics.DUMP_ON_SHUTDOWN_SETTING, "false")));
             }
         });
 
@@ -95,6 +106,8 @@ public class SettingsController {
         String storeName = storeNameField.getText().trim();
         String taxRate = taxRateField.getText().trim();
         String printer = printerField.getText().trim();
+        boolean fastCheckout = fastCheckoutCheck.isSelected();
+        boolean latencyDump = latencyDumpCheck.isSelected();
 
         if (storeName.isEmpty()) {
             java.util.ResourceBundle b = com.pos.system.App.getBundle();
@@ -110,6 +123,8 @@ public class SettingsController {
                     success &= dao.updateSetting("store_name", storeName);
                     success &= dao.updateSetting("tax_rate", taxRate);
                     success &= dao.updateSetting("printer_id", printer);
+                    success &= dao.updateSetting(CheckoutService.FAST_CHECKOUT_SETTING, String.valueOf(fastCheckout));
+                    success &= dao.updateSetting(CheckoutMetrics.DUMP_ON_SHUTDOWN_SETTING, String.valueOf(latencyDump));
                     return success;
                 }
             }
@@ -298,6 +313,38 @@ public class SettingsController {
         new Thread(backupTask).start();
     }
 
+    @FXML
+    private void handleRebuildSalesRollups() {
+        Task<Void> rebuildTask = new Task<>() {
+            @Override
+            protected Void call() throws Exception {
+                com.pos.system.database.DatabaseWriter.getInstance().execute(conn -> {
+                    try (SalesRollupDAO rollupDAO = new SalesRollupDAO(conn)) {
+                        rollupDAO.rebuild();
+                    }
+                    return null;
+                });
+                return null;
+            }
+        };
+
+        rebuildTask.setOnSucceeded(e -> {
+            java.util.ResourceBundle b = com.pos.system.App.getBundle();
+            NotificationUtils.showInfo(
+                    b.getString("settings.rollup.rebuild.successTitle"),
+                    b.getString("settings.rollup.rebuild.successMsg"));
+        });
+
+        rebuildTask.setOnFailed(e -> {
+            java.util.ResourceBundle b = com.pos.system.App.getBundle();
+            NotificationUtils.showError(
+                    b.getString("settings.rollup.rebuild.failTitle"),
+                    b.getString("settings.rollup.rebuild.failMsg"));
+        });
+
+        new Thread(rebuildTask).start();
+    }
+
     @FXML
     private void handleOpenBackupDir() {
         try {
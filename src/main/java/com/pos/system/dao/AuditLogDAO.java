@@ -6,7 +6,9 @@ import java.sql.*;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class AuditLogDAO extends BaseDAO {
     private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
@@ -21,27 +23,57 @@ public class AuditLogDAO extends BaseDAO {
 
     public AuditLog create(AuditLog log) throws SQLException {
         String sql = "INSERT INTO audit_logs (user_id, action, entity_name, entity_id, details, created_at) VALUES (?, ?, ?, ?, ?, ?)";
-        try (PreparedStatement stmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            if (log.getUserId() != null) {
-                stmt.setInt(1, log.getUserId());
-            } else {
-                stmt.setNull(1, Types.INTEGER);
+        return write(() -> {
+            try (PreparedStatement stmt = prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                if (log.getUserId() != null) {
+                    stmt.setInt(1, log.getUserId());
+                } else {
+                    stmt.setNull(1, Types.INTEGER);
+                }
+                stmt.setString(2, log.getAction());
+                stmt.setString(3, log.getEntityName());
+                stmt.setString(4, log.getEntityId());
+                stmt.setString(5, log.getDetails());
+                stmt.setString(6, log.getCreatedAt() != null ? log.getCreatedAt().format(FORMATTER)
+                        : LocalDateTime.now().format(FORMATTER));
+                stmt.executeUpdate();
+
+                try (ResultSet rs = stmt.getGeneratedKeys()) {
+                    if (rs.next()) {
+                        log.setId(rs.getInt(1));
+                    }
+                }
             }
-            stmt.setString(2, log.getAction());
-            stmt.setString(3, log.getEntityName());
-            stmt.setString(4, log.getEntityId());
-            stmt.setString(5, log.getDetails());
-            stmt.setString(6, log.getCreatedAt() != null ? log.getCreatedAt().format(FORMATTER)
-                    : LocalDateTime.now().format(FORMATTER));
-            stmt.executeUpdate();
-
-            try (ResultSet rs = stmt.getGeneratedKeys()) {
-                if (rs.next()) {
-                    log.setId(rs.getInt(1));
+            return log;
+        });
+    }
+
+    /**
+     * Inserts several entries as a single JDBC batch, in one transaction when
+     * run through the database writer. Generated IDs are not read back.
+     */
+    public void createBatch(List<AuditLog> logs) throws SQLException {
+        String sql = "INSERT INTO audit_logs (user_id, action, entity_name, entity_id, details, created_at) VALUES (?, ?, ?, ?, ?, ?)";
+        write(() -> {
+            try (PreparedStatement stmt = prepareStatement(sql)) {
+                for (AuditLog log : logs) {
+                    if (log.getUserId() != null) {
+                        stmt.setInt(1, log.getUserId());
+                    } else {
+                        stmt.setNull(1, Types.INTEGER);
+                    }
+                    stmt.setString(2, log.getAction());
+                    stmt.setString(3, log.getEntityName());
+                    stmt.setString(4, log.getEntityId());
+                    stmt.setString(5, log.getDetails());
+                    stmt.setString(6, log.getCreatedAt() != null ? log.getCreatedAt().format(FORMATTER)
+                            : LocalDateTime.now().format(FORMATTER));
+                    stmt.addBatch();
                 }
+                stmt.executeBatch();
             }
-        }
-        return log;
+            return null;
+        });
     }
 
     public List<AuditLog> getRecentLogs(int limit) throws SQLException {
@@ -51,7 +83,7 @@ public class AuditLogDAO extends BaseDAO {
     public List<AuditLog> searchLogs(String query) throws SQLException {
         List<AuditLog> list = new ArrayList<>();
         String sql = "SELECT * FROM audit_logs WHERE action LIKE ? OR entity_name LIKE ? OR details LIKE ? ORDER BY created_at DESC";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (PreparedStatement stmt = prepareStatement(sql)) {
             String pattern = "%" + query + "%";
             stmt.setString(1, pattern);
             stmt.setString(2, pattern);
@@ -68,7 +100,7 @@ public class AuditLogDAO extends BaseDAO {
     public List<AuditLog> getPaginatedLogs(int limit, int offset) throws SQLException {
         List<AuditLog> list = new ArrayList<>();
         String sql = "SELECT * FROM audit_logs ORDER BY created_at DESC LIMIT ? OFFSET ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (PreparedStatement stmt = prepareStatement(sql)) {
             stmt.setInt(1, limit);
             stmt.setInt(2, offset);
             try (ResultSet rs = stmt.executeQuery()) {
@@ -82,7 +114,7 @@ public class AuditLogDAO extends BaseDAO {
 
     public int getTotalCount() throws SQLException {
         String sql = "SELECT COUNT(*) FROM audit_logs";
-        try (PreparedStatement stmt = connection.prepareStatement(sql);
+        try (PreparedStatement stmt = prepareStatement(sql);
                 ResultSet rs = stmt.executeQuery()) {
             if (rs.next()) {
                 return rs.getInt(1);
@@ -93,19 +125,22 @@ public class AuditLogDAO extends BaseDAO {
 
     public void deleteLogsOlderThan(int days) throws SQLException {
         String sql = "DELETE FROM audit_logs WHERE created_at < datetime('now', '-' || ? || ' days')";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setInt(1, days);
-            int deleted = stmt.executeUpdate();
-            if (deleted > 0) {
-                // logger? DAO doesn't have one usually, but we could add it
+        write(() -> {
+            try (PreparedStatement stmt = prepareStatement(sql)) {
+                stmt.setInt(1, days);
+                int deleted = stmt.executeUpdate();
+                if (deleted > 0) {
+                    // logger? DAO doesn't have one usually, but we could add it
+                }
             }
-        }
+            return null;
+        });
     }
 
     public List<AuditLog> getLogsByDateRange(LocalDateTime start, LocalDateTime end) throws SQLException {
         List<AuditLog> list = new ArrayList<>();
         String sql = "SELECT * FROM audit_logs WHERE created_at BETWEEN ? AND ? ORDER BY created_at ASC";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (PreparedStatement stmt = prepareStatement(sql)) {
             stmt.setString(1, start.format(FORMATTER));
             stmt.setString(2, end.format(FORMATTER));
             try (ResultSet rs = stmt.executeQuery()) {
@@ -117,6 +152,27 @@ public class AuditLogDAO extends BaseDAO {
         return list;
     }
 
+    /**
+     * Counts the log entries between {@code start} and {@code end} that
+     * change a product or inventory, per entity ID ("Unknown" without one).
+     */
+    public Map<String, Integer> countProductChangesBetween(LocalDateTime start, LocalDateTime end)
+            throws SQLException {
+        Map<String, Integer> counts = new HashMap<>();
+        String sql = "SELECT COALESCE(entity_id, 'Unknown'), COUNT(*) FROM audit_logs WHERE created_at BETWEEN ? AND ? "
+                + "AND (entity_name = 'Product' COLLATE NOCASE OR instr(action, 'Inventory') > 0) GROUP BY 1";
+        try (PreparedStatement stmt = prepareStatement(sql)) {
+            stmt.setString(1, start.format(FORMATTER));
+            stmt.setString(2, end.format(FORMATTER));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    counts.put(rs.getString(1), rs.getInt(2));
+                }
+            }
+        }
+        return counts;
+    }
+
     private AuditLog mapResultSetToLog(ResultSet rs) throws SQLException {
         AuditLog log = new AuditLog();
         log.setId(rs.getInt("id"));
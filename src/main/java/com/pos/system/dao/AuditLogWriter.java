@@ -0,0 +1,256 @@
+package com.pos.system.dao;
+
+import com.pos.system.database.DatabaseWriter;
+import com.pos.system.models.AuditLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind pipeline for audit entries. Entries go into a bounded ring
+ * buffer and a single flusher thread batch-inserts them through the
+ * {@link DatabaseWriter} every {@code flushIntervalMs} or as soon as
+ * {@code batchSize} entries are waiting, so audit writes no longer run inside
+ * the caller's transaction.
+ * Entries submitted from inside a writer unit skip the buffer and are written
+ * on that unit's connection, so they commit or roll back with it. When the
+ * buffer is full a producer waits briefly and then hands its entry to the
+ * database writer on its own; entries are never dropped for lack of space.
+ * Security-critical entries bypass the buffer and are written synchronously by
+ * the caller (see {@link #isSecurityCritical}).
+ */
+public class AuditLogWriter {
+    private static final Logger logger = LoggerFactory.getLogger(AuditLogWriter.class);
+
+    private static final int DEFAULT_CAPACITY = 4096;
+    private static final int DEFAULT_BATCH_SIZE = 256;
+    private static final long DEFAULT_FLUSH_INTERVAL_MS = 500;
+    private static final long OFFER_TIMEOUT_MS = 20;
+
+    private static final Set<String> SECURITY_CRITICAL_ENTITIES = Set.of("User", "Setting");
+
+    private static AuditLogWriter instance;
+
+    private final DatabaseWriter databaseWriter;
+    private final BlockingQueue<AuditLog> buffer;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    private final AtomicLong enqueuedCount = new AtomicLong();
+    private final AtomicLong flushedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong blockedCount = new AtomicLong();
+    private final AtomicLong spilledCount = new AtomicLong();
+    private final AtomicLong syncWriteCount = new AtomicLong();
+
+    public AuditLogWriter(DatabaseWriter databaseWriter, int capacity, int batchSize, long flushIntervalMs) {
+        this.databaseWriter = databaseWriter;
+        this.capacity = capacity;
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.flusher = new Thread(this::runFlusher, "Audit-Log-Writer");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    public static synchronized AuditLogWriter getInstance() {
+        if (instance == null) {
+            instance = new AuditLogWriter(DatabaseWriter.getInstance(), DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE,
+                    DEFAULT_FLUSH_INTERVAL_MS);
+        }
+        return instance;
+    }
+
+    /**
+     * Flushes and stops the shared writer if it was ever started. Called before
+     * the database writer is shut down.
+     */
+    public static synchronized void shutdownInstance() {
+        if (instance != null) {
+            instance.shutdown();
+            instance = null;
+        }
+    }
+
+    /**
+     * Entries that must be durable before the caller continues: user accounts,
+     * roles, passwords and store settings.
+     */
+    public static boolean isSecurityCritical(String entityName) {
+        return SECURITY_CRITICAL_ENTITIES.contains(entityName);
+    }
+
+    /**
+     * Queues an entry for the flusher thread. Inside a writer unit the entry is
+     * written on the unit's connection instead. Returns false if the buffer
+     * stayed full or the flusher has stopped, in which case the entry was
+     * handed to the database writer as a unit of its own.
+     */
+    public boolean submit(AuditLog log) {
+        Connection unitConnection = DatabaseWriter.currentUnitConnection();
+        if (unitConnection != null) {
+            try {
+                writeSync(unitConnection, log);
+                return true;
+            } catch (SQLException e) {
+                logger.warn("Could not write audit entry in the current unit, queueing it instead", e);
+            }
+        }
+        if (running) {
+            if (buffer.offer(log)) {
+                enqueuedCount.incrementAndGet();
+                return true;
+            }
+
+            blockedCount.incrementAndGet();
+            try {
+                if (buffer.offer(log, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    enqueuedCount.incrementAndGet();
+                    return true;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        spill(log);
+        return false;
+    }
+
+    private void spill(AuditLog log) {
+        spilledCount.incrementAndGet();
+        databaseWriter.submit(connection -> {
+            try (AuditLogDAO auditLogDAO = new AuditLogDAO(connection)) {
+                auditLogDAO.create(log);
+            }
+            return null;
+        }).whenComplete((ignored, error) -> {
+            if (error == null) {
+                flushedCount.incrementAndGet();
+            } else {
+                droppedCount.incrementAndGet();
+                logger.error("Failed to write audit entry: {} on {}", log.getAction(), log.getEntityName(), error);
+            }
+        });
+    }
+
+    /**
+     * Writes an entry immediately on the caller's connection, keeping it inside
+     * the caller's transaction.
+     */
+    public void writeSync(Connection connection, AuditLog log) throws SQLException {
+        try (AuditLogDAO auditLogDAO = new AuditLogDAO(connection)) {
+            auditLogDAO.create(log);
+        }
+        syncWriteCount.incrementAndGet();
+    }
+
+    /**
+     * Stops the flusher after writing everything still buffered.
+     */
+    public void shutdown() {
+        running = false;
+        flusher.interrupt();
+        try {
+            flusher.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<AuditLog> remaining = new ArrayList<>();
+        buffer.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            writeBatch(remaining);
+        }
+    }
+
+    private void runFlusher() {
+        List<AuditLog> batch = new ArrayList<>(batchSize);
+        long deadline = System.currentTimeMillis() + flushIntervalMs;
+        while (running) {
+            try {
+                long wait = Math.max(0, deadline - System.currentTimeMillis());
+                AuditLog head = buffer.poll(wait, TimeUnit.MILLISECONDS);
+                if (head != null) {
+                    batch.add(head);
+                    buffer.drainTo(batch, batchSize - batch.size());
+                }
+            } catch (InterruptedException e) {
+                // Shutdown requested; remaining entries are drained by shutdown()
+                break;
+            }
+
+            if (batch.size() >= batchSize || System.currentTimeMillis() >= deadline) {
+                if (!batch.isEmpty()) {
+                    writeBatch(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+                deadline = System.currentTimeMillis() + flushIntervalMs;
+            }
+        }
+        if (!batch.isEmpty()) {
+            writeBatch(batch);
+        }
+    }
+
+    private void writeBatch(List<AuditLog> batch) {
+        try {
+            // join() rather than execute(): an interrupt from shutdown() must not abandon a
+            // batch that is still queued, or it would be written twice
+            databaseWriter.submit(connection -> {
+                try (AuditLogDAO auditLogDAO = new AuditLogDAO(connection)) {
+                    auditLogDAO.createBatch(batch);
+                }
+                return null;
+            }).join();
+            flushedCount.addAndGet(batch.size());
+        } catch (Exception e) {
+            // Write them one by one so a single bad entry does not take the batch with it
+            logger.error("Failed to flush {} audit entries, writing them individually", batch.size(), e);
+            batch.forEach(this::spill);
+        }
+    }
+
+    public int getQueueDepth() {
+        return buffer.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getEnqueuedCount() {
+        return enqueuedCount.get();
+    }
+
+    public long getFlushedCount() {
+        return flushedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getBlockedCount() {
+        return blockedCount.get();
+    }
+
+    public long getSpilledCount() {
+        return spilledCount.get();
+    }
+
+    public long getSyncWriteCount() {
+        return syncWriteCount.get();
+    }
+}
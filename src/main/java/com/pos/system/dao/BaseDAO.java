@@ -1,13 +1,17 @@
 package com.pos.system.dao;
 
 import com.pos.system.database.DatabaseManager;
+import com.pos.system.database.DatabaseWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.function.Function;
 
 import com.pos.system.models.AuditLog;
 import com.pos.system.models.User;
@@ -30,6 +34,66 @@ public abstract class BaseDAO implements AutoCloseable {
         this.connectionOwned = true;
     }
 
+    /**
+     * Creates a DAO bound to a read-only connection from the reader pool, e.g.
+     * {@code BaseDAO.forReading(SaleDAO::new)}. The DAO owns the connection and
+     * returns it to the pool on {@link #close()}.
+     */
+    public static <T extends BaseDAO> T forReading(Function<Connection, T> factory) throws SQLException {
+        Connection readConnection = DatabaseManager.getInstance().getReadConnection();
+        try {
+            T dao = factory.apply(readConnection);
+            ((BaseDAO) dao).connectionOwned = true;
+            return dao;
+        } catch (RuntimeException e) {
+            readConnection.close();
+            throw e;
+        }
+    }
+
+    /** The statements of one write, made on {@link #connection}. */
+    @FunctionalInterface
+    protected interface Write<T> {
+        T run() throws SQLException;
+    }
+
+    /**
+     * Runs a write made through this DAO. A DAO that owns its connection hands
+     * the write to the {@link DatabaseWriter}, with {@link #connection}
+     * pointing at the writer's connection while it runs, so it takes SQLite's
+     * write lock in turn with every other write instead of waiting on
+     * busy_timeout against them. A DAO given a connection writes on it, inside
+     * the caller's transaction.
+     */
+    protected <T> T write(Write<T> write) throws SQLException {
+        if (!connectionOwned) {
+            return write.run();
+        }
+        Connection ownConnection = connection;
+        return DatabaseWriter.getInstance().execute(writerConnection -> {
+            connection = writerConnection;
+            try {
+                return write.run();
+            } finally {
+                connection = ownConnection;
+            }
+        });
+    }
+
+    /**
+     * Returns a compiled statement for fixed SQL from the per-connection
+     * {@link StatementCache}. Closing it returns it to the cache. SQL that is
+     * built per call (e.g. IN lists) should use the connection directly so it
+     * does not crowd reusable statements out of the cache.
+     */
+    protected PreparedStatement prepareStatement(String sql) throws SQLException {
+        return StatementCache.getInstance().prepare(connection, sql);
+    }
+
+    protected PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+        return StatementCache.getInstance().prepare(connection, sql, autoGeneratedKeys);
+    }
+
     protected void closeResultSet(ResultSet rs) {
         if (rs != null) {
             try {
@@ -63,6 +127,13 @@ public abstract class BaseDAO implements AutoCloseable {
         }
     }
 
+    /**
+     * Records an audit entry. Routine entries are handed to the write-behind
+     * {@link AuditLogWriter}, which writes them with the current writer unit or
+     * shortly after on its own; security-critical entries are still written
+     * synchronously on this DAO's connection so they commit with the change
+     * they describe.
+     */
     protected void logAudit(String action, String entityName, String entityId, String details) {
         try {
             User currentUser = SessionManager.getInstance().getCurrentUser();
@@ -74,9 +145,13 @@ public abstract class BaseDAO implements AutoCloseable {
             log.setEntityName(entityName);
             log.setEntityId(entityId);
             log.setDetails(details);
+            log.setCreatedAt(LocalDateTime.now());
 
-            try (AuditLogDAO auditLogDAO = new AuditLogDAO(this.connection)) {
-                auditLogDAO.create(log);
+            AuditLogWriter writer = AuditLogWriter.getInstance();
+            if (AuditLogWriter.isSecurityCritical(entityName)) {
+                writer.writeSync(this.connection, log);
+            } else {
+                writer.submit(log);
             }
         } catch (Exception e) {
             logger.error("Failed to write audit log: " + action + " on " + entityName, e);
@@ -9,7 +9,10 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class BatchDAO extends BaseDAO {
 
@@ -23,7 +26,7 @@ public class BatchDAO extends BaseDAO {
 
     public int insertBatch(Batch batch) throws SQLException {
         String sql = "INSERT INTO batches (product_id, batch_number, expiry_date, cost_price, remaining_quantity, created_at) VALUES (?, ?, ?, ?, ?, ?)";
-        try (PreparedStatement stmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        try (PreparedStatement stmt = prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             stmt.setInt(1, batch.getProductId());
             stmt.setString(2, batch.getBatchNumber());
             if (batch.getExpiryDate() != null) {
@@ -54,7 +57,7 @@ public class BatchDAO extends BaseDAO {
 
     public void updateRemainingQuantity(int batchId, int remainingQuantity) throws SQLException {
         String sql = "UPDATE batches SET remaining_quantity = ? WHERE id = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (PreparedStatement stmt = prepareStatement(sql)) {
             stmt.setInt(1, remainingQuantity);
             stmt.setInt(2, batchId);
             stmt.executeUpdate();
@@ -62,11 +65,32 @@ public class BatchDAO extends BaseDAO {
         }
     }
 
+    /**
+     * Applies many remaining-quantity updates as a single JDBC batch. Keys are
+     * batch IDs, values are the new remaining quantities.
+     */
+    public void updateRemainingQuantities(Map<Integer, Integer> remainingByBatchId) throws SQLException {
+        if (remainingByBatchId.isEmpty()) {
+            return;
+        }
+        String sql = "UPDATE batches SET remaining_quantity = ? WHERE id = ?";
+        try (PreparedStatement stmt = prepareStatement(sql)) {
+            for (Map.Entry<Integer, Integer> entry : remainingByBatchId.entrySet()) {
+                stmt.setInt(1, entry.getValue());
+                stmt.setInt(2, entry.getKey());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+            logAudit("UPDATE", "Batch", "BULK", "Remaining quantity updated for " + remainingByBatchId.size()
+                    + " batches: " + remainingByBatchId.keySet());
+        }
+    }
+
     public List<Batch> getExpiredBatches(LocalDateTime threshold) throws SQLException {
         List<Batch> batches = new ArrayList<>();
         String sql = "SELECT * FROM batches WHERE remaining_quantity > 0 AND expiry_date IS NOT NULL AND expiry_date < ?";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (PreparedStatement stmt = prepareStatement(sql)) {
             stmt.setString(1, threshold.toString());
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
@@ -87,7 +111,7 @@ public class BatchDAO extends BaseDAO {
         String sql = "SELECT * FROM batches WHERE product_id = ? AND remaining_quantity > 0 " +
                 "ORDER BY COALESCE(expiry_date, '9999-12-31') ASC, created_at ASC";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (PreparedStatement stmt = prepareStatement(sql)) {
             stmt.setInt(1, productId);
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
@@ -98,6 +122,37 @@ public class BatchDAO extends BaseDAO {
         return batches;
     }
 
+    /**
+     * Finds active batches for several products in one query. Each product's
+     * list keeps the same FEFO/FIFO ordering as {@link #getAvailableBatches(int)}.
+     * Products without stock are absent from the returned map.
+     */
+    public Map<Integer, List<Batch>> getAvailableBatchesForProducts(Collection<Integer> productIds)
+            throws SQLException {
+        Map<Integer, List<Batch>> batchesByProduct = new LinkedHashMap<>();
+        if (productIds.isEmpty()) {
+            return batchesByProduct;
+        }
+
+        String placeholders = String.join(",", java.util.Collections.nCopies(productIds.size(), "?"));
+        String sql = "SELECT * FROM batches WHERE product_id IN (" + placeholders + ") AND remaining_quantity > 0 " +
+                "ORDER BY product_id, COALESCE(expiry_date, '9999-12-31') ASC, created_at ASC";
+
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            int index = 1;
+            for (Integer productId : productIds) {
+                stmt.setInt(index++, productId);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Batch batch = mapResultSetToBatch(rs);
+                    batchesByProduct.computeIfAbsent(batch.getProductId(), k -> new ArrayList<>()).add(batch);
+                }
+            }
+        }
+        return batchesByProduct;
+    }
+
     private Batch mapResultSetToBatch(ResultSet rs) throws SQLException {
         Batch b = new Batch();
         b.setId(rs.getInt("id"));
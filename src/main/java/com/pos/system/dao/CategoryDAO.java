@@ -18,32 +18,41 @@ public class CategoryDAO extends BaseDAO {
 
     public void addCategory(Category category) throws SQLException {
         String sql = "INSERT INTO categories (name, description) VALUES (?, ?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, category.getName());
-            pstmt.setString(2, category.getDescription());
-            pstmt.executeUpdate();
-            logAudit("CREATE", "Category", category.getName(), "Description: " + category.getDescription());
-        }
+        write(() -> {
+            try (PreparedStatement pstmt = prepareStatement(sql)) {
+                pstmt.setString(1, category.getName());
+                pstmt.setString(2, category.getDescription());
+                pstmt.executeUpdate();
+                logAudit("CREATE", "Category", category.getName(), "Description: " + category.getDescription());
+            }
+            return null;
+        });
     }
 
     public void updateCategory(Category category) throws SQLException {
         String sql = "UPDATE categories SET name=?, description=? WHERE id=?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, category.getName());
-            pstmt.setString(2, category.getDescription());
-            pstmt.setInt(3, category.getId());
-            pstmt.executeUpdate();
-            logAudit("UPDATE", "Category", String.valueOf(category.getId()), "Name updated to " + category.getName());
-        }
+        write(() -> {
+            try (PreparedStatement pstmt = prepareStatement(sql)) {
+                pstmt.setString(1, category.getName());
+                pstmt.setString(2, category.getDescription());
+                pstmt.setInt(3, category.getId());
+                pstmt.executeUpdate();
+                logAudit("UPDATE", "Category", String.valueOf(category.getId()), "Name updated to " + category.getName());
+            }
+            return null;
+        });
     }
 
     public void deleteCategory(int id) throws SQLException {
         String sql = "DELETE FROM categories WHERE id=?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setInt(1, id);
-            pstmt.executeUpdate();
-            logAudit("DELETE", "Category", String.valueOf(id), "Deleted category");
-        }
+        write(() -> {
+            try (PreparedStatement pstmt = prepareStatement(sql)) {
+                pstmt.setInt(1, id);
+                pstmt.executeUpdate();
+                logAudit("DELETE", "Category", String.valueOf(id), "Deleted category");
+            }
+            return null;
+        });
     }
 
     public List<Category> getAllCategories() throws SQLException {
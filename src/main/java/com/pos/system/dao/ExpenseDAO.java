@@ -19,24 +19,30 @@ public class ExpenseDAO extends BaseDAO {
 
     public void addExpense(Expense expense) throws SQLException {
         String sql = "INSERT INTO expenses (category, amount, description, expense_date) VALUES (?, ?, ?, ?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, expense.getCategory());
-            pstmt.setDouble(2, expense.getAmount());
-            pstmt.setString(3, expense.getDescription());
-            pstmt.setString(4,
-                    LocalDateTime.now().format(java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
-            pstmt.executeUpdate();
-            logAudit("CREATE", "Expense", expense.getCategory(), "Amount: " + expense.getAmount());
-        }
+        write(() -> {
+            try (PreparedStatement pstmt = prepareStatement(sql)) {
+                pstmt.setString(1, expense.getCategory());
+                pstmt.setDouble(2, expense.getAmount());
+                pstmt.setString(3, expense.getDescription());
+                pstmt.setString(4,
+                        LocalDateTime.now().format(java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
+                pstmt.executeUpdate();
+                logAudit("CREATE", "Expense", expense.getCategory(), "Amount: " + expense.getAmount());
+            }
+            return null;
+        });
     }
 
     public void deleteExpense(int id) throws SQLException {
         String sql = "DELETE FROM expenses WHERE id = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setInt(1, id);
-            pstmt.executeUpdate();
-            logAudit("DELETE", "Expense", String.valueOf(id), "Deleted expense");
-        }
+        write(() -> {
+            try (PreparedStatement pstmt = prepareStatement(sql)) {
+                pstmt.setInt(1, id);
+                pstmt.executeUpdate();
+                logAudit("DELETE", "Expense", String.valueOf(id), "Deleted expense");
+            }
+            return null;
+        });
     }
 
     public List<Expense> getAllExpenses() throws SQLException {
@@ -67,7 +73,7 @@ public class ExpenseDAO extends BaseDAO {
         List<Expense> expenses = new ArrayList<>();
         String sql = "SELECT * FROM expenses WHERE expense_date >= ? AND expense_date <= ? ORDER BY expense_date DESC LIMIT ? OFFSET ?";
 
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        try (PreparedStatement pstmt = prepareStatement(sql)) {
             pstmt.setString(1, start.toString().replace("T", " "));
             pstmt.setString(2, end.toString().replace("T", " "));
             pstmt.setInt(3, limit);
@@ -88,7 +94,7 @@ public class ExpenseDAO extends BaseDAO {
 
     public int getExpensesCountBetween(LocalDateTime start, LocalDateTime end) throws SQLException {
         String sql = "SELECT COUNT(*) FROM expenses WHERE expense_date >= ? AND expense_date <= ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        try (PreparedStatement pstmt = prepareStatement(sql)) {
             pstmt.setString(1, start.toString().replace("T", " "));
             pstmt.setString(2, end.toString().replace("T", " "));
             try (ResultSet rs = pstmt.executeQuery()) {
@@ -102,7 +108,7 @@ public class ExpenseDAO extends BaseDAO {
 
     public double getTotalExpensesBetween(LocalDateTime start, LocalDateTime end) throws SQLException {
         String sql = "SELECT COALESCE(SUM(amount), 0) FROM expenses WHERE expense_date >= ? AND expense_date <= ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        try (PreparedStatement pstmt = prepareStatement(sql)) {
             pstmt.setString(1, start.toString().replace("T", " "));
             pstmt.setString(2, end.toString().replace("T", " "));
             try (ResultSet rs = pstmt.executeQuery()) {
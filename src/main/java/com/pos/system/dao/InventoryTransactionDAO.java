@@ -1,6 +1,7 @@
 package com.pos.system.dao;
 
 import com.pos.system.models.InventoryTransaction;
+import com.pos.system.models.StockDrift;
 import com.pos.system.models.TransactionType;
 
 import java.sql.Connection;
@@ -9,7 +10,9 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class InventoryTransactionDAO extends BaseDAO {
 
@@ -23,7 +26,7 @@ public class InventoryTransactionDAO extends BaseDAO {
 
     public void insertTransaction(InventoryTransaction tx) throws SQLException {
         String sql = "INSERT INTO inventory_transactions (product_id, batch_id, quantity_change, transaction_type, reference_id, created_by, created_at) VALUES (?, ?, ?, ?, ?, ?, ?)";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (PreparedStatement stmt = prepareStatement(sql)) {
             stmt.setInt(1, tx.getProductId());
 
             if (tx.getBatchId() != null) {
@@ -51,14 +54,56 @@ public class InventoryTransactionDAO extends BaseDAO {
     }
 
     /**
-     * Aggregates the absolute stock level for a product by summing all IN and OUT
-     * transactions.
+     * Inserts several ledger rows as a single JDBC batch, sharing one timestamp.
+     */
+    public void insertTransactions(List<InventoryTransaction> transactions) throws SQLException {
+        if (transactions.isEmpty()) {
+            return;
+        }
+        String sql = "INSERT INTO inventory_transactions (product_id, batch_id, quantity_change, transaction_type, reference_id, created_by, created_at) VALUES (?, ?, ?, ?, ?, ?, ?)";
+        String now = LocalDateTime.now().format(java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+        try (PreparedStatement stmt = prepareStatement(sql)) {
+            for (InventoryTransaction tx : transactions) {
+                stmt.setInt(1, tx.getProductId());
+
+                if (tx.getBatchId() != null) {
+                    stmt.setInt(2, tx.getBatchId());
+                } else {
+                    stmt.setNull(2, java.sql.Types.INTEGER);
+                }
+
+                stmt.setInt(3, tx.getQuantityChange());
+                stmt.setString(4, tx.getTransactionType().name());
+                stmt.setString(5, tx.getReferenceId());
+
+                if (tx.getCreatedBy() != null) {
+                    stmt.setInt(6, tx.getCreatedBy());
+                } else {
+                    stmt.setNull(6, java.sql.Types.INTEGER);
+                }
+                stmt.setString(7, now);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+            logAudit("CREATE", "InventoryTransaction", "BULK",
+                    transactions.size() + " ledger rows, Ref: " + transactions.get(0).getReferenceId());
+        }
+    }
+
+    /**
+     * Aggregates the absolute stock level for a product from the ledger: the
+     * newest stock snapshot plus the ledger rows written after it. Products
+     * without a snapshot fall back to summing their full history.
      * This acts as the single source of truth for stock quantities.
      */
     public int calculateStockLevel(int productId) throws SQLException {
-        String sql = "SELECT SUM(quantity_change) FROM inventory_transactions WHERE product_id = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        String sql = "SELECT COALESCE(s.balance, 0) + COALESCE((SELECT SUM(t.quantity_change) " +
+                "FROM inventory_transactions t WHERE t.product_id = ? AND t.id > COALESCE(s.ledger_id, 0)), 0) " +
+                "FROM (SELECT 1) LEFT JOIN (SELECT balance, ledger_id FROM stock_snapshots WHERE product_id = ? " +
+                "ORDER BY ledger_id DESC LIMIT 1) s ON 1";
+        try (PreparedStatement stmt = prepareStatement(sql)) {
             stmt.setInt(1, productId);
+            stmt.setInt(2, productId);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
                     return rs.getInt(1);
@@ -68,6 +113,54 @@ public class InventoryTransactionDAO extends BaseDAO {
         return 0; // Default if no transactions exist
     }
 
+    /**
+     * Stock level of a product as it stood at {@code at}: the newest snapshot
+     * taken at or before that moment plus the ledger rows between it and
+     * {@code at}.
+     */
+    public int calculateStockLevelAt(int productId, LocalDateTime at) throws SQLException {
+        String atStr = at.format(java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+        String sql = "SELECT COALESCE(s.balance, 0) + COALESCE((SELECT SUM(t.quantity_change) " +
+                "FROM inventory_transactions t WHERE t.product_id = ? AND t.id > COALESCE(s.ledger_id, 0) " +
+                "AND t.created_at <= ?), 0) " +
+                "FROM (SELECT 1) LEFT JOIN (SELECT balance, ledger_id FROM stock_snapshots WHERE product_id = ? " +
+                "AND as_of <= ? ORDER BY ledger_id DESC LIMIT 1) s ON 1";
+        try (PreparedStatement stmt = prepareStatement(sql)) {
+            stmt.setInt(1, productId);
+            stmt.setString(2, atStr);
+            stmt.setInt(3, productId);
+            stmt.setString(4, atStr);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getInt(1);
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Compares every product's cached stock counter against the ledger sum and
+     * returns the ones that disagree. This is a full scan and is meant for
+     * background reconciliation, not for the sale path.
+     */
+    public List<StockDrift> findStockDrift() throws SQLException {
+        List<StockDrift> drift = new ArrayList<>();
+        String sql = "SELECT p.id, p.name, p.stock, COALESCE(l.ledger_stock, 0) AS ledger_stock FROM products p " +
+                "LEFT JOIN (SELECT product_id, SUM(quantity_change) AS ledger_stock " +
+                "FROM inventory_transactions GROUP BY product_id) l ON l.product_id = p.id " +
+                "WHERE p.stock <> COALESCE(l.ledger_stock, 0)";
+
+        try (PreparedStatement stmt = prepareStatement(sql);
+                ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                drift.add(new StockDrift(rs.getInt("id"), rs.getString("name"), rs.getInt("stock"),
+                        rs.getInt("ledger_stock")));
+            }
+        }
+        return drift;
+    }
+
     public List<InventoryTransaction> getTransactionsBetween(LocalDateTime start, LocalDateTime end)
             throws SQLException {
         List<InventoryTransaction> transactions = new ArrayList<>();
@@ -75,7 +168,7 @@ public class InventoryTransactionDAO extends BaseDAO {
                 "JOIN products p ON it.product_id = p.id " +
                 "WHERE it.created_at BETWEEN ? AND ? ORDER BY it.created_at ASC";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (PreparedStatement stmt = prepareStatement(sql)) {
             stmt.setString(1, start.format(java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
             stmt.setString(2, end.format(java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
             try (ResultSet rs = stmt.executeQuery()) {
@@ -87,14 +180,42 @@ public class InventoryTransactionDAO extends BaseDAO {
         return transactions;
     }
 
+    /** Unit cost of the batch of every purchase between {@code start} and {@code end}, by batch id. */
+    public Map<Integer, Double> getPurchaseBatchCostsBetween(LocalDateTime start, LocalDateTime end)
+            throws SQLException {
+        Map<Integer, Double> costs = new HashMap<>();
+        String sql = "SELECT DISTINCT b.id, b.cost_price FROM inventory_transactions it " +
+                "JOIN batches b ON it.batch_id = b.id " +
+                "WHERE it.transaction_type = 'PURCHASE' AND it.created_at BETWEEN ? AND ?";
+        try (PreparedStatement stmt = prepareStatement(sql)) {
+            stmt.setString(1, start.format(java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
+            stmt.setString(2, end.format(java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    costs.put(rs.getInt(1), rs.getDouble(2));
+                }
+            }
+        }
+        return costs;
+    }
+
     public List<InventoryTransaction> getTransactionHistory(int productId) throws SQLException {
+        return getTransactionHistory(productId, -1);
+    }
+
+    /**
+     * Most recent ledger rows for a product, newest first. A negative limit
+     * returns the full history.
+     */
+    public List<InventoryTransaction> getTransactionHistory(int productId, int limit) throws SQLException {
         List<InventoryTransaction> transactions = new ArrayList<>();
         String sql = "SELECT it.*, p.name as product_name FROM inventory_transactions it " +
                 "JOIN products p ON it.product_id = p.id " +
-                "WHERE it.product_id = ? ORDER BY it.created_at DESC";
+                "WHERE it.product_id = ? ORDER BY it.created_at DESC, it.id DESC LIMIT ?";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (PreparedStatement stmt = prepareStatement(sql)) {
             stmt.setInt(1, productId);
+            stmt.setInt(2, limit);
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
                     transactions.add(mapResultSetToTransaction(rs));
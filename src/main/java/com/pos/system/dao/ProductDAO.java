@@ -1,13 +1,36 @@
 package com.pos.system.dao;
 
+import com.pos.system.database.ImageStore;
 import com.pos.system.models.Product;
+import com.pos.system.models.ProductSearchResult;
 
+import java.io.IOException;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
 
 public class ProductDAO extends BaseDAO {
 
+    /** Highest catalog version handed out so far, across products and deletions. */
+    private static final String CURRENT_VERSION = "SELECT MAX(v) FROM (SELECT COALESCE(MAX(version), 0) AS v FROM products "
+            + "UNION ALL SELECT COALESCE(MAX(version), 0) FROM product_deletions)";
+
+    /**
+     * SQL expression for the next catalog version. Every statement that
+     * changes a products row must also set {@code version = NEXT_VERSION,
+     * updated_at = CURRENT_TIMESTAMP}, so {@link #getProductsChangedSince(long)}
+     * can find it. Writes are serialized, so versions only ever go up, and both
+     * MAX lookups are answered from an index.
+     */
+    public static final String NEXT_VERSION = "((" + CURRENT_VERSION + ") + 1)";
+
+    // Every column except the image, for lookups that never show it
+    private static final String SUMMARY_SELECT = "SELECT p.id, p.barcode, p.name, p.category_id, c.name AS category_name, p.cost_price, p.selling_price, p.stock, p.version "
+            + "FROM products p LEFT JOIN categories c ON p.category_id = c.id";
+
+    // Null for the application's image store
+    private ImageStore imageStore;
+
     public ProductDAO() throws SQLException {
         super();
     }
@@ -16,50 +39,113 @@ public class ProductDAO extends BaseDAO {
         super(connection);
     }
 
-    public void addProduct(Product product) throws SQLException {
-        String sql = "INSERT INTO products (barcode, name, category_id, cost_price, selling_price, stock, image_blob) VALUES (?, ?, ?, ?, ?, ?, ?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, product.getBarcode());
-            pstmt.setString(2, product.getName());
-            pstmt.setInt(3, product.getCategoryId());
-            pstmt.setDouble(4, product.getCostPrice());
-            pstmt.setDouble(5, product.getSellingPrice());
-            pstmt.setInt(6, product.getStock());
-            pstmt.setBytes(7, product.getImageData());
-            pstmt.executeUpdate();
-            logAudit("CREATE", "Product", product.getBarcode(),
-                    "Name: " + product.getName() + ", Price: " + product.getSellingPrice());
+    /** Reads and writes images in {@code imageStore} instead of the application's, e.g. for tests. */
+    public ProductDAO(Connection connection, ImageStore imageStore) {
+        super(connection);
+        this.imageStore = imageStore;
+    }
+
+    private ImageStore images() {
+        return imageStore != null ? imageStore : ImageStore.getInstance();
+    }
+
+    /** Puts the product's image in the image store and returns its hash, or null if it has none. */
+    private String storeImage(Product product) throws SQLException {
+        byte[] image = product.getImageData();
+        if (image == null || image.length == 0) {
+            return null;
+        }
+        try {
+            return images().put(image);
+        } catch (IOException e) {
+            throw new SQLException("Could not store the product image", e);
         }
     }
 
-    public void updateProduct(Product product) throws SQLException {
-        String sql = "UPDATE products SET barcode=?, name=?, category_id=?, cost_price=?, selling_price=?, image_blob=? WHERE id=?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, product.getBarcode());
-            pstmt.setString(2, product.getName());
-            pstmt.setInt(3, product.getCategoryId());
-            pstmt.setDouble(4, product.getCostPrice());
-            pstmt.setDouble(5, product.getSellingPrice());
-            pstmt.setBytes(6, product.getImageData());
-            pstmt.setInt(7, product.getId());
-            pstmt.executeUpdate();
-            logAudit("UPDATE", "Product", String.valueOf(product.getId()),
-                    "Barcode: " + product.getBarcode() + ", Name: " + product.getName());
+    /** The image of the current row: from the image store, or a blob not moved there yet. */
+    private byte[] readImage(ResultSet rs) throws SQLException {
+        byte[] blob = rs.getBytes("image_blob");
+        String hash = rs.getString("image_hash");
+        if (blob != null || hash == null) {
+            return blob;
+        }
+        try {
+            byte[] image = images().read(hash);
+            if (image == null) {
+                logger.warn("Image {} of product {} is missing from the image store", hash, rs.getInt("id"));
+            }
+            return image;
+        } catch (IOException e) {
+            throw new SQLException("Could not read the product image " + hash, e);
         }
     }
 
+    public void addProduct(Product product) throws SQLException {
+        String sql = "INSERT INTO products (barcode, name, category_id, cost_price, selling_price, stock, image_hash, version, updated_at) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?, " + NEXT_VERSION + ", CURRENT_TIMESTAMP)";
+        String imageHash = storeImage(product);
+        write(() -> {
+            try (PreparedStatement pstmt = prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                pstmt.setString(1, product.getBarcode());
+                pstmt.setString(2, product.getName());
+                pstmt.setInt(3, product.getCategoryId());
+                pstmt.setDouble(4, product.getCostPrice());
+                pstmt.setDouble(5, product.getSellingPrice());
+                pstmt.setInt(6, product.getStock());
+                pstmt.setString(7, imageHash);
+                pstmt.executeUpdate();
+                try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                    if (keys.next()) {
+                        product.setId(keys.getInt(1));
+                    }
+                }
+                logAudit("CREATE", "Product", product.getBarcode(),
+                        "Name: " + product.getName() + ", Price: " + product.getSellingPrice());
+            }
+            return null;
+        });
+    }
+
+    public void updateProduct(Product product) throws SQLException {
+        String sql = "UPDATE products SET barcode=?, name=?, category_id=?, cost_price=?, selling_price=?, image_hash=?, "
+                + "image_blob=NULL, version=" + NEXT_VERSION + ", updated_at=CURRENT_TIMESTAMP WHERE id=?";
+        String imageHash = storeImage(product);
+        write(() -> {
+            try (PreparedStatement pstmt = prepareStatement(sql)) {
+                pstmt.setString(1, product.getBarcode());
+                pstmt.setString(2, product.getName());
+                pstmt.setInt(3, product.getCategoryId());
+                pstmt.setDouble(4, product.getCostPrice());
+                pstmt.setDouble(5, product.getSellingPrice());
+                pstmt.setString(6, imageHash);
+                pstmt.setInt(7, product.getId());
+                pstmt.executeUpdate();
+                logAudit("UPDATE", "Product", String.valueOf(product.getId()),
+                        "Barcode: " + product.getBarcode() + ", Name: " + product.getName());
+            }
+            return null;
+        });
+    }
+
     public void deleteProduct(int id) throws SQLException {
+        String tombstone = "INSERT OR REPLACE INTO product_deletions (product_id, version) VALUES (?, " + NEXT_VERSION + ")";
         String sql = "DELETE FROM products WHERE id=?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setInt(1, id);
-            pstmt.executeUpdate();
-            logAudit("DELETE", "Product", String.valueOf(id), "Deleted product");
-        }
+        write(() -> {
+            try (PreparedStatement tombstoneStmt = prepareStatement(tombstone);
+                    PreparedStatement pstmt = prepareStatement(sql)) {
+                tombstoneStmt.setInt(1, id);
+                tombstoneStmt.executeUpdate();
+                pstmt.setInt(1, id);
+                pstmt.executeUpdate();
+                logAudit("DELETE", "Product", String.valueOf(id), "Deleted product");
+            }
+            return null;
+        });
     }
 
     public List<Product> getAllProducts() throws SQLException {
         List<Product> products = new ArrayList<>();
-        String sql = "SELECT p.id, p.barcode, p.name, p.category_id, c.name AS category_name, p.cost_price, p.selling_price, p.stock, p.image_blob "
+        String sql = "SELECT p.id, p.barcode, p.name, p.category_id, c.name AS category_name, p.cost_price, p.selling_price, p.stock, p.image_blob, p.image_hash "
                 +
                 "FROM products p LEFT JOIN categories c ON p.category_id = c.id";
 
@@ -76,17 +162,17 @@ public class ProductDAO extends BaseDAO {
                         rs.getDouble("cost_price"),
                         rs.getDouble("selling_price"),
                         rs.getInt("stock"),
-                        rs.getBytes("image_blob")));
+                        readImage(rs)));
             }
         }
         return products;
     }
 
     public Product getProductByBarcode(String barcode) throws SQLException {
-        String sql = "SELECT p.id, p.barcode, p.name, p.category_id, c.name AS category_name, p.cost_price, p.selling_price, p.stock, p.image_blob "
+        String sql = "SELECT p.id, p.barcode, p.name, p.category_id, c.name AS category_name, p.cost_price, p.selling_price, p.stock, p.image_blob, p.image_hash "
                 +
                 "FROM products p LEFT JOIN categories c ON p.category_id = c.id WHERE p.barcode = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        try (PreparedStatement pstmt = prepareStatement(sql)) {
             pstmt.setString(1, barcode);
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()) {
@@ -99,7 +185,7 @@ public class ProductDAO extends BaseDAO {
                             rs.getDouble("cost_price"),
                             rs.getDouble("selling_price"),
                             rs.getInt("stock"),
-                            rs.getBytes("image_blob"));
+                            readImage(rs));
                 }
             }
         }
@@ -109,36 +195,259 @@ public class ProductDAO extends BaseDAO {
     public List<Product> getAllProductsSummary() throws SQLException {
         List<Product> products = new ArrayList<>();
         // Select all EXCEPT image_blob
-        String sql = "SELECT p.id, p.barcode, p.name, p.category_id, c.name AS category_name, p.cost_price, p.selling_price, p.stock "
-                + "FROM products p LEFT JOIN categories c ON p.category_id = c.id";
-
         try (Statement stmt = connection.createStatement();
-                ResultSet rs = stmt.executeQuery(sql)) {
+                ResultSet rs = stmt.executeQuery(SUMMARY_SELECT)) {
 
             while (rs.next()) {
-                // Pass null for imageData
-                products.add(new Product(
-                        rs.getInt("id"),
-                        rs.getString("barcode"),
-                        rs.getString("name"),
-                        rs.getInt("category_id"),
-                        rs.getString("category_name"),
-                        rs.getDouble("cost_price"),
-                        rs.getDouble("selling_price"),
-                        rs.getInt("stock"),
-                        null));
+                products.add(mapSummary(rs));
             }
         }
         return products;
     }
 
+    /**
+     * Like {@link #getProductByBarcode(String)} but without the image, for the
+     * scan path where only name, price and stock are needed.
+     */
+    public Product getProductSummaryByBarcode(String barcode) throws SQLException {
+        try (PreparedStatement pstmt = prepareStatement(SUMMARY_SELECT + " WHERE p.barcode = ?")) {
+            pstmt.setString(1, barcode);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? mapSummary(rs) : null;
+            }
+        }
+    }
+
+    /** Like {@link #getProductById(int)} but without the image. */
+    public Product getProductSummaryById(int id) throws SQLException {
+        try (PreparedStatement pstmt = prepareStatement(SUMMARY_SELECT + " WHERE p.id = ?")) {
+            pstmt.setInt(1, id);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? mapSummary(rs) : null;
+            }
+        }
+    }
+
+    /**
+     * One page of products in (name, id) order, without images, starting
+     * after the given key. Keyset paging: the cost depends on the page size,
+     * not on how deep into the catalog the page is.
+     *
+     * @param afterName  name of the last product on the previous page, or null for the first page
+     * @param afterId    ID of that product
+     * @param categoryId restricts the listing to one category, or null for all
+     */
+    public List<Product> getProductPage(String afterName, int afterId, Integer categoryId, int limit)
+            throws SQLException {
+        StringBuilder sql = new StringBuilder(SUMMARY_SELECT).append(" WHERE 1 = 1");
+        if (categoryId != null) {
+            sql.append(" AND p.category_id = ?");
+        }
+        if (afterName != null) {
+            sql.append(" AND (p.name, p.id) > (?, ?)");
+        }
+        sql.append(" ORDER BY p.name, p.id LIMIT ?");
+
+        List<Product> products = new ArrayList<>();
+        try (PreparedStatement pstmt = prepareStatement(sql.toString())) {
+            int i = 1;
+            if (categoryId != null) {
+                pstmt.setInt(i++, categoryId);
+            }
+            if (afterName != null) {
+                pstmt.setString(i++, afterName);
+                pstmt.setInt(i++, afterId);
+            }
+            pstmt.setInt(i, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    products.add(mapSummary(rs));
+                }
+            }
+        }
+        return products;
+    }
+
+    /**
+     * The product at {@code position} (0-based) in the order of
+     * {@link #getProductPage}, or null past the end. Used to find where a page
+     * starts when jumping ahead; the skip walks the index only.
+     */
+    public Product getProductAtPosition(int position, Integer categoryId) throws SQLException {
+        String inner = "SELECT id FROM products" + (categoryId != null ? " WHERE category_id = ?" : "")
+                + " ORDER BY name, id LIMIT 1 OFFSET ?";
+        try (PreparedStatement pstmt = prepareStatement(SUMMARY_SELECT + " WHERE p.id = (" + inner + ")")) {
+            int i = 1;
+            if (categoryId != null) {
+                pstmt.setInt(i++, categoryId);
+            }
+            pstmt.setInt(i, position);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? mapSummary(rs) : null;
+            }
+        }
+    }
+
+    public int countProducts(Integer categoryId) throws SQLException {
+        String sql = "SELECT COUNT(*) FROM products" + (categoryId != null ? " WHERE category_id = ?" : "");
+        try (PreparedStatement pstmt = prepareStatement(sql)) {
+            if (categoryId != null) {
+                pstmt.setInt(1, categoryId);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Full-text search over name, barcode and category name through the
+     * {@code products_fts} index, best match first. Every word in
+     * {@code query} must match the start of a word in one of those columns, so
+     * "choc bis" finds "Chocolate Biscuits". Products come back without images.
+     *
+     * @return an empty list if the query has no searchable words
+     */
+    public List<ProductSearchResult> searchProducts(String query, int limit, int offset) throws SQLException {
+        return searchProducts(query, null, limit, offset);
+    }
+
+    /** Like {@link #searchProducts(String, int, int)}, limited to one category when {@code categoryId} is set. */
+    public List<ProductSearchResult> searchProducts(String query, Integer categoryId, int limit, int offset)
+            throws SQLException {
+        List<ProductSearchResult> results = new ArrayList<>();
+        String match = toMatchExpression(query);
+        if (match == null) {
+            return results;
+        }
+        // Name hits weigh most, then barcode, then category
+        String highlight = "highlight(products_fts, 0, char(2), char(3)) AS highlighted_name";
+        String sql;
+        if (categoryId == null) {
+            // FTS5 can stop at the limit when it orders by its own rank
+            sql = "SELECT p.id, p.barcode, p.name, p.category_id, c.name AS category_name, p.cost_price, p.selling_price, "
+                    + "p.stock, p.version, m.highlighted_name FROM (SELECT rowid, rank, " + highlight
+                    + " FROM products_fts WHERE products_fts MATCH ? AND rank MATCH 'bm25(10.0, 5.0, 1.0)' "
+                    + "ORDER BY rank LIMIT ? OFFSET ?) m JOIN products p ON p.id = m.rowid "
+                    + "LEFT JOIN categories c ON p.category_id = c.id ORDER BY m.rank";
+        } else {
+            sql = "SELECT p.id, p.barcode, p.name, p.category_id, c.name AS category_name, p.cost_price, p.selling_price, "
+                    + "p.stock, p.version, " + highlight + " FROM products_fts JOIN products p ON p.id = products_fts.rowid "
+                    + "LEFT JOIN categories c ON p.category_id = c.id "
+                    + "WHERE products_fts MATCH ? AND p.category_id = ? "
+                    + "ORDER BY bm25(products_fts, 10.0, 5.0, 1.0) LIMIT ? OFFSET ?";
+        }
+        try (PreparedStatement pstmt = prepareStatement(sql)) {
+            int i = 1;
+            pstmt.setString(i++, match);
+            if (categoryId != null) {
+                pstmt.setInt(i++, categoryId);
+            }
+            pstmt.setInt(i++, limit);
+            pstmt.setInt(i, offset);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    results.add(new ProductSearchResult(mapSummary(rs), rs.getString("highlighted_name")));
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Turns what the user typed into an FTS5 query: each word quoted, so
+     * operators and punctuation are taken literally, and matched as a prefix.
+     */
+    static String toMatchExpression(String query) {
+        if (query == null) {
+            return null;
+        }
+        StringBuilder match = new StringBuilder();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= query.length(); i++) {
+            int c = i < query.length() ? query.codePointAt(i) : ' ';
+            if (Character.isLetterOrDigit(c) || Character.getType(c) == Character.NON_SPACING_MARK
+                    || Character.getType(c) == Character.COMBINING_SPACING_MARK) {
+                word.appendCodePoint(c);
+                if (Character.isSupplementaryCodePoint(c)) {
+                    i++;
+                }
+            } else if (word.length() > 0) {
+                if (match.length() > 0) {
+                    match.append(' ');
+                }
+                match.append('"').append(word).append("\"*");
+                word.setLength(0);
+            }
+        }
+        return match.length() > 0 ? match.toString() : null;
+    }
+
+    /** Highest catalog version so far; 0 for a catalog that was never changed. */
+    public long getCatalogVersion() throws SQLException {
+        try (PreparedStatement pstmt = prepareStatement(CURRENT_VERSION);
+                ResultSet rs = pstmt.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Products added or changed after {@code version}, without images, oldest
+     * change first. Read {@link #getCatalogVersion()} before this and resume
+     * from that value next time; a change that lands in between is simply
+     * returned twice.
+     */
+    public List<Product> getProductsChangedSince(long version) throws SQLException {
+        List<Product> products = new ArrayList<>();
+        try (PreparedStatement pstmt = prepareStatement(SUMMARY_SELECT + " WHERE p.version > ? ORDER BY p.version")) {
+            pstmt.setLong(1, version);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    products.add(mapSummary(rs));
+                }
+            }
+        }
+        return products;
+    }
+
+    /** IDs of products deleted after {@code version}. */
+    public List<Integer> getProductIdsDeletedSince(long version) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        try (PreparedStatement pstmt = prepareStatement(
+                "SELECT product_id FROM product_deletions WHERE version > ? ORDER BY version")) {
+            pstmt.setLong(1, version);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getInt(1));
+                }
+            }
+        }
+        return ids;
+    }
+
+    private Product mapSummary(ResultSet rs) throws SQLException {
+        // Pass null for imageData
+        Product product = new Product(
+                rs.getInt("id"),
+                rs.getString("barcode"),
+                rs.getString("name"),
+                rs.getInt("category_id"),
+                rs.getString("category_name"),
+                rs.getDouble("cost_price"),
+                rs.getDouble("selling_price"),
+                rs.getInt("stock"),
+                null);
+        product.setVersion(rs.getLong("version"));
+        return product;
+    }
+
     public byte[] getProductImage(int id) throws SQLException {
-        String sql = "SELECT image_blob FROM products WHERE id = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        String sql = "SELECT id, image_blob, image_hash FROM products WHERE id = ?";
+        try (PreparedStatement pstmt = prepareStatement(sql)) {
             pstmt.setInt(1, id);
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()) {
-                    return rs.getBytes("image_blob");
+                    return readImage(rs);
                 }
             }
         }
@@ -146,9 +455,9 @@ public class ProductDAO extends BaseDAO {
     }
 
     public Product getProductById(int id) throws SQLException {
-        String sql = "SELECT p.id, p.barcode, p.name, p.category_id, c.name AS category_name, p.cost_price, p.selling_price, p.stock, p.image_blob "
+        String sql = "SELECT p.id, p.barcode, p.name, p.category_id, c.name AS category_name, p.cost_price, p.selling_price, p.stock, p.image_blob, p.image_hash "
                 + "FROM products p LEFT JOIN categories c ON p.category_id = c.id WHERE p.id = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        try (PreparedStatement pstmt = prepareStatement(sql)) {
             pstmt.setInt(1, id);
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()) {
@@ -161,7 +470,7 @@ public class ProductDAO extends BaseDAO {
                             rs.getDouble("cost_price"),
                             rs.getDouble("selling_price"),
                             rs.getInt("stock"),
-                            rs.getBytes("image_blob"));
+                            readImage(rs));
                 }
             }
         }
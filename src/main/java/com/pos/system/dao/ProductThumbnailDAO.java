@@ -0,0 +1,137 @@
+package com.pos.system.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pre-scaled product images in {@code product_thumbnails}, one row per
+ * product and size. Triggers drop a product's thumbnails when its original
+ * image changes or the product is deleted, so a stored thumbnail always
+ * matches the current original. An empty thumbnail records that the original
+ * could not be decoded.
+ */
+public class ProductThumbnailDAO extends BaseDAO {
+
+    /**
+     * A reference to a product's original image, with the product version it
+     * was read at: the image store hash, or for a product whose image is not
+     * in the store yet, the image itself.
+     */
+    public static class Original {
+        private final int productId;
+        private final long version;
+        private final String imageHash;
+        private final byte[] image;
+
+        public Original(int productId, long version, String imageHash, byte[] image) {
+            this.productId = productId;
+            this.version = version;
+            this.imageHash = imageHash;
+            this.image = image;
+        }
+
+        public int getProductId() {
+            return productId;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public String getImageHash() {
+            return imageHash;
+        }
+
+        /** The image for a row not moved to the image store yet, otherwise null. */
+        public byte[] getImage() {
+            return image;
+        }
+    }
+
+    public ProductThumbnailDAO() throws SQLException {
+        super();
+    }
+
+    public ProductThumbnailDAO(Connection connection) {
+        super(connection);
+    }
+
+    /** The stored thumbnail, empty if the original could not be decoded, or null if none was made yet. */
+    public byte[] getThumbnail(int productId, int size) throws SQLException {
+        String sql = "SELECT image FROM product_thumbnails WHERE product_id = ? AND size = ?";
+        try (PreparedStatement pstmt = prepareStatement(sql)) {
+            pstmt.setInt(1, productId);
+            pstmt.setInt(2, size);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    byte[] image = rs.getBytes(1);
+                    return image != null ? image : new byte[0];
+                }
+            }
+        }
+        return null;
+    }
+
+    /** The original image, or null if the product has none. */
+    public Original getOriginal(int productId) throws SQLException {
+        String sql = "SELECT version, image_hash, image_blob FROM products WHERE id = ? "
+                + "AND (image_hash IS NOT NULL OR image_blob IS NOT NULL)";
+        try (PreparedStatement pstmt = prepareStatement(sql)) {
+            pstmt.setInt(1, productId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return new Original(productId, rs.getLong(1), rs.getString(2), rs.getBytes(3));
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stores a thumbnail made from {@code original}, unless the product was
+     * written since it was read, in which case its image may have changed and
+     * nothing is stored.
+     *
+     * @return whether the thumbnail was stored
+     */
+    public boolean saveThumbnail(Original original, int size, byte[] image) throws SQLException {
+        String sql = "INSERT OR REPLACE INTO product_thumbnails (product_id, size, image, created_at) "
+                + "SELECT id, ?, ?, CURRENT_TIMESTAMP FROM products WHERE id = ? AND version = ?";
+        return write(() -> {
+            try (PreparedStatement pstmt = prepareStatement(sql)) {
+                pstmt.setInt(1, size);
+                pstmt.setBytes(2, image);
+                pstmt.setInt(3, original.getProductId());
+                pstmt.setLong(4, original.getVersion());
+                return pstmt.executeUpdate() > 0;
+            }
+        });
+    }
+
+    /**
+     * Products after {@code afterId} that have an image but fewer than
+     * {@code sizes} thumbnails, in id order, for a backfill that pages
+     * through them.
+     */
+    public List<Integer> getProductIdsMissingThumbnails(int afterId, int sizes, int limit) throws SQLException {
+        String sql = "SELECT p.id FROM products p WHERE p.id > ? AND (p.image_hash IS NOT NULL OR p.image_blob IS NOT NULL) "
+                + "AND (SELECT COUNT(*) FROM product_thumbnails t WHERE t.product_id = p.id) < ? "
+                + "ORDER BY p.id LIMIT ?";
+        List<Integer> ids = new ArrayList<>();
+        try (PreparedStatement pstmt = prepareStatement(sql)) {
+            pstmt.setInt(1, afterId);
+            pstmt.setInt(2, sizes);
+            pstmt.setInt(3, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getInt(1));
+                }
+            }
+        }
+        return ids;
+    }
+}
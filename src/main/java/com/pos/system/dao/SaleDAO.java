@@ -4,8 +4,11 @@ import com.pos.system.models.Sale;
 import com.pos.system.models.SaleItem;
 
 import java.sql.*;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 public class SaleDAO extends BaseDAO {
 
@@ -24,13 +27,14 @@ public class SaleDAO extends BaseDAO {
 
         String insertSale = "INSERT INTO sales (user_id, subtotal, tax_amount, discount_amount, total_amount, total_profit, sale_date) VALUES (?, ?, ?, ?, ?, ?, ?)";
         String insertItem = "INSERT INTO sale_items (sale_id, product_id, quantity, price_at_sale, cost_at_sale, discount_amount, tax_amount) VALUES (?, ?, ?, ?, ?, ?, ?)";
-        String updateStock = "UPDATE products SET stock = stock - ? WHERE id = ?";
+        String updateStock = "UPDATE products SET stock = stock - ?, version = " + ProductDAO.NEXT_VERSION
+                + ", updated_at = CURRENT_TIMESTAMP WHERE id = ?";
 
         try {
             connection.setAutoCommit(false); // Start Transaction
 
             // 1. Insert Sale Header
-            saleStmt = connection.prepareStatement(insertSale, Statement.RETURN_GENERATED_KEYS);
+            saleStmt = prepareStatement(insertSale, Statement.RETURN_GENERATED_KEYS);
             saleStmt.setInt(1, sale.getUserId());
             saleStmt.setDouble(2, sale.getSubtotal());
             saleStmt.setDouble(3, sale.getTaxAmount());
@@ -52,8 +56,8 @@ public class SaleDAO extends BaseDAO {
             }
 
             // 2. Insert Items & Update Stock
-            itemStmt = connection.prepareStatement(insertItem);
-            updateStockStmt = connection.prepareStatement(updateStock);
+            itemStmt = prepareStatement(insertItem);
+            updateStockStmt = prepareStatement(updateStock);
 
             for (SaleItem item : items) {
                 // Add Item
@@ -101,8 +105,8 @@ public class SaleDAO extends BaseDAO {
     }
 
     public int insertSale(Sale sale) throws SQLException {
-        String sql = "INSERT INTO sales (user_id, subtotal, tax_amount, discount_amount, total_amount, total_profit, sale_date) VALUES (?, ?, ?, ?, ?, ?, ?)";
-        try (PreparedStatement stmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        String sql = "INSERT INTO sales (user_id, subtotal, tax_amount, discount_amount, total_amount, total_profit, sale_date, sale_key) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+        try (PreparedStatement stmt = prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             stmt.setInt(1, sale.getUserId());
             stmt.setDouble(2, sale.getSubtotal());
             stmt.setDouble(3, sale.getTaxAmount());
@@ -110,6 +114,7 @@ public class SaleDAO extends BaseDAO {
             stmt.setDouble(5, sale.getTotalAmount());
             stmt.setDouble(6, sale.getTotalProfit());
             stmt.setString(7, sale.getSaleDate().toString().replace("T", " "));
+            stmt.setString(8, sale.getSaleKey());
             stmt.executeUpdate();
 
             try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
@@ -124,9 +129,63 @@ public class SaleDAO extends BaseDAO {
         }
     }
 
+    /**
+     * Inserts a sale header under the ID already set on {@code sale}. Used when
+     * the ID was handed out before the sale reached the database, e.g. for a
+     * journaled checkout whose receipt has already been printed.
+     */
+    public int insertSaleWithId(Sale sale) throws SQLException {
+        String sql = "INSERT INTO sales (id, user_id, subtotal, tax_amount, discount_amount, total_amount, total_profit, sale_date, sale_key) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        try (PreparedStatement stmt = prepareStatement(sql)) {
+            stmt.setInt(1, sale.getId());
+            stmt.setInt(2, sale.getUserId());
+            stmt.setDouble(3, sale.getSubtotal());
+            stmt.setDouble(4, sale.getTaxAmount());
+            stmt.setDouble(5, sale.getDiscountAmount());
+            stmt.setDouble(6, sale.getTotalAmount());
+            stmt.setDouble(7, sale.getTotalProfit());
+            stmt.setString(8, sale.getSaleDate().toString().replace("T", " "));
+            stmt.setString(9, sale.getSaleKey());
+            stmt.executeUpdate();
+            logAudit("CREATE", "Sale", String.valueOf(sale.getId()), "Total: " + sale.getTotalAmount());
+            return sale.getId();
+        }
+    }
+
+    /**
+     * Highest sale ID ever handed out, including deleted sales still counted by
+     * the AUTOINCREMENT sequence.
+     */
+    public int getMaxSaleId() throws SQLException {
+        String sql = "SELECT MAX(COALESCE((SELECT seq FROM sqlite_sequence WHERE name = 'sales'), 0), "
+                + "COALESCE((SELECT MAX(id) FROM sales), 0))";
+        try (PreparedStatement stmt = prepareStatement(sql);
+                ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Looks up a sale by its idempotency key.
+     *
+     * @return the sale's ID, or 0 if no sale carries the key
+     */
+    public int findSaleIdByKey(String saleKey) throws SQLException {
+        if (saleKey == null) {
+            return 0;
+        }
+        String sql = "SELECT id FROM sales WHERE sale_key = ?";
+        try (PreparedStatement stmt = prepareStatement(sql)) {
+            stmt.setString(1, saleKey);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
     public void insertSaleItems(int saleId, List<SaleItem> items) throws SQLException {
         String sql = "INSERT INTO sale_items (sale_id, product_id, quantity, price_at_sale, cost_at_sale, discount_amount, tax_amount) VALUES (?, ?, ?, ?, ?, ?, ?)";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (PreparedStatement stmt = prepareStatement(sql)) {
             for (SaleItem item : items) {
                 stmt.setInt(1, saleId);
                 stmt.setInt(2, item.getProductId());
@@ -143,7 +202,7 @@ public class SaleDAO extends BaseDAO {
 
     public double getTotalSalesBetween(LocalDateTime start, LocalDateTime end) throws SQLException {
         String sql = "SELECT SUM(total_amount) FROM sales WHERE sale_date >= ? AND sale_date <= ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (PreparedStatement stmt = prepareStatement(sql)) {
             stmt.setString(1, start.toString().replace("T", " "));
             stmt.setString(2, end.toString().replace("T", " "));
             try (ResultSet rs = stmt.executeQuery()) {
@@ -157,7 +216,7 @@ public class SaleDAO extends BaseDAO {
 
     public double getTotalProfitBetween(LocalDateTime start, LocalDateTime end) throws SQLException {
         String sql = "SELECT SUM(total_profit) FROM sales WHERE sale_date >= ? AND sale_date <= ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (PreparedStatement stmt = prepareStatement(sql)) {
             stmt.setString(1, start.toString().replace("T", " "));
             stmt.setString(2, end.toString().replace("T", " "));
             try (ResultSet rs = stmt.executeQuery()) {
@@ -190,7 +249,7 @@ public class SaleDAO extends BaseDAO {
                 "(SELECT GROUP_CONCAT(p.name || ' (x' || si.quantity || ')', ', ') " +
                 " FROM sale_items si JOIN products p ON si.product_id = p.id WHERE si.sale_id = s.id) AS details " +
                 "FROM sales s WHERE s.sale_date >= ? AND s.sale_date <= ? ORDER BY s.sale_date DESC";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (PreparedStatement stmt = prepareStatement(sql)) {
             stmt.setString(1, start.toString().replace("T", " "));
             stmt.setString(2, end.toString().replace("T", " "));
             try (ResultSet rs = stmt.executeQuery()) {
@@ -202,6 +261,62 @@ public class SaleDAO extends BaseDAO {
         return sales;
     }
 
+    /**
+     * Streams the sales between {@code start} and {@code end}, newest first,
+     * without the item summary {@link #getSalesBetween} adds, for reports
+     * that read a long range in one pass.
+     */
+    public void forEachSaleBetween(LocalDateTime start, LocalDateTime end, Consumer<Sale> action)
+            throws SQLException {
+        String sql = "SELECT s.*, NULL AS details FROM sales s WHERE s.sale_date >= ? AND s.sale_date <= ? "
+                + "ORDER BY s.sale_date DESC";
+        try (PreparedStatement stmt = prepareStatement(sql)) {
+            stmt.setString(1, start.toString().replace("T", " "));
+            stmt.setString(2, end.toString().replace("T", " "));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    action.accept(mapResultSetToSale(rs));
+                }
+            }
+        }
+    }
+
+    /**
+     * Streams the items of every sale between {@code start} and {@code end}
+     * in one query, grouped by sale, instead of one
+     * {@link #getItemsBySaleId} call per sale. Each comes with the day of its
+     * sale.
+     */
+    public void forEachItemOfSalesBetween(LocalDateTime start, LocalDateTime end,
+            BiConsumer<LocalDate, SaleItem> action) throws SQLException {
+        String sql = "SELECT si.*, p.name as product_name, c.name as category_name, " +
+                "date(s.sale_date) as sale_day " +
+                "FROM sales s " +
+                "JOIN sale_items si ON si.sale_id = s.id " +
+                "JOIN products p ON si.product_id = p.id " +
+                "LEFT JOIN categories c ON p.category_id = c.id " +
+                "WHERE s.sale_date >= ? AND s.sale_date <= ? ORDER BY si.sale_id, si.id";
+        try (PreparedStatement stmt = prepareStatement(sql)) {
+            stmt.setString(1, start.toString().replace("T", " "));
+            stmt.setString(2, end.toString().replace("T", " "));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    action.accept(LocalDate.parse(rs.getString("sale_day")), mapResultSetToSaleItem(rs));
+                }
+            }
+        }
+    }
+
+    public Sale getSaleById(int saleId) throws SQLException {
+        String sql = "SELECT s.*, NULL AS details FROM sales s WHERE s.id = ?";
+        try (PreparedStatement stmt = prepareStatement(sql)) {
+            stmt.setInt(1, saleId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? mapResultSetToSale(rs) : null;
+            }
+        }
+    }
+
     public List<SaleItem> getItemsBySaleId(int saleId) throws SQLException {
         List<SaleItem> items = new java.util.ArrayList<>();
         String sql = "SELECT si.*, p.name as product_name, c.name as category_name " +
@@ -209,7 +324,7 @@ public class SaleDAO extends BaseDAO {
                 "JOIN products p ON si.product_id = p.id " +
                 "LEFT JOIN categories c ON p.category_id = c.id " +
                 "WHERE si.sale_id = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (PreparedStatement stmt = prepareStatement(sql)) {
             stmt.setInt(1, saleId);
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
@@ -285,6 +400,7 @@ public class SaleDAO extends BaseDAO {
                 rs.getDouble("total_profit"),
                 date);
         sale.setTransactionDetails(rs.getString("details"));
+        sale.setSaleKey(rs.getString("sale_key"));
         return sale;
     }
 }
@@ -3,10 +3,12 @@ package com.pos.system.dao;
 import com.pos.system.models.SalePayment;
 
 import java.sql.*;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.BiConsumer;
 
 public class SalePaymentDAO extends BaseDAO {
     private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
@@ -21,7 +23,7 @@ public class SalePaymentDAO extends BaseDAO {
 
     public SalePayment create(SalePayment payment) throws SQLException {
         String sql = "INSERT INTO sale_payments (sale_id, payment_method, amount, payment_date) VALUES (?, ?, ?, ?)";
-        try (PreparedStatement stmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        try (PreparedStatement stmt = prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             stmt.setInt(1, payment.getSaleId());
             stmt.setString(2, payment.getPaymentMethod());
             stmt.setDouble(3, payment.getAmount());
@@ -41,7 +43,7 @@ public class SalePaymentDAO extends BaseDAO {
     public List<SalePayment> findBySaleId(int saleId) throws SQLException {
         List<SalePayment> list = new ArrayList<>();
         String sql = "SELECT * FROM sale_payments WHERE sale_id = ? ORDER BY payment_date ASC";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (PreparedStatement stmt = prepareStatement(sql)) {
             stmt.setInt(1, saleId);
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
@@ -79,6 +81,26 @@ public class SalePaymentDAO extends BaseDAO {
         return list;
     }
 
+    /**
+     * Streams the payments of every sale between {@code start} and {@code end},
+     * grouped by sale, each with the day of its sale.
+     */
+    public void forEachPaymentOfSalesBetween(LocalDateTime start, LocalDateTime end,
+            BiConsumer<LocalDate, SalePayment> action) throws SQLException {
+        String sql = "SELECT sp.*, date(s.sale_date) AS sale_day "
+                + "FROM sales s JOIN sale_payments sp ON sp.sale_id = s.id "
+                + "WHERE s.sale_date >= ? AND s.sale_date <= ? ORDER BY sp.sale_id, sp.payment_date ASC";
+        try (PreparedStatement stmt = prepareStatement(sql)) {
+            stmt.setString(1, start.toString().replace("T", " "));
+            stmt.setString(2, end.toString().replace("T", " "));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    action.accept(LocalDate.parse(rs.getString("sale_day")), mapResultSetToPayment(rs));
+                }
+            }
+        }
+    }
+
     private SalePayment mapResultSetToPayment(ResultSet rs) throws SQLException {
         SalePayment payment = new SalePayment();
         payment.setId(rs.getInt("id"));
@@ -0,0 +1,266 @@
+package com.pos.system.dao;
+
+import com.pos.system.models.SalesRollup;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The hourly and daily sales rollups, so totals over a range are summed from
+ * one row per hour or day instead of one per sale. Each sale is added by
+ * {@link #addSale(int)} in the transaction that records it; {@link #rebuild()}
+ * regroups every sale, e.g. for a database that predates the rollups.
+ * <p>
+ * Ranges are exact: the whole days in a range come from the daily table, the
+ * whole hours before and after them from the hourly one, and the minutes of
+ * an hour the range only partly covers from the sales themselves.
+ */
+public class SalesRollupDAO extends BaseDAO {
+    private static final DateTimeFormatter HOUR = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:00:00");
+    // Sale dates are stored as LocalDateTime.toString() gives them, without seconds when those are zero,
+    // so an hour starts at "HH:00", which sorts before every time in that hour however it is written
+    private static final DateTimeFormatter HOUR_START = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:00");
+    private static final DateTimeFormatter DAY = DateTimeFormatter.ISO_LOCAL_DATE;
+    private static final DateTimeFormatter BUCKET = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static final String HOURLY = "sales_rollup_hourly";
+    private static final String DAILY = "sales_rollup_daily";
+    private static final String HOUR_OF_SALE = "strftime('%Y-%m-%d %H:00:00', s.sale_date)";
+    private static final String DAY_OF_SALE = "date(s.sale_date)";
+
+    // Sums a group of sales into a table's rows
+    private static final String UPSERT = "INSERT INTO %s (bucket, category_id, payment_method, sale_count, "
+            + "quantity, revenue, profit) %s "
+            + "ON CONFLICT (bucket, category_id, payment_method) DO UPDATE SET "
+            + "sale_count = sale_count + excluded.sale_count, quantity = quantity + excluded.quantity, "
+            + "revenue = revenue + excluded.revenue, profit = profit + excluded.profit";
+    private static final String TOTALS_OF_SALES = "SELECT %s, -1, '', COUNT(*), "
+            + "COALESCE(SUM((SELECT SUM(si.quantity) FROM sale_items si WHERE si.sale_id = s.id)), 0), "
+            + "SUM(s.total_amount), SUM(COALESCE(s.total_profit, 0)) "
+            + "FROM sales s WHERE %s GROUP BY 1";
+    private static final String CATEGORIES_OF_SALES = "SELECT %s, COALESCE(p.category_id, 0), '', "
+            + "COUNT(DISTINCT s.id), SUM(si.quantity), SUM(si.price_at_sale * si.quantity), "
+            + "SUM((si.price_at_sale - COALESCE(si.cost_at_sale, 0)) * si.quantity) "
+            + "FROM sale_items si JOIN sales s ON s.id = si.sale_id LEFT JOIN products p ON p.id = si.product_id "
+            + "WHERE %s GROUP BY 1, 2";
+    private static final String PAYMENTS_OF_SALES = "SELECT %s, -1, sp.payment_method, COUNT(DISTINCT s.id), 0, "
+            + "SUM(sp.amount), 0 FROM sale_payments sp JOIN sales s ON s.id = sp.sale_id "
+            + "WHERE %s GROUP BY 1, 3";
+    private static final String SALE_IDS = "s.id BETWEEN ? AND ?";
+    private static final String[] ADD_SALES = {
+            String.format(UPSERT, HOURLY, String.format(TOTALS_OF_SALES, HOUR_OF_SALE, SALE_IDS)),
+            String.format(UPSERT, HOURLY, String.format(CATEGORIES_OF_SALES, HOUR_OF_SALE, SALE_IDS)),
+            String.format(UPSERT, HOURLY, String.format(PAYMENTS_OF_SALES, HOUR_OF_SALE, SALE_IDS)),
+            String.format(UPSERT, DAILY, String.format(TOTALS_OF_SALES, DAY_OF_SALE, SALE_IDS)),
+            String.format(UPSERT, DAILY, String.format(CATEGORIES_OF_SALES, DAY_OF_SALE, SALE_IDS)),
+            String.format(UPSERT, DAILY, String.format(PAYMENTS_OF_SALES, DAY_OF_SALE, SALE_IDS))
+    };
+
+    // Sales in the part-hours at either end of a range: from its start to the first whole hour, and
+    // from the end of the last whole hour to its end
+    private static final String EDGE_SALES = "((s.sale_date >= ? AND s.sale_date < ?) "
+            + "OR (s.sale_date >= ? AND s.sale_date <= ?))";
+    private static final int EDGE_BOUNDS = 4;
+
+    // The rows of both tables within a range's bounds, plus its edge sales summed the same way, see rangeBounds()
+    private static final String RANGE = "(SELECT * FROM " + DAILY + " WHERE bucket BETWEEN ? AND ? "
+            + "UNION ALL SELECT * FROM " + HOURLY + " WHERE bucket BETWEEN ? AND ? "
+            + "UNION ALL SELECT * FROM " + HOURLY + " WHERE bucket BETWEEN ? AND ? "
+            + "UNION ALL " + String.format(TOTALS_OF_SALES, "''", EDGE_SALES) + " "
+            + "UNION ALL " + String.format(CATEGORIES_OF_SALES, "''", EDGE_SALES) + " "
+            + "UNION ALL " + String.format(PAYMENTS_OF_SALES, "''", EDGE_SALES) + ") r ";
+    private static final int EDGE_QUERIES = 3;
+    private static final String SUMS = "COALESCE(SUM(r.sale_count), 0), COALESCE(SUM(r.quantity), 0), "
+            + "COALESCE(SUM(r.revenue), 0), COALESCE(SUM(r.profit), 0)";
+    private static final String ALL_SALES = "r.category_id = -1 AND r.payment_method = ''";
+
+    public SalesRollupDAO() throws SQLException {
+        super();
+    }
+
+    public SalesRollupDAO(Connection connection) {
+        super(connection);
+    }
+
+    /**
+     * Adds a sale, with its items and payments already written, to both
+     * rollups. Runs on the caller's transaction, which should be the one that
+     * recorded the sale.
+     */
+    public void addSale(int saleId) throws SQLException {
+        addSales(saleId, saleId);
+    }
+
+    /**
+     * Empties both rollups and sums every sale into them again. Run it in a
+     * transaction, so readers never see the rollups half built.
+     */
+    public void rebuild() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("DELETE FROM " + HOURLY);
+            stmt.executeUpdate("DELETE FROM " + DAILY);
+        }
+        addSales(0, Integer.MAX_VALUE);
+    }
+
+    private void addSales(int fromId, int toId) throws SQLException {
+        for (String sql : ADD_SALES) {
+            try (PreparedStatement stmt = prepareStatement(sql)) {
+                stmt.setInt(1, fromId);
+                stmt.setInt(2, toId);
+                stmt.executeUpdate();
+            }
+        }
+    }
+
+    /** Whether the rollups are missing sales, e.g. those recorded before they existed. */
+    public boolean isOutOfDate() throws SQLException {
+        String sql = "SELECT (SELECT COUNT(*) FROM sales) <> (SELECT COALESCE(SUM(sale_count), 0) FROM " + DAILY
+                + " WHERE category_id = -1 AND payment_method = '')";
+        try (PreparedStatement stmt = prepareStatement(sql);
+                ResultSet rs = stmt.executeQuery()) {
+            return rs.next() && rs.getBoolean(1);
+        }
+    }
+
+    /** All sales from {@code start} to {@code end}. */
+    public SalesRollup getTotals(LocalDateTime start, LocalDateTime end) throws SQLException {
+        String sql = "SELECT " + SUMS + " FROM " + RANGE + "WHERE " + ALL_SALES;
+        try (PreparedStatement stmt = prepareStatement(sql)) {
+            setRange(stmt, start, end);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return new SalesRollup(null, null, null, rs.getInt(1), rs.getInt(2), rs.getDouble(3),
+                        rs.getDouble(4));
+            }
+        }
+    }
+
+    /** Sales per category from {@code start} to {@code end}, by category name. */
+    public List<SalesRollup> getTotalsByCategory(LocalDateTime start, LocalDateTime end) throws SQLException {
+        String sql = "SELECT c.name, " + SUMS + " FROM " + RANGE
+                + "LEFT JOIN categories c ON c.id = r.category_id "
+                + "WHERE r.category_id >= 0 GROUP BY r.category_id ORDER BY c.name";
+        List<SalesRollup> rows = new ArrayList<>();
+        try (PreparedStatement stmt = prepareStatement(sql)) {
+            setRange(stmt, start, end);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(new SalesRollup(null, rs.getString(1), null, rs.getInt(2), rs.getInt(3),
+                            rs.getDouble(4), rs.getDouble(5)));
+                }
+            }
+        }
+        return rows;
+    }
+
+    /** Payments per method for the sales from {@code start} to {@code end}. */
+    public List<SalesRollup> getTotalsByPaymentMethod(LocalDateTime start, LocalDateTime end) throws SQLException {
+        String sql = "SELECT r.payment_method, " + SUMS + " FROM " + RANGE
+                + "WHERE r.payment_method <> '' GROUP BY r.payment_method ORDER BY r.payment_method";
+        List<SalesRollup> rows = new ArrayList<>();
+        try (PreparedStatement stmt = prepareStatement(sql)) {
+            setRange(stmt, start, end);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(new SalesRollup(null, null, rs.getString(1), rs.getInt(2), rs.getInt(3),
+                            rs.getDouble(4), rs.getDouble(5)));
+                }
+            }
+        }
+        return rows;
+    }
+
+    /** All sales per hour with sales, from the hour of {@code start} to that of {@code end}, oldest first. */
+    public List<SalesRollup> getHourlyTotals(LocalDateTime start, LocalDateTime end) throws SQLException {
+        return getBuckets(HOURLY, start.format(HOUR), end.format(HOUR));
+    }
+
+    /** All sales per day with sales, from the day of {@code start} to that of {@code end}, oldest first. */
+    public List<SalesRollup> getDailyTotals(LocalDateTime start, LocalDateTime end) throws SQLException {
+        return getBuckets(DAILY, start.format(DAY), end.format(DAY));
+    }
+
+    private List<SalesRollup> getBuckets(String table, String from, String to) throws SQLException {
+        String sql = "SELECT bucket, sale_count, quantity, revenue, profit FROM " + table
+                + " WHERE bucket BETWEEN ? AND ? AND category_id = -1 AND payment_method = '' ORDER BY bucket";
+        List<SalesRollup> rows = new ArrayList<>();
+        try (PreparedStatement stmt = prepareStatement(sql)) {
+            stmt.setString(1, from);
+            stmt.setString(2, to);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String bucket = rs.getString(1);
+                    LocalDateTime time = bucket.length() > 10 ? LocalDateTime.parse(bucket, BUCKET)
+                            : LocalDate.parse(bucket, DAY).atStartOfDay();
+                    rows.add(new SalesRollup(time, null, null, rs.getInt(2), rs.getInt(3), rs.getDouble(4),
+                            rs.getDouble(5)));
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static void setRange(PreparedStatement stmt, LocalDateTime start, LocalDateTime end)
+            throws SQLException {
+        String[] bounds = rangeBounds(start, end);
+        int bucketBounds = bounds.length - EDGE_BOUNDS;
+        int index = 1;
+        for (int i = 0; i < bucketBounds; i++) {
+            stmt.setString(index++, bounds[i]);
+        }
+        for (int query = 0; query < EDGE_QUERIES; query++) {
+            for (int i = bucketBounds; i < bounds.length; i++) {
+                stmt.setString(index++, bounds[i]);
+            }
+        }
+    }
+
+    /**
+     * Bucket bounds of the daily table, then of the whole hours before and
+     * after the whole days in the hourly table, then the sale dates of the
+     * part-hours at the start and at the end. Empty parts get bounds that
+     * match nothing.
+     */
+    static String[] rangeBounds(LocalDateTime start, LocalDateTime end) {
+        LocalDateTime startHour = start.truncatedTo(ChronoUnit.HOURS);
+        // Whole hours run from firstHour up to, not including, endHour
+        LocalDateTime firstHour = startHour.equals(start) ? start : startHour.plusHours(1);
+        LocalDateTime endHour = end.plusSeconds(1).truncatedTo(ChronoUnit.HOURS);
+        String from = start.toString().replace("T", " ");
+        String to = end.format(BUCKET);
+        if (!firstHour.isBefore(endHour)) {
+            // No whole hour: every sale is read directly
+            return new String[] { "1", "0", "1", "0", "1", "0", "1", "0", from, to };
+        }
+        String[] edges = { from, firstHour.format(HOUR_START), endHour.format(HOUR_START), to };
+
+        LocalDate firstDay = firstHour.toLocalTime().equals(LocalTime.MIDNIGHT) ? firstHour.toLocalDate()
+                : firstHour.toLocalDate().plusDays(1);
+        LocalDate endDay = endHour.toLocalDate(); // exclusive
+        if (!firstDay.isBefore(endDay)) {
+            return concat(new String[] { "1", "0", firstHour.format(HOUR), endHour.minusHours(1).format(HOUR),
+                    "1", "0" }, edges);
+        }
+        return concat(new String[] { firstDay.format(DAY), endDay.minusDays(1).format(DAY),
+                firstHour.format(HOUR), firstDay.atStartOfDay().minusHours(1).format(HOUR),
+                endDay.atStartOfDay().format(HOUR), endHour.minusHours(1).format(HOUR) }, edges);
+    }
+
+    private static String[] concat(String[] buckets, String[] edges) {
+        String[] bounds = Arrays.copyOf(buckets, buckets.length + edges.length);
+        System.arraycopy(edges, 0, bounds, buckets.length, edges.length);
+        return bounds;
+    }
+}
@@ -34,7 +34,7 @@ public class SettingsDAO extends BaseDAO {
 
     public String getSetting(String key, String defaultValue) {
         String sql = "SELECT setting_value FROM settings WHERE setting_key = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        try (PreparedStatement pstmt = prepareStatement(sql)) {
             pstmt.setString(1, key);
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()) {
@@ -49,14 +49,18 @@ public class SettingsDAO extends BaseDAO {
 
     public boolean updateSetting(String key, String value) {
         String sql = "INSERT OR REPLACE INTO settings (setting_key, setting_value) VALUES (?, ?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, key);
-            pstmt.setString(2, value);
-            int affected = pstmt.executeUpdate();
-            if (affected > 0) {
-                logAudit("UPDATE", "Setting", key, "Value: " + value);
-            }
-            return affected > 0;
+        try {
+            return write(() -> {
+                try (PreparedStatement pstmt = prepareStatement(sql)) {
+                    pstmt.setString(1, key);
+                    pstmt.setString(2, value);
+                    int affected = pstmt.executeUpdate();
+                    if (affected > 0) {
+                        logAudit("UPDATE", "Setting", key, "Value: " + value);
+                    }
+                    return affected > 0;
+                }
+            });
         } catch (SQLException e) {
             e.printStackTrace();
             return false;
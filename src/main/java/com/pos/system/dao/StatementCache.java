@@ -0,0 +1,323 @@
+package com.pos.system.dao;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sqlite.SQLiteConnection;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of compiled prepared statements, keyed by physical SQLite connection
+ * and SQL text.
+ * <p>
+ * Pooled connections are Hikari proxies that close their statements when the
+ * proxy is returned, so statements are prepared on the underlying
+ * {@link SQLiteConnection} instead and survive across DAO instances. Callers
+ * get a wrapper whose {@code close()} resets the statement (closing any open
+ * result sets, clearing parameters and batches) and hands it back to the
+ * cache. Each connection keeps at most {@code maxPerConnection} statements and
+ * evicts the least recently used one beyond that. Entries for a connection are
+ * dropped once it is found closed, e.g. after the pool retires it.
+ * <p>
+ * Connections that are not backed by sqlite-jdbc, and nested use of a statement
+ * that is already checked out, fall back to a regular uncached statement.
+ */
+public final class StatementCache {
+    private static final Logger logger = LoggerFactory.getLogger(StatementCache.class);
+    private static final int DEFAULT_MAX_PER_CONNECTION = 64;
+    private static StatementCache instance;
+
+    private final int maxPerConnection;
+    private final Map<SQLiteConnection, ConnectionCache> caches = new IdentityHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong bypasses = new AtomicLong();
+
+    public StatementCache(int maxPerConnection) {
+        if (maxPerConnection < 1) {
+            throw new IllegalArgumentException("maxPerConnection must be positive");
+        }
+        this.maxPerConnection = maxPerConnection;
+    }
+
+    public static synchronized StatementCache getInstance() {
+        if (instance == null) {
+            instance = new StatementCache(DEFAULT_MAX_PER_CONNECTION);
+        }
+        return instance;
+    }
+
+    public PreparedStatement prepare(Connection connection, String sql) throws SQLException {
+        return prepare(connection, sql, Statement.NO_GENERATED_KEYS);
+    }
+
+    public PreparedStatement prepare(Connection connection, String sql, int autoGeneratedKeys) throws SQLException {
+        SQLiteConnection physical = unwrap(connection);
+        if (physical == null || physical.isClosed()) {
+            if (physical != null) {
+                invalidate(physical);
+            }
+            bypasses.incrementAndGet();
+            return prepareUncached(connection, sql, autoGeneratedKeys);
+        }
+
+        ConnectionCache cache;
+        synchronized (caches) {
+            cache = caches.get(physical);
+            if (cache == null) {
+                purgeClosedConnections();
+                cache = new ConnectionCache();
+                caches.put(physical, cache);
+            }
+        }
+        PreparedStatement statement = cache.checkOut(physical, sql, autoGeneratedKeys);
+        if (statement == null) {
+            // Already in use further up the call stack on this connection
+            bypasses.incrementAndGet();
+            return prepareUncached(connection, sql, autoGeneratedKeys);
+        }
+        return statement;
+    }
+
+    /**
+     * Closes and forgets every cached statement for the given connection. Safe to
+     * call with a pooled proxy or with a connection that was never cached.
+     */
+    public void invalidate(Connection connection) {
+        SQLiteConnection physical;
+        try {
+            physical = unwrap(connection);
+        } catch (SQLException e) {
+            return;
+        }
+        if (physical == null) {
+            return;
+        }
+        ConnectionCache cache;
+        synchronized (caches) {
+            cache = caches.remove(physical);
+        }
+        if (cache != null) {
+            cache.closeAll();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public long getBypassCount() {
+        return bypasses.get();
+    }
+
+    public int getCachedStatementCount() {
+        synchronized (caches) {
+            int total = 0;
+            for (ConnectionCache cache : caches.values()) {
+                total += cache.size();
+            }
+            return total;
+        }
+    }
+
+    // Caller holds the caches lock
+    private void purgeClosedConnections() {
+        Iterator<Map.Entry<SQLiteConnection, ConnectionCache>> it = caches.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<SQLiteConnection, ConnectionCache> entry = it.next();
+            if (isClosed(entry.getKey())) {
+                entry.getValue().closeAll();
+                it.remove();
+            }
+        }
+    }
+
+    private static boolean isClosed(Connection connection) {
+        try {
+            return connection.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    private static SQLiteConnection unwrap(Connection connection) throws SQLException {
+        if (connection instanceof SQLiteConnection sqlite) {
+            return sqlite;
+        }
+        if (connection != null && connection.isWrapperFor(SQLiteConnection.class)) {
+            return connection.unwrap(SQLiteConnection.class);
+        }
+        return null;
+    }
+
+    private static PreparedStatement prepareUncached(Connection connection, String sql, int autoGeneratedKeys)
+            throws SQLException {
+        if (autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS) {
+            return connection.prepareStatement(sql, autoGeneratedKeys);
+        }
+        return connection.prepareStatement(sql);
+    }
+
+    private final class ConnectionCache {
+        private final LinkedHashMap<String, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() > maxPerConnection) {
+                    evictions.incrementAndGet();
+                    eldest.getValue().evict();
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        synchronized PreparedStatement checkOut(SQLiteConnection physical, String sql, int autoGeneratedKeys)
+                throws SQLException {
+            String key = autoGeneratedKeys + ":" + sql;
+            CachedStatement cached = statements.get(key);
+            if (cached != null && cached.inUse) {
+                return null;
+            }
+            if (cached != null && cached.delegate.isClosed()) {
+                statements.remove(key);
+                cached = null;
+            }
+            if (cached == null) {
+                misses.incrementAndGet();
+                cached = new CachedStatement(this, physical.prepareStatement(sql, autoGeneratedKeys));
+                statements.put(key, cached);
+            } else {
+                hits.incrementAndGet();
+            }
+            cached.inUse = true;
+            return cached.proxy;
+        }
+
+        synchronized void checkIn(CachedStatement cached) {
+            cached.inUse = false;
+            if (cached.evicted) {
+                cached.closeDelegate();
+            }
+        }
+
+        synchronized int size() {
+            return statements.size();
+        }
+
+        synchronized void closeAll() {
+            for (CachedStatement cached : statements.values()) {
+                cached.evict();
+            }
+            statements.clear();
+        }
+    }
+
+    private static final class CachedStatement implements InvocationHandler {
+        private final ConnectionCache owner;
+        private final PreparedStatement delegate;
+        private final PreparedStatement proxy;
+        private final List<ResultSet> openResults = new ArrayList<>(1);
+        private boolean inUse;
+        private boolean evicted;
+
+        CachedStatement(ConnectionCache owner, PreparedStatement delegate) {
+            this.owner = owner;
+            this.delegate = delegate;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+                    new Class<?>[] { PreparedStatement.class }, this);
+        }
+
+        @Override
+        public Object invoke(Object self, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (inUse) {
+                        release();
+                    }
+                    return null;
+                case "isClosed":
+                    return !inUse || delegate.isClosed();
+                case "equals":
+                    return self == args[0];
+                case "hashCode":
+                    return System.identityHashCode(self);
+                case "toString":
+                    return "CachedStatement[" + delegate + "]";
+                default:
+                    break;
+            }
+            if (!inUse) {
+                throw new SQLException("Statement is closed");
+            }
+            try {
+                Object result = method.invoke(delegate, args);
+                if (result instanceof ResultSet rs) {
+                    openResults.add(rs);
+                }
+                return result;
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        /**
+         * Resets the statement so the next borrower starts clean, then returns it
+         * to the cache. A statement that cannot be reset is closed and evicted.
+         */
+        private void release() {
+            try {
+                for (ResultSet rs : openResults) {
+                    rs.close();
+                }
+                delegate.clearParameters();
+                delegate.clearBatch();
+            } catch (SQLException e) {
+                logger.debug("Discarding cached statement that failed to reset", e);
+                evicted = true;
+            } finally {
+                openResults.clear();
+                owner.checkIn(this);
+            }
+        }
+
+        void evict() {
+            evicted = true;
+            if (!inUse) {
+                closeDelegate();
+            }
+        }
+
+        void closeDelegate() {
+            try {
+                delegate.close();
+            } catch (SQLException e) {
+                logger.debug("Error closing evicted statement", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.pos.system.dao;
+
+import com.pos.system.models.StockDrift;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checkpoints for the inventory ledger. A snapshot stores a product's balance
+ * up to and including {@code ledger_id}, so stock questions only need to sum
+ * the ledger rows after it. Every product with ledger activity up to the
+ * newest snapshot's {@code ledger_id} has a snapshot covering that activity,
+ * which lets {@link #createSnapshots()} scan only rows written since the last
+ * run.
+ */
+public class StockSnapshotDAO extends BaseDAO {
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    public StockSnapshotDAO() throws SQLException {
+        super();
+    }
+
+    public StockSnapshotDAO(Connection connection) {
+        super(connection);
+    }
+
+    /**
+     * Writes a new snapshot for every product with ledger rows since the last
+     * run, rolling the previous snapshot forward by the new rows only.
+     *
+     * @return number of snapshots written
+     */
+    public int createSnapshots() throws SQLException {
+        String sql = "INSERT INTO stock_snapshots (product_id, ledger_id, balance, as_of, created_at) " +
+                "SELECT t.product_id, MAX(t.id), " +
+                "COALESCE((SELECT s.balance FROM stock_snapshots s WHERE s.product_id = t.product_id " +
+                "ORDER BY s.ledger_id DESC LIMIT 1), 0) + SUM(t.quantity_change), MAX(t.created_at), ? " +
+                "FROM inventory_transactions t " +
+                "WHERE t.id > (SELECT COALESCE(MAX(ledger_id), 0) FROM stock_snapshots) " +
+                "GROUP BY t.product_id";
+        return write(() -> {
+            try (PreparedStatement stmt = prepareStatement(sql)) {
+                stmt.setString(1, LocalDateTime.now().format(FORMATTER));
+                return stmt.executeUpdate();
+            }
+        });
+    }
+
+    /**
+     * Thins out snapshots created before {@code retentionDays} ago, keeping the
+     * last snapshot of each product per day. The newest snapshot of every product
+     * is always kept.
+     *
+     * @return number of snapshots removed
+     */
+    public int pruneSnapshots(int retentionDays) throws SQLException {
+        String sql = "DELETE FROM stock_snapshots WHERE created_at < ? AND ledger_id < " +
+                "(SELECT MAX(s2.ledger_id) FROM stock_snapshots s2 WHERE s2.product_id = stock_snapshots.product_id "
+                +
+                "AND date(s2.as_of) = date(stock_snapshots.as_of))";
+        return write(() -> {
+            try (PreparedStatement stmt = prepareStatement(sql)) {
+                stmt.setString(1, LocalDateTime.now().minusDays(retentionDays).format(FORMATTER));
+                return stmt.executeUpdate();
+            }
+        });
+    }
+
+    /**
+     * Recomputes each product's newest snapshot from the raw ledger and returns
+     * the ones whose stored balance is wrong. Full ledger scan; background use
+     * only.
+     */
+    public List<StockDrift> findInconsistentSnapshots() throws SQLException {
+        List<StockDrift> drift = new ArrayList<>();
+        String sql = "SELECT s.product_id, p.name, s.balance, " +
+                "(SELECT COALESCE(SUM(t.quantity_change), 0) FROM inventory_transactions t " +
+                "WHERE t.product_id = s.product_id AND t.id <= s.ledger_id) AS ledger_stock " +
+                "FROM stock_snapshots s JOIN products p ON p.id = s.product_id " +
+                "WHERE s.ledger_id = (SELECT MAX(s2.ledger_id) FROM stock_snapshots s2 WHERE s2.product_id = s.product_id)";
+        try (PreparedStatement stmt = prepareStatement(sql);
+                ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                int balance = rs.getInt("balance");
+                int ledgerStock = rs.getInt("ledger_stock");
+                if (balance != ledgerStock) {
+                    drift.add(new StockDrift(rs.getInt("product_id"), rs.getString("name"), balance, ledgerStock));
+                }
+            }
+        }
+        return drift;
+    }
+
+    /**
+     * Rebuilds every snapshot of a product from the raw ledger.
+     */
+    public void rebuildSnapshots(int productId) throws SQLException {
+        String sql = "UPDATE stock_snapshots SET balance = (SELECT COALESCE(SUM(t.quantity_change), 0) " +
+                "FROM inventory_transactions t WHERE t.product_id = stock_snapshots.product_id " +
+                "AND t.id <= stock_snapshots.ledger_id) WHERE product_id = ?";
+        write(() -> {
+            try (PreparedStatement stmt = prepareStatement(sql)) {
+                stmt.setInt(1, productId);
+                stmt.executeUpdate();
+                logAudit("UPDATE", "StockSnapshot", String.valueOf(productId), "Snapshots rebuilt from ledger");
+            }
+            return null;
+        });
+    }
+}
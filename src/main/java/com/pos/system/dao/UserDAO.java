@@ -20,7 +20,7 @@ public class UserDAO extends BaseDAO { // Extended BaseDAO
     public User login(String username, String password) { // Changed to catch SQLException
         String sql = "SELECT * FROM users WHERE username = ? AND password = ?";
 
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) { // Using connection from BaseDAO
+        try (PreparedStatement pstmt = prepareStatement(sql)) { // Using connection from BaseDAO
 
             pstmt.setString(1, username);
             pstmt.setString(2, password);
@@ -44,7 +44,7 @@ public class UserDAO extends BaseDAO { // Extended BaseDAO
 
     public User getUserByUsername(String username) {
         String sql = "SELECT * FROM users WHERE username = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        try (PreparedStatement pstmt = prepareStatement(sql)) {
             pstmt.setString(1, username);
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()) {
@@ -83,16 +83,20 @@ public class UserDAO extends BaseDAO { // Extended BaseDAO
 
     public boolean createUser(User user) {
         String sql = "INSERT INTO users (username, password, role, force_password_change) VALUES (?, ?, ?, ?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, user.getUsername());
-            pstmt.setString(2, user.getPassword()); // Should be hashed beforehand
-            pstmt.setString(3, user.getRole());
-            pstmt.setBoolean(4, user.isForcePasswordChange());
-            int affected = pstmt.executeUpdate();
-            if (affected > 0) {
-                logAudit("CREATE", "User", user.getUsername(), "Role: " + user.getRole());
-            }
-            return affected > 0;
+        try {
+            return write(() -> {
+                try (PreparedStatement pstmt = prepareStatement(sql)) {
+                    pstmt.setString(1, user.getUsername());
+                    pstmt.setString(2, user.getPassword()); // Should be hashed beforehand
+                    pstmt.setString(3, user.getRole());
+                    pstmt.setBoolean(4, user.isForcePasswordChange());
+                    int affected = pstmt.executeUpdate();
+                    if (affected > 0) {
+                        logAudit("CREATE", "User", user.getUsername(), "Role: " + user.getRole());
+                    }
+                    return affected > 0;
+                }
+            });
         } catch (SQLException e) {
             e.printStackTrace();
             return false;
@@ -101,14 +105,18 @@ public class UserDAO extends BaseDAO { // Extended BaseDAO
 
     public boolean updateUserRole(int userId, String role) {
         String sql = "UPDATE users SET role = ? WHERE id = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, role);
-            pstmt.setInt(2, userId);
-            int affected = pstmt.executeUpdate();
-            if (affected > 0) {
-                logAudit("UPDATE_ROLE", "User", String.valueOf(userId), "New role: " + role);
-            }
-            return affected > 0;
+        try {
+            return write(() -> {
+                try (PreparedStatement pstmt = prepareStatement(sql)) {
+                    pstmt.setString(1, role);
+                    pstmt.setInt(2, userId);
+                    int affected = pstmt.executeUpdate();
+                    if (affected > 0) {
+                        logAudit("UPDATE_ROLE", "User", String.valueOf(userId), "New role: " + role);
+                    }
+                    return affected > 0;
+                }
+            });
         } catch (SQLException e) {
             e.printStackTrace();
             return false;
@@ -117,15 +125,19 @@ public class UserDAO extends BaseDAO { // Extended BaseDAO
 
     public boolean updateUserPassword(int userId, String newPasswordHash, boolean forceChange) {
         String sql = "UPDATE users SET password = ?, force_password_change = ? WHERE id = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, newPasswordHash);
-            pstmt.setBoolean(2, forceChange);
-            pstmt.setInt(3, userId);
-            int affected = pstmt.executeUpdate();
-            if (affected > 0) {
-                logAudit("UPDATE_PASSWORD", "User", String.valueOf(userId), "Force change: " + forceChange);
-            }
-            return affected > 0;
+        try {
+            return write(() -> {
+                try (PreparedStatement pstmt = prepareStatement(sql)) {
+                    pstmt.setString(1, newPasswordHash);
+                    pstmt.setBoolean(2, forceChange);
+                    pstmt.setInt(3, userId);
+                    int affected = pstmt.executeUpdate();
+                    if (affected > 0) {
+                        logAudit("UPDATE_PASSWORD", "User", String.valueOf(userId), "Force change: " + forceChange);
+                    }
+                    return affected > 0;
+                }
+            });
         } catch (SQLException e) {
             e.printStackTrace();
             return false;
@@ -134,13 +146,17 @@ public class UserDAO extends BaseDAO { // Extended BaseDAO
 
     public boolean deleteUser(int userId) {
         String sql = "DELETE FROM users WHERE id = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setInt(1, userId);
-            int affected = pstmt.executeUpdate();
-            if (affected > 0) {
-                logAudit("DELETE", "User", String.valueOf(userId), "Deleted user");
-            }
-            return affected > 0;
+        try {
+            return write(() -> {
+                try (PreparedStatement pstmt = prepareStatement(sql)) {
+                    pstmt.setInt(1, userId);
+                    int affected = pstmt.executeUpdate();
+                    if (affected > 0) {
+                        logAudit("DELETE", "User", String.valueOf(userId), "Deleted user");
+                    }
+                    return affected > 0;
+                }
+            });
         } catch (SQLException e) {
             e.printStackTrace();
             return false;
@@ -0,0 +1,244 @@
+package com.pos.system.database;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, memory-mapped journal of checkouts that have been accepted but
+ * not yet written to SQLite.
+ * <p>
+ * The file has a fixed-size header followed by records of the form
+ * {@code [int length][long seq][byte status][int crc][payload]}. A record is
+ * written in full and flushed before its length is published, so a crash can
+ * only leave a zero length or a record whose CRC does not match. Either one
+ * ends the scan on the next open. The status byte is updated in place when a
+ * record is applied or abandoned. Once every record is settled, the journal is
+ * reset to empty; sequence numbers keep counting from the header's base.
+ * <p>
+ * Payloads are opaque here; encoding is up to the caller.
+ */
+public class CheckoutJournal implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(CheckoutJournal.class);
+
+    public static final int DEFAULT_CAPACITY = 8 * 1024 * 1024;
+
+    private static final long MAGIC = 0x504F534A524E4C31L; // "POSJRNL1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int BASE_SEQ_OFFSET = 16;
+    private static final int RECORD_OVERHEAD = 4 + 8 + 1 + 4;
+
+    public enum Status {
+        PENDING((byte) 0), APPLIED((byte) 1), FAILED((byte) 2);
+
+        private final byte code;
+
+        Status(byte code) {
+            this.code = code;
+        }
+
+        static Status of(byte code) {
+            for (Status s : values()) {
+                if (s.code == code) {
+                    return s;
+                }
+            }
+            return FAILED;
+        }
+    }
+
+    public static final class Entry {
+        private final long seq;
+        private final int statusOffset;
+        private final byte[] payload;
+
+        Entry(long seq, int statusOffset, byte[] payload) {
+            this.seq = seq;
+            this.statusOffset = statusOffset;
+            this.payload = payload;
+        }
+
+        public long getSeq() {
+            return seq;
+        }
+
+        public byte[] getPayload() {
+            return payload;
+        }
+    }
+
+    private final Path file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final List<Entry> pending = new ArrayList<>();
+    private int writePosition;
+    private long nextSeq;
+
+    public CheckoutJournal(Path file, int capacity) throws IOException {
+        if (capacity <= HEADER_SIZE + RECORD_OVERHEAD) {
+            throw new IllegalArgumentException("Journal capacity too small: " + capacity);
+        }
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.capacity = (int) Math.max(capacity, channel.size());
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, this.capacity);
+        if (buffer.getLong(0) != MAGIC) {
+            initializeHeader();
+        }
+        recover();
+    }
+
+    private void initializeHeader() {
+        buffer.putLong(0, MAGIC);
+        buffer.putInt(8, VERSION);
+        buffer.putLong(BASE_SEQ_OFFSET, 1L);
+        buffer.putInt(HEADER_SIZE, 0);
+        buffer.force(0, HEADER_SIZE + 4);
+    }
+
+    /**
+     * Scans the records after a restart, collects those still pending and
+     * positions the writer after the last intact record.
+     */
+    private void recover() {
+        long lastSeq = buffer.getLong(BASE_SEQ_OFFSET) - 1;
+        int pos = HEADER_SIZE;
+        while (pos + RECORD_OVERHEAD <= capacity) {
+            int length = buffer.getInt(pos);
+            if (length <= 0 || pos + RECORD_OVERHEAD + length > capacity) {
+                break;
+            }
+            long seq = buffer.getLong(pos + 4);
+            byte status = buffer.get(pos + 12);
+            int crc = buffer.getInt(pos + 13);
+            byte[] payload = new byte[length];
+            buffer.get(pos + RECORD_OVERHEAD, payload);
+            if (crc != checksum(seq, payload)) {
+                logger.warn("Discarding torn checkout journal record at offset {} (seq {})", pos, seq);
+                break;
+            }
+            if (Status.of(status) == Status.PENDING) {
+                pending.add(new Entry(seq, pos + 12, payload));
+            }
+            lastSeq = seq;
+            pos += RECORD_OVERHEAD + length;
+        }
+        if (pos + 4 <= capacity) {
+            buffer.putInt(pos, 0);
+            buffer.force(pos, 4);
+        }
+        writePosition = pos;
+        nextSeq = lastSeq + 1;
+        if (!pending.isEmpty()) {
+            logger.info("Checkout journal {} has {} unapplied record(s)", file, pending.size());
+        }
+    }
+
+    /**
+     * Appends a record and flushes it to disk before returning.
+     *
+     * @return the record's sequence number, or -1 if the journal has no room
+     */
+    public synchronized long append(byte[] payload) {
+        int end = writePosition + RECORD_OVERHEAD + payload.length;
+        if (payload.length == 0 || end > capacity) {
+            return -1;
+        }
+        long seq = nextSeq;
+
+        buffer.putLong(writePosition + 4, seq);
+        buffer.put(writePosition + 12, Status.PENDING.code);
+        buffer.putInt(writePosition + 13, checksum(seq, payload));
+        buffer.put(writePosition + RECORD_OVERHEAD, payload);
+        if (end + 4 <= capacity) {
+            buffer.putInt(end, 0);
+        }
+        buffer.force(writePosition, Math.min(capacity, end + 4) - writePosition);
+
+        // Publish the record only once its body is durable
+        buffer.putInt(writePosition, payload.length);
+        buffer.force(writePosition, 4);
+
+        pending.add(new Entry(seq, writePosition + 12, payload));
+        writePosition = end;
+        nextSeq++;
+        return seq;
+    }
+
+    public synchronized List<Entry> getPendingEntries() {
+        return new ArrayList<>(pending);
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    public synchronized void markApplied(Entry entry) {
+        settle(entry, Status.APPLIED);
+    }
+
+    public synchronized void markFailed(Entry entry) {
+        settle(entry, Status.FAILED);
+    }
+
+    private void settle(Entry entry, Status status) {
+        buffer.put(entry.statusOffset, status.code);
+        buffer.force(entry.statusOffset, 1);
+        pending.remove(entry);
+    }
+
+    /**
+     * Empties the journal if every record has been settled.
+     *
+     * @return true if the journal was reset
+     */
+    public synchronized boolean compactIfSettled() {
+        if (!pending.isEmpty() || writePosition == HEADER_SIZE) {
+            return false;
+        }
+        buffer.putLong(BASE_SEQ_OFFSET, nextSeq);
+        buffer.force(BASE_SEQ_OFFSET, 8);
+        buffer.putInt(HEADER_SIZE, 0);
+        buffer.force(HEADER_SIZE, 4);
+        writePosition = HEADER_SIZE;
+        return true;
+    }
+
+    public synchronized int getUsedBytes() {
+        return writePosition;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private static int checksum(long seq, byte[] payload) {
+        CRC32 crc = new CRC32();
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            crc.update((int) (seq >>> shift));
+        }
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            buffer.force();
+            channel.close();
+        } catch (IOException e) {
+            logger.error("Error closing checkout journal", e);
+        }
+    }
+}
@@ -12,14 +12,23 @@ import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class DatabaseManager {
     private static final Logger logger = LoggerFactory.getLogger(DatabaseManager.class);
     private static DatabaseManager instance;
+    private static final int WRITER_POOL_SIZE = 4;
+    private static final int READER_POOL_SIZE = 8;
+    private static final String BACKUP_IMAGE_LIST = "images.txt";
+    // Images saved this recently may belong to a row still being written
+    private static final Duration IMAGE_MIN_AGE = Duration.ofDays(1);
     private HikariDataSource dataSource;
+    private HikariDataSource readDataSource;
 
     private DatabaseManager() {
         initialize();
@@ -39,13 +48,12 @@ public class DatabaseManager {
             config.setJdbcUrl("jdbc:sqlite:" + dbPath);
             config.setDriverClassName("org.sqlite.JDBC");
 
-            // SQLite specific optimizations
-            config.addDataSourceProperty("cachePrepStmts", "true");
-            config.addDataSourceProperty("prepStmtCacheSize", "250");
-            config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+            // sqlite-jdbc has no driver-side statement cache; DAOs reuse compiled
+            // statements through com.pos.system.dao.StatementCache instead.
 
-            // Pool settings for desktop app
-            config.setMaximumPoolSize(10); // Optimal for SQLite with Hikari
+            // Pool settings for desktop app. SQLite allows a single writer, so
+            // the writer pool stays small; reads go through the reader pool.
+            config.setMaximumPoolSize(WRITER_POOL_SIZE);
             config.setMinimumIdle(1);
             config.setConnectionTimeout(5000); // 5s
             config.setLeakDetectionThreshold(30000);
@@ -65,23 +73,44 @@ public class DatabaseManager {
                 stmt.execute("PRAGMA foreign_keys = ON");
 
                 initializeTables(conn);
+            }
 
-                // Run heavy migrations/optimizations in background
-                new Thread(() -> {
-                    try (Connection bgConn = dataSource.getConnection()) {
-                        migrateLegacyStock(bgConn);
+            // Reader pool is opened after the schema exists and WAL is on, so
+            // readers never block the writer nor each other.
+            this.readDataSource = createReaderPool(dbPath);
+            logger.info("Database reader pool initialized.");
 
-                        // Normalize date format
-                        try (var bgStmt = bgConn.createStatement()) {
-                            bgStmt.executeUpdate(
-                                    "UPDATE sales SET sale_date = REPLACE(sale_date, 'T', ' ') WHERE sale_date LIKE '%T%'");
-                            logger.info("Background Date normalization completed.");
-                        }
+            // Run heavy migrations/optimizations in background, writing through the writer
+            new Thread(() -> {
+                try {
+                    DatabaseWriter writer = DatabaseWriter.getInstance();
+                    try {
+                        writer.execute(conn -> {
+                            migrateLegacyStock(conn);
+                            return null;
+                        });
                     } catch (SQLException e) {
-                        logger.error("Background migration failed", e);
+                        logger.error("Failed to migrate legacy stock", e);
                     }
-                }, "DB-Background-Migration").start();
-            }
+
+                    // Normalize date format
+                    writer.execute(conn -> {
+                        try (var bgStmt = conn.createStatement()) {
+                            return bgStmt.executeUpdate(
+                                    "UPDATE sales SET sale_date = REPLACE(sale_date, 'T', ' ') WHERE sale_date LIKE '%T%'");
+                        }
+                    });
+                    logger.info("Background Date normalization completed.");
+
+                    migrateImages(writer);
+                    catchUpSalesRollups();
+                } catch (SQLException e) {
+                    logger.error("Background migration failed", e);
+                }
+            }, "DB-Background-Migration").start();
+
+            // Replay fast-mode checkouts that were accepted but not yet written
+            new Thread(this::replayCheckoutJournal, "Checkout-Journal-Replay").start();
 
             // Ensure backup on shutdown
             Runtime.getRuntime().addShutdownHook(new Thread(this::performBackup));
@@ -92,6 +121,67 @@ public class DatabaseManager {
         }
     }
 
+    /**
+     * Rebuilds the sales rollups if they miss sales, e.g. in a database from
+     * before they existed or restored from such a backup. Runs on the writer
+     * so no checkout lands between the check and the rebuild.
+     */
+    private void catchUpSalesRollups() {
+        try {
+            boolean rebuilt = DatabaseWriter.getInstance().execute(conn -> {
+                try (var rollupDAO = new com.pos.system.dao.SalesRollupDAO(conn)) {
+                    if (!rollupDAO.isOutOfDate()) {
+                        return false;
+                    }
+                    rollupDAO.rebuild();
+                    return true;
+                }
+            });
+            if (rebuilt) {
+                logger.info("Rebuilt the sales rollups.");
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to rebuild the sales rollups", e);
+        }
+    }
+
+    private void replayCheckoutJournal() {
+        if (!Files.exists(com.pos.system.utils.AppDataUtils.getCheckoutJournalPath())) {
+            return; // fast checkout has never been used
+        }
+        try {
+            com.pos.system.services.CheckoutJournalApplier.getInstance();
+        } catch (IOException e) {
+            logger.error("Failed to open checkout journal for replay", e);
+        }
+    }
+
+    /**
+     * Moves images still held in the database into the image store, brings
+     * back from the backups any image the database refers to that the store
+     * lacks, e.g. after a restore, and removes images no product uses any more.
+     */
+    private void migrateImages(DatabaseWriter writer) {
+        ImageStore store = ImageStore.getInstance();
+        try (Connection conn = getReadConnection()) {
+            int moved = ImageStoreMigration.moveBlobs(conn, writer, store);
+            if (moved > 0) {
+                logger.info("Moved {} product images into the image store.", moved);
+            }
+            Set<String> referenced = ImageStoreMigration.referencedHashes(conn);
+            int recovered = new ImageStore(getBackupImageDir()).copyMissingTo(store.getRoot(), referenced);
+            if (recovered > 0) {
+                logger.info("Recovered {} product images from backups.", recovered);
+            }
+            int removed = store.removeUnreferenced(referenced, IMAGE_MIN_AGE);
+            if (removed > 0) {
+                logger.info("Removed {} unused product images.", removed);
+            }
+        } catch (SQLException | IOException e) {
+            logger.error("Image store migration failed", e);
+        }
+    }
+
     private void initializeTables(Connection conn) {
         try (var stmt = conn.createStatement()) {
             var inputStream = getClass().getResourceAsStream("/schema.sql");
@@ -101,9 +191,7 @@ public class DatabaseManager {
             }
 
             String sql = new String(inputStream.readAllBytes(), java.nio.charset.StandardCharsets.UTF_8);
-            String[] statements = sql.split(";");
-
-            for (String statement : statements) {
+            for (String statement : SqlScript.split(sql)) {
                 if (!statement.trim().isEmpty()) {
                     try {
                         stmt.execute(statement);
@@ -119,88 +207,143 @@ public class DatabaseManager {
         }
     }
 
+    /**
+     * Builds the read-only pool used for reports, dashboards and catalog loads.
+     * Every connection is switched to {@code query_only} when it is created, so
+     * a stray write fails fast instead of competing for the write lock, and it
+     * gets a larger page cache, memory-mapped I/O and in-memory temp storage
+     * for the sorts and aggregates that reports run.
+     */
+    private HikariDataSource createReaderPool(String dbPath) {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl("jdbc:sqlite:" + dbPath);
+        config.setDriverClassName("org.sqlite.JDBC");
+
+        config.addDataSourceProperty("busy_timeout", "5000");
+        config.addDataSourceProperty("mmap_size", "268435456"); // 256MB
+        config.addDataSourceProperty("cache_size", "-32000"); // 32MB per reader
+        config.addDataSourceProperty("temp_store", "MEMORY");
+        config.setConnectionInitSql("PRAGMA query_only = 1");
+
+        config.setMaximumPoolSize(READER_POOL_SIZE);
+        config.setMinimumIdle(1);
+        config.setConnectionTimeout(5000);
+        config.setLeakDetectionThreshold(60000); // long reports are expected here
+        config.setPoolName("POS-ReaderPool");
+
+        return new HikariDataSource(config);
+    }
+
+    /**
+     * Returns a connection from the writer pool. Use this for transactional work
+     * and anything that modifies data.
+     */
     public Connection getConnection() throws SQLException {
         return dataSource.getConnection();
     }
 
+    /**
+     * Returns a read-only connection from the reader pool. Reads made here never
+     * hold a writer connection, so long reports cannot starve checkout. Any
+     * write attempted on it fails with {@code SQLITE_READONLY}.
+     */
+    public Connection getReadConnection() throws SQLException {
+        return readDataSource.getConnection();
+    }
+
+    /**
+     * Opens the dedicated, unpooled connection used by {@link DatabaseWriter}.
+     * Transactions on it begin IMMEDIATE so the write lock is taken up front
+     * instead of failing on a read-to-write upgrade.
+     */
+    public Connection openWriterConnection() throws SQLException {
+        org.sqlite.SQLiteConfig sqliteConfig = new org.sqlite.SQLiteConfig();
+        sqliteConfig.setJournalMode(org.sqlite.SQLiteConfig.JournalMode.WAL);
+        sqliteConfig.setSynchronous(org.sqlite.SQLiteConfig.SynchronousMode.NORMAL);
+        sqliteConfig.setBusyTimeout(5000);
+        sqliteConfig.enforceForeignKeys(true);
+        sqliteConfig.setTransactionMode(org.sqlite.SQLiteConfig.TransactionMode.IMMEDIATE);
+        return sqliteConfig.createConnection("jdbc:sqlite:" + com.pos.system.utils.AppDataUtils.getDatabasePath());
+    }
+
     public void close() {
         if (dataSource != null && !dataSource.isClosed()) {
+            // Apply journaled checkouts, hand buffered audit entries to the writer, then finish
+            // queued writes, while the pool is still open
+            com.pos.system.services.CheckoutJournalApplier.shutdownInstance();
+            com.pos.system.dao.AuditLogWriter.shutdownInstance();
+            DatabaseWriter.shutdownInstance();
+            com.pos.system.services.CheckoutMetrics.dumpOnShutdown();
+            closeReaderPool();
             dataSource.close();
             logger.info("Database connection pool closed.");
         }
     }
 
-    private void migrateLegacyStock(Connection conn) {
-        try {
-            // Check if batches table exists and is empty
-            try (var checkStmt = conn.createStatement();
-                    var rs = checkStmt.executeQuery("SELECT count(*) FROM batches")) {
-                if (rs.next() && rs.getInt(1) > 0) {
-                    // Already migrated or has data
-                    return;
-                }
-            } catch (Exception e) {
-                // Table might not exist yet if schema failed, or just ignore
+    /**
+     * Moves stock counted before the inventory ledger existed into opening
+     * batches. Runs as a writer unit, so a failure rolls the whole move back.
+     */
+    private void migrateLegacyStock(Connection conn) throws SQLException {
+        // Check if batches table exists and is empty
+        try (var checkStmt = conn.createStatement();
+                var rs = checkStmt.executeQuery("SELECT count(*) FROM batches")) {
+            if (rs.next() && rs.getInt(1) > 0) {
+                // Already migrated or has data
                 return;
             }
+        } catch (Exception e) {
+            // Table might not exist yet if schema failed, or just ignore
+            return;
+        }
 
-            // Migrate positive stock products
-            String selectProducts = "SELECT id, stock, cost_price FROM products WHERE stock > 0";
-            String insertBatch = "INSERT INTO batches (product_id, batch_number, cost_price, remaining_quantity) VALUES (?, ?, ?, ?)";
-            String insertTx = "INSERT INTO inventory_transactions (product_id, batch_id, quantity_change, transaction_type, reference_id) VALUES (?, ?, ?, ?, ?)";
-
-            try (var pstmtSelect = conn.prepareStatement(selectProducts);
-                    var rsProducts = pstmtSelect.executeQuery();
-                    var pstmtBatch = conn.prepareStatement(insertBatch, java.sql.Statement.RETURN_GENERATED_KEYS);
-                    var pstmtTx = conn.prepareStatement(insertTx)) {
-
-                conn.setAutoCommit(false);
-                int migrationCount = 0;
-
-                while (rsProducts.next()) {
-                    int productId = rsProducts.getInt("id");
-                    int stock = rsProducts.getInt("stock");
-                    double costPrice = rsProducts.getDouble("cost_price");
-
-                    // 1. Create Batch
-                    pstmtBatch.setInt(1, productId);
-                    pstmtBatch.setString(2, "INIT-MIGRATE");
-                    pstmtBatch.setDouble(3, costPrice);
-                    pstmtBatch.setInt(4, stock);
-                    pstmtBatch.executeUpdate();
-
-                    int batchId = -1;
-                    try (var keys = pstmtBatch.getGeneratedKeys()) {
-                        if (keys.next())
-                            batchId = keys.getInt(1);
-                    }
+        // Migrate positive stock products
+        String selectProducts = "SELECT id, stock, cost_price FROM products WHERE stock > 0";
+        String insertBatch = "INSERT INTO batches (product_id, batch_number, cost_price, remaining_quantity) VALUES (?, ?, ?, ?)";
+        String insertTx = "INSERT INTO inventory_transactions (product_id, batch_id, quantity_change, transaction_type, reference_id) VALUES (?, ?, ?, ?, ?)";
+
+        try (var pstmtSelect = conn.prepareStatement(selectProducts);
+                var rsProducts = pstmtSelect.executeQuery();
+                var pstmtBatch = conn.prepareStatement(insertBatch, java.sql.Statement.RETURN_GENERATED_KEYS);
+                var pstmtTx = conn.prepareStatement(insertTx)) {
+
+            int migrationCount = 0;
+
+            while (rsProducts.next()) {
+                int productId = rsProducts.getInt("id");
+                int stock = rsProducts.getInt("stock");
+                double costPrice = rsProducts.getDouble("cost_price");
+
+                // 1. Create Batch
+                pstmtBatch.setInt(1, productId);
+                pstmtBatch.setString(2, "INIT-MIGRATE");
+                pstmtBatch.setDouble(3, costPrice);
+                pstmtBatch.setInt(4, stock);
+                pstmtBatch.executeUpdate();
+
+                int batchId = -1;
+                try (var keys = pstmtBatch.getGeneratedKeys()) {
+                    if (keys.next())
+                        batchId = keys.getInt(1);
+                }
 
-                    // 2. Create Transaction
-                    pstmtTx.setInt(1, productId);
-                    pstmtTx.setInt(2, batchId);
-                    pstmtTx.setInt(3, stock);
-                    pstmtTx.setString(4, "ADJUSTMENT");
-                    pstmtTx.setString(5, "SYSTEM-MIGRATION");
-                    pstmtTx.executeUpdate();
+                // 2. Create Transaction
+                pstmtTx.setInt(1, productId);
+                pstmtTx.setInt(2, batchId);
+                pstmtTx.setInt(3, stock);
+                pstmtTx.setString(4, "ADJUSTMENT");
+                pstmtTx.setString(5, "SYSTEM-MIGRATION");
+                pstmtTx.executeUpdate();
 
-                    migrationCount++;
-                }
-                conn.commit();
-                if (migrationCount > 0) {
-                    logger.info("Successfully migrated {} legacy stock items to inventory ledger.", migrationCount);
-                }
-            } catch (SQLException e) {
-                conn.rollback();
-                logger.error("Failed to migrate legacy stock", e);
-            } finally {
-                conn.setAutoCommit(true);
+                migrationCount++;
+            }
+            if (migrationCount > 0) {
+                logger.info("Successfully migrated {} legacy stock items to inventory ledger.", migrationCount);
             }
-        } catch (Exception e) {
-            logger.error("Legacy stock migration check failed", e);
         }
     }
 
-    public void performBackup(boolean isManual) {
+    public synchronized void performBackup(boolean isManual) {
         try {
             logger.info("Starting database backup...");
             File dbFile = new File(com.pos.system.utils.AppDataUtils.getDatabasePath());
@@ -218,41 +361,31 @@ public class DatabaseManager {
             Path tempSqliteFile = backupDir.resolve(baseFilename + ".db");
             Path finalZipFile = backupDir.resolve(baseFilename + ".zip");
 
-            // 1. Safe SQLite Online Backup (writes to a temporary .db file first)
+            // 1. Consistent, compacted copy of the live database (writes to a temporary .db file first).
+            // VACUUM INTO leaves out free pages, e.g. those of images moved to the image store.
+            Files.deleteIfExists(tempSqliteFile);
             try (Connection conn = dataSource.getConnection();
                     java.sql.Statement stmt = conn.createStatement()) {
-                stmt.executeUpdate("backup to '" + tempSqliteFile.toAbsolutePath().toString().replace("\\", "/") + "'");
+                stmt.executeUpdate("VACUUM INTO '" + tempSqliteFile.toAbsolutePath().toString().replace("\\", "/") + "'");
             } catch (SQLException e) {
                 logger.error("SQLite backup command failed", e);
                 return;
             }
 
-            // 2. Zip the resulting safe backup file
-            try (java.util.zip.ZipOutputStream zos = new java.util.zip.ZipOutputStream(
-                    new java.io.FileOutputStream(finalZipFile.toFile()));
-                    java.io.FileInputStream fis = new java.io.FileInputStream(tempSqliteFile.toFile())) {
-
-                java.util.zip.ZipEntry zipEntry = new java.util.zip.ZipEntry("store.db");
-                zos.putNextEntry(zipEntry);
-
-                byte[] bytes = new byte[1024];
-                int length;
-                while ((length = fis.read(bytes)) >= 0) {
-                    zos.write(bytes, 0, length);
-                }
-                zos.closeEntry();
-            }
+            // 2. Zip the resulting safe backup file, with its images
+            writeBackupZip(tempSqliteFile, finalZipFile);
 
             // 3. Delete the temporary uncompressed file
             Files.deleteIfExists(tempSqliteFile);
             logger.info("Database backup created and compressed at: {}", finalZipFile);
 
-            // 4. Prune old backups
+            // 4. Prune old backups, then the images only they used
             if (isManual) {
                 pruneBackupsByPrefix(backupDir, "store_manual_", 10);
             } else {
                 pruneBackupsByPrefix(backupDir, "store_auto_", 30);
             }
+            removeUnreferencedBackupImages(backupDir);
 
         } catch (IOException e) {
             logger.error("Failed to perform the backup process", e);
@@ -290,7 +423,7 @@ public class DatabaseManager {
         }
     }
 
-    public void createPreRestoreBackup() throws IOException {
+    public synchronized void createPreRestoreBackup() throws IOException {
         logger.info("Creating pre-restore safety backup...");
         File dbFile = new File(com.pos.system.utils.AppDataUtils.getDatabasePath());
         if (!dbFile.exists())
@@ -309,30 +442,87 @@ public class DatabaseManager {
         // directly
         Files.copy(dbFile.toPath(), tempSqliteFile, StandardCopyOption.REPLACE_EXISTING);
 
+        writeBackupZip(tempSqliteFile, finalZipFile);
+        Files.deleteIfExists(tempSqliteFile);
+        logger.info("Pre-restore backup successfully created at: {}", finalZipFile);
+    }
+
+    /**
+     * Zips a database copy as a backup. The images it refers to are copied
+     * into the backups' shared image directory unless an earlier backup
+     * already did, and listed in the zip's {@value #BACKUP_IMAGE_LIST} entry.
+     * The database stays the first entry, which is the one a restore reads.
+     */
+    private void writeBackupZip(Path sqliteFile, Path zipFile) throws IOException {
+        Set<String> hashes;
+        try (Connection conn = java.sql.DriverManager.getConnection(
+                "jdbc:sqlite:" + sqliteFile.toAbsolutePath())) {
+            hashes = ImageStoreMigration.referencedHashes(conn);
+        } catch (SQLException e) {
+            throw new IOException("Could not read the images of backup " + sqliteFile, e);
+        }
+        int copied = ImageStore.getInstance().copyMissingTo(getBackupImageDir(), hashes);
+        logger.info("Backup refers to {} images, {} newly copied.", hashes.size(), copied);
+
         try (java.util.zip.ZipOutputStream zos = new java.util.zip.ZipOutputStream(
-                new java.io.FileOutputStream(finalZipFile.toFile()));
-                java.io.FileInputStream fis = new java.io.FileInputStream(tempSqliteFile.toFile())) {
+                new java.io.FileOutputStream(zipFile.toFile()))) {
+            zos.putNextEntry(new java.util.zip.ZipEntry("store.db"));
+            Files.copy(sqliteFile, zos);
+            zos.closeEntry();
 
-            java.util.zip.ZipEntry zipEntry = new java.util.zip.ZipEntry("store.db");
-            zos.putNextEntry(zipEntry);
+            zos.putNextEntry(new java.util.zip.ZipEntry(BACKUP_IMAGE_LIST));
+            zos.write(String.join("\n", hashes).getBytes(java.nio.charset.StandardCharsets.US_ASCII));
+            zos.closeEntry();
+        }
+    }
 
-            byte[] bytes = new byte[1024];
-            int length;
-            while ((length = fis.read(bytes)) >= 0) {
-                zos.write(bytes, 0, length);
+    /**
+     * Deletes backed-up images that no remaining backup lists. Skipped if any
+     * backup cannot be read, as its images may still be needed. Backups made
+     * before images moved out of the database list none and need none.
+     */
+    private void removeUnreferencedBackupImages(Path backupDir) {
+        Set<String> referenced = new HashSet<>();
+        try (java.util.stream.Stream<Path> files = Files.list(backupDir)) {
+            for (Path zip : (Iterable<Path>) files.filter(p -> p.toString().endsWith(".zip"))::iterator) {
+                try (java.util.zip.ZipFile zipFile = new java.util.zip.ZipFile(zip.toFile())) {
+                    java.util.zip.ZipEntry list = zipFile.getEntry(BACKUP_IMAGE_LIST);
+                    if (list != null) {
+                        String hashes = new String(zipFile.getInputStream(list).readAllBytes(),
+                                java.nio.charset.StandardCharsets.US_ASCII);
+                        hashes.lines().forEach(referenced::add);
+                    }
+                }
             }
-            zos.closeEntry();
+            int removed = new ImageStore(getBackupImageDir()).removeUnreferenced(referenced, Duration.ZERO);
+            if (removed > 0) {
+                logger.info("Removed {} backed-up images no backup uses.", removed);
+            }
+        } catch (IOException e) {
+            logger.warn("Skipped removing unused backup images", e);
         }
-        Files.deleteIfExists(tempSqliteFile);
-        logger.info("Pre-restore backup successfully created at: {}", finalZipFile);
+    }
+
+    private static Path getBackupImageDir() {
+        return com.pos.system.utils.AppDataUtils.getBackupDir().resolve("images");
     }
 
     public void closeForRestore() {
         if (dataSource != null && !dataSource.isClosed()) {
+            com.pos.system.services.CheckoutJournalApplier.shutdownInstance();
+            com.pos.system.dao.AuditLogWriter.shutdownInstance();
+            DatabaseWriter.shutdownInstance();
+            closeReaderPool();
             dataSource.close();
         }
     }
 
+    private void closeReaderPool() {
+        if (readDataSource != null && !readDataSource.isClosed()) {
+            readDataSource.close();
+        }
+    }
+
     public void reinitializeAfterRestore() {
         initialize();
     }
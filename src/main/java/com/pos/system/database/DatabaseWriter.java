@@ -0,0 +1,381 @@
+package com.pos.system.database;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Single-writer executor for SQLite write transactions. SQLite only allows one
+ * writer at a time, so instead of letting pooled connections queue on
+ * busy_timeout, callers submit units of work here. One thread runs them on one
+ * dedicated connection and group-commits whatever is queued (up to
+ * {@code maxGroupSize} units) in a single transaction, with a savepoint per
+ * unit so a failing unit rolls back alone. Futures complete only after the
+ * commit.
+ * <p>
+ * Units run inside the writer's transaction and must not call commit,
+ * rollback or setAutoCommit on the connection they are given.
+ */
+public class DatabaseWriter {
+    private static final Logger logger = LoggerFactory.getLogger(DatabaseWriter.class);
+    private static final int DEFAULT_MAX_GROUP_SIZE = 32;
+    private static final int SQLITE_BUSY = 5;
+    private static final int SQLITE_LOCKED = 6;
+
+    private static DatabaseWriter instance;
+
+    // Connection of the unit running on the current thread, if any
+    private static final ThreadLocal<Connection> UNIT_CONNECTION = new ThreadLocal<>();
+
+    /**
+     * A unit of write work executed on the writer's connection.
+     * <p>
+     * A unit may run more than once: if the group it ran in fails to commit, it
+     * is rolled back and run again on its own. Units should therefore only
+     * work on the connection they are given; anything else, such as metrics,
+     * notifications or cache updates, belongs after the future completes.
+     */
+    @FunctionalInterface
+    public interface WriteUnit<T> {
+        T execute(Connection connection) throws SQLException;
+    }
+
+    /**
+     * Source of the writer's dedicated connection.
+     */
+    @FunctionalInterface
+    public interface ConnectionProvider {
+        Connection getConnection() throws SQLException;
+    }
+
+    private static final class PendingUnit<T> {
+        final WriteUnit<T> unit;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        T result;
+
+        PendingUnit(WriteUnit<T> unit) {
+            this.unit = unit;
+        }
+
+        void runOn(Connection connection) throws SQLException {
+            Connection outer = UNIT_CONNECTION.get();
+            UNIT_CONNECTION.set(connection);
+            try {
+                result = unit.execute(connection);
+            } finally {
+                UNIT_CONNECTION.set(outer);
+            }
+        }
+
+        void complete() {
+            future.complete(result);
+        }
+    }
+
+    private final ConnectionProvider connectionProvider;
+    private final BlockingQueue<PendingUnit<?>> queue = new LinkedBlockingQueue<>();
+    private final int maxGroupSize;
+    private final Thread writerThread;
+    // Taken by submit and shutdown, so no unit is queued after the writer has stopped taking them
+    private final Object lifecycleLock = new Object();
+    private volatile boolean running = true;
+    private Connection connection;
+
+    public DatabaseWriter(ConnectionProvider connectionProvider, int maxGroupSize) {
+        this.connectionProvider = connectionProvider;
+        this.maxGroupSize = maxGroupSize;
+        this.writerThread = new Thread(this::runLoop, "DB-Writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    public static synchronized DatabaseWriter getInstance() {
+        if (instance == null) {
+            instance = new DatabaseWriter(() -> DatabaseManager.getInstance().openWriterConnection(),
+                    DEFAULT_MAX_GROUP_SIZE);
+        }
+        return instance;
+    }
+
+    /**
+     * The connection of the write unit running on the calling thread, or null
+     * when the caller is not inside a unit. Work done on it commits or rolls
+     * back together with that unit.
+     */
+    public static Connection currentUnitConnection() {
+        return UNIT_CONNECTION.get();
+    }
+
+    /**
+     * Finishes queued units and stops the shared writer if it was ever started.
+     */
+    public static synchronized void shutdownInstance() {
+        if (instance != null) {
+            instance.shutdown();
+            instance = null;
+        }
+    }
+
+    /**
+     * Queues a unit of work. The future completes with the unit's result once
+     * the group it ran in has committed, or exceptionally if the unit or the
+     * commit failed.
+     */
+    public <T> CompletableFuture<T> submit(WriteUnit<T> unit) {
+        PendingUnit<T> pending = new PendingUnit<>(unit);
+        if (Thread.currentThread() == writerThread) {
+            // Nested submit from inside a unit: run inline within the current transaction
+            try {
+                pending.runOn(connection);
+                pending.complete();
+            } catch (Throwable t) {
+                pending.future.completeExceptionally(t);
+            }
+            return pending.future;
+        }
+        synchronized (lifecycleLock) {
+            if (!running) {
+                pending.future.completeExceptionally(new SQLException("Database writer is shut down."));
+                return pending.future;
+            }
+            queue.add(pending);
+        }
+        return pending.future;
+    }
+
+    /**
+     * Submits a unit and waits for it, rethrowing its SQLException.
+     */
+    public <T> T execute(WriteUnit<T> unit) throws SQLException {
+        try {
+            return submit(unit).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for database write.", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    private static SQLException unwrap(Throwable cause) {
+        if (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof SQLException sqlException) {
+            return sqlException;
+        }
+        if (cause instanceof RuntimeException runtimeException) {
+            throw runtimeException;
+        }
+        return new SQLException(cause.getMessage(), cause);
+    }
+
+    /**
+     * True if the failure is SQLite reporting SQLITE_BUSY or SQLITE_LOCKED
+     * (including their extended codes), i.e. another connection held the lock
+     * past busy_timeout and the same work may succeed if tried again.
+     */
+    public static boolean isBusy(SQLException e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLException sql) {
+                int primary = sql.getErrorCode() & 0xff;
+                if (primary == SQLITE_BUSY || primary == SQLITE_LOCKED) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public void shutdown() {
+        synchronized (lifecycleLock) {
+            running = false;
+        }
+        writerThread.interrupt();
+        try {
+            writerThread.join(10000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runLoop() {
+        try {
+            runGroups();
+        } catch (Throwable t) {
+            logger.error("Database writer stopped unexpectedly", t);
+        } finally {
+            synchronized (lifecycleLock) {
+                running = false;
+            }
+            closeConnection();
+            failQueued();
+        }
+    }
+
+    private void runGroups() {
+        List<PendingUnit<?>> group = new ArrayList<>(maxGroupSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingUnit<?> head = running ? queue.take() : queue.poll();
+                if (head == null) {
+                    break;
+                }
+                group.add(head);
+            } catch (InterruptedException e) {
+                // Shutdown requested; loop once more to drain what is queued
+                continue;
+            }
+            queue.drainTo(group, maxGroupSize - group.size());
+            try {
+                runGroup(group);
+            } catch (Throwable t) {
+                // e.g. an Error from the driver during commit; nothing in the group is known to be durable
+                logger.error("Write group of {} units failed", group.size(), t);
+                group.forEach(pending -> pending.future.completeExceptionally(t));
+                closeConnection();
+            }
+            group.clear();
+        }
+    }
+
+    // Nothing can be queued once running is false, but fail anything left rather than leave a caller waiting
+    private void failQueued() {
+        List<PendingUnit<?>> left = new ArrayList<>();
+        queue.drainTo(left);
+        for (PendingUnit<?> pending : left) {
+            pending.future.completeExceptionally(new SQLException("Database writer is shut down."));
+        }
+    }
+
+    private Connection ensureConnection() throws SQLException {
+        if (connection == null || connection.isClosed()) {
+            connection = connectionProvider.getConnection();
+        }
+        return connection;
+    }
+
+    private void closeConnection() {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                logger.error("Error closing writer connection", e);
+            }
+            connection = null;
+        }
+    }
+
+    private void runGroup(List<PendingUnit<?>> group) {
+        List<PendingUnit<?>> succeeded = new ArrayList<>(group.size());
+        boolean committed = false;
+        try {
+            Connection conn = ensureConnection();
+            conn.setAutoCommit(false);
+            try {
+                for (PendingUnit<?> pending : group) {
+                    Savepoint savepoint = conn.setSavepoint();
+                    try {
+                        pending.runOn(conn);
+                        conn.releaseSavepoint(savepoint);
+                        succeeded.add(pending);
+                    } catch (Throwable t) {
+                        logIfError(t);
+                        conn.rollback(savepoint);
+                        pending.future.completeExceptionally(t);
+                    }
+                }
+                conn.commit();
+                committed = true;
+            } finally {
+                // Roll back before re-enabling auto-commit, which would otherwise commit
+                if (!committed) {
+                    rollbackQuietly();
+                }
+                if (connection != null) {
+                    connection.setAutoCommit(true);
+                }
+            }
+            succeeded.forEach(PendingUnit::complete);
+            if (group.size() > 1) {
+                logger.debug("Group-committed {} write units.", group.size());
+            }
+        } catch (SQLException e) {
+            if (committed) {
+                // Only resetting the connection failed; the work is durable
+                succeeded.forEach(PendingUnit::complete);
+                closeConnection();
+                return;
+            }
+            // The shared transaction itself failed (commit, savepoint or connection
+            // error) and was rolled back. Retry each surviving unit on its own.
+            logger.warn("Group commit of {} units failed, retrying individually.", group.size(), e);
+            for (PendingUnit<?> pending : group) {
+                if (!pending.future.isDone()) {
+                    runAlone(pending);
+                }
+            }
+        }
+    }
+
+    private void runAlone(PendingUnit<?> pending) {
+        try {
+            Connection conn = ensureConnection();
+            conn.setAutoCommit(false);
+            boolean committed = false;
+            try {
+                pending.runOn(conn);
+                conn.commit();
+                committed = true;
+            } catch (Throwable t) {
+                logIfError(t);
+                pending.future.completeExceptionally(t);
+            } finally {
+                if (!committed) {
+                    rollbackQuietly();
+                }
+                if (connection != null) {
+                    connection.setAutoCommit(true);
+                }
+            }
+            if (committed) {
+                pending.complete();
+            }
+        } catch (SQLException e) {
+            pending.future.completeExceptionally(e);
+            closeConnection();
+        }
+    }
+
+    // Exceptions are the caller's to report; an Error would otherwise leave no trace
+    private static void logIfError(Throwable t) {
+        if (t instanceof Error) {
+            logger.error("Write unit failed", t);
+        }
+    }
+
+    private void rollbackQuietly() {
+        try {
+            if (connection != null && !connection.isClosed() && !connection.getAutoCommit()) {
+                connection.rollback();
+            }
+        } catch (SQLException e) {
+            logger.error("Rollback failed, reopening writer connection", e);
+            closeConnection();
+        }
+    }
+}
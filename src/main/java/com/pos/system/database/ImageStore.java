@@ -0,0 +1,235 @@
+package com.pos.system.database;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Product images as files named by the SHA-256 of their content, so the
+ * database keeps only a 64-character reference and an image used by several
+ * products is stored once. Files are spread over 256 sub-directories by the
+ * first two characters of the hash and are never changed once written, which
+ * also lets a backup copy only the files it does not have yet.
+ * <p>
+ * Images are read through memory-mapped buffers. A file is written before the
+ * row that references it, so a failed save leaves at most an unreferenced
+ * file behind, which {@link #removeUnreferenced(Set, Duration)} clears later.
+ */
+public class ImageStore {
+    private static final Logger logger = LoggerFactory.getLogger(ImageStore.class);
+    private static final int HASH_LENGTH = 64;
+
+    private static ImageStore instance;
+
+    private final Path root;
+
+    public ImageStore(Path root) {
+        this.root = root;
+    }
+
+    public static synchronized ImageStore getInstance() {
+        if (instance == null) {
+            instance = new ImageStore(com.pos.system.utils.AppDataUtils.getImageStoreDir());
+        }
+        return instance;
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    /** Whether {@code hash} is a well-formed reference, so it can safely name a file. */
+    public static boolean isHash(String hash) {
+        if (hash == null || hash.length() != HASH_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < HASH_LENGTH; i++) {
+            char c = hash.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static String hash(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /** Where the image with this hash is, or would be, stored under {@code root}. */
+    public static Path pathOf(Path root, String hash) {
+        if (!isHash(hash)) {
+            throw new IllegalArgumentException("Not an image hash: " + hash);
+        }
+        return root.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    public Path pathOf(String hash) {
+        return pathOf(root, hash);
+    }
+
+    public boolean contains(String hash) {
+        return isHash(hash) && Files.exists(pathOf(hash));
+    }
+
+    /**
+     * Stores {@code data} unless the same content is stored already, and
+     * returns its hash. Either way the file counts as new for
+     * {@link #removeUnreferenced(Set, Duration)}.
+     */
+    public String put(byte[] data) throws IOException {
+        String hash = hash(data);
+        Path path = pathOf(hash);
+        if (Files.exists(path)) {
+            try {
+                // The row about to reference it is not saved yet, so restart the age removeUnreferenced waits for
+                Files.setLastModifiedTime(path, FileTime.from(Instant.now()));
+                return hash;
+            } catch (NoSuchFileException e) {
+                // Removed as unreferenced in the meantime; store it again
+            }
+        }
+        Files.createDirectories(path.getParent());
+        Path temp = Files.createTempFile(path.getParent(), hash, ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+            // A concurrent put of the same image wrote identical bytes, so replacing it is harmless
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return hash;
+    }
+
+    /** A read-only mapping of the image, or null if it is not stored. */
+    public ByteBuffer map(String hash) throws IOException {
+        if (!isHash(hash)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(pathOf(hash), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /** The image's bytes, copied out of its mapping, or null if it is not stored. */
+    public byte[] read(String hash) throws IOException {
+        ByteBuffer mapped = map(hash);
+        if (mapped == null) {
+            return null;
+        }
+        byte[] data = new byte[mapped.remaining()];
+        mapped.get(data);
+        return data;
+    }
+
+    /** Streams a mapped image, e.g. into an image decoder, without copying it first. */
+    public static InputStream asStream(ByteBuffer buffer) {
+        ByteBuffer source = buffer.duplicate();
+        return new InputStream() {
+            @Override
+            public int read() {
+                return source.hasRemaining() ? source.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (!source.hasRemaining()) {
+                    return -1;
+                }
+                int n = Math.min(len, source.remaining());
+                source.get(b, off, n);
+                return n;
+            }
+
+            @Override
+            public int available() {
+                return source.remaining();
+            }
+        };
+    }
+
+    /**
+     * Copies the images in {@code hashes} that {@code target} does not have
+     * yet from this store, e.g. into a backup. Stored images never change, so
+     * a file already present is up to date.
+     *
+     * @return the number of files copied
+     */
+    public int copyMissingTo(Path target, Set<String> hashes) throws IOException {
+        int copied = 0;
+        for (String hash : hashes) {
+            Path source = pathOf(hash);
+            Path destination = pathOf(target, hash);
+            if (Files.exists(destination) || !Files.exists(source)) {
+                continue;
+            }
+            Files.createDirectories(destination.getParent());
+            Path temp = destination.resolveSibling(hash + ".tmp");
+            Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temp, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            copied++;
+        }
+        return copied;
+    }
+
+    /**
+     * Deletes stored images that are not in {@code referenced} and are older
+     * than {@code minAge}, so an image whose row is still being saved is kept.
+     *
+     * @return the number of files deleted
+     */
+    public int removeUnreferenced(Set<String> referenced, Duration minAge) throws IOException {
+        if (!Files.isDirectory(root)) {
+            return 0;
+        }
+        FileTime cutoff = FileTime.from(Instant.now().minus(minAge));
+        int removed = 0;
+        try (Stream<Path> files = Files.walk(root, 2)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                boolean image = isHash(name) || name.endsWith(".tmp");
+                if (!image || !Files.isRegularFile(file) || referenced.contains(name)
+                        || Files.getLastModifiedTime(file).compareTo(cutoff) > 0) {
+                    continue;
+                }
+                try {
+                    Files.delete(file);
+                    removed++;
+                } catch (IOException e) {
+                    // e.g. still mapped on Windows; tried again next time
+                    logger.debug("Could not remove unreferenced image {}", file, e);
+                }
+            }
+        }
+        return removed;
+    }
+}
@@ -0,0 +1,89 @@
+package com.pos.system.database;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Moves product images out of {@code products.image_blob} into the
+ * {@link ImageStore}, and lists the images a database refers to, for the
+ * store's and the backups' housekeeping.
+ */
+public final class ImageStoreMigration {
+    private static final int BATCH_SIZE = 20;
+
+    private ImageStoreMigration() {
+    }
+
+    /**
+     * Moves every remaining blob into {@code store} and replaces it with its
+     * hash, a few rows at a time so large catalogs never hold many images in
+     * memory. Blobs are read on {@code connection} and stored as files first;
+     * each batch of rows is then switched over in one unit on {@code writer},
+     * so an interrupted run simply continues next time. Rows whose image was
+     * saved again meanwhile are left alone.
+     *
+     * @return the number of products moved
+     */
+    public static int moveBlobs(Connection connection, DatabaseWriter writer, ImageStore store)
+            throws SQLException, IOException {
+        String select = "SELECT id, image_blob FROM products WHERE image_blob IS NOT NULL AND id > ? ORDER BY id LIMIT ?";
+        String update = "UPDATE products SET image_hash = ?, image_blob = NULL WHERE id = ? AND image_blob IS NOT NULL";
+        int moved = 0;
+        int afterId = 0;
+        try (PreparedStatement selectStmt = connection.prepareStatement(select)) {
+            while (true) {
+                selectStmt.setInt(1, afterId);
+                selectStmt.setInt(2, BATCH_SIZE);
+                Map<Integer, String> hashById = new LinkedHashMap<>();
+                try (ResultSet rs = selectStmt.executeQuery()) {
+                    while (rs.next()) {
+                        afterId = rs.getInt(1);
+                        byte[] image = rs.getBytes(2);
+                        // An empty blob is no image at all
+                        hashById.put(afterId, image != null && image.length > 0 ? store.put(image) : null);
+                    }
+                }
+                if (!hashById.isEmpty()) {
+                    moved += writer.execute(conn -> {
+                        int updated = 0;
+                        try (PreparedStatement updateStmt = conn.prepareStatement(update)) {
+                            for (Map.Entry<Integer, String> entry : hashById.entrySet()) {
+                                updateStmt.setString(1, entry.getValue());
+                                updateStmt.setInt(2, entry.getKey());
+                                updated += updateStmt.executeUpdate();
+                            }
+                        }
+                        return updated;
+                    });
+                }
+                if (hashById.size() < BATCH_SIZE) {
+                    return moved;
+                }
+            }
+        }
+    }
+
+    /** Hashes of the images the products in this database refer to. */
+    public static Set<String> referencedHashes(Connection connection) throws SQLException {
+        Set<String> hashes = new HashSet<>();
+        try (Statement stmt = connection.createStatement();
+                ResultSet rs = stmt.executeQuery(
+                        "SELECT DISTINCT image_hash FROM products WHERE image_hash IS NOT NULL")) {
+            while (rs.next()) {
+                String hash = rs.getString(1);
+                if (ImageStore.isHash(hash)) {
+                    hashes.add(hash);
+                }
+            }
+        }
+        return hashes;
+    }
+}
@@ -0,0 +1,46 @@
+package com.pos.system.database;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Splits a SQL script such as {@code schema.sql} into statements on
+ * {@code ;}, keeping {@code CREATE TRIGGER ... BEGIN ...; END} bodies whole.
+ * There is no quote or comment parsing, so a {@code ;} must never appear
+ * inside a string literal or comment, and no statement inside a trigger body
+ * may end in a {@code CASE ... END} expression.
+ */
+public final class SqlScript {
+    private static final Pattern TRIGGER_END = Pattern.compile("\\bEND\\s*$");
+
+    private SqlScript() {
+    }
+
+    public static List<String> split(String script) {
+        List<String> statements = new ArrayList<>();
+        StringBuilder pending = new StringBuilder();
+        for (String part : script.split(";")) {
+            pending.append(part);
+            if (isOpenTrigger(pending)) {
+                pending.append(';');
+                continue;
+            }
+            if (!pending.toString().trim().isEmpty()) {
+                statements.add(pending.toString());
+            }
+            pending.setLength(0);
+        }
+        if (!pending.toString().trim().isEmpty()) {
+            statements.add(pending.toString());
+        }
+        return statements;
+    }
+
+    /** A trigger whose body has not reached its closing END yet. */
+    private static boolean isOpenTrigger(CharSequence statement) {
+        String upper = statement.toString().toUpperCase(Locale.ROOT);
+        return upper.contains("CREATE TRIGGER") && !TRIGGER_END.matcher(upper).find();
+    }
+}
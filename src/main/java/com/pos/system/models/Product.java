@@ -10,6 +10,7 @@ public class Product {
     private double sellingPrice;
     private int stock;
     private byte[] imageData;
+    private long version; // catalog version of the last change, see ProductDAO.NEXT_VERSION
 
     public Product(int id, String barcode, String name, int categoryId, String category, double costPrice,
             double sellingPrice,
@@ -107,4 +108,12 @@ public class Product {
     public void setImageData(byte[] imageData) {
         this.imageData = imageData;
     }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
 }
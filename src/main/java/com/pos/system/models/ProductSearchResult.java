@@ -0,0 +1,54 @@
+package com.pos.system.models;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One full-text search hit: the product, without its image, and its name with
+ * the matched terms wrapped in {@link #MATCH_START} / {@link #MATCH_END}.
+ */
+public class ProductSearchResult {
+    /** Control characters that cannot occur in a product name. */
+    public static final char MATCH_START = '\u0002';
+    public static final char MATCH_END = '\u0003';
+
+    private final Product product;
+    private final String highlightedName;
+
+    public ProductSearchResult(Product product, String highlightedName) {
+        this.product = product;
+        this.highlightedName = highlightedName;
+    }
+
+    public Product getProduct() {
+        return product;
+    }
+
+    public String getHighlightedName() {
+        return highlightedName;
+    }
+
+    /**
+     * The highlighted name cut into alternating plain and matched runs,
+     * starting with a plain run that may be empty.
+     */
+    public List<String> getNameSegments() {
+        List<String> segments = new ArrayList<>();
+        String name = highlightedName != null ? highlightedName : product.getName();
+        StringBuilder current = new StringBuilder();
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == MATCH_START || c == MATCH_END) {
+                // A run closes at each marker, so matched runs land on odd indexes
+                if ((c == MATCH_START) == (segments.size() % 2 == 0)) {
+                    segments.add(current.toString());
+                    current.setLength(0);
+                }
+            } else {
+                current.append(c);
+            }
+        }
+        segments.add(current.toString());
+        return segments;
+    }
+}
@@ -12,6 +12,7 @@ public class Sale {
     private double totalProfit;
     private LocalDateTime saleDate;
     private String transactionDetails;
+    private String saleKey; // Idempotency key, shared by every attempt at the same checkout
     private String paymentMethods; // Transient, for table display
     private double change; // Transient, for table display
 
@@ -127,4 +128,12 @@ public class Sale {
     public void setChange(double change) {
         this.change = change;
     }
+
+    public String getSaleKey() {
+        return saleKey;
+    }
+
+    public void setSaleKey(String saleKey) {
+        this.saleKey = saleKey;
+    }
 }
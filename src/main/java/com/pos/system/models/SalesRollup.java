@@ -0,0 +1,63 @@
+package com.pos.system.models;
+
+import java.time.LocalDateTime;
+
+/**
+ * Sales summed from the sales rollup tables: over one hour or day, or over a
+ * whole range, and for all sales, one category or one payment method.
+ * <p>
+ * For a category, revenue and profit are those of its items at sale price;
+ * for a payment method, revenue is the amount paid with it and profit is 0.
+ */
+public class SalesRollup {
+    private final LocalDateTime bucket;
+    private final String category;
+    private final String paymentMethod;
+    private final int saleCount;
+    private final int quantity;
+    private final double revenue;
+    private final double profit;
+
+    public SalesRollup(LocalDateTime bucket, String category, String paymentMethod, int saleCount, int quantity,
+            double revenue, double profit) {
+        this.bucket = bucket;
+        this.category = category;
+        this.paymentMethod = paymentMethod;
+        this.saleCount = saleCount;
+        this.quantity = quantity;
+        this.revenue = revenue;
+        this.profit = profit;
+    }
+
+    /** Start of the hour or day, or null for a whole range. */
+    public LocalDateTime getBucket() {
+        return bucket;
+    }
+
+    /** Category name; null for items without a category and for rows not split by category. */
+    public String getCategory() {
+        return category;
+    }
+
+    /** Payment method, or null for rows not split by payment method. */
+    public String getPaymentMethod() {
+        return paymentMethod;
+    }
+
+    public int getSaleCount() {
+        return saleCount;
+    }
+
+    /** Units sold. */
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public double getRevenue() {
+        return revenue;
+    }
+
+    public double getProfit() {
+        return profit;
+    }
+}
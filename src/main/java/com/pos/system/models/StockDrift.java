@@ -0,0 +1,39 @@
+package com.pos.system.models;
+
+/**
+ * A product whose cached stock figure (the {@code products.stock} counter or a
+ * stock snapshot balance) disagrees with the sum of its inventory ledger.
+ */
+public class StockDrift {
+    private final int productId;
+    private final String productName;
+    private final int cachedStock;
+    private final int ledgerStock;
+
+    public StockDrift(int productId, String productName, int cachedStock, int ledgerStock) {
+        this.productId = productId;
+        this.productName = productName;
+        this.cachedStock = cachedStock;
+        this.ledgerStock = ledgerStock;
+    }
+
+    public int getProductId() {
+        return productId;
+    }
+
+    public String getProductName() {
+        return productName;
+    }
+
+    public int getCachedStock() {
+        return cachedStock;
+    }
+
+    public int getLedgerStock() {
+        return ledgerStock;
+    }
+
+    public int getDifference() {
+        return cachedStock - ledgerStock;
+    }
+}
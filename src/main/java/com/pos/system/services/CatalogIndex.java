@@ -0,0 +1,903 @@
+package com.pos.system.services;
+
+import com.pos.system.models.Product;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * In-memory search index over the product catalog, so that the POS screen can
+ * filter on every keystroke without scanning or lowercasing every product.
+ * <p>
+ * Each product occupies a slot of a {@link ProductStore}, which keeps its
+ * fields in columns rather than as a {@link Product}. The index keeps:
+ * <ul>
+ * <li>an exact map from barcode and from product ID to slot, as open-addressing
+ * tables of ints;</li>
+ * <li>an inverted index from n-grams of the normalized name and barcode to
+ * sorted slot lists: trigrams inside each word, plus the one- and two-character
+ * prefix of each word for short queries;</li>
+ * <li>a sorted slot list per category.</li>
+ * </ul>
+ * Names are normalized once, at indexing time: lower case, with runs of
+ * anything but letters, digits and combining marks collapsed to a single
+ * space. A query is split into words the same way and every word must match.
+ * Words of three or more characters match anywhere in a word of the name or
+ * barcode, and shorter ones match at the start of a word (in ideographic text,
+ * which has no spaces, at any character). Trigram hits are checked against the
+ * normalized text, so there are no false positives.
+ * Results are ranked: exact barcode, exact name, name prefix, match at a word
+ * start, then any other match, ties in catalog order.
+ * <p>
+ * Results are {@link Results} lists of slots: a {@code Product} is built only
+ * when a row is read, so showing one page of a 200,000-product catalog
+ * creates one page of products. Searching reuses internal buffers and
+ * allocates only the slot array. Methods are synchronized; the index is cheap
+ * to query from the FX thread.
+ */
+public class CatalogIndex {
+    private static final int RANK_BARCODE = 0;
+    private static final int RANK_EXACT_NAME = 1;
+    private static final int RANK_NAME_PREFIX = 2;
+    private static final int RANK_WORD_START = 3;
+    private static final int RANK_NAME_CONTAINS = 4;
+    private static final int RANK_OTHER = 5;
+
+    private static final long PREFIX1_TAG = 1L << 50;
+    private static final long PREFIX2_TAG = 2L << 50;
+
+    private ProductStore store = new ProductStore(64);
+    private int slotCount;
+    private int liveCount;
+
+    private final IdTable slotById = new IdTable();
+    private final BarcodeTable slotByBarcode = new BarcodeTable();
+    private final Map<Integer, IntList> slotsByCategory = new HashMap<>();
+    private final GramMap grams = new GramMap();
+
+    // Scratch state for search; guarded by this
+    private char[] queryBuffer = new char[64];
+    private final IntList candidates = new IntList();
+    private final IntList tokenCandidates = new IntList();
+    private final IntList[] tokenPostings = new IntList[64];
+    private long[] ranked = new long[64];
+
+    /** Replaces the whole index, keeping {@code catalog}'s order for ties. */
+    public synchronized void rebuild(Collection<Product> catalog) {
+        // A new store, so results taken before keep reading the old one
+        store = new ProductStore(Math.max(64, catalog.size()));
+        slotCount = 0;
+        liveCount = 0;
+        slotById.clear();
+        slotByBarcode.clear();
+        slotsByCategory.clear();
+        grams.clear();
+        for (Product product : catalog) {
+            put(product);
+        }
+        store.trimToSize();
+    }
+
+    /**
+     * Adds a product, or re-indexes it in place if a product with the same ID
+     * is already indexed.
+     */
+    public synchronized void put(Product product) {
+        int slot = slotById.get(product.getId());
+        if (slot != IdTable.EMPTY) {
+            unindex(slot);
+        } else {
+            if (slotCount == store.capacity()) {
+                store.grow(Math.max(64, slotCount * 2));
+            }
+            slot = slotCount++;
+            slotById.put(product.getId(), slot);
+        }
+        store.set(slot, product, normalize(product.getName()), normalize(product.getBarcode()));
+        liveCount++;
+        index(slot);
+    }
+
+    public synchronized void remove(int productId) {
+        int slot = slotById.remove(productId);
+        if (slot == IdTable.EMPTY) {
+            return;
+        }
+        unindex(slot);
+        store.remove(slot);
+        // Slots are never reused, so compact once most of them are empty
+        if (slotCount - liveCount > 1024 && slotCount - liveCount > liveCount) {
+            List<Product> live = new ArrayList<>(liveCount);
+            for (int i = 0; i < slotCount; i++) {
+                if (store.isLive(i)) {
+                    live.add(store.get(i));
+                }
+            }
+            rebuild(live);
+        }
+    }
+
+    public synchronized Product getById(int productId) {
+        int slot = slotById.get(productId);
+        return slot != IdTable.EMPTY ? store.get(slot) : null;
+    }
+
+    /** Exact barcode lookup, ignoring case and surrounding whitespace. */
+    public synchronized Product getByBarcode(String barcode) {
+        if (barcode == null) {
+            return null;
+        }
+        int slot = slotByBarcode.get(barcodeKey(barcode), store);
+        return slot != IdTable.EMPTY ? store.get(slot) : null;
+    }
+
+    public synchronized int size() {
+        return liveCount;
+    }
+
+    /** Writes the whole index, store and postings, for {@link CatalogSnapshot}. */
+    synchronized void writeTo(CatalogSnapshot.Writer writer) throws IOException {
+        writer.writeInt(slotCount);
+        writer.writeInt(liveCount);
+        store.writeTo(writer, slotCount);
+        writer.writeInts(slotById.ids, slotById.ids.length);
+        writer.writeInts(slotById.slots, slotById.slots.length);
+        writer.writeInts(slotByBarcode.hashes, slotByBarcode.hashes.length);
+        writer.writeInts(slotByBarcode.slots, slotByBarcode.slots.length);
+        writer.writeInt(slotsByCategory.size());
+        for (Map.Entry<Integer, IntList> category : slotsByCategory.entrySet()) {
+            writer.writeInt(category.getKey());
+            writer.writeInts(category.getValue().values, category.getValue().size);
+        }
+        writer.writeLongs(grams.keys, grams.keys.length);
+        for (int i = 0; i < grams.keys.length; i++) {
+            if (grams.keys[i] != 0) {
+                writer.writeInts(grams.values[i].values, grams.values[i].size);
+            }
+        }
+    }
+
+    /** Reads an index written by {@link #writeTo}, without rebuilding anything. */
+    static CatalogIndex readFrom(CatalogSnapshot.Reader reader) {
+        CatalogIndex index = new CatalogIndex();
+        index.slotCount = reader.readInt();
+        index.liveCount = reader.readInt();
+        index.store = ProductStore.readFrom(reader);
+        if (index.store.capacity() != index.slotCount) {
+            throw new IllegalStateException("inconsistent catalog index");
+        }
+        index.slotById.load(reader.readInts(), reader.readInts());
+        index.slotByBarcode.load(reader.readInts(), reader.readInts());
+        int categories = reader.readCount(Integer.BYTES);
+        for (int i = 0; i < categories; i++) {
+            index.slotsByCategory.put(reader.readInt(), new IntList(reader.readInts()));
+        }
+        long[] gramKeys = reader.readLongs();
+        IntList[] postings = new IntList[gramKeys.length];
+        for (int i = 0; i < gramKeys.length; i++) {
+            if (gramKeys[i] != 0) {
+                postings[i] = new IntList(reader.readInts());
+            }
+        }
+        index.grams.load(gramKeys, postings);
+        return index;
+    }
+
+    /**
+     * Ranked products matching {@code query} in {@code categoryId}. A blank
+     * query returns the whole category, or the whole catalog when
+     * {@code categoryId} is null, in catalog order.
+     */
+    public synchronized Results search(String query, Integer categoryId) {
+        int queryLength = normalizeQuery(query);
+        if (queryLength == 0) {
+            return allIn(categoryId);
+        }
+
+        boolean first = true;
+        int start = 0;
+        while (start < queryLength) {
+            int end = start;
+            while (end < queryLength && queryBuffer[end] != ' ') {
+                end++;
+            }
+            collectTokenMatches(start, end - start, tokenCandidates);
+            if (first) {
+                candidates.copyFrom(tokenCandidates);
+                first = false;
+            } else {
+                candidates.retainAll(tokenCandidates);
+            }
+            if (candidates.size == 0) {
+                break;
+            }
+            start = end + 1;
+        }
+
+        if (ranked.length < candidates.size) {
+            ranked = new long[Math.max(candidates.size, ranked.length * 2)];
+        }
+        int count = 0;
+        for (int i = 0; i < candidates.size; i++) {
+            int slot = candidates.values[i];
+            if (categoryId != null && store.categoryId(slot) != categoryId) {
+                continue;
+            }
+            ranked[count++] = ((long) rank(slot, queryLength) << 32) | slot;
+        }
+        Arrays.sort(ranked, 0, count);
+
+        int[] slots = new int[count];
+        for (int i = 0; i < count; i++) {
+            slots[i] = (int) ranked[i];
+        }
+        return new Results(store, slots);
+    }
+
+    private Results allIn(Integer categoryId) {
+        if (categoryId == null) {
+            int[] slots = new int[liveCount];
+            int count = 0;
+            for (int i = 0; i < slotCount; i++) {
+                if (store.isLive(i)) {
+                    slots[count++] = i;
+                }
+            }
+            return new Results(store, slots);
+        }
+        IntList slots = slotsByCategory.get(categoryId);
+        return new Results(store, slots == null ? new int[0] : Arrays.copyOf(slots.values, slots.size));
+    }
+
+    /** Slots whose name or barcode contains the query word at {@code start}. */
+    private void collectTokenMatches(int start, int length, IntList out) {
+        out.clear();
+        if (length < 3) {
+            IntList postings = grams.get(prefixKey(queryBuffer, start, length));
+            if (postings != null) {
+                out.copyFrom(postings);
+            }
+            return;
+        }
+
+        int gramCount = length - 2;
+        IntList smallest = null;
+        for (int i = 0; i < gramCount; i++) {
+            IntList postings = grams.get(trigramKey(queryBuffer, start + i));
+            if (postings == null || postings.size == 0) {
+                return;
+            }
+            if (i < tokenPostings.length) {
+                tokenPostings[i] = postings;
+            }
+            if (smallest == null || postings.size < smallest.size) {
+                smallest = postings;
+            }
+        }
+        out.copyFrom(smallest);
+        for (int i = 0; i < Math.min(gramCount, tokenPostings.length) && out.size > 0; i++) {
+            if (tokenPostings[i] != smallest) {
+                out.retainAll(tokenPostings[i]);
+            }
+            tokenPostings[i] = null;
+        }
+
+        // Trigrams never span words, so a three-character word needs no check. Longer ones
+        // can have all their trigrams present without the word being there in order.
+        if (length == 3) {
+            return;
+        }
+        char[] text = store.text();
+        int kept = 0;
+        for (int i = 0; i < out.size; i++) {
+            int slot = out.values[i];
+            if (indexOf(text, store.normalizedNameStart(slot), store.normalizedNameLength(slot), queryBuffer, start,
+                    length, 0) >= 0
+                    || indexOf(text, store.normalizedBarcodeStart(slot), store.normalizedBarcodeLength(slot),
+                            queryBuffer, start, length, 0) >= 0) {
+                out.values[kept++] = slot;
+            }
+        }
+        out.size = kept;
+    }
+
+    private int rank(int slot, int queryLength) {
+        char[] text = store.text();
+        if (regionEquals(text, store.normalizedBarcodeStart(slot), store.normalizedBarcodeLength(slot), queryBuffer,
+                queryLength)) {
+            return RANK_BARCODE;
+        }
+        int nameStart = store.normalizedNameStart(slot);
+        int nameLength = store.normalizedNameLength(slot);
+        if (regionEquals(text, nameStart, nameLength, queryBuffer, queryLength)) {
+            return RANK_EXACT_NAME;
+        }
+        int first = indexOf(text, nameStart, nameLength, queryBuffer, 0, queryLength, 0);
+        if (first == 0) {
+            return RANK_NAME_PREFIX;
+        }
+        for (int at = first; at > 0; at = indexOf(text, nameStart, nameLength, queryBuffer, 0, queryLength, at + 1)) {
+            if (text[nameStart + at - 1] == ' ') {
+                return RANK_WORD_START;
+            }
+        }
+        // Otherwise the words matched separately, or only in the barcode
+        return first > 0 ? RANK_NAME_CONTAINS : RANK_OTHER;
+    }
+
+    private void index(int slot) {
+        addGrams(slot, true);
+        slotsByCategory.computeIfAbsent(store.categoryId(slot), k -> new IntList()).insertSorted(slot);
+        String barcode = store.barcode(slot);
+        if (barcode != null && !barcode.isBlank()) {
+            slotByBarcode.put(barcodeKey(barcode), slot, store);
+        }
+    }
+
+    private void unindex(int slot) {
+        addGrams(slot, false);
+        IntList category = slotsByCategory.get(store.categoryId(slot));
+        if (category != null) {
+            category.removeSorted(slot);
+        }
+        String barcode = store.barcode(slot);
+        if (barcode != null) {
+            slotByBarcode.remove(barcodeKey(barcode), slot, store);
+        }
+        liveCount--;
+    }
+
+    private void addGrams(int slot, boolean add) {
+        char[] text = store.text();
+        addGrams(text, store.normalizedNameStart(slot), store.normalizedNameLength(slot), slot, add);
+        addGrams(text, store.normalizedBarcodeStart(slot), store.normalizedBarcodeLength(slot), slot, add);
+    }
+
+    private void addGrams(char[] text, int from, int length, int slot, boolean add) {
+        int limit = from + length;
+        int start = from;
+        while (start < limit) {
+            int end = start;
+            while (end < limit && text[end] != ' ') {
+                end++;
+            }
+            for (int i = start; i < end; i++) {
+                // Ideographic text has no spaces, so each character may start a word
+                if (i == start || Character.isIdeographic(text[i])) {
+                    update(prefixKey(text, i, 1), slot, add);
+                    if (i + 1 < end) {
+                        update(prefixKey(text, i, 2), slot, add);
+                    }
+                }
+            }
+            for (int i = start; i + 3 <= end; i++) {
+                update(trigramKey(text, i), slot, add);
+            }
+            start = end + 1;
+        }
+    }
+
+    private void update(long key, int slot, boolean add) {
+        if (add) {
+            grams.getOrCreate(key).insertSorted(slot);
+        } else {
+            IntList postings = grams.get(key);
+            if (postings != null) {
+                postings.removeSorted(slot);
+            }
+        }
+    }
+
+    private static long trigramKey(char[] text, int at) {
+        return ((long) text[at] << 32) | ((long) text[at + 1] << 16) | text[at + 2];
+    }
+
+    private static long prefixKey(char[] text, int at, int length) {
+        return length == 1 ? PREFIX1_TAG | text[at] : PREFIX2_TAG | ((long) text[at] << 16) | text[at + 1];
+    }
+
+    /** Trimmed and lower-cased a character at a time, as {@link ProductStore#barcodeKeyEquals} compares. */
+    private static String barcodeKey(String barcode) {
+        String trimmed = barcode.trim();
+        char[] key = new char[trimmed.length()];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = Character.toLowerCase(trimmed.charAt(i));
+        }
+        return new String(key);
+    }
+
+    private int normalizeQuery(String query) {
+        if (query == null) {
+            return 0;
+        }
+        if (queryBuffer.length < query.length()) {
+            queryBuffer = new char[Math.max(query.length(), queryBuffer.length * 2)];
+        }
+        return normalizeInto(query, queryBuffer);
+    }
+
+    static char[] normalize(String text) {
+        if (text == null) {
+            return new char[0];
+        }
+        char[] buffer = new char[text.length()];
+        return Arrays.copyOf(buffer, normalizeInto(text, buffer));
+    }
+
+    private static int normalizeInto(String text, char[] out) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (isWordChar(c)) {
+                out[length++] = Character.toLowerCase(c);
+            } else if (length > 0 && out[length - 1] != ' ') {
+                out[length++] = ' ';
+            }
+        }
+        if (length > 0 && out[length - 1] == ' ') {
+            length--;
+        }
+        return length;
+    }
+
+    private static boolean isWordChar(char c) {
+        if (Character.isLetterOrDigit(c)) {
+            return true;
+        }
+        // Vowel signs and tone marks in scripts such as Myanmar are part of the word
+        int type = Character.getType(c);
+        return type == Character.NON_SPACING_MARK || type == Character.COMBINING_SPACING_MARK;
+    }
+
+    private static boolean regionEquals(char[] text, int textStart, int textLength, char[] query, int length) {
+        if (textLength != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (text[textStart + i] != query[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Position of the query word within the text run, relative to {@code textStart}, or -1. */
+    private static int indexOf(char[] text, int textStart, int textLength, char[] query, int start, int length,
+            int from) {
+        outer: for (int i = from; i + length <= textLength; i++) {
+            for (int j = 0; j < length; j++) {
+                if (text[textStart + i + j] != query[start + j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Products found by a search, held as slots and built one at a time as
+     * rows are read. A row reads the slot's current fields, so a stock change
+     * shows up without searching again. A product removed since the search
+     * keeps its last known fields.
+     */
+    public final class Results extends AbstractList<Product> implements RandomAccess {
+        private final ProductStore source;
+        private final int[] slots;
+
+        private Results(ProductStore source, int[] slots) {
+            this.source = source;
+            this.slots = slots;
+        }
+
+        @Override
+        public Product get(int index) {
+            synchronized (CatalogIndex.this) {
+                return source.get(slots[index]);
+            }
+        }
+
+        @Override
+        public int size() {
+            return slots.length;
+        }
+
+        /** Row of the product with this ID, or -1, without building any products. */
+        public int indexOfId(int productId) {
+            synchronized (CatalogIndex.this) {
+                for (int i = 0; i < slots.length; i++) {
+                    if (source.id(slots[i]) == productId) {
+                        return i;
+                    }
+                }
+                return -1;
+            }
+        }
+
+        /** Whether {@code other} lists the same products in the same order. */
+        public boolean sameRows(List<?> other) {
+            return other instanceof CatalogIndex.Results results && results.source == source
+                    && Arrays.equals(results.slots, slots);
+        }
+    }
+
+    /** Growable sorted list of slots. */
+    private static final class IntList {
+        int[] values;
+        int size;
+
+        IntList() {
+            values = new int[4];
+        }
+
+        /** A list of exactly {@code values}, e.g. read back from a snapshot. */
+        IntList(int[] values) {
+            this.values = values.length == 0 ? new int[4] : values;
+            size = values.length;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        void copyFrom(IntList other) {
+            if (values.length < other.size) {
+                values = new int[Math.max(other.size, values.length * 2)];
+            }
+            System.arraycopy(other.values, 0, values, 0, other.size);
+            size = other.size;
+        }
+
+        void insertSorted(int value) {
+            // Slots are mostly indexed in increasing order, so check the tail first
+            if (size > 0 && values[size - 1] == value) {
+                return;
+            }
+            int at = size == 0 || values[size - 1] < value ? size : Arrays.binarySearch(values, 0, size, value);
+            if (at >= 0 && at < size) {
+                return;
+            }
+            if (at < 0) {
+                at = -at - 1;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            System.arraycopy(values, at, values, at + 1, size - at);
+            values[at] = value;
+            size++;
+        }
+
+        void removeSorted(int value) {
+            int at = Arrays.binarySearch(values, 0, size, value);
+            if (at >= 0) {
+                System.arraycopy(values, at + 1, values, at, size - at - 1);
+                size--;
+            }
+        }
+
+        /** Keeps only the values also in {@code other}. */
+        void retainAll(IntList other) {
+            int kept = 0;
+            int i = 0;
+            int j = 0;
+            while (i < size && j < other.size) {
+                int a = values[i];
+                int b = other.values[j];
+                if (a == b) {
+                    values[kept++] = a;
+                    i++;
+                    j++;
+                } else if (a < b) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            size = kept;
+        }
+    }
+
+    /** Open-addressing map from product ID to slot, with backward-shift deletion. */
+    private static final class IdTable {
+        static final int EMPTY = -1;
+
+        private int[] ids = new int[64];
+        private int[] slots = emptySlots(64);
+        private int size;
+
+        int get(int id) {
+            int mask = ids.length - 1;
+            for (int i = hash(id) & mask;; i = (i + 1) & mask) {
+                if (slots[i] == EMPTY || ids[i] == id) {
+                    return slots[i];
+                }
+            }
+        }
+
+        void put(int id, int slot) {
+            if ((size + 1) * 2 > ids.length) {
+                resize();
+            }
+            int mask = ids.length - 1;
+            int i = hash(id) & mask;
+            while (slots[i] != EMPTY && ids[i] != id) {
+                i = (i + 1) & mask;
+            }
+            if (slots[i] == EMPTY) {
+                size++;
+            }
+            ids[i] = id;
+            slots[i] = slot;
+        }
+
+        /** Removes the ID and returns its slot, or {@link #EMPTY}. */
+        int remove(int id) {
+            int mask = ids.length - 1;
+            int i = hash(id) & mask;
+            while (slots[i] != EMPTY && ids[i] != id) {
+                i = (i + 1) & mask;
+            }
+            int removed = slots[i];
+            if (removed == EMPTY) {
+                return EMPTY;
+            }
+            // Pull later entries of the probe run back so lookups never stop at the hole
+            int hole = i;
+            for (int j = (hole + 1) & mask; slots[j] != EMPTY; j = (j + 1) & mask) {
+                int home = hash(ids[j]) & mask;
+                if (((j - home) & mask) >= ((j - hole) & mask)) {
+                    ids[hole] = ids[j];
+                    slots[hole] = slots[j];
+                    hole = j;
+                }
+            }
+            slots[hole] = EMPTY;
+            size--;
+            return removed;
+        }
+
+        void clear() {
+            ids = new int[64];
+            slots = emptySlots(64);
+            size = 0;
+        }
+
+        void load(int[] ids, int[] slots) {
+            checkTable(ids.length, slots.length);
+            this.ids = ids;
+            this.slots = slots;
+            size = countUsed(slots);
+        }
+
+        private void resize() {
+            int[] oldIds = ids;
+            int[] oldSlots = slots;
+            ids = new int[oldIds.length * 2];
+            slots = emptySlots(oldIds.length * 2);
+            size = 0;
+            for (int i = 0; i < oldIds.length; i++) {
+                if (oldSlots[i] != EMPTY) {
+                    put(oldIds[i], oldSlots[i]);
+                }
+            }
+        }
+
+        private static int hash(int id) {
+            int h = id * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    /**
+     * Open-addressing map from barcode key to slot. Keys are not stored: an
+     * entry keeps the key's hash and is confirmed against the slot's barcode
+     * in the {@link ProductStore}.
+     */
+    private static final class BarcodeTable {
+        private int[] hashes = new int[64];
+        private int[] slots = emptySlots(64);
+        private int size;
+
+        int get(String key, ProductStore store) {
+            int at = find(key, store);
+            return at >= 0 ? slots[at] : IdTable.EMPTY;
+        }
+
+        /** Maps the key to {@code slot}, replacing the slot of an earlier product with the same barcode. */
+        void put(String key, int slot, ProductStore store) {
+            int at = find(key, store);
+            if (at >= 0) {
+                slots[at] = slot;
+                return;
+            }
+            if ((size + 1) * 2 > slots.length) {
+                resize();
+            }
+            insert(key.hashCode(), slot);
+        }
+
+        /** Removes the key only while it still maps to {@code slot}. */
+        void remove(String key, int slot, ProductStore store) {
+            int at = find(key, store);
+            if (at < 0 || slots[at] != slot) {
+                return;
+            }
+            int mask = slots.length - 1;
+            int hole = at;
+            for (int j = (hole + 1) & mask; slots[j] != IdTable.EMPTY; j = (j + 1) & mask) {
+                int home = spread(hashes[j]) & mask;
+                if (((j - home) & mask) >= ((j - hole) & mask)) {
+                    hashes[hole] = hashes[j];
+                    slots[hole] = slots[j];
+                    hole = j;
+                }
+            }
+            slots[hole] = IdTable.EMPTY;
+            size--;
+        }
+
+        void clear() {
+            hashes = new int[64];
+            slots = emptySlots(64);
+            size = 0;
+        }
+
+        void load(int[] hashes, int[] slots) {
+            checkTable(hashes.length, slots.length);
+            this.hashes = hashes;
+            this.slots = slots;
+            size = countUsed(slots);
+        }
+
+        private int find(String key, ProductStore store) {
+            int hash = key.hashCode();
+            int mask = slots.length - 1;
+            for (int i = spread(hash) & mask; slots[i] != IdTable.EMPTY; i = (i + 1) & mask) {
+                if (hashes[i] == hash && store.barcodeKeyEquals(slots[i], key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void insert(int hash, int slot) {
+            int mask = slots.length - 1;
+            int i = spread(hash) & mask;
+            while (slots[i] != IdTable.EMPTY) {
+                i = (i + 1) & mask;
+            }
+            hashes[i] = hash;
+            slots[i] = slot;
+            size++;
+        }
+
+        private void resize() {
+            int[] oldHashes = hashes;
+            int[] oldSlots = slots;
+            hashes = new int[oldSlots.length * 2];
+            slots = emptySlots(oldSlots.length * 2);
+            size = 0;
+            for (int i = 0; i < oldSlots.length; i++) {
+                if (oldSlots[i] != IdTable.EMPTY) {
+                    insert(oldHashes[i], oldSlots[i]);
+                }
+            }
+        }
+
+        private static int spread(int hash) {
+            int h = hash * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    private static int[] emptySlots(int capacity) {
+        int[] slots = new int[capacity];
+        Arrays.fill(slots, IdTable.EMPTY);
+        return slots;
+    }
+
+    private static int countUsed(int[] slots) {
+        int used = 0;
+        for (int slot : slots) {
+            if (slot != IdTable.EMPTY) {
+                used++;
+            }
+        }
+        return used;
+    }
+
+    /** Tables read from a snapshot must still be a power of two with room to probe. */
+    private static void checkTable(int keys, int slots) {
+        if (keys != slots || keys < 2 || Integer.bitCount(keys) != 1) {
+            throw new IllegalStateException("inconsistent lookup table");
+        }
+    }
+
+    /** Open-addressing map from n-gram key to postings; key 0 marks an empty slot. */
+    private static final class GramMap {
+        private long[] keys = new long[1024];
+        private IntList[] values = new IntList[1024];
+        private int size;
+
+        IntList get(long key) {
+            int mask = keys.length - 1;
+            for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+                if (keys[i] == 0) {
+                    return null;
+                }
+            }
+        }
+
+        IntList getOrCreate(long key) {
+            IntList existing = get(key);
+            if (existing != null) {
+                return existing;
+            }
+            if ((size + 1) * 2 > keys.length) {
+                resize();
+            }
+            IntList created = new IntList();
+            insert(key, created);
+            size++;
+            return created;
+        }
+
+        void clear() {
+            Arrays.fill(keys, 0);
+            Arrays.fill(values, null);
+            size = 0;
+        }
+
+        void load(long[] keys, IntList[] values) {
+            if (keys.length < 2 || Integer.bitCount(keys.length) != 1) {
+                throw new IllegalStateException("inconsistent n-gram table");
+            }
+            this.keys = keys;
+            this.values = values;
+            size = 0;
+            for (long key : keys) {
+                if (key != 0) {
+                    size++;
+                }
+            }
+        }
+
+        private void insert(long key, IntList value) {
+            int mask = keys.length - 1;
+            int i = hash(key) & mask;
+            while (keys[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            IntList[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new IntList[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    insert(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package com.pos.system.services;
+
+import com.pos.system.models.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The product catalog saved to disk, so the POS can show it at once after a
+ * restart instead of waiting for the database and for the search index to be
+ * built.
+ * <p>
+ * The file holds the built {@link CatalogIndex}, column arrays and postings
+ * as they are in memory, plus the category list, stamped with the catalog
+ * version it was taken at (see {@code ProductDAO.getCatalogVersion()}). It is
+ * read through a memory-mapped buffer with bulk array copies, so loading
+ * costs about as much as copying the arrays. The caller reconciles the loaded
+ * catalog against the database afterwards, using that version.
+ * <p>
+ * A missing, truncated or foreign file reads as no snapshot. Writes go to a
+ * temporary file that then replaces the old one, so a crash mid-write leaves
+ * the previous snapshot in place.
+ */
+public class CatalogSnapshot {
+    private static final Logger logger = LoggerFactory.getLogger(CatalogSnapshot.class);
+
+    private static final int MAGIC = 0x50534E50; // "PSNP"
+    // Bump whenever CatalogIndex or ProductStore change what they write
+    private static final int FORMAT = 1;
+
+    private final long catalogVersion;
+    private final List<Category> categories;
+    private final CatalogIndex index;
+
+    public CatalogSnapshot(long catalogVersion, List<Category> categories, CatalogIndex index) {
+        this.catalogVersion = catalogVersion;
+        this.categories = categories;
+        this.index = index;
+    }
+
+    public long getCatalogVersion() {
+        return catalogVersion;
+    }
+
+    public List<Category> getCategories() {
+        return categories;
+    }
+
+    public CatalogIndex getIndex() {
+        return index;
+    }
+
+    /** Reads the snapshot at {@code path}, or returns null if there is no usable one. */
+    public static CatalogSnapshot read(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            Reader reader = new Reader(buffer);
+            if (reader.readInt() != MAGIC || reader.readInt() != FORMAT) {
+                logger.info("Ignoring catalog snapshot {} from another format", path);
+                return null;
+            }
+            long version = reader.readLong();
+            int categoryCount = reader.readCount(12);
+            List<Category> categories = new ArrayList<>(categoryCount);
+            for (int i = 0; i < categoryCount; i++) {
+                categories.add(new Category(reader.readInt(), reader.readString(), reader.readString()));
+            }
+            CatalogIndex index = CatalogIndex.readFrom(reader);
+            if (reader.readInt() != MAGIC) {
+                throw new IllegalStateException("missing trailer");
+            }
+            return new CatalogSnapshot(version, categories, index);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Ignoring unreadable catalog snapshot {}", path, e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes this snapshot to {@code path}, replacing any earlier one. The
+     * index must not change while it is written; the catalog cache calls this
+     * on the thread that applies its updates.
+     */
+    public void write(Path path) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Writer writer = new Writer(channel);
+            writer.writeInt(MAGIC);
+            writer.writeInt(FORMAT);
+            writer.writeLong(catalogVersion);
+            writer.writeInt(categories.size());
+            for (Category category : categories) {
+                writer.writeInt(category.getId());
+                writer.writeString(category.getName());
+                writer.writeString(category.getDescription());
+            }
+            index.writeTo(writer);
+            writer.writeInt(MAGIC);
+            writer.flush();
+            channel.force(false);
+        }
+        try {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    /** Big-endian output through one reusable buffer; arrays are written in bulk. */
+    static final class Writer {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+
+        private Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void writeInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void writeLong(long value) throws IOException {
+            ensure(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        /** A null string is written as length -1. */
+        void writeString(String value) throws IOException {
+            if (value == null) {
+                writeInt(-1);
+                return;
+            }
+            writeChars(value.toCharArray(), value.length());
+        }
+
+        void writeInts(int[] values, int count) throws IOException {
+            writeInt(count);
+            for (int done = 0; done < count;) {
+                ensure(Integer.BYTES);
+                int n = Math.min(count - done, buffer.remaining() / Integer.BYTES);
+                buffer.asIntBuffer().put(values, done, n);
+                buffer.position(buffer.position() + n * Integer.BYTES);
+                done += n;
+            }
+        }
+
+        void writeLongs(long[] values, int count) throws IOException {
+            writeInt(count);
+            for (int done = 0; done < count;) {
+                ensure(Long.BYTES);
+                int n = Math.min(count - done, buffer.remaining() / Long.BYTES);
+                buffer.asLongBuffer().put(values, done, n);
+                buffer.position(buffer.position() + n * Long.BYTES);
+                done += n;
+            }
+        }
+
+        void writeDoubles(double[] values, int count) throws IOException {
+            writeInt(count);
+            for (int done = 0; done < count;) {
+                ensure(Double.BYTES);
+                int n = Math.min(count - done, buffer.remaining() / Double.BYTES);
+                buffer.asDoubleBuffer().put(values, done, n);
+                buffer.position(buffer.position() + n * Double.BYTES);
+                done += n;
+            }
+        }
+
+        void writeChars(char[] values, int count) throws IOException {
+            writeInt(count);
+            for (int done = 0; done < count;) {
+                ensure(Character.BYTES);
+                int n = Math.min(count - done, buffer.remaining() / Character.BYTES);
+                buffer.asCharBuffer().put(values, done, n);
+                buffer.position(buffer.position() + n * Character.BYTES);
+                done += n;
+            }
+        }
+
+        void writeBooleans(boolean[] values, int count) throws IOException {
+            writeInt(count);
+            for (int i = 0; i < count; i++) {
+                ensure(1);
+                buffer.put(values[i] ? (byte) 1 : 0);
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Reads what {@link Writer} wrote. Lengths are checked against what is
+     * left in the file, so a damaged file fails instead of allocating wildly.
+     */
+    static final class Reader {
+        private final ByteBuffer buffer;
+
+        private Reader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        int readInt() {
+            return buffer.getInt();
+        }
+
+        long readLong() {
+            return buffer.getLong();
+        }
+
+        String readString() {
+            int length = buffer.getInt();
+            if (length == -1) {
+                return null;
+            }
+            return new String(readCharsOfLength(length));
+        }
+
+        int[] readInts() {
+            int[] values = new int[readCount(Integer.BYTES)];
+            buffer.asIntBuffer().get(values);
+            buffer.position(buffer.position() + values.length * Integer.BYTES);
+            return values;
+        }
+
+        long[] readLongs() {
+            long[] values = new long[readCount(Long.BYTES)];
+            buffer.asLongBuffer().get(values);
+            buffer.position(buffer.position() + values.length * Long.BYTES);
+            return values;
+        }
+
+        double[] readDoubles() {
+            double[] values = new double[readCount(Double.BYTES)];
+            buffer.asDoubleBuffer().get(values);
+            buffer.position(buffer.position() + values.length * Double.BYTES);
+            return values;
+        }
+
+        char[] readChars() {
+            return readCharsOfLength(buffer.getInt());
+        }
+
+        boolean[] readBooleans() {
+            boolean[] values = new boolean[readCount(1)];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = buffer.get() != 0;
+            }
+            return values;
+        }
+
+        /** A count of items of at least {@code bytesEach}, checked against the bytes left. */
+        int readCount(int bytesEach) {
+            return checkCount(buffer.getInt(), bytesEach);
+        }
+
+        private char[] readCharsOfLength(int length) {
+            char[] values = new char[checkCount(length, Character.BYTES)];
+            buffer.asCharBuffer().get(values);
+            buffer.position(buffer.position() + values.length * Character.BYTES);
+            return values;
+        }
+
+        private int checkCount(int count, int bytesEach) {
+            if (count < 0 || (long) count * bytesEach > buffer.remaining()) {
+                throw new BufferUnderflowException();
+            }
+            return count;
+        }
+    }
+}
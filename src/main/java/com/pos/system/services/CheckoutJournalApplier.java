@@ -0,0 +1,593 @@
+package com.pos.system.services;
+
+import com.pos.system.dao.BaseDAO;
+import com.pos.system.dao.SaleDAO;
+import com.pos.system.database.CheckoutJournal;
+import com.pos.system.database.DatabaseWriter;
+import com.pos.system.models.Sale;
+import com.pos.system.models.SaleItem;
+import com.pos.system.models.SalePayment;
+import com.pos.system.utils.AppDataUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fast checkout: accepts sales into the {@link CheckoutJournal} and replays
+ * them into SQLite on a background thread, oldest first.
+ * <p>
+ * Each journaled sale is given its final sale ID up front so the receipt can
+ * be printed straight away. IDs are handed out above both the database's
+ * highest sale ID and every ID still waiting in the journal; a direct checkout
+ * made while the applier runs draws from the same counter, so it never takes
+ * an ID a journaled sale holds. Replay is
+ * idempotent: a sale whose ID is already in the database with the same user,
+ * total and date is treated as applied, which covers a crash between the
+ * database commit and the journal update.
+ * <p>
+ * A sale whose {@link Sale#getSaleKey() sale key} is already in the journal or
+ * in the database is not journaled again; the caller gets the existing ID.
+ * <p>
+ * A journaled sale has already been paid for, so stock that ran out in the
+ * meantime does not stop it: the default writer records the shortfall for
+ * reconciliation instead. A record that still fails after
+ * {@value #MAX_ATTEMPTS} attempts is copied to a dead-letter file next to the
+ * journal and marked failed, so later sales are not held up.
+ */
+public class CheckoutJournalApplier {
+    private static final Logger logger = LoggerFactory.getLogger(CheckoutJournalApplier.class);
+
+    private static final int FORMAT_VERSION = 1;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_BACKOFF_MS = 500;
+    private static final long IDLE_WAIT_MS = 1000;
+    private static final long FULL_JOURNAL_WAIT_MS = 10_000;
+    private static final long SHUTDOWN_WAIT_MS = 5000;
+
+    private static CheckoutJournalApplier instance;
+
+    /** Writes one journaled sale, under its preset ID, in a single transaction. */
+    public interface SaleWriter {
+        void write(Sale sale, List<SaleItem> items, List<SalePayment> payments) throws SQLException;
+    }
+
+    /** Sale IDs already used in the database. */
+    public interface SaleIdSource {
+        int getMaxSaleId() throws SQLException;
+
+        /** ID of the stored sale with this key, or 0 if there is none. */
+        default int findSaleIdByKey(String saleKey) throws SQLException {
+            return 0;
+        }
+    }
+
+    /** A decoded journal record. */
+    public static final class JournaledSale {
+        private final Sale sale;
+        private final List<SaleItem> items;
+        private final List<SalePayment> payments;
+
+        JournaledSale(Sale sale, List<SaleItem> items, List<SalePayment> payments) {
+            this.sale = sale;
+            this.items = items;
+            this.payments = payments;
+        }
+
+        public Sale getSale() {
+            return sale;
+        }
+
+        public List<SaleItem> getItems() {
+            return items;
+        }
+
+        public List<SalePayment> getPayments() {
+            return payments;
+        }
+    }
+
+    private final CheckoutJournal journal;
+    private final SaleWriter saleWriter;
+    private final SaleIdSource saleIdSource;
+    private final Path deadLetterFile;
+    private final Object signal = new Object();
+    private final Thread applierThread;
+    private volatile boolean running = true;
+    // Held only while handing out an ID, never across journal I/O or a wait
+    private final Object idLock = new Object();
+    private int nextSaleId; // guarded by idLock
+    // Sale key -> ID for records not yet settled; a key leaves only after its sale is committed
+    private final Map<String, Integer> pendingKeys = new ConcurrentHashMap<>();
+
+    private final AtomicLong appliedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    public CheckoutJournalApplier(CheckoutJournal journal, SaleWriter saleWriter, SaleIdSource saleIdSource,
+            Path deadLetterFile) {
+        this.journal = journal;
+        this.saleWriter = saleWriter;
+        this.saleIdSource = saleIdSource;
+        this.deadLetterFile = deadLetterFile;
+        this.nextSaleId = indexPendingRecords() + 1;
+
+        this.applierThread = new Thread(this::run, "Checkout-Journal-Applier");
+        this.applierThread.setDaemon(true);
+        this.applierThread.start();
+    }
+
+    /**
+     * Returns the shared applier, opening the journal in the app data
+     * directory and starting replay of anything left over from the last run.
+     */
+    public static synchronized CheckoutJournalApplier getInstance() throws IOException {
+        if (instance == null) {
+            CheckoutJournal journal = new CheckoutJournal(AppDataUtils.getCheckoutJournalPath(),
+                    CheckoutJournal.DEFAULT_CAPACITY);
+            CheckoutService checkoutService = new CheckoutService(new InventoryService(), null);
+            instance = new CheckoutJournalApplier(journal,
+                    (sale, items, payments) -> DatabaseWriter.getInstance()
+                            .execute(conn -> writeIfAbsent(checkoutService, conn, sale, items, payments)),
+                    new SaleIdSource() {
+                        @Override
+                        public int getMaxSaleId() throws SQLException {
+                            try (SaleDAO saleDAO = BaseDAO.forReading(SaleDAO::new)) {
+                                return saleDAO.getMaxSaleId();
+                            }
+                        }
+
+                        @Override
+                        public int findSaleIdByKey(String saleKey) throws SQLException {
+                            try (SaleDAO saleDAO = BaseDAO.forReading(SaleDAO::new)) {
+                                return saleDAO.findSaleIdByKey(saleKey);
+                            }
+                        }
+                    },
+                    AppDataUtils.getAppDataDir().resolve("checkout-journal-failed.log"));
+        }
+        return instance;
+    }
+
+    /**
+     * Waits until the shared applier, if one was started, has no pending
+     * records.
+     *
+     * @return true if nothing is pending
+     */
+    public static boolean awaitDrained(long timeoutMs) {
+        CheckoutJournalApplier current;
+        synchronized (CheckoutJournalApplier.class) {
+            current = instance;
+        }
+        return current == null || current.awaitIdle(timeoutMs);
+    }
+
+    /**
+     * Inserts a sale header that bypasses the journal, inside the caller's
+     * write unit. While the shared applier is running the sale is stored
+     * above every ID the journal has handed out; otherwise it takes the next
+     * AUTOINCREMENT ID.
+     */
+    static int insertSaleOutsideJournal(SaleDAO saleDAO, Sale sale) throws SQLException {
+        CheckoutJournalApplier current;
+        synchronized (CheckoutJournalApplier.class) {
+            current = instance;
+        }
+        return current == null ? saleDAO.insertSale(sale) : current.insertOutsideJournal(saleDAO, sale);
+    }
+
+    /**
+     * Stores {@code sale} under the next free ID, above both the database and
+     * every ID reserved by the journal, and moves the journal's next ID past
+     * it. Holding the ID lock until the insert is done keeps {@link #submit}
+     * from handing out the same ID before the caller's unit commits; if the
+     * unit is rolled back or run again, the ID is merely skipped.
+     */
+    int insertOutsideJournal(SaleDAO saleDAO, Sale sale) throws SQLException {
+        synchronized (idLock) {
+            sale.setId(Math.max(nextSaleId, saleDAO.getMaxSaleId() + 1));
+            int id = saleDAO.insertSaleWithId(sale);
+            nextSaleId = id + 1;
+            return id;
+        }
+    }
+
+    /**
+     * Drains and stops the shared applier. Records that could not be applied in
+     * time stay in the journal and are replayed on the next start.
+     */
+    public static synchronized void shutdownInstance() {
+        if (instance != null) {
+            instance.shutdown(SHUTDOWN_WAIT_MS);
+            instance = null;
+        }
+    }
+
+    /**
+     * Assigns the sale its ID and appends it to the journal. Returns once the
+     * record has been flushed to disk. If a sale with the same key was already
+     * journaled or stored, nothing is appended and its ID is set on
+     * {@code sale} instead.
+     *
+     * @return true if the sale was journaled, false if it was already recorded
+     * @throws IOException if the journal stays full
+     */
+    public synchronized boolean submit(Sale sale, List<SaleItem> items, List<SalePayment> payments)
+            throws IOException {
+        if (!running) {
+            throw new IOException("Checkout journal is shut down");
+        }
+        int existingId = findRecordedSale(sale.getSaleKey());
+        if (existingId > 0) {
+            sale.setId(existingId);
+            return false;
+        }
+        if (sale.getSaleDate() == null) {
+            sale.setSaleDate(LocalDateTime.now());
+        }
+        synchronized (idLock) {
+            if (journal.getPendingCount() == 0) {
+                // Nothing reserved; catch up with IDs taken by direct checkouts meanwhile
+                try {
+                    nextSaleId = Math.max(nextSaleId, saleIdSource.getMaxSaleId() + 1);
+                } catch (SQLException e) {
+                    logger.warn("Could not read the current sale ID, continuing from {}", nextSaleId, e);
+                }
+            }
+            // Taken now, so a direct checkout cannot use it; an append that fails only skips it
+            sale.setId(nextSaleId++);
+        }
+        byte[] payload = encode(sale, items, payments);
+
+        long seq = journal.append(payload);
+        if (seq < 0) {
+            logger.warn("Checkout journal is full; waiting for pending sales to be applied");
+            awaitIdle(FULL_JOURNAL_WAIT_MS);
+            journal.compactIfSettled();
+            seq = journal.append(payload);
+        }
+        if (seq < 0) {
+            sale.setId(0);
+            throw new IOException("Checkout journal is full");
+        }
+        if (sale.getSaleKey() != null) {
+            pendingKeys.put(sale.getSaleKey(), sale.getId());
+        }
+        wakeUp();
+        return true;
+    }
+
+    private int findRecordedSale(String saleKey) throws IOException {
+        if (saleKey == null) {
+            return 0;
+        }
+        // Checked in this order: a key is removed from the journal index only after its sale is committed
+        Integer journaledId = pendingKeys.get(saleKey);
+        if (journaledId != null) {
+            return journaledId;
+        }
+        try {
+            return saleIdSource.findSaleIdByKey(saleKey);
+        } catch (SQLException e) {
+            throw new IOException("Could not check whether the sale was already recorded", e);
+        }
+    }
+
+    private void run() {
+        while (running) {
+            List<CheckoutJournal.Entry> pending = journal.getPendingEntries();
+            if (pending.isEmpty()) {
+                journal.compactIfSettled();
+                synchronized (signal) {
+                    signal.notifyAll();
+                    if (running && journal.getPendingCount() == 0) {
+                        try {
+                            signal.wait(IDLE_WAIT_MS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                    }
+                }
+                continue;
+            }
+            for (CheckoutJournal.Entry entry : pending) {
+                if (!apply(entry)) {
+                    return;
+                }
+                synchronized (signal) {
+                    signal.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies one record, retrying transient failures.
+     *
+     * @return false if the applier was stopped before the record was settled
+     */
+    private boolean apply(CheckoutJournal.Entry entry) {
+        JournaledSale journaled;
+        try {
+            journaled = decode(entry.getPayload());
+        } catch (IOException e) {
+            deadLetter(entry, null, e);
+            return true;
+        }
+
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            try {
+                saleWriter.write(journaled.getSale(), journaled.getItems(), journaled.getPayments());
+                // Counted before the record settles, so awaitIdle never sees it missing
+                appliedCount.incrementAndGet();
+                journal.markApplied(entry);
+                forgetKey(journaled.getSale());
+                logger.info("Applied journaled sale {} (journal seq {})", journaled.getSale().getId(), entry.getSeq());
+                return true;
+            } catch (SQLException | RuntimeException e) {
+                if (!running) {
+                    return false;
+                }
+                if (attempt == MAX_ATTEMPTS) {
+                    deadLetter(entry, journaled, e);
+                    return true;
+                }
+                logger.warn("Applying journaled sale {} failed (attempt {}), retrying", journaled.getSale().getId(),
+                        attempt, e);
+                try {
+                    Thread.sleep(RETRY_BACKOFF_MS * attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void deadLetter(CheckoutJournal.Entry entry, JournaledSale journaled, Exception cause) {
+        String saleId = journaled != null ? String.valueOf(journaled.getSale().getId()) : "?";
+        logger.error("Journaled sale {} (seq {}) could not be applied and was moved to {}", saleId,
+                entry.getSeq(), deadLetterFile, cause);
+        String line = LocalDateTime.now() + "\tseq=" + entry.getSeq() + "\tsale=" + saleId + "\terror="
+                + String.valueOf(cause.getMessage()).replace('\n', ' ') + "\tpayload="
+                + Base64.getEncoder().encodeToString(entry.getPayload()) + System.lineSeparator();
+        try {
+            Files.writeString(deadLetterFile, line, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            // Leave the record pending rather than lose it
+            logger.error("Could not write checkout dead-letter file; record stays in the journal", e);
+            return;
+        }
+        failedCount.incrementAndGet();
+        journal.markFailed(entry);
+        if (journaled != null) {
+            forgetKey(journaled.getSale());
+        }
+    }
+
+    public boolean awaitIdle(long timeoutMs) {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (signal) {
+            while (journal.getPendingCount() > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0 || !applierThread.isAlive()) {
+                    return false;
+                }
+                try {
+                    signal.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    public void shutdown(long timeoutMs) {
+        awaitIdle(timeoutMs);
+        running = false;
+        // Cut short a retry back-off; an interrupted write is replayed next start
+        applierThread.interrupt();
+        try {
+            applierThread.join(Math.max(timeoutMs, 1000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int left = journal.getPendingCount();
+        if (left > 0) {
+            logger.warn("{} journaled sale(s) not yet applied; they will be replayed on next start", left);
+        }
+        journal.close();
+    }
+
+    private void wakeUp() {
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+    }
+
+    public int getPendingCount() {
+        return journal.getPendingCount();
+    }
+
+    public long getAppliedCount() {
+        return appliedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    private void forgetKey(Sale sale) {
+        if (sale.getSaleKey() != null) {
+            pendingKeys.remove(sale.getSaleKey());
+        }
+    }
+
+    /**
+     * Registers the keys of records left pending by the last run.
+     *
+     * @return the highest sale ID among them
+     */
+    private int indexPendingRecords() {
+        int max = 0;
+        for (CheckoutJournal.Entry entry : journal.getPendingEntries()) {
+            try {
+                Sale sale = decode(entry.getPayload()).getSale();
+                max = Math.max(max, sale.getId());
+                if (sale.getSaleKey() != null) {
+                    pendingKeys.put(sale.getSaleKey(), sale.getId());
+                }
+            } catch (IOException e) {
+                logger.warn("Unreadable checkout journal record (seq {})", entry.getSeq(), e);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Replay step for the default writer: skips a sale that already reached the
+     * database, under its ID or its sale key, refuses one whose ID was taken by
+     * a different sale, and otherwise writes it under its preset ID.
+     */
+    static Void writeIfAbsent(CheckoutService checkoutService, Connection connection, Sale sale,
+            List<SaleItem> items, List<SalePayment> payments) throws SQLException {
+        try (SaleDAO saleDAO = new SaleDAO(connection)) {
+            int keyedId = saleDAO.findSaleIdByKey(sale.getSaleKey());
+            if (keyedId > 0) {
+                logger.info("Journaled sale {} was already recorded as sale {}", sale.getId(), keyedId);
+                return null;
+            }
+            Sale existing = saleDAO.getSaleById(sale.getId());
+            if (existing != null) {
+                if (isSameSale(existing, sale)) {
+                    logger.info("Journaled sale {} was already applied", sale.getId());
+                    return null;
+                }
+                throw new SQLException("Sale ID " + sale.getId() + " is already used by a different sale");
+            }
+        }
+        checkoutService.writeSale(connection, sale, items, payments, true);
+        return null;
+    }
+
+    private static boolean isSameSale(Sale stored, Sale journaled) {
+        return stored.getUserId() == journaled.getUserId()
+                && Math.abs(stored.getTotalAmount() - journaled.getTotalAmount()) < 0.005
+                && stored.getSaleDate().truncatedTo(ChronoUnit.SECONDS)
+                        .equals(journaled.getSaleDate().truncatedTo(ChronoUnit.SECONDS));
+    }
+
+    static byte[] encode(Sale sale, List<SaleItem> items, List<SalePayment> payments) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_VERSION);
+            out.writeInt(sale.getId());
+            out.writeInt(sale.getUserId());
+            out.writeDouble(sale.getSubtotal());
+            out.writeDouble(sale.getTaxAmount());
+            out.writeDouble(sale.getDiscountAmount());
+            out.writeDouble(sale.getTotalAmount());
+            out.writeDouble(sale.getTotalProfit());
+            writeNullable(out, sale.getSaleDate() != null ? sale.getSaleDate().toString() : null);
+            writeNullable(out, sale.getSaleKey());
+
+            out.writeInt(items.size());
+            for (SaleItem item : items) {
+                out.writeInt(item.getProductId());
+                writeNullable(out, item.getProductName());
+                out.writeInt(item.getQuantity());
+                out.writeDouble(item.getPriceAtSale());
+                out.writeDouble(item.getCostAtSale());
+                out.writeDouble(item.getDiscountAmount());
+                out.writeDouble(item.getTaxAmount());
+            }
+
+            out.writeInt(payments.size());
+            for (SalePayment payment : payments) {
+                writeNullable(out, payment.getPaymentMethod());
+                out.writeDouble(payment.getAmount());
+                writeNullable(out, payment.getPaymentDate() != null ? payment.getPaymentDate().toString() : null);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    static JournaledSale decode(byte[] payload) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            int version = in.readUnsignedByte();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported checkout journal record version " + version);
+            }
+            int id = in.readInt();
+            int userId = in.readInt();
+            double subtotal = in.readDouble();
+            double tax = in.readDouble();
+            double discount = in.readDouble();
+            double total = in.readDouble();
+            double profit = in.readDouble();
+            String date = readNullable(in);
+            Sale sale = new Sale(id, userId, subtotal, tax, discount, total, profit,
+                    date != null ? LocalDateTime.parse(date) : null);
+            sale.setSaleKey(readNullable(in));
+
+            int itemCount = in.readInt();
+            List<SaleItem> items = new ArrayList<>(itemCount);
+            for (int i = 0; i < itemCount; i++) {
+                int productId = in.readInt();
+                String name = readNullable(in);
+                int quantity = in.readInt();
+                double price = in.readDouble();
+                double cost = in.readDouble();
+                SaleItem item = new SaleItem(0, id, productId, name, quantity, price, cost);
+                item.setDiscountAmount(in.readDouble());
+                item.setTaxAmount(in.readDouble());
+                items.add(item);
+            }
+
+            int paymentCount = in.readInt();
+            List<SalePayment> payments = new ArrayList<>(paymentCount);
+            for (int i = 0; i < paymentCount; i++) {
+                String method = readNullable(in);
+                double amount = in.readDouble();
+                String paidAt = readNullable(in);
+                payments.add(new SalePayment(0, id, method, amount,
+                        paidAt != null ? LocalDateTime.parse(paidAt) : null));
+            }
+            return new JournaledSale(sale, items, payments);
+        }
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
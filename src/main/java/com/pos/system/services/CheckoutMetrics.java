@@ -0,0 +1,244 @@
+package com.pos.system.services;
+
+import com.pos.system.utils.AppDataUtils;
+import com.pos.system.utils.LatencyHistogram;
+import com.pos.system.utils.SettingsManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Latency of each checkout phase, kept in {@link LatencyHistogram}s so the
+ * recording path never locks.
+ * <p>
+ * Every phase has one histogram per minute for the last
+ * {@value #WINDOW_SLOTS} minutes, which back the rolling windows, and one
+ * covering the whole run. A minute's histogram is cleared when it comes round
+ * again; that is the only step that synchronizes, once per slot per minute.
+ * <p>
+ * Database phases are recorded by {@link CheckoutService#writeSale}, so they
+ * include sales replayed from the fast checkout journal as well as direct
+ * checkouts.
+ */
+public class CheckoutMetrics {
+    private static final Logger logger = LoggerFactory.getLogger(CheckoutMetrics.class);
+
+    public static final String DUMP_ON_SHUTDOWN_SETTING = "checkout_latency_dump_enabled";
+    static final int WINDOW_SLOTS = 15;
+    private static final long SLOT_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private static final CheckoutMetrics instance = new CheckoutMetrics(System::nanoTime);
+
+    public enum Phase {
+        /** Wait for the single writer to pick up the checkout's write unit. */
+        CONNECTION_ACQUIRE,
+        INSERT_SALE,
+        INSERT_SALE_ITEMS,
+        PAYMENTS,
+        DEDUCT_STOCK,
+        /** Adding the sale to the hourly and daily sales rollups. */
+        SALES_ROLLUP,
+        /** From the end of the write unit until the writer's group commit returns. */
+        COMMIT,
+        AUDIT_LOG,
+        /** Fast checkout only: appending the sale to the local journal. */
+        JOURNAL_APPEND,
+        /** The whole call, as the cashier experiences it. */
+        TOTAL
+    }
+
+    /** Rolling windows offered for {@link #snapshot(Window)}. */
+    public enum Window {
+        LAST_MINUTE(1), LAST_15_MINUTES(WINDOW_SLOTS), SINCE_START(0);
+
+        private final int slots;
+
+        Window(int slots) {
+            this.slots = slots;
+        }
+    }
+
+    /** Percentiles of one phase over one window, in milliseconds. */
+    public static final class PhaseStats {
+        private final Phase phase;
+        private final long count;
+        private final double p50;
+        private final double p95;
+        private final double p99;
+        private final double max;
+
+        PhaseStats(Phase phase, LatencyHistogram histogram) {
+            this.phase = phase;
+            this.count = histogram.getCount();
+            this.p50 = toMillis(histogram.getValueAtPercentile(50));
+            this.p95 = toMillis(histogram.getValueAtPercentile(95));
+            this.p99 = toMillis(histogram.getValueAtPercentile(99));
+            this.max = toMillis(histogram.getMax());
+        }
+
+        private static double toMillis(long micros) {
+            return micros / 1000.0;
+        }
+
+        public Phase getPhase() {
+            return phase;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getP50() {
+            return p50;
+        }
+
+        public double getP95() {
+            return p95;
+        }
+
+        public double getP99() {
+            return p99;
+        }
+
+        public double getMax() {
+            return max;
+        }
+    }
+
+    private static final class Slot {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        volatile long minute = -1;
+    }
+
+    private final LongSupplier clock;
+    private final Map<Phase, Slot[]> slots = new EnumMap<>(Phase.class);
+    private final Map<Phase, LatencyHistogram> sinceStart = new EnumMap<>(Phase.class);
+
+    CheckoutMetrics(LongSupplier clock) {
+        this.clock = clock;
+        for (Phase phase : Phase.values()) {
+            Slot[] ring = new Slot[WINDOW_SLOTS];
+            for (int i = 0; i < WINDOW_SLOTS; i++) {
+                ring[i] = new Slot();
+            }
+            slots.put(phase, ring);
+            sinceStart.put(phase, new LatencyHistogram());
+        }
+    }
+
+    public static CheckoutMetrics getInstance() {
+        return instance;
+    }
+
+    /** Current reading of the clock phases are measured with, in nanoseconds. */
+    public long now() {
+        return clock.getAsLong();
+    }
+
+    /** Records the time elapsed since {@code startNanos}, taken from {@link #now()}. */
+    public void recordSince(Phase phase, long startNanos) {
+        record(phase, now() - startNanos);
+    }
+
+    public void record(Phase phase, long nanos) {
+        long minute = now() / SLOT_NANOS;
+        Slot slot = slots.get(phase)[(int) (minute % WINDOW_SLOTS)];
+        if (slot.minute != minute) {
+            synchronized (slot) {
+                if (slot.minute != minute) {
+                    slot.histogram.reset();
+                    slot.minute = minute;
+                }
+            }
+        }
+        slot.histogram.recordNanos(nanos);
+        sinceStart.get(phase).recordNanos(nanos);
+    }
+
+    /** Percentiles for every phase over {@code window}, in {@link Phase} order. */
+    public List<PhaseStats> snapshot(Window window) {
+        List<PhaseStats> stats = new ArrayList<>();
+        long currentMinute = now() / SLOT_NANOS;
+        for (Phase phase : Phase.values()) {
+            LatencyHistogram merged;
+            if (window == Window.SINCE_START) {
+                merged = sinceStart.get(phase);
+            } else {
+                merged = new LatencyHistogram();
+                for (Slot slot : slots.get(phase)) {
+                    long age = currentMinute - slot.minute;
+                    if (slot.minute >= 0 && age >= 0 && age < window.slots) {
+                        merged.add(slot.histogram);
+                    }
+                }
+            }
+            stats.add(new PhaseStats(phase, merged));
+        }
+        return stats;
+    }
+
+    /** Clears every histogram. */
+    public void reset() {
+        for (Phase phase : Phase.values()) {
+            for (Slot slot : slots.get(phase)) {
+                synchronized (slot) {
+                    slot.histogram.reset();
+                    slot.minute = -1;
+                }
+            }
+            sinceStart.get(phase).reset();
+        }
+    }
+
+    /** Renders the windows as a plain-text table, one row per phase. */
+    public String format() {
+        StringBuilder out = new StringBuilder();
+        for (Window window : Window.values()) {
+            out.append(String.format("%s%n%-20s %8s %10s %10s %10s %10s%n", window, "phase (ms)", "count", "p50",
+                    "p95", "p99", "max"));
+            for (PhaseStats s : snapshot(window)) {
+                out.append(String.format("%-20s %8d %10.2f %10.2f %10.2f %10.2f%n", s.getPhase(), s.getCount(),
+                        s.getP50(), s.getP95(), s.getP99(), s.getMax()));
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Appends the current histograms to {@code checkout-latency.log} in the
+     * app data directory, if the dump is enabled in settings and anything was
+     * recorded.
+     */
+    public static void dumpOnShutdown() {
+        boolean enabled = Boolean.parseBoolean(
+                SettingsManager.getInstance().getSetting(DUMP_ON_SHUTDOWN_SETTING, "false"));
+        if (!enabled || instance.sinceStart.get(Phase.TOTAL).getCount() == 0) {
+            return;
+        }
+        Path file = AppDataUtils.getAppDataDir().resolve("checkout-latency.log");
+        try {
+            instance.dumpTo(file);
+            logger.info("Checkout latency histograms written to {}", file);
+        } catch (IOException e) {
+            logger.error("Could not write checkout latency histograms", e);
+        }
+    }
+
+    void dumpTo(Path file) throws IOException {
+        String text = "=== Checkout latency at " + LocalDateTime.now() + " ===" + System.lineSeparator() + format()
+                + System.lineSeparator();
+        Files.writeString(file, text, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+}
@@ -1,23 +1,38 @@
 package com.pos.system.services;
 
+import com.pos.system.dao.AuditLogWriter;
 import com.pos.system.dao.ProductDAO;
 import com.pos.system.dao.SaleDAO;
 import com.pos.system.dao.SalePaymentDAO;
-import com.pos.system.database.DatabaseManager;
+import com.pos.system.dao.SalesRollupDAO;
+import com.pos.system.database.DatabaseWriter;
+import com.pos.system.models.AuditLog;
 import com.pos.system.models.Sale;
 import com.pos.system.models.SaleItem;
 import com.pos.system.models.SalePayment;
 import com.pos.system.models.TransactionType;
+import com.pos.system.utils.SettingsManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class CheckoutService {
     private static final Logger logger = LoggerFactory.getLogger(CheckoutService.class);
 
+    public static final String FAST_CHECKOUT_SETTING = "fast_checkout_enabled";
+    private static final long JOURNAL_DRAIN_TIMEOUT_MS = 10_000;
+    static final int MAX_WRITE_ATTEMPTS = 4;
+    private static final long BUSY_BACKOFF_MS = 50;
+
     private final InventoryService inventoryService;
     private final SecurityService securityService;
 
@@ -42,9 +57,9 @@ public class CheckoutService {
         this.securityService = securityService;
     }
 
-    // Protected method to allow mocking the connection in tests
-    protected Connection getConnection() throws SQLException {
-        return DatabaseManager.getInstance().getConnection();
+    // Protected method to allow running write units against a mocked connection in tests
+    protected <T> T executeWrite(DatabaseWriter.WriteUnit<T> unit) throws SQLException {
+        return DatabaseWriter.getInstance().execute(unit);
     }
 
     // Protected methods to allow mocking DAOs in tests
@@ -60,96 +75,297 @@ public class CheckoutService {
         return new SalePaymentDAO(connection);
     }
 
+    protected SalesRollupDAO getSalesRollupDAO(Connection connection) {
+        return new SalesRollupDAO(connection);
+    }
+
+    /**
+     * Records a sale. The writes run as one unit on the {@link DatabaseWriter},
+     * which owns the transaction: the unit either commits as a whole or is
+     * rolled back to its savepoint.
+     */
     public void processCheckout(Sale sale, List<SaleItem> items) throws SQLException {
-        try (Connection connection = getConnection()) {
-            connection.setAutoCommit(false); // Begin transaction
+        int saleId;
+        try {
+            saleId = executeWrite(connection -> {
+                try (SaleDAO saleDAO = getSaleDAO(connection);
+                        ProductDAO productDAO = getProductDAO(connection)) {
 
-            try (SaleDAO saleDAO = getSaleDAO(connection);
-                    ProductDAO productDAO = getProductDAO(connection)) {
+                    // 1. Create Sale Header
+                    int id = CheckoutJournalApplier.insertSaleOutsideJournal(saleDAO, sale);
+                    logger.info("Sale header created with ID: {}", id);
 
-                // 1. Create Sale Header
-                int saleId = saleDAO.insertSale(sale);
-                logger.info("Sale header created with ID: {}", saleId);
+                    // 2. Insert Sale Items
+                    saleDAO.insertSaleItems(id, items);
+                    logger.info("Sale items inserted for Sale ID: {}", id);
 
-                // 2. Insert Sale Items
-                saleDAO.insertSaleItems(saleId, items);
-                logger.info("Sale items inserted for Sale ID: {}", saleId);
+                    // 3. Update Inventory (set-based FEFO deduction for the whole cart)
+                    inventoryService.deductStockForItems(connection, items, TransactionType.SALE, "SALE-" + id,
+                            sale.getUserId());
+                    logger.info("Inventory updated for {} items.", items.size());
 
-                // 3. Update Inventory (Atomic Decrement)
-                for (SaleItem item : items) {
-                    inventoryService.deductStock(connection, item.getProductId(), item.getQuantity(),
-                            TransactionType.SALE, "SALE-" + saleId, sale.getUserId());
+                    // 4. Add to the sales rollups
+                    try (SalesRollupDAO rollupDAO = getSalesRollupDAO(connection)) {
+                        rollupDAO.addSale(id);
+                    }
+                    return id;
                 }
-                logger.info("Inventory updated for {} items.", items.size());
-
-                // 4. Commit Transaction
-                connection.commit();
-                logger.info("Checkout transaction committed successfully.");
+            });
+        } catch (SQLException e) {
+            logger.error("Checkout failed, transaction rolled back.", e);
+            throw e;
+        }
 
-                // 5. Audit Log
-                if (securityService != null) {
-                    securityService.logAction(sale.getUserId(), "SALE", "Sale", String.valueOf(saleId),
-                            "Total: " + sale.getTotalAmount());
-                }
+        // 4. Committed by the writer
+        logger.info("Checkout transaction committed successfully.");
 
-            } catch (SQLException e) {
-                logger.error("Checkout failed, rolling back transaction.", e);
-                connection.rollback();
-                throw e;
-            } finally {
-                connection.setAutoCommit(true); // Reset auto-commit
-            }
+        // 5. Audit Log
+        if (securityService != null) {
+            securityService.logAction(sale.getUserId(), "SALE", "Sale", String.valueOf(saleId),
+                    "Total: " + sale.getTotalAmount());
         }
     }
 
+    /**
+     * Records a sale with its payments. In fast checkout mode the sale is
+     * appended to the local {@link CheckoutJournalApplier journal} and the call
+     * returns once that record is on disk; the database write follows in the
+     * background. Otherwise the sale is written through the
+     * {@link DatabaseWriter} as one unit.
+     * <p>
+     * A sale carrying a {@link Sale#getSaleKey() sale key} is recorded at most
+     * once: if a sale with that key already exists, nothing is written and its
+     * ID is set on {@code sale}. That makes the call safe to repeat after a
+     * failure or timeout, and lets a write that hits SQLITE_BUSY be retried
+     * here a bounded number of times with backoff.
+     * <p>
+     * Each phase is timed into {@link CheckoutMetrics}.
+     */
     public void processCheckoutWithPayments(Sale sale, List<SaleItem> items,
             List<SalePayment> payments) throws SQLException {
-        try (Connection connection = getConnection()) {
-            connection.setAutoCommit(false); // Begin transaction
-
-            try (SaleDAO saleDAO = getSaleDAO(connection);
-                    ProductDAO productDAO = getProductDAO(connection);
-                    SalePaymentDAO paymentDAO = getSalePaymentDAO(connection)) {
-
-                // 1. Create Sale Header
-                int saleId = saleDAO.insertSale(sale);
-                sale.setId(saleId);
-                logger.info("Sale header created with ID: {}", saleId);
-
-                // 2. Insert Sale Items
-                saleDAO.insertSaleItems(saleId, items);
-                logger.info("Sale items inserted for Sale ID: {}", saleId);
-
-                // 3. Insert Sale Payments
-                for (SalePayment item : payments) {
-                    item.setSaleId(saleId);
-                    paymentDAO.create(item);
-                }
+        CheckoutMetrics metrics = getMetrics();
+        long started = metrics.now();
+        try {
+            recordCheckout(sale, items, payments);
+        } finally {
+            metrics.recordSince(CheckoutMetrics.Phase.TOTAL, started);
+        }
+    }
 
-                // 4. Update Inventory (Atomic Decrement)
-                for (SaleItem item : items) {
-                    inventoryService.deductStock(connection, item.getProductId(), item.getQuantity(),
-                            TransactionType.SALE, "SALE-" + saleId, sale.getUserId());
-                }
-                logger.info("Inventory updated for {} items.", items.size());
+    private void recordCheckout(Sale sale, List<SaleItem> items, List<SalePayment> payments)
+            throws SQLException {
+        if (isFastCheckoutEnabled()) {
+            journalCheckout(sale, items, payments);
+            return;
+        }
 
-                // 5. Commit Transaction
-                connection.commit();
-                logger.info("Checkout transaction committed successfully.");
+        // Let journaled sales land first so their stock is gone before this sale checks it. This
+        // sale's ID stays clear of the IDs they reserved either way.
+        if (!CheckoutJournalApplier.awaitDrained(JOURNAL_DRAIN_TIMEOUT_MS)) {
+            logger.warn("Journaled sales are still pending; checking stock without them.");
+        }
 
-                // 6. Audit Log
-                if (securityService != null) {
-                    securityService.logAction(sale.getUserId(), "SALE", "Sale", String.valueOf(saleId),
-                            "Total: " + sale.getTotalAmount());
+        AtomicBoolean alreadyRecorded = new AtomicBoolean();
+        Map<CheckoutMetrics.Phase, Long> phaseNanos = new EnumMap<>(CheckoutMetrics.Phase.class);
+        int saleId;
+        try {
+            saleId = writeWithBusyRetry(connection -> {
+                // A unit can run more than once; only the run that commits is timed
+                phaseNanos.clear();
+                int existingId = findSaleIdByKey(connection, sale.getSaleKey());
+                alreadyRecorded.set(existingId > 0);
+                if (existingId > 0) {
+                    sale.setId(existingId);
+                    return existingId;
                 }
+                return writeSale(connection, sale, items, payments, false, phaseNanos);
+            });
+        } catch (SQLException e) {
+            logger.error("Checkout failed, transaction rolled back.", e);
+            throw e;
+        }
+        CheckoutMetrics metrics = getMetrics();
+        phaseNanos.forEach(metrics::record);
+
+        if (alreadyRecorded.get()) {
+            logger.info("Sale key {} was already recorded as sale {}; nothing written.", sale.getSaleKey(), saleId);
+            return;
+        }
+
+        // 5. Committed by the writer
+        logger.info("Checkout transaction committed successfully.");
+
+        // 6. Audit Log
+        if (securityService != null) {
+            long auditStarted = getMetrics().now();
+            securityService.logAction(sale.getUserId(), "SALE", "Sale", String.valueOf(saleId),
+                    "Total: " + sale.getTotalAmount());
+            getMetrics().recordSince(CheckoutMetrics.Phase.AUDIT_LOG, auditStarted);
+        }
+    }
+
+    private int findSaleIdByKey(Connection connection, String saleKey) throws SQLException {
+        if (saleKey == null) {
+            return 0;
+        }
+        try (SaleDAO saleDAO = getSaleDAO(connection)) {
+            return saleDAO.findSaleIdByKey(saleKey);
+        }
+    }
 
+    /**
+     * Runs a write unit, trying again with exponential backoff while SQLite
+     * reports the database busy or locked. Only for units that are safe to
+     * repeat; the failed attempt has already been rolled back.
+     */
+    private <T> T writeWithBusyRetry(DatabaseWriter.WriteUnit<T> unit) throws SQLException {
+        for (int attempt = 1;; attempt++) {
+            try {
+                return timedWrite(unit);
             } catch (SQLException e) {
-                logger.error("Checkout failed, rolling back transaction.", e);
-                connection.rollback();
-                throw e;
-            } finally {
-                connection.setAutoCommit(true); // Reset auto-commit
+                if (attempt >= MAX_WRITE_ATTEMPTS || !DatabaseWriter.isBusy(e)) {
+                    throw e;
+                }
+                long delay = BUSY_BACKOFF_MS << (attempt - 1);
+                delay += ThreadLocalRandom.current().nextLong(BUSY_BACKOFF_MS);
+                logger.warn("Checkout write hit a busy database (attempt {} of {}), retrying in {} ms", attempt,
+                        MAX_WRITE_ATTEMPTS, delay);
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
             }
         }
     }
+
+    /**
+     * Runs a write unit, timing how long it waited for the writer and how long
+     * the commit took after it finished.
+     */
+    private <T> T timedWrite(DatabaseWriter.WriteUnit<T> unit) throws SQLException {
+        CheckoutMetrics metrics = getMetrics();
+        long submitted = metrics.now();
+        long[] unitStarted = new long[1];
+        long[] unitFinished = new long[1];
+        T result = executeWrite(connection -> {
+            unitStarted[0] = metrics.now();
+            T value = unit.execute(connection);
+            unitFinished[0] = metrics.now();
+            return value;
+        });
+        // Recorded only now that the unit has committed, from its last run
+        metrics.record(CheckoutMetrics.Phase.CONNECTION_ACQUIRE, unitStarted[0] - submitted);
+        metrics.recordSince(CheckoutMetrics.Phase.COMMIT, unitFinished[0]);
+        return result;
+    }
+
+    /**
+     * Writes a sale header, its items and payments, deducts stock and adds the
+     * sale to the sales rollups, on the caller's transaction. When
+     * {@code presetId} is true the sale is stored under the ID it already
+     * carries; such a sale has already been paid for, so stock the batches
+     * cannot cover is recorded as a shortfall instead of failing the sale.
+     */
+    int writeSale(Connection connection, Sale sale, List<SaleItem> items, List<SalePayment> payments,
+            boolean presetId) throws SQLException {
+        return writeSale(connection, sale, items, payments, presetId, new EnumMap<>(CheckoutMetrics.Phase.class));
+    }
+
+    /**
+     * As {@link #writeSale(Connection, Sale, List, List, boolean)}, putting how
+     * long each phase took into {@code phaseNanos} for the caller to record
+     * once the write has committed.
+     */
+    int writeSale(Connection connection, Sale sale, List<SaleItem> items, List<SalePayment> payments,
+            boolean presetId, Map<CheckoutMetrics.Phase, Long> phaseNanos) throws SQLException {
+        CheckoutMetrics metrics = getMetrics();
+        try (SaleDAO saleDAO = getSaleDAO(connection);
+                ProductDAO productDAO = getProductDAO(connection);
+                SalePaymentDAO paymentDAO = getSalePaymentDAO(connection);
+                SalesRollupDAO rollupDAO = getSalesRollupDAO(connection)) {
+
+            // 1. Create Sale Header
+            long phaseStarted = metrics.now();
+            int id = presetId ? saleDAO.insertSaleWithId(sale)
+                    : CheckoutJournalApplier.insertSaleOutsideJournal(saleDAO, sale);
+            sale.setId(id);
+            phaseNanos.put(CheckoutMetrics.Phase.INSERT_SALE, metrics.now() - phaseStarted);
+            logger.info("Sale header created with ID: {}", id);
+
+            // 2. Insert Sale Items
+            phaseStarted = metrics.now();
+            saleDAO.insertSaleItems(id, items);
+            phaseNanos.put(CheckoutMetrics.Phase.INSERT_SALE_ITEMS, metrics.now() - phaseStarted);
+            logger.info("Sale items inserted for Sale ID: {}", id);
+
+            // 3. Insert Sale Payments
+            phaseStarted = metrics.now();
+            for (SalePayment item : payments) {
+                item.setSaleId(id);
+                paymentDAO.create(item);
+            }
+            phaseNanos.put(CheckoutMetrics.Phase.PAYMENTS, metrics.now() - phaseStarted);
+
+            // 4. Update Inventory (set-based FEFO deduction for the whole cart)
+            phaseStarted = metrics.now();
+            if (presetId) {
+                Map<Integer, Integer> shortfall = inventoryService.deductStockAllowingShortfall(connection, items,
+                        TransactionType.SALE, "SALE-" + id, sale.getUserId());
+                if (!shortfall.isEmpty()) {
+                    logger.warn("Sale {} sold more than was in stock (product -> short by): {}", id, shortfall);
+                }
+            } else {
+                inventoryService.deductStockForItems(connection, items, TransactionType.SALE, "SALE-" + id,
+                        sale.getUserId());
+            }
+            phaseNanos.put(CheckoutMetrics.Phase.DEDUCT_STOCK, metrics.now() - phaseStarted);
+            logger.info("Inventory updated for {} items.", items.size());
+
+            // 5. Add to the sales rollups
+            phaseStarted = metrics.now();
+            rollupDAO.addSale(id);
+            phaseNanos.put(CheckoutMetrics.Phase.SALES_ROLLUP, metrics.now() - phaseStarted);
+            return id;
+        }
+    }
+
+    private void journalCheckout(Sale sale, List<SaleItem> items, List<SalePayment> payments)
+            throws SQLException {
+        CheckoutMetrics metrics = getMetrics();
+        boolean journaled;
+        long phaseStarted = metrics.now();
+        try {
+            journaled = getJournalApplier().submit(sale, items, payments);
+            metrics.recordSince(CheckoutMetrics.Phase.JOURNAL_APPEND, phaseStarted);
+        } catch (IOException e) {
+            logger.error("Could not journal checkout", e);
+            throw new SQLException("Could not record the checkout in the local journal", e);
+        }
+        if (!journaled) {
+            logger.info("Sale key {} was already recorded as sale {}; nothing journaled.", sale.getSaleKey(),
+                    sale.getId());
+            return;
+        }
+        logger.info("Checkout journaled as sale {}; database write will follow in the background.", sale.getId());
+
+        // Queued rather than written here, so the cashier does not wait on the database
+        phaseStarted = metrics.now();
+        AuditLogWriter.getInstance().submit(new AuditLog(0, sale.getUserId(), "SALE", "Sale",
+                String.valueOf(sale.getId()), "Total: " + sale.getTotalAmount(), LocalDateTime.now()));
+        metrics.recordSince(CheckoutMetrics.Phase.AUDIT_LOG, phaseStarted);
+    }
+
+    protected boolean isFastCheckoutEnabled() {
+        return Boolean.parseBoolean(SettingsManager.getInstance().getSetting(FAST_CHECKOUT_SETTING, "false"));
+    }
+
+    protected CheckoutJournalApplier getJournalApplier() throws IOException {
+        return CheckoutJournalApplier.getInstance();
+    }
+
+    protected CheckoutMetrics getMetrics() {
+        return CheckoutMetrics.getInstance();
+    }
 }
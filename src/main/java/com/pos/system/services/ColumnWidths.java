@@ -0,0 +1,93 @@
+package com.pos.system.services;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * Sizes a report sheet's columns to the longest text written to each,
+ * instead of {@link Sheet#autoSizeColumn}, which lays out every cell of the
+ * column again with font metrics and on a streamed sheet only sees the rows
+ * still in memory.
+ * <p>
+ * Rows are measured as they are written: a table calls {@link #beforeRow()}
+ * per row, and every {@link #FLUSH_EVERY} rows a streamed sheet's rows are
+ * measured and written out to disk. {@link #apply()} measures the rest, sets
+ * the widths and, for a streamed sheet, writes out everything left.
+ */
+final class ColumnWidths {
+    /** Rows between flushes of a streamed sheet; keep below the workbook's row window. */
+    static final int FLUSH_EVERY = 100;
+    private static final int MAX_CHARS = 255;
+    private static final int PADDING_CHARS = 2;
+
+    private final Sheet sheet;
+    private final DataFormatter formatter = new DataFormatter();
+    private int[] maxChars = new int[8];
+    private int nextRow;
+    private int unflushed;
+
+    ColumnWidths(Sheet sheet) {
+        this.sheet = sheet;
+    }
+
+    /** Call before each row of a table; streamed sheets are flushed every {@link #FLUSH_EVERY} rows. */
+    void beforeRow() {
+        if (++unflushed >= FLUSH_EVERY) {
+            flush();
+        }
+    }
+
+    /** Sets the widths of every column written to; call once the sheet is complete. */
+    void apply() {
+        measure();
+        for (int column = 0; column < maxChars.length; column++) {
+            if (maxChars[column] > 0) {
+                sheet.setColumnWidth(column, Math.min(MAX_CHARS, maxChars[column] + PADDING_CHARS) * 256);
+            }
+        }
+        flush();
+    }
+
+    /** The width in characters measured so far for {@code column}. */
+    int chars(int column) {
+        return column < maxChars.length ? maxChars[column] : 0;
+    }
+
+    private void flush() {
+        unflushed = 0;
+        if (sheet instanceof SXSSFSheet) {
+            measure();
+            try {
+                ((SXSSFSheet) sheet).flushRows();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /** Measures the rows not yet measured; a streamed sheet iterates only the rows still in memory. */
+    private void measure() {
+        int last = nextRow - 1;
+        for (Row row : sheet) {
+            if (row.getRowNum() < nextRow) {
+                continue;
+            }
+            last = Math.max(last, row.getRowNum());
+            for (Cell cell : row) {
+                int column = cell.getColumnIndex();
+                if (column >= maxChars.length) {
+                    maxChars = Arrays.copyOf(maxChars, Math.max(column + 1, maxChars.length * 2));
+                }
+                maxChars[column] = Math.max(maxChars[column], formatter.formatCellValue(cell).length());
+            }
+        }
+        nextRow = last + 1;
+    }
+}
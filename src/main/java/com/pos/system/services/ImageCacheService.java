@@ -1,45 +1,342 @@
 package com.pos.system.services;
 
-import com.pos.system.dao.ProductDAO;
-import javafx.concurrent.Task;
+import javafx.application.Platform;
 import javafx.scene.image.Image;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayInputStream;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
+/**
+ * Decoded product thumbnails for the screens that show many products at once.
+ * Images come from {@link ThumbnailService}, never from the full-size
+ * originals, and are cached per product and {@link ThumbnailService.Size}.
+ * <p>
+ * The cache is split into {@value #SEGMENTS} independently locked LRU
+ * segments, so lookups while scrolling rarely wait for each other, and is
+ * bounded by the decoded size of its images rather than their number. A
+ * thumbnail requested again while it is loading is not loaded twice; every
+ * caller waiting for it is called back once it is ready.
+ * <p>
+ * Thumbnails can also be {@linkplain #prefetch prefetched} before they are
+ * shown. Prefetch loads wait behind every load a visible cell asked for, are
+ * moved ahead once a cell does ask for them, and can be cancelled while they
+ * are still queued.
+ */
 public class ImageCacheService {
+    private static final Logger logger = LoggerFactory.getLogger(ImageCacheService.class);
 
     private static ImageCacheService instance;
-    private static final int MAX_CACHE_SIZE = 200; // Limit to 200 images to prevent OOM
+    static final int SEGMENTS = 16;
+    private static final long DEFAULT_MAX_WEIGHT = 64L * 1024 * 1024; // 64MB of decoded pixels
+    // Map and entry overhead, also what a known-missing image costs
+    private static final long ENTRY_WEIGHT = 128;
 
-    private final Map<Integer, Image> cache;
-    private final ExecutorService executor;
-    private final Set<Integer> pendingRequests;
+    /** Where thumbnail bytes come from; {@link ThumbnailService} in the application. */
+    interface Loader {
+        byte[] load(int productId, ThumbnailService.Size size) throws Exception;
+    }
 
-    private ImageCacheService() {
-        // LRU Cache
-        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(MAX_CACHE_SIZE + 1, 0.75f, true) {
-            @Override
-            protected boolean removeEldestEntry(Map.Entry<Integer, Image> eldest) {
-                return size() > MAX_CACHE_SIZE;
+    /** Cache effectiveness since start, for diagnostics. */
+    public static final class Stats {
+        private final long hits;
+        private final long misses;
+        private final long coalesced;
+        private final long evictions;
+        private final long prefetched;
+        private final long prefetchesCancelled;
+        private final int entries;
+        private final long weight;
+
+        Stats(long hits, long misses, long coalesced, long evictions, long prefetched, long prefetchesCancelled,
+                int entries, long weight) {
+            this.hits = hits;
+            this.misses = misses;
+            this.coalesced = coalesced;
+            this.evictions = evictions;
+            this.prefetched = prefetched;
+            this.prefetchesCancelled = prefetchesCancelled;
+            this.entries = entries;
+            this.weight = weight;
+        }
+
+        /** Lookups answered from the cache, including images known to be missing. */
+        public long getHits() {
+            return hits;
+        }
+
+        /** Loads requested for thumbnails not in the cache. */
+        public long getMisses() {
+            return misses;
+        }
+
+        /** Of the misses, those that joined a load already in progress. */
+        public long getCoalesced() {
+            return coalesced;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        /** Loads started by a prefetch rather than a visible cell. */
+        public long getPrefetched() {
+            return prefetched;
+        }
+
+        /** Prefetch loads dropped before they ran, as nobody wanted them any more. */
+        public long getPrefetchesCancelled() {
+            return prefetchesCancelled;
+        }
+
+        public int getEntries() {
+            return entries;
+        }
+
+        /** Approximate bytes held, decoded pixels plus overhead. */
+        public long getWeight() {
+            return weight;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "hits=%d misses=%d coalesced=%d evictions=%d prefetched=%d cancelled=%d entries=%d weight=%dKB",
+                    hits, misses, coalesced, evictions, prefetched, prefetchesCancelled, entries, weight / 1024);
+        }
+    }
+
+    /** Prefetched thumbnails that are still loading; see {@link #prefetch}. */
+    public final class Prefetch {
+        private final List<Load> loads;
+        private boolean cancelled;
+
+        private Prefetch(List<Load> loads) {
+            this.loads = loads;
+        }
+
+        /** Drops the loads that have not started and that no visible cell or other prefetch waits for. */
+        public void cancel() {
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                cancelled = true;
+            }
+            for (Load load : loads) {
+                load.release();
+            }
+        }
+    }
+
+    /**
+     * One thumbnail being loaded, shared by every request for it until it is
+     * cached. Runs once, however many jobs were queued for it.
+     */
+    private final class Load {
+        private final int productId;
+        private final ThumbnailService.Size size;
+        private final long key;
+        private final CompletableFuture<Image> future = new CompletableFuture<>();
+        // Guarded by this
+        private boolean visible;
+        private int prefetchers;
+        private boolean started;
+        private boolean dropped;
+
+        private Load(int productId, ThumbnailService.Size size, long key) {
+            this.productId = productId;
+            this.size = size;
+            this.key = key;
+        }
+
+        /**
+         * Adds a waiter; false if the load was dropped meanwhile and must be
+         * requested again. The first visible cell to wait queues the load at
+         * visible priority, even if it is queued as a prefetch already.
+         */
+        private boolean join(boolean forVisibleCell) {
+            boolean queue;
+            synchronized (this) {
+                if (dropped) {
+                    return false;
+                }
+                queue = forVisibleCell && !visible && !started;
+                if (forVisibleCell) {
+                    visible = true;
+                } else {
+                    prefetchers++;
+                }
+            }
+            if (queue) {
+                loadExecutor.execute(new Job(this, Job.VISIBLE));
+            }
+            return true;
+        }
+
+        private void release() {
+            synchronized (this) {
+                prefetchers--;
+            }
+        }
+
+        private void run() {
+            boolean drop;
+            synchronized (this) {
+                if (started || dropped) {
+                    return;
+                }
+                drop = !visible && prefetchers <= 0;
+                dropped = drop;
+                started = !drop;
+            }
+            if (drop) {
+                prefetchesCancelled.increment();
+                pending.remove(key, this);
+                future.complete(null);
+                return;
+            }
+            load(this);
+        }
+    }
+
+    /** A queued run of a {@link Load}; visible-cell jobs go first, then oldest first. */
+    private static final class Job implements Runnable, Comparable<Job> {
+        private static final int VISIBLE = 0;
+        private static final int PREFETCH = 1;
+        private static final AtomicLong sequence = new AtomicLong();
+
+        private final Load load;
+        private final int priority;
+        private final long order = sequence.getAndIncrement();
+
+        private Job(Load load, int priority) {
+            this.load = load;
+            this.priority = priority;
+        }
+
+        @Override
+        public void run() {
+            load.run();
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            return priority != other.priority ? Integer.compare(priority, other.priority)
+                    : Long.compare(order, other.order);
+        }
+    }
+
+    /** A cached thumbnail; a null image means the product has none. */
+    private static final class Entry {
+        private final Image image;
+        private final long weight;
+
+        private Entry(Image image) {
+            this.image = image;
+            this.weight = ENTRY_WEIGHT + (image == null ? 0 : (long) image.getWidth() * (long) image.getHeight() * 4);
+        }
+    }
+
+    /** One lock's share of the cache, least recently used first. */
+    private final class Segment {
+        private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private final long maxWeight;
+        private long weight;
+
+        private Segment(long maxWeight) {
+            this.maxWeight = maxWeight;
+        }
+
+        private synchronized Entry get(long key) {
+            return entries.get(key);
+        }
+
+        private synchronized void put(long key, Entry entry) {
+            Entry previous = entries.put(key, entry);
+            weight += entry.weight - (previous == null ? 0 : previous.weight);
+            Iterator<Map.Entry<Long, Entry>> eldest = entries.entrySet().iterator();
+            // The entry just added stays even if it alone is over the budget
+            while (weight > maxWeight && entries.size() > 1) {
+                weight -= eldest.next().getValue().weight;
+                eldest.remove();
+                evictions.increment();
             }
-        });
+        }
 
-        this.executor = Executors.newFixedThreadPool(4, r -> {
-            Thread t = new Thread(r);
-            t.setDaemon(true);
-            t.setName("Image-Loader-Thread");
-            return t;
-        });
+        private synchronized void remove(long key) {
+            Entry removed = entries.remove(key);
+            if (removed != null) {
+                weight -= removed.weight;
+            }
+        }
+
+        private synchronized int size() {
+            return entries.size();
+        }
+
+        private synchronized long weight() {
+            return weight;
+        }
+    }
 
-        this.pendingRequests = ConcurrentHashMap.newKeySet();
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final Map<Long, Load> pending = new ConcurrentHashMap<>();
+    private final Loader loader;
+    private final Function<byte[], Image> decoder;
+    private final Executor loadExecutor;
+    private final Executor callbackExecutor;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder prefetched = new LongAdder();
+    private final LongAdder prefetchesCancelled = new LongAdder();
+
+    private ImageCacheService() {
+        this((productId, size) -> ThumbnailService.getInstance().getThumbnail(productId, size),
+                data -> new Image(new ByteArrayInputStream(data)), DEFAULT_MAX_WEIGHT,
+                // Executes Jobs, so the queue orders them by priority
+                new ThreadPoolExecutor(4, 4, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r);
+                    t.setDaemon(true);
+                    t.setName("Image-Loader-Thread");
+                    return t;
+                }), Platform::runLater);
+    }
+
+    /**
+     * @param decoder          turns thumbnail bytes into an image, on a loader thread
+     * @param maxWeight        approximate bytes the cache may hold
+     * @param loadExecutor     runs loads, given as {@link Comparable} jobs that a priority queue should order
+     * @param callbackExecutor runs load callbacks; the JavaFX Application Thread in the application
+     */
+    ImageCacheService(Loader loader, Function<byte[], Image> decoder, long maxWeight, Executor loadExecutor,
+            Executor callbackExecutor) {
+        this.loader = loader;
+        this.decoder = decoder;
+        this.loadExecutor = loadExecutor;
+        this.callbackExecutor = callbackExecutor;
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(maxWeight / SEGMENTS);
+        }
     }
 
     public static synchronized ImageCacheService getInstance() {
@@ -49,64 +346,135 @@ public class ImageCacheService {
         return instance;
     }
 
-    public Image getCachedImage(int productId) {
-        return cache.get(productId);
+    private static long key(int productId, ThumbnailService.Size size) {
+        return (long) productId * ThumbnailService.Size.values().length + size.ordinal();
+    }
+
+    private Segment segmentFor(long key) {
+        long h = key * 0x9E3779B97F4A7C15L; // spreads consecutive product ids over the segments
+        return segments[(int) (h >>> 60) & (SEGMENTS - 1)];
+    }
+
+    /** The cached thumbnail, or null if it is not cached or the product has no image. */
+    public Image getCachedImage(int productId, ThumbnailService.Size size) {
+        Entry entry = segmentFor(key(productId, size)).get(key(productId, size));
+        if (entry == null) {
+            return null;
+        }
+        hits.increment();
+        return entry.image;
+    }
+
+    /** Forgets a product's thumbnails, e.g. after its image was replaced. */
+    public void invalidate(int productId) {
+        for (ThumbnailService.Size size : ThumbnailService.Size.values()) {
+            long key = key(productId, size);
+            // A load still running then neither caches its result nor serves later requests
+            pending.remove(key);
+            segmentFor(key).remove(key);
+        }
     }
 
     /**
-     * Loads an image asynchronously.
+     * Loads a thumbnail asynchronously.
      * @param productId The product ID to load
-     * @param onSuccess Callback on JavaFX Application Thread with the loaded image
+     * @param size      The thumbnail size to show
+     * @param onSuccess Callback on JavaFX Application Thread with the loaded image;
+     *                  not called if the product has no image or it cannot be loaded
      */
-    public void loadImage(int productId, Consumer<Image> onSuccess) {
-        if (cache.containsKey(productId)) {
-            Image img = cache.get(productId);
-            if (img != null && onSuccess != null) {
-                onSuccess.accept(img);
+    public void loadImage(int productId, ThumbnailService.Size size, Consumer<Image> onSuccess) {
+        long key = key(productId, size);
+        Entry entry = segmentFor(key).get(key);
+        if (entry != null) {
+            hits.increment();
+            if (entry.image != null && onSuccess != null) {
+                onSuccess.accept(entry.image);
             }
             return;
         }
 
-        if (pendingRequests.contains(productId)) {
-            // Already loading, do nothing (or we could queue the callback, but simple dedup is fine for scrolling)
-            return;
+        misses.increment();
+        Load load = request(productId, size, key, true);
+        if (onSuccess != null) {
+            load.future.thenAccept(image -> {
+                if (image != null) {
+                    callbackExecutor.execute(() -> onSuccess.accept(image));
+                }
+            });
         }
+    }
 
-        pendingRequests.add(productId);
+    /**
+     * Starts loading the thumbnails of {@code productIds} that are not cached
+     * yet, behind any load a visible cell asked for, e.g. for the pages next to
+     * the one shown.
+     */
+    public Prefetch prefetch(Collection<Integer> productIds, ThumbnailService.Size size) {
+        List<Load> loads = new ArrayList<>();
+        for (int productId : productIds) {
+            long key = key(productId, size);
+            if (segmentFor(key).get(key) == null) {
+                loads.add(request(productId, size, key, false));
+            }
+        }
+        return new Prefetch(loads);
+    }
 
-        Task<byte[]> task = new Task<>() {
-            @Override
-            protected byte[] call() throws Exception {
-                try (ProductDAO dao = new ProductDAO()) {
-                    return dao.getProductImage(productId);
+    /** The load of {@code key}, joined if one is running, else started at the given priority. */
+    private Load request(int productId, ThumbnailService.Size size, long key, boolean forVisibleCell) {
+        while (true) {
+            Load created = new Load(productId, size, key);
+            Load load = pending.putIfAbsent(key, created);
+            if (load == null) {
+                created.join(forVisibleCell);
+                if (!forVisibleCell) {
+                    prefetched.increment();
+                    loadExecutor.execute(new Job(created, Job.PREFETCH));
                 }
+                return created;
             }
-        };
-
-        task.setOnSucceeded(e -> {
-            pendingRequests.remove(productId);
-            byte[] data = task.getValue();
-            Image img = null;
-            if (data != null && data.length > 0) {
-                try {
-                    img = new Image(new ByteArrayInputStream(data));
-                } catch (Exception ex) {
-                    // Invalid image
+            if (load.join(forVisibleCell)) {
+                if (forVisibleCell) {
+                    coalesced.increment();
                 }
+                return load;
             }
-            // Cache even nulls to avoid repeatedly trying to fetch missing images
-            cache.put(productId, img);
+            // Dropped just now; it removes itself, unless this does first
+            pending.remove(key, load);
+        }
+    }
 
-            if (img != null && onSuccess != null) {
-                onSuccess.accept(img);
+    private void load(Load load) {
+        Image image = null;
+        boolean loaded = false;
+        try {
+            byte[] data = loader.load(load.productId, load.size);
+            loaded = true;
+            if (data != null && data.length > 0) {
+                image = decoder.apply(data);
+                if (image.isError()) {
+                    image = null;
+                }
             }
-        });
-
-        task.setOnFailed(e -> {
-            pendingRequests.remove(productId);
-            // Optionally log error
-        });
+        } catch (Exception e) {
+            // Not cached, so the next request tries again
+            logger.warn("Could not load thumbnail of product {}", load.productId, e);
+        }
+        // Cache even nulls to avoid repeatedly trying to fetch missing images
+        if (pending.remove(load.key, load) && loaded) {
+            segmentFor(load.key).put(load.key, new Entry(image));
+        }
+        load.future.complete(image);
+    }
 
-        executor.submit(task);
+    public Stats getStats() {
+        int entries = 0;
+        long weight = 0;
+        for (Segment segment : segments) {
+            entries += segment.size();
+            weight += segment.weight();
+        }
+        return new Stats(hits.sum(), misses.sum(), coalesced.sum(), evictions.sum(), prefetched.sum(),
+                prefetchesCancelled.sum(), entries, weight);
     }
 }
@@ -0,0 +1,92 @@
+package com.pos.system.services;
+
+import com.pos.system.models.Product;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntFunction;
+
+/**
+ * Loads the thumbnails of the pages next to the one a paged grid shows, so
+ * paging forward or back finds them cached. Works on top of
+ * {@link ImageCacheService#prefetch}, so prefetching never delays the images
+ * of the page on screen.
+ * <p>
+ * The grid reports each page it shows with {@link #pageShown(int)}, which
+ * cancels what was prefetched for pages that are no longer next to it, and
+ * calls {@link #prefetchAround} once that page has settled.
+ */
+public class ImagePrefetcher {
+    private final ImageCacheService cache;
+    private final ThumbnailService.Size size;
+
+    // Guarded by this
+    private final Map<Integer, ImageCacheService.Prefetch> prefetches = new HashMap<>();
+    private int currentPage = -1;
+    private long generation;
+
+    public ImagePrefetcher(ImageCacheService cache, ThumbnailService.Size size) {
+        this.cache = cache;
+        this.size = size;
+    }
+
+    /** The grid now shows {@code pageIndex}; prefetches for pages away from it are cancelled. */
+    public synchronized void pageShown(int pageIndex) {
+        currentPage = pageIndex;
+        Iterator<Map.Entry<Integer, ImageCacheService.Prefetch>> it = prefetches.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, ImageCacheService.Prefetch> entry = it.next();
+            if (Math.abs(entry.getKey() - pageIndex) > 1) {
+                entry.getValue().cancel();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Prefetches the pages before and after {@code pageIndex}, the next one
+     * first, if the grid still shows it.
+     *
+     * @param pages reads a page's products; may complete later, e.g. from the database
+     */
+    public void prefetchAround(int pageIndex, int pageCount, IntFunction<CompletableFuture<List<Product>>> pages) {
+        long requested;
+        synchronized (this) {
+            if (pageIndex != currentPage) {
+                return;
+            }
+            requested = generation;
+        }
+        for (int neighbour : new int[] { pageIndex + 1, pageIndex - 1 }) {
+            if (neighbour < 0 || neighbour >= pageCount || isPrefetched(neighbour)) {
+                continue;
+            }
+            pages.apply(neighbour).thenAccept(products -> prefetch(neighbour, products, requested));
+        }
+    }
+
+    /** Cancels every prefetch, e.g. when the grid shows a different list. */
+    public synchronized void reset() {
+        generation++;
+        currentPage = -1;
+        for (ImageCacheService.Prefetch prefetch : prefetches.values()) {
+            prefetch.cancel();
+        }
+        prefetches.clear();
+    }
+
+    private synchronized boolean isPrefetched(int pageIndex) {
+        return prefetches.containsKey(pageIndex);
+    }
+
+    private synchronized void prefetch(int pageIndex, List<Product> products, long requested) {
+        // The grid may have moved on, or to another list, while the page was read
+        if (requested != generation || Math.abs(pageIndex - currentPage) > 1 || prefetches.containsKey(pageIndex)) {
+            return;
+        }
+        prefetches.put(pageIndex, cache.prefetch(products.stream().map(Product::getId).toList(), size));
+    }
+}
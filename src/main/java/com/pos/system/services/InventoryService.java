@@ -2,15 +2,20 @@ package com.pos.system.services;
 
 import com.pos.system.dao.BatchDAO;
 import com.pos.system.dao.InventoryTransactionDAO;
+import com.pos.system.dao.ProductDAO;
 import com.pos.system.models.Batch;
 import com.pos.system.models.InventoryTransaction;
+import com.pos.system.models.SaleItem;
 import com.pos.system.models.TransactionType;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 public class InventoryService {
@@ -64,11 +69,11 @@ public class InventoryService {
             txDAO.insertTransaction(tx);
 
             // 3. Update Cached Product Stock
-            updateCachedProductStock(conn, productId, txDAO);
+            applyStockDelta(conn, productId, quantity);
 
-            // 4. Audit Log
+            // 4. Audit Log, on this connection so it commits with the stock change
             if (securityService != null) {
-                securityService.logAction(createdBy, "STOCK_PURCHASE", "Product", String.valueOf(productId),
+                securityService.logAction(conn, createdBy, "STOCK_PURCHASE", "Product", String.valueOf(productId),
                         "Qty added: " + quantity + ", Ref: " + referenceId);
             }
         }
@@ -118,10 +123,107 @@ public class InventoryService {
             }
 
             // Sync cache
-            updateCachedProductStock(conn, productId, txDAO);
+            applyStockDelta(conn, productId, -quantityToDeduct);
         }
     }
 
+    /**
+     * Deducts stock for a whole basket in one pass. Available batches for every
+     * product are fetched with a single query, FEFO allocation happens in memory,
+     * and the batch updates and ledger rows are written as JDBC batches, so the
+     * statement count stays flat as the basket grows. Lines for the same product
+     * are merged before allocation.
+     */
+    public void deductStockForItems(Connection conn, List<SaleItem> items, TransactionType type,
+            String referenceId, Integer createdBy) throws SQLException {
+        deductStockForItems(conn, items, type, referenceId, createdBy, false);
+    }
+
+    /**
+     * Like {@link #deductStockForItems}, for goods that have already left the
+     * store, such as a paid sale replayed from the checkout journal. Quantity
+     * the batches cannot cover is still taken off the product's stock, which
+     * may go negative, as a ledger row without a batch, and a
+     * {@code STOCK_SHORTFALL} audit entry is written on {@code conn} so the
+     * gap can be reconciled.
+     *
+     * @return the quantity short per product; empty if the batches covered it
+     */
+    public Map<Integer, Integer> deductStockAllowingShortfall(Connection conn, List<SaleItem> items,
+            TransactionType type, String referenceId, Integer createdBy) throws SQLException {
+        return deductStockForItems(conn, items, type, referenceId, createdBy, true);
+    }
+
+    private Map<Integer, Integer> deductStockForItems(Connection conn, List<SaleItem> items, TransactionType type,
+            String referenceId, Integer createdBy, boolean allowShortfall) throws SQLException {
+        Map<Integer, Integer> quantityByProduct = new LinkedHashMap<>();
+        for (SaleItem item : items) {
+            if (item.getQuantity() <= 0) {
+                throw new IllegalArgumentException("Quantity to deduct must be positive.");
+            }
+            quantityByProduct.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+        }
+        Map<Integer, Integer> shortByProduct = new LinkedHashMap<>();
+        if (quantityByProduct.isEmpty()) {
+            return shortByProduct;
+        }
+
+        try (BatchDAO batchDAO = getBatchDAO(conn);
+                InventoryTransactionDAO txDAO = getInventoryTransactionDAO(conn)) {
+
+            Map<Integer, List<Batch>> batchesByProduct = batchDAO
+                    .getAvailableBatchesForProducts(quantityByProduct.keySet());
+
+            Map<Integer, Integer> remainingByBatchId = new LinkedHashMap<>();
+            List<InventoryTransaction> ledgerRows = new ArrayList<>();
+
+            for (Map.Entry<Integer, Integer> entry : quantityByProduct.entrySet()) {
+                int productId = entry.getKey();
+                int remainingToDeduct = entry.getValue();
+
+                for (Batch batch : batchesByProduct.getOrDefault(productId, List.of())) {
+                    if (remainingToDeduct <= 0)
+                        break;
+
+                    int batchQty = batch.getRemainingQuantity();
+                    int deductionFromThisBatch = Math.min(batchQty, remainingToDeduct);
+
+                    remainingByBatchId.put(batch.getId(), batchQty - deductionFromThisBatch);
+                    ledgerRows.add(new InventoryTransaction(0, productId, batch.getId(), -deductionFromThisBatch,
+                            type, referenceId, null, createdBy));
+
+                    remainingToDeduct -= deductionFromThisBatch;
+                }
+
+                if (remainingToDeduct > 0) {
+                    if (!allowShortfall) {
+                        throw new SQLException("Insufficient stock to fulfill deduction for Product ID: " + productId
+                                + " Short by: " + remainingToDeduct);
+                    }
+                    ledgerRows.add(new InventoryTransaction(0, productId, null, -remainingToDeduct, type,
+                            referenceId, null, createdBy));
+                    shortByProduct.put(productId, remainingToDeduct);
+                }
+            }
+
+            batchDAO.updateRemainingQuantities(remainingByBatchId);
+            txDAO.insertTransactions(ledgerRows);
+
+            // Sync cache
+            Map<Integer, Integer> deltaByProduct = new LinkedHashMap<>();
+            quantityByProduct.forEach((productId, quantity) -> deltaByProduct.put(productId, -quantity));
+            applyStockDeltas(conn, deltaByProduct);
+
+            if (securityService != null) {
+                for (Map.Entry<Integer, Integer> entry : shortByProduct.entrySet()) {
+                    securityService.logAction(conn, createdBy, "STOCK_SHORTFALL", "Product",
+                            String.valueOf(entry.getKey()), "Short by: " + entry.getValue() + ", Ref: " + referenceId);
+                }
+            }
+        }
+        return shortByProduct;
+    }
+
     /**
      * Generic adjustments (audits, shrinkage, found stock, etc).
      */
@@ -141,31 +243,49 @@ public class InventoryService {
                         createdBy);
             }
 
-            // Audit Log
+            // Audit Log, on this connection so it commits with the stock change
             if (securityService != null) {
-                securityService.logAction(createdBy, "STOCK_ADJUSTMENT", "Product", String.valueOf(productId),
+                securityService.logAction(conn, createdBy, "STOCK_ADJUSTMENT", "Product", String.valueOf(productId),
                         "Qty change: " + quantityChange + ", Ref: " + referenceId);
             }
         }
     }
 
     /**
-     * Hydrates the physical 'stock' column on the products table using the absolute
-     * summation of ledger histories.
-     * This acts as a hyper-fast read cache for UI grids.
+     * Keeps the physical 'stock' column on the products table in step with the
+     * ledger by applying the same delta that was just written to it. Runs on the
+     * caller's connection so it commits or rolls back with the ledger rows, and
+     * costs the same regardless of how much history the product has.
+     * {@link StockReconciliationService} checks the counters against the full
+     * ledger in the background.
      */
-    private void updateCachedProductStock(Connection conn, int productId, InventoryTransactionDAO txDAO)
-            throws SQLException {
-        int actualStock = txDAO.calculateStockLevel(productId);
-
-        String sql = "UPDATE products SET stock = ? WHERE id = ?";
+    private void applyStockDelta(Connection conn, int productId, int delta) throws SQLException {
+        String sql = "UPDATE products SET stock = stock + ?, version = " + ProductDAO.NEXT_VERSION
+                + ", updated_at = CURRENT_TIMESTAMP WHERE id = ?";
         try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setInt(1, actualStock);
+            stmt.setInt(1, delta);
             stmt.setInt(2, productId);
             stmt.executeUpdate();
         }
     }
 
+    /**
+     * Batched variant of {@link #applyStockDelta} for several products touched by
+     * the same operation.
+     */
+    private void applyStockDeltas(Connection conn, Map<Integer, Integer> deltaByProduct) throws SQLException {
+        String sql = "UPDATE products SET stock = stock + ?, version = " + ProductDAO.NEXT_VERSION
+                + ", updated_at = CURRENT_TIMESTAMP WHERE id = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (Map.Entry<Integer, Integer> entry : deltaByProduct.entrySet()) {
+                stmt.setInt(1, entry.getValue());
+                stmt.setInt(2, entry.getKey());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
     /**
      * Automatically scans for natively expired Batches, removes them from
      * circulation, and logs an EXPIRE transaction.
@@ -188,7 +308,7 @@ public class InventoryService {
                 txDAO.insertTransaction(tx);
 
                 // Update Cache
-                updateCachedProductStock(conn, batch.getProductId(), txDAO);
+                applyStockDelta(conn, batch.getProductId(), -quantityToExpire);
             }
         }
     }
@@ -201,4 +321,33 @@ public class InventoryService {
             return txDAO.getTransactionHistory(productId);
         }
     }
+
+    /**
+     * Retrieves the most recent ledger entries for a specific product.
+     */
+    public List<InventoryTransaction> getTransactionHistory(Connection conn, int productId, int limit)
+            throws SQLException {
+        try (InventoryTransactionDAO txDAO = getInventoryTransactionDAO(conn)) {
+            return txDAO.getTransactionHistory(productId, limit);
+        }
+    }
+
+    /**
+     * Ledger balance for a product, read from the newest stock snapshot plus the
+     * ledger tail after it.
+     */
+    public int getStockLevel(Connection conn, int productId) throws SQLException {
+        try (InventoryTransactionDAO txDAO = getInventoryTransactionDAO(conn)) {
+            return txDAO.calculateStockLevel(productId);
+        }
+    }
+
+    /**
+     * Point-in-time ledger balance for a product.
+     */
+    public int getStockLevelAt(Connection conn, int productId, LocalDateTime at) throws SQLException {
+        try (InventoryTransactionDAO txDAO = getInventoryTransactionDAO(conn)) {
+            return txDAO.calculateStockLevelAt(productId, at);
+        }
+    }
 }
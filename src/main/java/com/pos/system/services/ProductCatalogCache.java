@@ -0,0 +1,369 @@
+package com.pos.system.services;
+
+import com.pos.system.dao.BaseDAO;
+import com.pos.system.dao.CategoryDAO;
+import com.pos.system.dao.ProductDAO;
+import com.pos.system.models.Category;
+import com.pos.system.models.Product;
+import com.pos.system.utils.AppDataUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * The product catalog, held for the life of the process in a
+ * {@link CatalogIndex} so barcode scans and POS searches are answered without
+ * touching the database.
+ * <p>
+ * It is warmed in the background at startup and kept current by
+ * {@link #productSaved(int)} and {@link #productDeleted(int)}, which screens
+ * that change products call once their write has committed, and by
+ * {@link #refreshChanged()}, which catches up on every product whose catalog
+ * version moved since the last load, e.g. the stock of a sale. A barcode that is
+ * not cached yet, e.g. one added from another till, falls back to a query
+ * without the image column and is cached from then on.
+ * <p>
+ * Reloads and updates run one at a time on a single background thread, so an
+ * update is never lost to a reload that started before it. Readers always see
+ * either the old or the new index.
+ * <p>
+ * Between runs the catalog is kept in a {@link CatalogSnapshot}.
+ * {@link #warmStart()} shows it straight away and then reconciles it with the
+ * database, so the POS can sell from the last known catalog while the
+ * database is still opening.
+ */
+public class ProductCatalogCache {
+    private static final Logger logger = LoggerFactory.getLogger(ProductCatalogCache.class);
+
+    private static final ProductCatalogCache instance = new ProductCatalogCache(
+            () -> BaseDAO.forReading(ProductDAO::new),
+            () -> {
+                try (CategoryDAO dao = BaseDAO.forReading(CategoryDAO::new)) {
+                    return dao.getAllCategories();
+                }
+            },
+            AppDataUtils.getCatalogSnapshotPath(),
+            Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "Catalog-Cache");
+                t.setDaemon(true);
+                return t;
+            }));
+
+    /** Opens a DAO for one read; it is closed straight after. */
+    @FunctionalInterface
+    public interface DaoSource {
+        ProductDAO open() throws SQLException;
+    }
+
+    /** Reads the category list, kept alongside the products in the snapshot. */
+    @FunctionalInterface
+    public interface CategorySource {
+        List<Category> load() throws SQLException;
+    }
+
+    /**
+     * Told about changes on the cache's background thread. Listeners are held
+     * weakly, so the owner must keep its own reference for as long as it wants
+     * to hear about changes.
+     */
+    public interface Listener {
+        void catalogReloaded();
+
+        /** {@code product} is null when the product was deleted. */
+        void productChanged(int productId, Product product);
+    }
+
+    private final DaoSource daoSource;
+    private final CategorySource categorySource;
+    private final Path snapshotPath;
+    private final Executor updates;
+    private final Set<Listener> listeners = Collections.synchronizedSet(
+            Collections.newSetFromMap(new WeakHashMap<>()));
+    private volatile CatalogIndex index = new CatalogIndex();
+    private volatile boolean loaded;
+    private volatile List<Category> categories = List.of();
+    // Catalog version the cache has caught up to; only touched on the update thread
+    private long knownVersion;
+
+    /** A cache without categories or a snapshot, e.g. for tests. */
+    public ProductCatalogCache(DaoSource daoSource, Executor updates) {
+        this(daoSource, null, null, updates);
+    }
+
+    /**
+     * @param categorySource read with every full load, or null to keep no categories
+     * @param snapshotPath   where the catalog is kept between runs, or null for none
+     */
+    public ProductCatalogCache(DaoSource daoSource, CategorySource categorySource, Path snapshotPath,
+            Executor updates) {
+        this.daoSource = daoSource;
+        this.categorySource = categorySource;
+        this.snapshotPath = snapshotPath;
+        this.updates = updates;
+    }
+
+    public static ProductCatalogCache getInstance() {
+        return instance;
+    }
+
+    /** The current index. Replaced, not modified, by {@link #reload()}. */
+    public CatalogIndex getIndex() {
+        return index;
+    }
+
+    /** Whether a full load, or a snapshot, has been installed at least once. */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /** The categories as of the last full load or snapshot; empty until then. */
+    public List<Category> getCategories() {
+        return categories;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /** Loads every product, without images, into a fresh index and swaps it in. */
+    public CompletableFuture<Void> reload() {
+        return CompletableFuture.runAsync(() -> {
+            loadAll();
+            writeSnapshot();
+        }, updates);
+    }
+
+    /**
+     * Installs the catalog saved by the last run, if there is a usable one,
+     * then brings it up to date with the database in the background: only the
+     * changes since the snapshot's catalog version are applied, and the
+     * catalog is loaded in full if the snapshot does not belong to this
+     * database. Without a snapshot this is a {@link #reload()}. Completes
+     * with whether a snapshot was shown, as soon as it is; the reconciliation
+     * is queued after it.
+     */
+    public CompletableFuture<Boolean> warmStart() {
+        return CompletableFuture.supplyAsync(() -> {
+            CatalogSnapshot snapshot = snapshotPath != null ? CatalogSnapshot.read(snapshotPath) : null;
+            if (snapshot == null) {
+                CompletableFuture.runAsync(() -> {
+                    loadAll();
+                    writeSnapshot();
+                }, updates);
+                return false;
+            }
+            index = snapshot.getIndex();
+            knownVersion = snapshot.getCatalogVersion();
+            categories = snapshot.getCategories();
+            loaded = true;
+            logger.info("Product catalog restored from snapshot: {} products", index.size());
+            notifyReloaded();
+            CompletableFuture.runAsync(this::reconcile, updates);
+            return true;
+        }, updates);
+    }
+
+    /** Saves the catalog for the next {@link #warmStart()}, e.g. when the application closes. */
+    public CompletableFuture<Void> saveSnapshot() {
+        return CompletableFuture.runAsync(this::writeSnapshot, updates);
+    }
+
+    /**
+     * Applies only the products added, changed or deleted since the cache last
+     * caught up, instead of reloading the catalog. Completes with the number of
+     * products applied. Falls back to {@link #reload()} if nothing is loaded yet.
+     */
+    public CompletableFuture<Integer> refreshChanged() {
+        if (!loaded) {
+            return reload().thenApply(ignored -> index.size());
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try (ProductDAO dao = daoSource.open()) {
+                return applyChangesSince(dao, dao.getCatalogVersion());
+            } catch (SQLException e) {
+                logger.error("Could not refresh changed products", e);
+                throw new CompletionException(e);
+            }
+        }, updates);
+    }
+
+    /** The cached product with this barcode, or null. Never queries the database. */
+    public Product findByBarcode(String barcode) {
+        return index.getByBarcode(barcode);
+    }
+
+    public Product findById(int productId) {
+        return index.getById(productId);
+    }
+
+    /**
+     * Completes with the product for a scanned barcode, or null if there is
+     * none. A cache hit completes immediately on the calling thread.
+     */
+    public CompletableFuture<Product> lookupBarcode(String barcode) {
+        Product cached = index.getByBarcode(barcode);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            // A reload or update queued ahead of this lookup may have added it
+            Product product = index.getByBarcode(barcode);
+            if (product != null) {
+                return product;
+            }
+            try (ProductDAO dao = daoSource.open()) {
+                product = dao.getProductSummaryByBarcode(barcode);
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+            if (product != null) {
+                apply(product.getId(), product);
+            }
+            return product;
+        }, updates);
+    }
+
+    /** Re-reads one product after it was added or edited. */
+    public CompletableFuture<Void> productSaved(int productId) {
+        return CompletableFuture.runAsync(() -> {
+            try (ProductDAO dao = daoSource.open()) {
+                apply(productId, dao.getProductSummaryById(productId));
+            } catch (SQLException e) {
+                logger.error("Could not refresh cached product {}", productId, e);
+                throw new CompletionException(e);
+            }
+        }, updates);
+    }
+
+    /** Replaces a cached product with a copy the caller already has, e.g. after a sale. */
+    public CompletableFuture<Void> productUpdated(Product product) {
+        return CompletableFuture.runAsync(() -> apply(product.getId(), product), updates);
+    }
+
+    public CompletableFuture<Void> productDeleted(int productId) {
+        return CompletableFuture.runAsync(() -> apply(productId, null), updates);
+    }
+
+    private void loadAll() {
+        CatalogIndex fresh = new CatalogIndex();
+        List<Category> freshCategories = categories;
+        try (ProductDAO dao = daoSource.open()) {
+            // Version first, so a change made during the load is picked up again later
+            knownVersion = dao.getCatalogVersion();
+            fresh.rebuild(dao.getAllProductsSummary());
+            if (categorySource != null) {
+                freshCategories = List.copyOf(categorySource.load());
+            }
+        } catch (SQLException e) {
+            logger.error("Could not load the product catalog", e);
+            throw new CompletionException(e);
+        }
+        index = fresh;
+        categories = freshCategories;
+        loaded = true;
+        logger.info("Product catalog cached: {} products", fresh.size());
+        notifyReloaded();
+    }
+
+    /** Applies the products changed between {@code knownVersion} and {@code version}; returns how many. */
+    private int applyChangesSince(ProductDAO dao, long version) throws SQLException {
+        if (version == knownVersion) {
+            return 0;
+        }
+        List<Product> changed = dao.getProductsChangedSince(knownVersion);
+        List<Integer> deleted = dao.getProductIdsDeletedSince(knownVersion);
+        for (Product product : changed) {
+            apply(product.getId(), product);
+        }
+        for (int productId : deleted) {
+            apply(productId, null);
+        }
+        knownVersion = version;
+        return changed.size() + deleted.size();
+    }
+
+    /**
+     * Brings a catalog restored from a snapshot up to date. A database whose
+     * catalog version is behind the snapshot, or whose categories or product
+     * count differ after catching up, is not the one the snapshot was taken
+     * from, e.g. a restored backup, so it is loaded in full instead.
+     */
+    private void reconcile() {
+        boolean stale;
+        try (ProductDAO dao = daoSource.open()) {
+            long version = dao.getCatalogVersion();
+            List<Category> current = categorySource != null ? List.copyOf(categorySource.load()) : categories;
+            stale = version < knownVersion || !current.equals(categories);
+            if (!stale) {
+                int applied = applyChangesSince(dao, version);
+                stale = index.size() != dao.countProducts(null);
+                if (!stale && applied == 0) {
+                    logger.info("Catalog snapshot is current");
+                    return;
+                }
+                logger.info("Catalog snapshot caught up: {} products changed", applied);
+            }
+        } catch (SQLException e) {
+            // The snapshot stays in use; the next refresh or reload catches up
+            logger.error("Could not reconcile the catalog snapshot", e);
+            return;
+        }
+        if (stale) {
+            logger.info("Catalog snapshot does not match the database; reloading");
+            loadAll();
+        }
+        writeSnapshot();
+    }
+
+    private void writeSnapshot() {
+        if (snapshotPath == null || !loaded) {
+            return;
+        }
+        try {
+            new CatalogSnapshot(knownVersion, categories, index).write(snapshotPath);
+        } catch (IOException e) {
+            logger.warn("Could not save the catalog snapshot to {}", snapshotPath, e);
+        }
+    }
+
+    private void notifyReloaded() {
+        for (Listener listener : snapshotListeners()) {
+            listener.catalogReloaded();
+        }
+    }
+
+    private void apply(int productId, Product product) {
+        if (product != null) {
+            index.put(product);
+        } else if (index.getById(productId) != null) {
+            index.remove(productId);
+        } else {
+            return;
+        }
+        for (Listener listener : snapshotListeners()) {
+            listener.productChanged(productId, product);
+        }
+    }
+
+    private List<Listener> snapshotListeners() {
+        synchronized (listeners) {
+            return new ArrayList<>(listeners);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.pos.system.services;
+
+import com.pos.system.dao.ProductDAO;
+import com.pos.system.models.Product;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Pages through the product catalog in (name, id) order, reading one page at
+ * a time from the database with keyset paging, so memory use and the time to
+ * show the first page do not grow with the catalog.
+ * <p>
+ * The last {@value #CACHED_PAGES} pages are kept, and serving a page starts
+ * loading the next one in the background. The key a page starts after is
+ * remembered when the page before it is loaded; jumping further ahead finds
+ * it with an index-only skip.
+ */
+public class ProductPageSource {
+    private static final Logger logger = LoggerFactory.getLogger(ProductPageSource.class);
+
+    static final int CACHED_PAGES = 5;
+
+    private final ProductCatalogCache.DaoSource daoSource;
+    private final Integer categoryId;
+    private final int pageSize;
+    private final Executor executor;
+
+    private final Map<Integer, List<Product>> pages = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<Product>> eldest) {
+            return size() > CACHED_PAGES;
+        }
+    };
+    // Last product of page N, i.e. the key page N + 1 starts after
+    private final Map<Integer, Product> pageEnds = new HashMap<>();
+    private final Map<Integer, CompletableFuture<List<Product>>> inFlight = new HashMap<>();
+    private Integer totalCount;
+    private long generation;
+
+    /**
+     * @param categoryId lists one category, or every product when null
+     * @param executor   runs the database reads
+     */
+    public ProductPageSource(ProductCatalogCache.DaoSource daoSource, Integer categoryId, int pageSize,
+            Executor executor) {
+        this.daoSource = daoSource;
+        this.categoryId = categoryId;
+        this.pageSize = pageSize;
+        this.executor = executor;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public Integer getCategoryId() {
+        return categoryId;
+    }
+
+    public synchronized CompletableFuture<Integer> getTotalCount() {
+        if (totalCount != null) {
+            return CompletableFuture.completedFuture(totalCount);
+        }
+        long requested = generation;
+        return CompletableFuture.supplyAsync(() -> {
+            try (ProductDAO dao = daoSource.open()) {
+                int count = dao.countProducts(categoryId);
+                synchronized (this) {
+                    if (requested == generation) {
+                        totalCount = count;
+                    }
+                }
+                return count;
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    public int getPageCount(int totalCount) {
+        return Math.max(1, (totalCount + pageSize - 1) / pageSize);
+    }
+
+    /**
+     * The products on page {@code pageIndex}, from the cache if it is there.
+     * The following page is prefetched either way.
+     */
+    public CompletableFuture<List<Product>> getPage(int pageIndex) {
+        CompletableFuture<List<Product>> page = load(pageIndex);
+        page.thenAccept(products -> {
+            if (products.size() == pageSize) {
+                load(pageIndex + 1);
+            }
+        });
+        return page;
+    }
+
+    /** Whether a page is cached, so it can be shown without waiting. */
+    public synchronized boolean isCached(int pageIndex) {
+        return pages.containsKey(pageIndex);
+    }
+
+    /** Drops every cached page and the count, e.g. after products changed. */
+    public synchronized void invalidate() {
+        generation++;
+        pages.clear();
+        pageEnds.clear();
+        inFlight.clear();
+        totalCount = null;
+    }
+
+    private synchronized CompletableFuture<List<Product>> load(int pageIndex) {
+        List<Product> cached = pages.get(pageIndex);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        CompletableFuture<List<Product>> pending = inFlight.get(pageIndex);
+        if (pending != null) {
+            return pending;
+        }
+        long requested = generation;
+        CompletableFuture<List<Product>> future = CompletableFuture.supplyAsync(() -> fetch(pageIndex, requested),
+                executor);
+        inFlight.put(pageIndex, future);
+        return future;
+    }
+
+    private List<Product> fetch(int pageIndex, long requested) {
+        try (ProductDAO dao = daoSource.open()) {
+            Product after = null;
+            if (pageIndex > 0) {
+                synchronized (this) {
+                    after = pageEnds.get(pageIndex - 1);
+                }
+                if (after == null) {
+                    after = dao.getProductAtPosition(pageIndex * pageSize - 1, categoryId);
+                    if (after == null) {
+                        return finish(pageIndex, requested, List.of());
+                    }
+                }
+            }
+            List<Product> products = after == null
+                    ? dao.getProductPage(null, 0, categoryId, pageSize)
+                    : dao.getProductPage(after.getName(), after.getId(), categoryId, pageSize);
+            return finish(pageIndex, requested, products);
+        } catch (SQLException e) {
+            logger.error("Could not load product page {}", pageIndex, e);
+            synchronized (this) {
+                if (requested == generation) {
+                    inFlight.remove(pageIndex);
+                }
+            }
+            throw new CompletionException(e);
+        }
+    }
+
+    private synchronized List<Product> finish(int pageIndex, long requested, List<Product> products) {
+        // Pages read before an invalidate are handed to whoever asked, but not kept
+        if (requested == generation) {
+            inFlight.remove(pageIndex);
+            pages.put(pageIndex, products);
+            if (!products.isEmpty()) {
+                pageEnds.put(pageIndex, products.get(products.size() - 1));
+            }
+        }
+        return products;
+    }
+}
@@ -0,0 +1,342 @@
+package com.pos.system.services;
+
+import com.pos.system.models.Product;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column-per-field storage for the catalog behind {@link CatalogIndex}, so a
+ * very large catalog costs a few primitive arrays instead of a
+ * {@link Product} and its Strings per row.
+ * <p>
+ * Numbers live in parallel primitive arrays indexed by slot. Category names are
+ * interned into a small table. Names and barcodes, both as shown and in the
+ * index's normalized form, are runs of one shared {@code char} buffer.
+ * Rewriting a slot appends its new text, and the buffer is compacted once
+ * most of it is dead. {@link #get(int)} builds a new {@code Product} from the
+ * columns, so products are only materialized for the rows actually shown.
+ * The store carries no image data.
+ * <p>
+ * Not thread-safe; {@link CatalogIndex} guards it.
+ */
+final class ProductStore {
+    private static final int NO_TEXT = -1;
+
+    // Fields, per slot
+    private int[] ids;
+    private int[] categoryIds;
+    private int[] categoryNameRefs;
+    private double[] costPrices;
+    private double[] sellingPrices;
+    private int[] stocks;
+    private long[] versions;
+    private boolean[] live;
+
+    // Text runs in the shared buffer, per slot: offset then length (NO_TEXT for null)
+    private static final int NAME = 0;
+    private static final int BARCODE = 1;
+    private static final int NORMALIZED_NAME = 2;
+    private static final int NORMALIZED_BARCODE = 3;
+    private static final int TEXT_FIELDS = 4;
+    private int[] textRuns;
+
+    private char[] text = new char[1024];
+    private int textLength;
+    private int deadText;
+
+    private final List<String> categoryNames = new ArrayList<>();
+    private final Map<String, Integer> categoryNameRefsByName = new HashMap<>();
+
+    ProductStore(int capacity) {
+        ids = new int[capacity];
+        categoryIds = new int[capacity];
+        categoryNameRefs = new int[capacity];
+        costPrices = new double[capacity];
+        sellingPrices = new double[capacity];
+        stocks = new int[capacity];
+        versions = new long[capacity];
+        live = new boolean[capacity];
+        textRuns = new int[capacity * TEXT_FIELDS * 2];
+    }
+
+    /** Reads a store written by {@link #writeTo}, holding exactly the slots written. */
+    static ProductStore readFrom(CatalogSnapshot.Reader reader) {
+        ProductStore store = new ProductStore(0);
+        store.ids = reader.readInts();
+        store.categoryIds = reader.readInts();
+        store.categoryNameRefs = reader.readInts();
+        store.costPrices = reader.readDoubles();
+        store.sellingPrices = reader.readDoubles();
+        store.stocks = reader.readInts();
+        store.versions = reader.readLongs();
+        store.live = reader.readBooleans();
+        store.textRuns = reader.readInts();
+        store.text = reader.readChars();
+        store.textLength = store.text.length;
+        store.deadText = reader.readInt();
+        int categoryCount = reader.readCount(Integer.BYTES);
+        for (int i = 0; i < categoryCount; i++) {
+            String name = reader.readString();
+            store.categoryNameRefsByName.put(name, i);
+            store.categoryNames.add(name);
+        }
+        int slots = store.ids.length;
+        if (store.categoryIds.length != slots || store.categoryNameRefs.length != slots
+                || store.costPrices.length != slots || store.sellingPrices.length != slots
+                || store.stocks.length != slots || store.versions.length != slots || store.live.length != slots
+                || store.textRuns.length != slots * TEXT_FIELDS * 2) {
+            throw new IllegalStateException("inconsistent product store");
+        }
+        return store;
+    }
+
+    void writeTo(CatalogSnapshot.Writer writer, int slots) throws IOException {
+        writer.writeInts(ids, slots);
+        writer.writeInts(categoryIds, slots);
+        writer.writeInts(categoryNameRefs, slots);
+        writer.writeDoubles(costPrices, slots);
+        writer.writeDoubles(sellingPrices, slots);
+        writer.writeInts(stocks, slots);
+        writer.writeLongs(versions, slots);
+        writer.writeBooleans(live, slots);
+        writer.writeInts(textRuns, slots * TEXT_FIELDS * 2);
+        writer.writeChars(text, textLength);
+        writer.writeInt(deadText);
+        writer.writeInt(categoryNames.size());
+        for (String name : categoryNames) {
+            writer.writeString(name);
+        }
+    }
+
+    int capacity() {
+        return ids.length;
+    }
+
+    void grow(int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        categoryIds = Arrays.copyOf(categoryIds, capacity);
+        categoryNameRefs = Arrays.copyOf(categoryNameRefs, capacity);
+        costPrices = Arrays.copyOf(costPrices, capacity);
+        sellingPrices = Arrays.copyOf(sellingPrices, capacity);
+        stocks = Arrays.copyOf(stocks, capacity);
+        versions = Arrays.copyOf(versions, capacity);
+        live = Arrays.copyOf(live, capacity);
+        textRuns = Arrays.copyOf(textRuns, capacity * TEXT_FIELDS * 2);
+    }
+
+    /** Writes every field of {@code product} into {@code slot}, with its normalized name and barcode. */
+    void set(int slot, Product product, char[] normalizedName, char[] normalizedBarcode) {
+        if (live[slot]) {
+            release(slot);
+        }
+        ids[slot] = product.getId();
+        categoryIds[slot] = product.getCategoryId();
+        categoryNameRefs[slot] = internCategory(product.getCategory());
+        costPrices[slot] = product.getCostPrice();
+        sellingPrices[slot] = product.getSellingPrice();
+        stocks[slot] = product.getStock();
+        versions[slot] = product.getVersion();
+        live[slot] = true;
+        putText(slot, NAME, product.getName());
+        putText(slot, BARCODE, product.getBarcode());
+        putText(slot, NORMALIZED_NAME, normalizedName);
+        if (sameText(slot, BARCODE, normalizedBarcode)) {
+            // Most barcodes are already in normalized form, so share the run
+            textRuns[run(slot, NORMALIZED_BARCODE)] = textRuns[run(slot, BARCODE)];
+            textRuns[run(slot, NORMALIZED_BARCODE) + 1] = normalizedBarcode.length;
+        } else {
+            putText(slot, NORMALIZED_BARCODE, normalizedBarcode);
+        }
+        if (deadText > 4096 && deadText > textLength - deadText) {
+            compactText();
+        }
+    }
+
+    /**
+     * Marks a slot empty. Its fields stay readable, so rows of a result taken
+     * before the removal still show the last known product.
+     */
+    void remove(int slot) {
+        live[slot] = false;
+    }
+
+    boolean isLive(int slot) {
+        return live[slot];
+    }
+
+    /** A new, independent {@code Product} with the slot's fields, without image data. */
+    Product get(int slot) {
+        Product product = new Product(ids[slot], string(slot, BARCODE), string(slot, NAME), categoryIds[slot],
+                categoryNames.get(categoryNameRefs[slot]), costPrices[slot], sellingPrices[slot], stocks[slot],
+                null);
+        product.setVersion(versions[slot]);
+        return product;
+    }
+
+    int id(int slot) {
+        return ids[slot];
+    }
+
+    int categoryId(int slot) {
+        return categoryIds[slot];
+    }
+
+    String barcode(int slot) {
+        return string(slot, BARCODE);
+    }
+
+    /**
+     * Whether the slot's barcode, trimmed and lower-cased a character at a
+     * time, equals {@code key}; compares in place without building a String.
+     */
+    boolean barcodeKeyEquals(int slot, String key) {
+        int at = run(slot, BARCODE);
+        int start = textRuns[at];
+        int end = start + textRuns[at + 1];
+        if (textRuns[at + 1] == NO_TEXT) {
+            return false;
+        }
+        while (start < end && text[start] <= ' ') {
+            start++;
+        }
+        while (end > start && text[end - 1] <= ' ') {
+            end--;
+        }
+        if (end - start != key.length()) {
+            return false;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            if (Character.toLowerCase(text[start + i]) != key.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Gives back the text buffer's spare room, e.g. after loading the whole catalog. */
+    void trimToSize() {
+        if (text.length > textLength + 1024) {
+            text = Arrays.copyOf(text, textLength);
+        }
+    }
+
+    /** The shared buffer the normalized runs point into; valid until the next {@link #set}. */
+    char[] text() {
+        return text;
+    }
+
+    int normalizedNameStart(int slot) {
+        return textRuns[run(slot, NORMALIZED_NAME)];
+    }
+
+    int normalizedNameLength(int slot) {
+        return textRuns[run(slot, NORMALIZED_NAME) + 1];
+    }
+
+    int normalizedBarcodeStart(int slot) {
+        return textRuns[run(slot, NORMALIZED_BARCODE)];
+    }
+
+    int normalizedBarcodeLength(int slot) {
+        return textRuns[run(slot, NORMALIZED_BARCODE) + 1];
+    }
+
+    private static int run(int slot, int field) {
+        return (slot * TEXT_FIELDS + field) * 2;
+    }
+
+    private String string(int slot, int field) {
+        int at = run(slot, field);
+        int length = textRuns[at + 1];
+        return length == NO_TEXT ? null : new String(text, textRuns[at], length);
+    }
+
+    private void putText(int slot, int field, String value) {
+        int at = run(slot, field);
+        if (value == null) {
+            textRuns[at] = 0;
+            textRuns[at + 1] = NO_TEXT;
+            return;
+        }
+        ensureText(value.length());
+        textRuns[at] = textLength;
+        textRuns[at + 1] = value.length();
+        value.getChars(0, value.length(), text, textLength);
+        textLength += value.length();
+    }
+
+    private void putText(int slot, int field, char[] value) {
+        int at = run(slot, field);
+        ensureText(value.length);
+        textRuns[at] = textLength;
+        textRuns[at + 1] = value.length;
+        System.arraycopy(value, 0, text, textLength, value.length);
+        textLength += value.length;
+    }
+
+    private void release(int slot) {
+        for (int field = 0; field < TEXT_FIELDS; field++) {
+            if (!isShared(slot, field)) {
+                deadText += Math.max(0, textRuns[run(slot, field) + 1]);
+            }
+        }
+    }
+
+    /** A normalized barcode run pointing at the barcode's own text. */
+    private boolean isShared(int slot, int field) {
+        return field == NORMALIZED_BARCODE && textRuns[run(slot, field) + 1] > 0
+                && textRuns[run(slot, field)] == textRuns[run(slot, BARCODE)];
+    }
+
+    private boolean sameText(int slot, int field, char[] value) {
+        int at = run(slot, field);
+        if (textRuns[at + 1] != value.length) {
+            return false;
+        }
+        return Arrays.equals(text, textRuns[at], textRuns[at] + value.length, value, 0, value.length);
+    }
+
+    private void ensureText(int extra) {
+        if (textLength + extra > text.length) {
+            text = Arrays.copyOf(text, Math.max(textLength + extra, text.length * 2));
+        }
+    }
+
+    private void compactText() {
+        char[] compacted = new char[Math.max(1024, (textLength - deadText) * 3 / 2)];
+        int length = 0;
+        // Removed slots keep their text, see remove()
+        for (int slot = 0; slot < ids.length; slot++) {
+            boolean shared = isShared(slot, NORMALIZED_BARCODE);
+            for (int field = 0; field < TEXT_FIELDS; field++) {
+                int at = run(slot, field);
+                int runLength = textRuns[at + 1];
+                if (shared && field == NORMALIZED_BARCODE) {
+                    textRuns[at] = textRuns[run(slot, BARCODE)];
+                } else if (runLength > 0) {
+                    System.arraycopy(text, textRuns[at], compacted, length, runLength);
+                    textRuns[at] = length;
+                    length += runLength;
+                }
+            }
+        }
+        text = compacted;
+        textLength = length;
+        deadText = 0;
+    }
+
+    private int internCategory(String category) {
+        Integer ref = categoryNameRefsByName.get(category);
+        if (ref == null) {
+            ref = categoryNames.size();
+            categoryNames.add(category);
+            categoryNameRefsByName.put(category, ref);
+        }
+        return ref;
+    }
+}
@@ -0,0 +1,292 @@
+package com.pos.system.services;
+
+import com.pos.system.dao.AuditLogDAO;
+import com.pos.system.dao.ExpenseDAO;
+import com.pos.system.dao.InventoryTransactionDAO;
+import com.pos.system.dao.SaleDAO;
+import com.pos.system.dao.SalePaymentDAO;
+import com.pos.system.models.AuditLog;
+import com.pos.system.models.Expense;
+import com.pos.system.models.InventoryTransaction;
+import com.pos.system.models.Sale;
+import com.pos.system.models.SaleItem;
+import com.pos.system.models.SalePayment;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Everything a range report shows, read up front with one query per table
+ * and indexed in memory by day and by sale, so writing the report runs no
+ * further queries however many days and sales it covers.
+ * <p>
+ * Only each day's totals cover the whole span the report analyses, e.g. five
+ * years for its yearly sheet. Sales, expenses, items, payments, ledger rows
+ * and audit logs are kept only for the days the report lists one by one, and
+ * {@link #loadTotals} keeps none, so a long report can read each listed day
+ * on its own. Lists come in the order the per-day queries returned them:
+ * sales and expenses newest first, ledger rows and logs oldest first.
+ */
+public class ReportDataset {
+    /** One day's sums. */
+    private static final class DayTotals {
+        private int saleCount;
+        private double revenue;
+        private double profit;
+        private double expenses;
+        private final Map<String, Integer> quantityByProduct = new HashMap<>();
+        private final Map<String, Double> revenueByProduct = new HashMap<>();
+        private final Map<String, Double> revenueByCategory = new HashMap<>();
+        private final Map<String, Double> paidByMethod = new HashMap<>();
+        private final Map<String, Double> expensesByCategory = new HashMap<>();
+    }
+
+    private final LocalDate detailStart;
+    private final LocalDate detailEnd;
+    private final NavigableMap<LocalDate, DayTotals> totalsByDay = new TreeMap<>();
+    private final NavigableMap<LocalDate, List<Sale>> salesByDay = new TreeMap<>();
+    private final NavigableMap<LocalDate, List<Expense>> expensesByDay = new TreeMap<>();
+    private final Map<Integer, List<SaleItem>> itemsBySale = new HashMap<>();
+    private final Map<Integer, List<SalePayment>> paymentsBySale = new HashMap<>();
+    private final NavigableMap<LocalDate, List<InventoryTransaction>> ledgerByDay = new TreeMap<>();
+    private final NavigableMap<LocalDate, List<AuditLog>> logsByDay = new TreeMap<>();
+    private Map<Integer, Double> batchCosts = Map.of();
+
+    private ReportDataset(LocalDate detailStart, LocalDate detailEnd) {
+        this.detailStart = detailStart;
+        this.detailEnd = detailEnd;
+    }
+
+    /**
+     * Reads the data for a report listing {@code detailStart} to
+     * {@code detailEnd} day by day, with sums back to {@code spanStart}.
+     */
+    public static ReportDataset load(Connection conn, LocalDate spanStart, LocalDate detailStart, LocalDate detailEnd)
+            throws SQLException {
+        if (spanStart.isAfter(detailStart)) {
+            spanStart = detailStart;
+        }
+        ReportDataset data = new ReportDataset(detailStart, detailEnd);
+        data.read(conn, spanStart, detailEnd);
+
+        LocalDateTime detailFrom = detailStart.atStartOfDay();
+        LocalDateTime to = detailEnd.atTime(LocalTime.MAX);
+        InventoryTransactionDAO txDAO = new InventoryTransactionDAO(conn);
+        for (InventoryTransaction tx : txDAO.getTransactionsBetween(detailFrom, to)) {
+            data.ledgerByDay.computeIfAbsent(tx.getCreatedAt().toLocalDate(), d -> new ArrayList<>()).add(tx);
+        }
+        data.batchCosts = txDAO.getPurchaseBatchCostsBetween(detailFrom, to);
+        for (AuditLog log : new AuditLogDAO(conn).getLogsByDateRange(detailFrom, to)) {
+            data.logsByDay.computeIfAbsent(log.getCreatedAt().toLocalDate(), d -> new ArrayList<>()).add(log);
+        }
+        return data;
+    }
+
+    /**
+     * Reads only the daily totals from {@code spanStart} to {@code end}, for a
+     * report that reads the days it lists with {@link #load} one at a time.
+     */
+    public static ReportDataset loadTotals(Connection conn, LocalDate spanStart, LocalDate end) throws SQLException {
+        ReportDataset data = new ReportDataset(end.plusDays(1), end);
+        data.read(conn, spanStart, end);
+        return data;
+    }
+
+    private void read(Connection conn, LocalDate spanStart, LocalDate end) throws SQLException {
+        LocalDateTime from = spanStart.atStartOfDay();
+        LocalDateTime to = end.atTime(LocalTime.MAX);
+        SaleDAO saleDAO = new SaleDAO(conn);
+        saleDAO.forEachSaleBetween(from, to, this::addSale);
+        saleDAO.forEachItemOfSalesBetween(from, to, this::addItem);
+        new SalePaymentDAO(conn).forEachPaymentOfSalesBetween(from, to, this::addPayment);
+        for (Expense expense : new ExpenseDAO(conn).getExpensesBetween(from, to)) {
+            LocalDate day = expense.getDate().toLocalDate();
+            DayTotals totals = totals(day);
+            totals.expenses += expense.getAmount();
+            totals.expensesByCategory.merge(expense.getCategory(), expense.getAmount(), Double::sum);
+            if (isListed(day)) {
+                expensesByDay.computeIfAbsent(day, d -> new ArrayList<>()).add(expense);
+            }
+        }
+    }
+
+    private boolean isListed(LocalDate day) {
+        return !day.isBefore(detailStart) && !day.isAfter(detailEnd);
+    }
+
+    private DayTotals totals(LocalDate day) {
+        return totalsByDay.computeIfAbsent(day, d -> new DayTotals());
+    }
+
+    private void addSale(Sale sale) {
+        LocalDate day = sale.getSaleDate().toLocalDate();
+        DayTotals totals = totals(day);
+        totals.saleCount++;
+        totals.revenue += sale.getTotalAmount();
+        totals.profit += sale.getTotalProfit();
+        if (isListed(day)) {
+            salesByDay.computeIfAbsent(day, d -> new ArrayList<>()).add(sale);
+        }
+    }
+
+    private void addItem(LocalDate day, SaleItem item) {
+        DayTotals totals = totals(day);
+        double revenue = item.getPriceAtSale() * item.getQuantity();
+        totals.quantityByProduct.merge(item.getProductName(), item.getQuantity(), Integer::sum);
+        totals.revenueByProduct.merge(item.getProductName(), revenue, Double::sum);
+        totals.revenueByCategory.merge(item.getCategoryName() != null ? item.getCategoryName() : "Unknown", revenue,
+                Double::sum);
+        if (isListed(day)) {
+            itemsBySale.computeIfAbsent(item.getSaleId(), id -> new ArrayList<>()).add(item);
+        }
+    }
+
+    private void addPayment(LocalDate day, SalePayment payment) {
+        totals(day).paidByMethod.merge(payment.getPaymentMethod(), payment.getAmount(), Double::sum);
+        if (isListed(day)) {
+            paymentsBySale.computeIfAbsent(payment.getSaleId(), id -> new ArrayList<>()).add(payment);
+        }
+    }
+
+    /** Listed sales from {@code from} to {@code to}, both inclusive, newest first. */
+    public List<Sale> getSales(LocalDate from, LocalDate to) {
+        List<Sale> sales = new ArrayList<>();
+        for (List<Sale> day : salesByDay.subMap(from, true, to, true).descendingMap().values()) {
+            sales.addAll(day);
+        }
+        return sales;
+    }
+
+    public int getSaleCount(LocalDate from, LocalDate to) {
+        int count = 0;
+        for (DayTotals totals : totalsByDay.subMap(from, true, to, true).values()) {
+            count += totals.saleCount;
+        }
+        return count;
+    }
+
+    /** Revenue per day with sales from {@code from} to {@code to}, oldest first. */
+    public NavigableMap<LocalDate, Double> getRevenueByDay(LocalDate from, LocalDate to) {
+        NavigableMap<LocalDate, Double> revenue = new TreeMap<>();
+        totalsByDay.subMap(from, true, to, true).forEach((day, totals) -> {
+            if (totals.saleCount > 0) {
+                revenue.put(day, totals.revenue);
+            }
+        });
+        return revenue;
+    }
+
+    public double getRevenue(LocalDate from, LocalDate to) {
+        double revenue = 0;
+        for (DayTotals totals : totalsByDay.subMap(from, true, to, true).values()) {
+            revenue += totals.revenue;
+        }
+        return revenue;
+    }
+
+    public double getProfit(LocalDate from, LocalDate to) {
+        double profit = 0;
+        for (DayTotals totals : totalsByDay.subMap(from, true, to, true).values()) {
+            profit += totals.profit;
+        }
+        return profit;
+    }
+
+    /** Listed expenses from {@code from} to {@code to}, newest first. */
+    public List<Expense> getExpenses(LocalDate from, LocalDate to) {
+        List<Expense> expenses = new ArrayList<>();
+        for (List<Expense> day : expensesByDay.subMap(from, true, to, true).descendingMap().values()) {
+            expenses.addAll(day);
+        }
+        return expenses;
+    }
+
+    public double getExpenseTotal(LocalDate from, LocalDate to) {
+        double total = 0;
+        for (DayTotals totals : totalsByDay.subMap(from, true, to, true).values()) {
+            total += totals.expenses;
+        }
+        return total;
+    }
+
+    /** Expenses per category, by category name. */
+    public Map<String, Double> getExpensesByCategory(LocalDate from, LocalDate to) {
+        return new TreeMap<>(sum(from, to, totals -> totals.expensesByCategory));
+    }
+
+    /** Units sold per product name. */
+    public Map<String, Integer> getQuantityByProduct(LocalDate from, LocalDate to) {
+        Map<String, Integer> quantities = new HashMap<>();
+        for (DayTotals totals : totalsByDay.subMap(from, true, to, true).values()) {
+            totals.quantityByProduct.forEach((name, quantity) -> quantities.merge(name, quantity, Integer::sum));
+        }
+        return quantities;
+    }
+
+    /** Revenue at sale price per product name. */
+    public Map<String, Double> getRevenueByProduct(LocalDate from, LocalDate to) {
+        return sum(from, to, totals -> totals.revenueByProduct);
+    }
+
+    /** Revenue at sale price per category name, "Unknown" for products without one. */
+    public Map<String, Double> getRevenueByCategory(LocalDate from, LocalDate to) {
+        return sum(from, to, totals -> totals.revenueByCategory);
+    }
+
+    /** Payments per method for the sales made from {@code from} to {@code to}. */
+    public Map<String, Double> getPaidByMethod(LocalDate from, LocalDate to) {
+        return sum(from, to, totals -> totals.paidByMethod);
+    }
+
+    private Map<String, Double> sum(LocalDate from, LocalDate to,
+            Function<DayTotals, Map<String, Double>> field) {
+        Map<String, Double> sums = new HashMap<>();
+        for (DayTotals totals : totalsByDay.subMap(from, true, to, true).values()) {
+            field.apply(totals).forEach((key, value) -> sums.merge(key, value, Double::sum));
+        }
+        return sums;
+    }
+
+    /** A listed sale's items; empty for sales outside the listed days. */
+    public List<SaleItem> getItems(int saleId) {
+        return itemsBySale.getOrDefault(saleId, List.of());
+    }
+
+    /** A listed sale's payments, oldest first; empty for sales outside the listed days. */
+    public List<SalePayment> getPayments(int saleId) {
+        return paymentsBySale.getOrDefault(saleId, List.of());
+    }
+
+    /** Ledger rows of the listed days from {@code from} to {@code to}, oldest first. */
+    public List<InventoryTransaction> getLedger(LocalDate from, LocalDate to) {
+        List<InventoryTransaction> ledger = new ArrayList<>();
+        for (List<InventoryTransaction> day : ledgerByDay.subMap(from, true, to, true).values()) {
+            ledger.addAll(day);
+        }
+        return ledger;
+    }
+
+    /** Unit cost of a purchased batch, or null if unknown. */
+    public Double getBatchCost(Integer batchId) {
+        return batchId == null ? null : batchCosts.get(batchId);
+    }
+
+    /** Audit logs of the listed days from {@code from} to {@code to}, oldest first. */
+    public List<AuditLog> getLogs(LocalDate from, LocalDate to) {
+        List<AuditLog> logs = new ArrayList<>();
+        for (List<AuditLog> day : logsByDay.subMap(from, true, to, true).values()) {
+            logs.addAll(day);
+        }
+        return logs;
+    }
+}
@@ -0,0 +1,393 @@
+package com.pos.system.services;
+
+import com.pos.system.App;
+import com.pos.system.models.AuditLog;
+import com.pos.system.models.Expense;
+import com.pos.system.models.InventoryTransaction;
+import com.pos.system.models.Product;
+import com.pos.system.models.Sale;
+import com.pos.system.models.SaleItem;
+import com.pos.system.models.SalePayment;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.ResourceBundle;
+import java.util.TreeMap;
+
+/**
+ * The figures and table rows of each part of the Excel range report, worked
+ * out from a {@link ReportDataset} apart from any workbook. Apache POI
+ * workbooks are not thread-safe, so {@link ReportingService} computes the
+ * sections in parallel and then writes them out on one thread.
+ * <p>
+ * The dataset is only read, and a section does not change once built.
+ */
+final class ReportSections {
+    enum AggregationLevel {
+        AUTO, HOURLY, DAILY, WEEKLY, MONTHLY, YEARLY
+    }
+
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm");
+    // Rows in an analysis sheet's ABC table
+    private static final int ABC_ROWS = 101;
+
+    private ReportSections() {
+    }
+
+    /** A sale in a day sheet's transaction table. */
+    static final class SaleLine {
+        final Sale sale;
+        final String items;
+        final String payments;
+        final double paid;
+
+        private SaleLine(Sale sale, String items, String payments, double paid) {
+            this.sale = sale;
+            this.items = items;
+            this.payments = payments;
+            this.paid = paid;
+        }
+    }
+
+    /** A row of a day sheet's inventory activity table: a ledger row or a price change. */
+    static final class ActivityLine {
+        final String time;
+        final String product;
+        final String type;
+        final int quantityChange;
+        final String action;
+        final String details;
+
+        private ActivityLine(String time, String product, String type, int quantityChange, String action,
+                String details) {
+            this.time = time;
+            this.product = product;
+            this.type = type;
+            this.quantityChange = quantityChange;
+            this.action = action;
+            this.details = details;
+        }
+    }
+
+    /** The series of a sheet's sales, product and category charts. */
+    static final class Charts {
+        final String[] timeLabels;
+        final Double[] timeValues;
+        final Map<String, Integer> productCounts;
+        final Map<String, Double> categoryTotals;
+
+        private Charts(String[] timeLabels, Double[] timeValues, Map<String, Integer> productCounts,
+                Map<String, Double> categoryTotals) {
+            this.timeLabels = timeLabels;
+            this.timeValues = timeValues;
+            this.productCounts = productCounts;
+            this.categoryTotals = categoryTotals;
+        }
+    }
+
+    /** One day's sheet. */
+    static final class Day {
+        final LocalDate date;
+        final double revenue;
+        final double profit;
+        final double expenseTotal;
+        final List<SaleLine> sales;
+        final List<ActivityLine> activity;
+        final List<Expense> expenses;
+        final List<AuditLog> logs;
+        /** Null when the day has no sales. */
+        final Charts charts;
+
+        private Day(LocalDate date, double revenue, double profit, double expenseTotal, List<SaleLine> sales,
+                List<ActivityLine> activity, List<Expense> expenses, List<AuditLog> logs, Charts charts) {
+            this.date = date;
+            this.revenue = revenue;
+            this.profit = profit;
+            this.expenseTotal = expenseTotal;
+            this.sales = sales;
+            this.activity = activity;
+            this.expenses = expenses;
+            this.logs = logs;
+            this.charts = charts;
+        }
+    }
+
+    /** A row of an analysis sheet's ABC table. */
+    static final class AbcLine {
+        final String product;
+        final double revenue;
+        final String cumulative;
+        final String abcClass;
+
+        private AbcLine(String product, double revenue, String cumulative, String abcClass) {
+            this.product = product;
+            this.revenue = revenue;
+            this.cumulative = cumulative;
+            this.abcClass = abcClass;
+        }
+    }
+
+    /** A daily, weekly, monthly or yearly analysis sheet. */
+    static final class Analysis {
+        final String name;
+        final double revenue;
+        final double profit;
+        final double expenseTotal;
+        final List<AbcLine> abc;
+        /** Null when the period has no sales. */
+        final Charts charts;
+        final Map<String, Double> expensesByCategory;
+
+        private Analysis(String name, double revenue, double profit, double expenseTotal, List<AbcLine> abc,
+                Charts charts, Map<String, Double> expensesByCategory) {
+            this.name = name;
+            this.revenue = revenue;
+            this.profit = profit;
+            this.expenseTotal = expenseTotal;
+            this.abc = abc;
+            this.charts = charts;
+            this.expensesByCategory = expensesByCategory;
+        }
+    }
+
+    /** A month of the P&L, balance sheet and cash flow sheets. */
+    static final class Month {
+        final LocalDateTime start;
+        final double revenue;
+        final double profit;
+        final double expenseTotal;
+        final Map<String, Double> expensesByCategory;
+        final Map<String, Double> paidByMethod;
+
+        private Month(LocalDateTime start, double revenue, double profit, double expenseTotal,
+                Map<String, Double> expensesByCategory, Map<String, Double> paidByMethod) {
+            this.start = start;
+            this.revenue = revenue;
+            this.profit = profit;
+            this.expenseTotal = expenseTotal;
+            this.expensesByCategory = expensesByCategory;
+            this.paidByMethod = paidByMethod;
+        }
+    }
+
+    static Day day(ReportDataset data, LocalDate date) {
+        ResourceBundle b = App.getBundle();
+        List<Sale> sales = data.getSales(date, date);
+
+        List<SaleLine> saleLines = new ArrayList<>(sales.size());
+        for (Sale sale : sales) {
+            StringBuilder itemsDesc = new StringBuilder();
+            for (SaleItem item : data.getItems(sale.getId())) {
+                if (itemsDesc.length() > 0)
+                    itemsDesc.append(", ");
+                itemsDesc.append(item.getProductName()).append(" (x").append(item.getQuantity()).append(")");
+            }
+            StringBuilder paySummary = new StringBuilder();
+            double totalPaid = 0;
+            for (SalePayment p : data.getPayments(sale.getId())) {
+                if (paySummary.length() > 0)
+                    paySummary.append(", ");
+                paySummary.append(p.getPaymentMethod()).append(" (").append(ReportingService.fmt(p.getAmount())).append(")");
+                totalPaid += p.getAmount();
+            }
+            saleLines.add(new SaleLine(sale, itemsDesc.toString(), paySummary.toString(), totalPaid));
+        }
+
+        List<ActivityLine> activity = new ArrayList<>();
+        for (InventoryTransaction tx : data.getLedger(date, date)) {
+            // Show Name (ID)
+            String prodDisplay = (tx.getProductName() != null ? tx.getProductName()
+                    : b.getString("report.excel.unknown")) + " (" + tx.getProductId() + ")";
+
+            // Calculate amount for display in details
+            String details = tx.getReferenceId();
+            if (tx.getTransactionType().name().equals("SALE")) {
+                try {
+                    int saleId = Integer.parseInt(tx.getReferenceId().replace("SALE-", ""));
+                    for (SaleItem si : data.getItems(saleId)) {
+                        if (si.getProductId() == tx.getProductId()) {
+                            double lineTotal = si.getPriceAtSale() * Math.abs(tx.getQuantityChange());
+                            details += " - " + b.getString("report.excel.amtHeader") + ": " + ReportingService.fmt(lineTotal) + " "
+                                    + b.getString("common.mmk");
+                            break;
+                        }
+                    }
+                } catch (Exception e) {
+                    // Ignore parsing errors
+                }
+            } else if (tx.getTransactionType().name().equals("PURCHASE")) {
+                Double cost = data.getBatchCost(tx.getBatchId());
+                if (cost != null) {
+                    details += " - " + b.getString("report.excel.costHeader") + ": "
+                            + ReportingService.fmt(cost * Math.abs(tx.getQuantityChange())) + " " + b.getString("common.mmk");
+                }
+            }
+            activity.add(new ActivityLine(tx.getCreatedAt().format(TIME), prodDisplay,
+                    b.getString("transaction.type." + tx.getTransactionType()), tx.getQuantityChange(),
+                    tx.getTransactionType().name(), details));
+        }
+
+        List<AuditLog> logs = data.getLogs(date, date);
+        for (AuditLog log : logs) {
+            if (log.getAction().contains("Price") || log.getAction().contains("Cost")) {
+                activity.add(new ActivityLine(log.getCreatedAt().format(TIME), log.getEntityId(),
+                        b.getString("transaction.type.VALUE_CHANGE"), 0, log.getAction(), log.getDetails()));
+            }
+        }
+
+        return new Day(date, data.getRevenue(date, date), data.getProfit(date, date),
+                data.getExpenseTotal(date, date), saleLines, activity, data.getExpenses(date, date), logs,
+                charts(data, date, date));
+    }
+
+    static Analysis analysis(ReportDataset data, String name, LocalDateTime start, LocalDateTime end,
+            AggregationLevel aggregation) {
+        ResourceBundle b = App.getBundle();
+        LocalDate from = start.toLocalDate();
+        LocalDate to = end.toLocalDate();
+        double totalSales = data.getRevenue(from, to);
+
+        // Sort by revenue desc
+        List<Map.Entry<String, Double>> sorted = new ArrayList<>(data.getRevenueByProduct(from, to).entrySet());
+        sorted.sort((e1, e2) -> e2.getValue().compareTo(e1.getValue()));
+
+        List<AbcLine> abc = new ArrayList<>();
+        double runningTotal = 0;
+        for (Map.Entry<String, Double> entry : sorted) {
+            if (abc.size() == ABC_ROWS)
+                break; // Limit to top 100 for high level
+            runningTotal += entry.getValue();
+            double percent = (totalSales > 0) ? (runningTotal / totalSales) : 0;
+
+            String category = b.getString("report.excel.abc.c");
+            if (percent <= 0.7)
+                category = b.getString("report.excel.abc.a");
+            else if (percent <= 0.9)
+                category = b.getString("report.excel.abc.b");
+            abc.add(new AbcLine(entry.getKey(), entry.getValue(), String.format("%.2f%%", percent * 100),
+                    category));
+        }
+
+        return new Analysis(name, totalSales, data.getProfit(from, to), data.getExpenseTotal(from, to), abc,
+                charts(data, aggregation, start, end), data.getExpensesByCategory(from, to));
+    }
+
+    /** The calendar months from {@code start}'s to {@code end}, the last one cut at {@code end}. */
+    static List<Month> months(ReportDataset data, LocalDateTime start, LocalDateTime end) {
+        List<Month> months = new ArrayList<>();
+        LocalDateTime currentMonthStart = start.withDayOfMonth(1).withHour(0).withMinute(0).withSecond(0).withNano(0);
+        while (currentMonthStart.isBefore(end)) {
+            LocalDateTime currentMonthEnd = currentMonthStart.plusMonths(1).minusNanos(1);
+            if (currentMonthEnd.isAfter(end))
+                currentMonthEnd = end;
+            LocalDate monthFrom = currentMonthStart.toLocalDate();
+            LocalDate monthTo = currentMonthEnd.toLocalDate();
+
+            months.add(new Month(currentMonthStart, data.getRevenue(monthFrom, monthTo),
+                    data.getProfit(monthFrom, monthTo), data.getExpenseTotal(monthFrom, monthTo),
+                    data.getExpensesByCategory(monthFrom, monthTo),
+                    new TreeMap<>(data.getPaidByMethod(monthFrom, monthTo))));
+
+            currentMonthStart = currentMonthStart.plusMonths(1);
+        }
+        return months;
+    }
+
+    /** Stock at cost over all products. */
+    static double inventoryValue(List<Product> products) {
+        double value = 0;
+        for (Product p : products) {
+            value += p.getStock() * p.getCostPrice();
+        }
+        return value;
+    }
+
+    /**
+     * Charts for the sales from {@code from} to {@code to}: by time of sale if
+     * they fall on one listed day, else by day from the first day with sales
+     * to the last. Null without sales.
+     */
+    static Charts charts(ReportDataset data, LocalDate from, LocalDate to) {
+        NavigableMap<LocalDate, Double> revenueByDay = data.getRevenueByDay(from, to);
+        if (revenueByDay.isEmpty())
+            return null;
+        LocalDate first = revenueByDay.firstKey();
+        LocalDate last = revenueByDay.lastKey();
+        List<Sale> sales = data.getSales(first, last);
+        if (!first.equals(last) || sales.isEmpty()) {
+            return charts(data, AggregationLevel.DAILY, first.atStartOfDay(), last.atStartOfDay());
+        }
+        String[] labels = sales.stream().map(s -> s.getSaleDate().format(TIME)).toArray(String[]::new);
+        Double[] values = sales.stream().map(Sale::getTotalAmount).toArray(Double[]::new);
+        return new Charts(labels, values, Collections.unmodifiableMap(data.getQuantityByProduct(first, last)),
+                Collections.unmodifiableMap(data.getRevenueByCategory(first, last)));
+    }
+
+    /** Charts for the sales from {@code rangeStart} to {@code rangeEnd}, by period; null without sales. */
+    static Charts charts(ReportDataset data, AggregationLevel aggregation, LocalDateTime rangeStart,
+            LocalDateTime rangeEnd) {
+        LocalDate from = rangeStart.toLocalDate();
+        LocalDate to = rangeEnd.toLocalDate();
+        NavigableMap<LocalDate, Double> revenueByDay = data.getRevenueByDay(from, to);
+        if (revenueByDay.isEmpty())
+            return null;
+
+        String[] labels;
+        Double[] values;
+        if (aggregation == AggregationLevel.YEARLY) {
+            Map<Integer, Double> yearlyRev = new TreeMap<>();
+            // Fill at least 5 years
+            for (int y = rangeStart.getYear(); y <= rangeEnd.getYear(); y++)
+                yearlyRev.put(y, 0.0);
+            revenueByDay.forEach((day, revenue) -> yearlyRev.merge(day.getYear(), revenue, Double::sum));
+            labels = yearlyRev.keySet().stream().map(String::valueOf).toArray(String[]::new);
+            values = yearlyRev.values().toArray(new Double[0]);
+        } else if (aggregation == AggregationLevel.MONTHLY) {
+            DateTimeFormatter month = DateTimeFormatter.ofPattern("yyyy-MM");
+            Map<String, Double> monthlyRev = new TreeMap<>();
+            // Fill months
+            LocalDateTime curr = rangeStart.withDayOfMonth(1);
+            while (!curr.isAfter(rangeEnd)) {
+                monthlyRev.put(curr.format(month), 0.0);
+                curr = curr.plusMonths(1);
+            }
+            revenueByDay.forEach((day, revenue) -> monthlyRev.merge(day.format(month), revenue, Double::sum));
+            labels = monthlyRev.keySet().toArray(new String[0]);
+            values = monthlyRev.values().toArray(new Double[0]);
+        } else if (aggregation == AggregationLevel.WEEKLY) {
+            Map<String, Double> weeklyRev = new TreeMap<>();
+            java.time.temporal.TemporalField woy = java.time.temporal.WeekFields.of(java.util.Locale.getDefault())
+                    .weekOfWeekBasedYear();
+            // Fill weeks
+            LocalDateTime curr = rangeStart;
+            while (!curr.isAfter(rangeEnd)) {
+                weeklyRev.put(curr.getYear() + "-W" + curr.get(woy), 0.0);
+                curr = curr.plusWeeks(1);
+            }
+            revenueByDay.forEach((day, revenue) -> weeklyRev.merge(day.getYear() + "-W" + day.get(woy), revenue,
+                    Double::sum));
+            labels = weeklyRev.keySet().toArray(new String[0]);
+            values = weeklyRev.values().toArray(new Double[0]);
+        } else {
+            Map<LocalDate, Double> dailyRevenue = new TreeMap<>();
+            // Fill days
+            LocalDate curr = from;
+            while (!curr.isAfter(to)) {
+                dailyRevenue.put(curr, 0.0);
+                curr = curr.plusDays(1);
+            }
+            revenueByDay.forEach((day, revenue) -> dailyRevenue.merge(day, revenue, Double::sum));
+            labels = dailyRevenue.keySet().stream().map(LocalDate::toString).toArray(String[]::new);
+            values = dailyRevenue.values().toArray(new Double[0]);
+        }
+
+        return new Charts(labels, values, Collections.unmodifiableMap(data.getQuantityByProduct(from, to)),
+                Collections.unmodifiableMap(data.getRevenueByCategory(from, to)));
+    }
+}
@@ -4,6 +4,7 @@ import com.pos.system.dao.AuditLogDAO;
 import com.pos.system.models.AuditLog;
 import org.mindrot.jbcrypt.BCrypt;
 
+import java.sql.Connection;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
 
@@ -39,6 +40,19 @@ public class SecurityService implements AutoCloseable {
         }
     }
 
+    /**
+     * Writes an audit entry on the caller's connection, so it commits with the
+     * change it describes. Units run by the database writer must use this: a
+     * write on another connection would wait for the lock the unit holds.
+     */
+    public void logAction(Connection connection, Integer userId, String action, String entityName,
+            String entityId, String details) throws SQLException {
+        AuditLog log = new AuditLog(0, userId, action, entityName, entityId, details, LocalDateTime.now());
+        try (AuditLogDAO connectionDAO = new AuditLogDAO(connection)) {
+            connectionDAO.create(log);
+        }
+    }
+
     @Override
     public void close() {
         if (auditLogDAO != null) {
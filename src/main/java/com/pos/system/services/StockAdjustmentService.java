@@ -1,30 +1,38 @@
 package com.pos.system.services;
 
-import com.pos.system.database.DatabaseManager;
+import com.pos.system.database.DatabaseWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.sql.Connection;
 import java.sql.SQLException;
 
 public class StockAdjustmentService {
     private static final Logger logger = LoggerFactory.getLogger(StockAdjustmentService.class);
 
     private final InventoryService inventoryService;
+    private final DatabaseWriter writer;
 
     public StockAdjustmentService() {
         this.inventoryService = new InventoryService();
+        this.writer = null;
     }
 
     // For Dependency Injection in tests
     public StockAdjustmentService(InventoryService inventoryService) {
+        this(inventoryService, null);
+    }
+
+    public StockAdjustmentService(InventoryService inventoryService, DatabaseWriter writer) {
         this.inventoryService = inventoryService;
+        this.writer = writer;
     }
 
     public void adjustStock(int productId, int quantityChange, String reason, Integer createdBy) throws SQLException {
-        try (Connection connection = DatabaseManager.getInstance().getConnection()) {
+        DatabaseWriter target = writer != null ? writer : DatabaseWriter.getInstance();
+        target.execute(connection -> {
             inventoryService.adjustStock(connection, productId, quantityChange, reason, createdBy);
-            logger.info("Stock adjusted for Product ID: {} by {}. Reason: {}", productId, quantityChange, reason);
-        }
+            return null;
+        });
+        logger.info("Stock adjusted for Product ID: {} by {}. Reason: {}", productId, quantityChange, reason);
     }
 }
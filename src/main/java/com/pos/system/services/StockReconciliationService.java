@@ -0,0 +1,77 @@
+package com.pos.system.services;
+
+import com.pos.system.dao.AuditLogDAO;
+import com.pos.system.dao.InventoryTransactionDAO;
+import com.pos.system.models.AuditLog;
+import com.pos.system.models.StockDrift;
+import javafx.concurrent.ScheduledService;
+import javafx.concurrent.Task;
+import javafx.util.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Periodically verifies the incrementally maintained {@code products.stock}
+ * counters against the inventory ledger and reports any drift. Counters are
+ * not rewritten here; drift is logged and recorded in the audit log so it can
+ * be investigated.
+ */
+public class StockReconciliationService extends ScheduledService<List<StockDrift>> {
+    private static final Logger logger = LoggerFactory.getLogger(StockReconciliationService.class);
+
+    private static StockReconciliationService instance;
+
+    public StockReconciliationService() {
+        this.setPeriod(Duration.minutes(15));
+        this.setDelay(Duration.minutes(1)); // Stay out of the way during startup
+    }
+
+    /**
+     * Schedules the shared reconciliation on the first call. Later calls, one
+     * per login, leave it running rather than stacking up another schedule.
+     */
+    public static synchronized void startShared() {
+        if (instance == null) {
+            instance = new StockReconciliationService();
+            instance.start();
+        }
+    }
+
+    @Override
+    protected Task<List<StockDrift>> createTask() {
+        return new Task<>() {
+            @Override
+            protected List<StockDrift> call() throws Exception {
+                return reconcile();
+            }
+        };
+    }
+
+    List<StockDrift> reconcile() {
+        try (InventoryTransactionDAO txDAO = new InventoryTransactionDAO()) {
+            List<StockDrift> drift = txDAO.findStockDrift();
+            if (drift.isEmpty()) {
+                logger.debug("Stock reconciliation: counters match ledger.");
+                return drift;
+            }
+
+            try (AuditLogDAO auditLogDAO = new AuditLogDAO()) {
+                for (StockDrift d : drift) {
+                    logger.warn("Stock drift for product {} ({}): cached={}, ledger={}", d.getProductId(),
+                            d.getProductName(), d.getCachedStock(), d.getLedgerStock());
+                    auditLogDAO.create(new AuditLog(0, null, "STOCK_DRIFT", "Product",
+                            String.valueOf(d.getProductId()), "Cached: " + d.getCachedStock() + ", Ledger: "
+                                    + d.getLedgerStock() + ", Diff: " + d.getDifference(),
+                            LocalDateTime.now()));
+                }
+            }
+            return drift;
+        } catch (Exception e) {
+            logger.error("Stock reconciliation failed", e);
+            return List.of();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.pos.system.services;
+
+import com.pos.system.dao.StockSnapshotDAO;
+import com.pos.system.models.StockDrift;
+import javafx.concurrent.ScheduledService;
+import javafx.concurrent.Task;
+import javafx.util.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * Periodically checkpoints the inventory ledger into {@code stock_snapshots},
+ * thins out old checkpoints and verifies the newest checkpoint of each product
+ * against the raw ledger. Inconsistent checkpoints are rebuilt from the ledger.
+ */
+public class StockSnapshotService extends ScheduledService<Void> {
+    private static final Logger logger = LoggerFactory.getLogger(StockSnapshotService.class);
+    private static final int DAILY_SNAPSHOT_RETENTION_DAYS = 30;
+
+    private static StockSnapshotService instance;
+
+    public StockSnapshotService() {
+        this.setPeriod(Duration.hours(6));
+        this.setDelay(Duration.minutes(2)); // Stay out of the way during startup
+    }
+
+    /**
+     * Schedules the shared snapshot job on the first call; later logins find
+     * it already scheduled.
+     */
+    public static synchronized void startShared() {
+        if (instance == null) {
+            instance = new StockSnapshotService();
+            instance.start();
+        }
+    }
+
+    @Override
+    protected Task<Void> createTask() {
+        return new Task<>() {
+            @Override
+            protected Void call() throws Exception {
+                runSnapshotCycle();
+                return null;
+            }
+        };
+    }
+
+    void runSnapshotCycle() {
+        try (StockSnapshotDAO snapshotDAO = new StockSnapshotDAO()) {
+            int created = snapshotDAO.createSnapshots();
+            int pruned = snapshotDAO.pruneSnapshots(DAILY_SNAPSHOT_RETENTION_DAYS);
+            logger.info("Stock snapshots: {} created, {} pruned.", created, pruned);
+
+            List<StockDrift> inconsistent = snapshotDAO.findInconsistentSnapshots();
+            for (StockDrift d : inconsistent) {
+                logger.warn("Stock snapshot for product {} ({}) is inconsistent: snapshot={}, ledger={}. Rebuilding.",
+                        d.getProductId(), d.getProductName(), d.getCachedStock(), d.getLedgerStock());
+                snapshotDAO.rebuildSnapshots(d.getProductId());
+            }
+        } catch (Exception e) {
+            logger.error("Stock snapshot job failed", e);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.pos.system.services;
+
+import com.pos.system.dao.ProductThumbnailDAO;
+import com.pos.system.database.ImageStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Makes the small product images that grids and lists show, so screens never
+ * decode the full-size original a product was saved with.
+ * <p>
+ * Every product image gets one PNG thumbnail per {@link Size}, kept in
+ * {@code product_thumbnails}. They are made when an image is saved, by a
+ * backfill over products saved before thumbnails existed, and, failing both,
+ * the first time a screen asks for one. Sizes are twice the size shown, so
+ * thumbnails stay sharp on high-density screens.
+ */
+public class ThumbnailService {
+    private static final Logger logger = LoggerFactory.getLogger(ThumbnailService.class);
+    private static final int BACKFILL_BATCH = 50;
+
+    /** Thumbnail sizes, by the longest edge in pixels. */
+    public enum Size {
+        GRID(160), // POS product cards, shown at 80px
+        LIST(80); // Inventory table rows, shown at 40px
+
+        private final int pixels;
+
+        Size(int pixels) {
+            this.pixels = pixels;
+        }
+
+        public int getPixels() {
+            return pixels;
+        }
+    }
+
+    /** Opens a DAO for one unit of work; it is closed straight after. */
+    @FunctionalInterface
+    public interface DaoSource {
+        ProductThumbnailDAO open() throws SQLException;
+    }
+
+    private static final ThumbnailService instance = new ThumbnailService(ProductThumbnailDAO::new, null,
+            Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "Thumbnail-Worker");
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            }));
+
+    private final DaoSource daoSource;
+    private final ImageStore imageStore; // null for the application's
+    private final Executor worker;
+
+    public ThumbnailService(DaoSource daoSource, ImageStore imageStore, Executor worker) {
+        this.daoSource = daoSource;
+        this.imageStore = imageStore;
+        this.worker = worker;
+    }
+
+    public static ThumbnailService getInstance() {
+        return instance;
+    }
+
+    /**
+     * Makes the thumbnails of a product whose image was just saved, in the
+     * background. Completes once they are stored.
+     */
+    public CompletableFuture<Void> imageSaved(int productId) {
+        return CompletableFuture.runAsync(() -> {
+            try (ProductThumbnailDAO dao = daoSource.open()) {
+                generate(dao, productId);
+            } catch (SQLException e) {
+                logger.error("Could not make thumbnails for product {}", productId, e);
+                throw new CompletionException(e);
+            }
+        }, worker);
+    }
+
+    /**
+     * Makes the thumbnails missing for any product, a batch at a time, in the
+     * background. Completes with the number of products given thumbnails.
+     */
+    public CompletableFuture<Integer> backfill() {
+        return CompletableFuture.supplyAsync(() -> {
+            int made = 0;
+            int afterId = 0;
+            try (ProductThumbnailDAO dao = daoSource.open()) {
+                List<Integer> batch;
+                do {
+                    batch = dao.getProductIdsMissingThumbnails(afterId, Size.values().length, BACKFILL_BATCH);
+                    for (int productId : batch) {
+                        if (generate(dao, productId) != null) {
+                            made++;
+                        }
+                        afterId = productId;
+                    }
+                } while (batch.size() == BACKFILL_BATCH);
+            } catch (SQLException e) {
+                logger.error("Thumbnail backfill stopped after {} products", made, e);
+                throw new CompletionException(e);
+            }
+            if (made > 0) {
+                logger.info("Thumbnail backfill: {} products", made);
+            }
+            return made;
+        }, worker);
+    }
+
+    /**
+     * The product's thumbnail of the given size, made and stored on the
+     * calling thread if there is none yet. Returns null if the product has no
+     * image or the image cannot be decoded. Call it off the FX thread.
+     */
+    public byte[] getThumbnail(int productId, Size size) throws SQLException {
+        try (ProductThumbnailDAO dao = daoSource.open()) {
+            byte[] stored = dao.getThumbnail(productId, size.getPixels());
+            if (stored == null) {
+                byte[][] made = generate(dao, productId);
+                stored = made != null ? made[size.ordinal()] : null;
+            }
+            return stored != null && stored.length > 0 ? stored : null;
+        }
+    }
+
+    /** Makes and stores every size for one product; null if it has no image. */
+    private byte[][] generate(ProductThumbnailDAO dao, int productId) throws SQLException {
+        ProductThumbnailDAO.Original original = dao.getOriginal(productId);
+        if (original == null) {
+            return null;
+        }
+        InputStream image;
+        if (original.getImage() != null) {
+            image = new ByteArrayInputStream(original.getImage());
+        } else {
+            ByteBuffer mapped = readStoredImage(original.getImageHash());
+            if (mapped == null) {
+                // Not marked undecodable: the file may come back, e.g. with a restore
+                logger.warn("Image of product {} is missing from the image store", productId);
+                return null;
+            }
+            image = ImageStore.asStream(mapped);
+        }
+        // One decode serves every size, so decode for the largest
+        BufferedImage decoded = decode(image, Size.GRID.getPixels());
+        if (decoded == null) {
+            logger.warn("Product {} has an image that cannot be decoded", productId);
+        }
+        byte[][] made = new byte[Size.values().length][];
+        for (Size size : Size.values()) {
+            byte[] thumbnail = decoded != null ? encode(decoded, size.getPixels()) : null;
+            made[size.ordinal()] = thumbnail != null ? thumbnail : new byte[0];
+            // Skipped if the product changed meanwhile; the next backfill makes it again
+            dao.saveThumbnail(original, size.getPixels(), made[size.ordinal()]);
+        }
+        return made;
+    }
+
+    /**
+     * Scales {@code image} so its longest edge is at most {@code size} pixels
+     * and encodes it as PNG. Returns null if the image cannot be decoded.
+     */
+    static byte[] createThumbnail(byte[] image, int size) {
+        if (image == null || image.length == 0) {
+            return null;
+        }
+        BufferedImage decoded = decode(new ByteArrayInputStream(image), size);
+        return decoded != null ? encode(decoded, size) : null;
+    }
+
+    private ByteBuffer readStoredImage(String hash) {
+        try {
+            return (imageStore != null ? imageStore : ImageStore.getInstance()).map(hash);
+        } catch (IOException e) {
+            logger.warn("Could not read stored image {}", hash, e);
+            return null;
+        }
+    }
+
+    /**
+     * Decodes {@code image}, subsampling large originals while reading so the
+     * full-size bitmap is never held in memory; at least twice {@code size}
+     * is kept for a smooth final scale. Null if it cannot be decoded.
+     */
+    private static BufferedImage decode(InputStream image, int size) {
+        // In memory; ImageIO's default stream would buffer through a temporary file
+        try (ImageInputStream input = new MemoryCacheImageInputStream(image)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int longest = Math.max(reader.getWidth(0), reader.getHeight(0));
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, longest / (size * 2));
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static byte[] encode(BufferedImage decoded, int size) {
+        double scale = Math.min(1.0, (double) size / Math.max(decoded.getWidth(), decoded.getHeight()));
+        int width = Math.max(1, (int) Math.round(decoded.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(decoded.getHeight() * scale));
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = scaled.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(decoded, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(scaled, "png", out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -46,6 +46,27 @@ public class AppDataUtils {
         return getAppDataDir().resolve("store.db").toAbsolutePath().toString();
     }
 
+    public static Path getCheckoutJournalPath() {
+        return getAppDataDir().resolve("checkout.journal");
+    }
+
+    public static Path getImageStoreDir() {
+        Path imageDir = getAppDataDir().resolve("images");
+        try {
+            if (!Files.exists(imageDir)) {
+                Files.createDirectories(imageDir);
+            }
+        } catch (IOException e) {
+            // No fallback: the store must not share a directory with other files.
+            // Saving an image then fails and reports the problem.
+        }
+        return imageDir;
+    }
+
+    public static Path getCatalogSnapshotPath() {
+        return getAppDataDir().resolve("catalog.snapshot");
+    }
+
     public static String getConfigPath() {
         return getAppDataDir().resolve("config.properties").toAbsolutePath().toString();
     }
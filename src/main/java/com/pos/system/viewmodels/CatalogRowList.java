@@ -0,0 +1,108 @@
+package com.pos.system.viewmodels;
+
+import com.pos.system.models.Product;
+import com.pos.system.services.CatalogIndex;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableListBase;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Observable list over search results that does not copy them, so a
+ * {@link CatalogIndex.Results} of every product in the catalog is shown
+ * without building a {@link Product} per row. Rows are read, and built, by
+ * whatever is displaying them, e.g. one grid page at a time. Rows replaced
+ * by {@link #setAll(Collection)} are handed to listeners as the previous list
+ * itself, so they too are only built if a listener reads them.
+ */
+class CatalogRowList extends ObservableListBase<Product> {
+    private List<? extends Product> rows = List.of();
+
+    @Override
+    public Product get(int index) {
+        return rows.get(index);
+    }
+
+    @Override
+    public int size() {
+        return rows.size();
+    }
+
+    List<? extends Product> getRows() {
+        return rows;
+    }
+
+    /** Shows {@code products}, keeping a reference to index results instead of copying them. */
+    @Override
+    public boolean setAll(Collection<? extends Product> products) {
+        List<? extends Product> previous = rows;
+        rows = products instanceof CatalogIndex.Results results ? results : new ArrayList<>(products);
+        if (!previous.isEmpty() || !rows.isEmpty()) {
+            // Fired directly: beginChange()/nextRemove() would copy, and so build, every removed row
+            fireChange(new Replacement(previous));
+        }
+        return true;
+    }
+
+    /** Tells listeners the product at {@code index} changed in place, e.g. after a sale. */
+    void refresh(int index) {
+        beginChange();
+        nextSet(index, get(index));
+        endChange();
+    }
+
+    @Override
+    public void clear() {
+        setAll(List.of());
+    }
+
+    /** A single change replacing {@code removed} with every current row. */
+    private final class Replacement extends ListChangeListener.Change<Product> {
+        private final List<Product> removed;
+        private final int addedSize;
+        private boolean started;
+
+        Replacement(List<? extends Product> removed) {
+            super(CatalogRowList.this);
+            this.removed = Collections.unmodifiableList(removed);
+            this.addedSize = rows.size();
+        }
+
+        @Override
+        public boolean next() {
+            if (started) {
+                return false;
+            }
+            started = true;
+            return true;
+        }
+
+        @Override
+        public void reset() {
+            started = false;
+        }
+
+        @Override
+        public int getFrom() {
+            return 0;
+        }
+
+        @Override
+        public int getTo() {
+            return addedSize;
+        }
+
+        @Override
+        public List<Product> getRemoved() {
+            return removed;
+        }
+
+        @Override
+        protected int[] getPermutation() {
+            return new int[0];
+        }
+    }
+}
@@ -1,9 +1,15 @@
 package com.pos.system.viewmodels;
 
+import com.pos.system.dao.BaseDAO;
 import com.pos.system.dao.CategoryDAO;
 import com.pos.system.dao.ProductDAO;
 import com.pos.system.models.Category;
 import com.pos.system.models.Product;
+import com.pos.system.models.ProductSearchResult;
+import com.pos.system.services.CatalogIndex;
+import com.pos.system.services.ProductCatalogCache;
+import com.pos.system.services.ProductPageSource;
+import javafx.application.Platform;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.collections.FXCollections;
@@ -11,18 +17,26 @@ import javafx.collections.ObservableList;
 import javafx.concurrent.Task;
 
 import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.stream.Collectors;
 
 public class ProductCatalogViewModel {
 
-    private final ObservableList<Product> allProducts = FXCollections.observableArrayList();
-    private final ObservableList<Product> filteredProducts = FXCollections.observableArrayList();
+    // Rows straight from the catalog index; products are built only for the rows shown
+    private final CatalogRowList filteredProducts = new CatalogRowList();
     private final ObjectProperty<Product> selectedProduct = new SimpleObjectProperty<>();
 
+    private static final int DATABASE_SEARCH_LIMIT = 500;
+
     private String currentQuery = "";
     private Integer currentCategoryId = null; // null or 0 for All
+    private long searchGeneration; // newer searches supersede database results still in flight
+    // Pages of the catalog read straight from the database while the cache warms and nothing is typed
+    private ProductPageSource browseSource;
+    private int browsePageSize = 50;
+    private Runnable onBrowseChanged = () -> {
+    };
 
     // Use a shared daemon thread pool for DB loading to avoid unbounded thread
     // creation
@@ -42,39 +56,79 @@ public class ProductCatalogViewModel {
     // Internal state
     private ProductDAO productDAO; // only used when injected for tests
     private CategoryDAO categoryDAO; // only used when injected for tests
+    private final ProductCatalogCache catalogCache;
+
+    // Held here because the cache only keeps a weak reference to its listeners
+    private final ProductCatalogCache.Listener cacheListener = new ProductCatalogCache.Listener() {
+        @Override
+        public void catalogReloaded() {
+            Platform.runLater(ProductCatalogViewModel.this::showCatalog);
+        }
+
+        @Override
+        public void productChanged(int productId, Product product) {
+            Platform.runLater(() -> applyChange(productId, product));
+        }
+    };
 
     public ProductCatalogViewModel() {
+        this.catalogCache = ProductCatalogCache.getInstance();
+        catalogCache.addListener(cacheListener);
         loadProducts();
     }
 
     public ProductCatalogViewModel(ProductDAO productDAO, CategoryDAO categoryDAO) {
         this.productDAO = productDAO;
         this.categoryDAO = categoryDAO;
+        this.catalogCache = new ProductCatalogCache(() -> productDAO, dbExecutor);
+        catalogCache.addListener(cacheListener);
         // Don't auto-load in tests explicitly to allow mock setup if needed
     }
 
+    /**
+     * Shows the resident catalog, loading it first only if it has not been
+     * warmed yet. Until it is, the first page is read from the database.
+     */
     public void loadProducts() {
-        Task<List<Product>> loadTask = new Task<>() {
-            @Override
-            protected List<Product> call() throws Exception {
-                try (ProductDAO dao = productDAO != null ? null : new ProductDAO()) {
-                    ProductDAO activeDAO = productDAO != null ? productDAO : dao;
-                    return activeDAO.getAllProductsSummary();
-                } catch (java.sql.SQLException e) {
-                    e.printStackTrace();
-                    return FXCollections.observableArrayList();
-                }
-            }
-        };
+        if (catalogCache.isLoaded()) {
+            showCatalog();
+        } else {
+            reloadProducts();
+            applyFilters();
+        }
+    }
 
-        loadTask.setOnSucceeded(e -> {
-            allProducts.setAll(loadTask.getValue());
-            applyFilters(); // Initially show all/filtered
-        });
+    /** Reloads the whole catalog from the database; the list updates when it completes. */
+    public void reloadProducts() {
+        catalogCache.reload();
+    }
 
-        loadTask.setOnFailed(e -> loadTask.getException().printStackTrace());
+    /**
+     * Applies only the products changed since the catalog was last loaded,
+     * e.g. the stock of the items just sold. Rows that still match the current
+     * filter are replaced in place, so the grid keeps its page.
+     */
+    public void refreshChangedProducts() {
+        catalogCache.refreshChanged();
+    }
 
-        dbExecutor.execute(loadTask);
+    private void showCatalog() {
+        applyFilters(); // Initially show all/filtered
+    }
+
+    private void applyChange(int productId, Product product) {
+        if (catalogCache.isLoaded()) {
+            CatalogIndex.Results results = catalogCache.getIndex().search(currentQuery, currentCategoryId);
+            if (results.sameRows(filteredProducts.getRows())) {
+                // Nothing moved in or out of the results: the shown rows already read the new fields
+                int shown = results.indexOfId(productId);
+                if (shown >= 0) {
+                    filteredProducts.refresh(shown);
+                }
+                return;
+            }
+        }
+        applyFilters();
     }
 
     public void loadCategories() {
@@ -93,8 +147,14 @@ public class ProductCatalogViewModel {
         dbExecutor.execute(loadTask);
     }
 
+    /** Categories kept with the resident catalog, available before the database is; may be empty. */
+    public List<Category> getCachedCategories() {
+        return catalogCache.getCategories();
+    }
+
     public void search(String query) {
-        this.currentQuery = query == null ? "" : query.trim().toLowerCase();
+        // Normalized by the index
+        this.currentQuery = query == null ? "" : query;
         applyFilters();
     }
 
@@ -109,33 +169,107 @@ public class ProductCatalogViewModel {
     }
 
     private void applyFilters() {
-        List<Product> result = allProducts.stream()
-                .filter(p -> {
-                    // Search Filter
-                    String name = p.getName() != null ? p.getName().toLowerCase() : "";
-                    String barcode = p.getBarcode() != null ? p.getBarcode().toLowerCase() : "";
+        searchGeneration++;
+        if (!catalogCache.isLoaded()) {
+            // Still warming up: page or search the database rather than wait for the catalog
+            if (currentQuery.isBlank()) {
+                browseDatabase(currentCategoryId);
+            } else {
+                setBrowseSource(null);
+                searchDatabase(currentQuery, currentCategoryId, searchGeneration);
+            }
+            return;
+        }
+        setBrowseSource(null);
+        filteredProducts.setAll(catalogCache.getIndex().search(currentQuery, currentCategoryId));
+    }
 
-                    boolean matchesSearch = currentQuery.isEmpty() ||
-                            name.contains(currentQuery) ||
-                            barcode.contains(currentQuery);
+    private void browseDatabase(Integer categoryId) {
+        if (browseSource != null && Objects.equals(browseSource.getCategoryId(), categoryId)) {
+            // Same listing, changed products: drop the pages read so far
+            browseSource.invalidate();
+            onBrowseChanged.run();
+            return;
+        }
+        ProductCatalogCache.DaoSource daoSource = productDAO != null ? () -> productDAO
+                : () -> BaseDAO.forReading(ProductDAO::new);
+        setBrowseSource(new ProductPageSource(daoSource, categoryId, browsePageSize, dbExecutor));
+    }
 
-                    // Category Filter
-                    boolean matchesCategory = currentCategoryId == null ||
-                            p.getCategoryId() == currentCategoryId;
+    private void setBrowseSource(ProductPageSource source) {
+        if (source != browseSource) {
+            browseSource = source;
+            onBrowseChanged.run();
+        }
+    }
 
-                    return matchesSearch && matchesCategory;
-                })
-                .collect(Collectors.toList());
+    private void searchDatabase(String query, Integer categoryId, long generation) {
+        Task<List<Product>> searchTask = new Task<>() {
+            @Override
+            protected List<Product> call() throws Exception {
+                try (ProductDAO dao = productDAO != null ? null : BaseDAO.forReading(ProductDAO::new)) {
+                    ProductDAO activeDAO = productDAO != null ? productDAO : dao;
+                    return activeDAO.searchProducts(query, categoryId, DATABASE_SEARCH_LIMIT, 0).stream()
+                            .map(ProductSearchResult::getProduct)
+                            .toList();
+                }
+            }
+        };
+        searchTask.setOnSucceeded(e -> {
+            if (generation == searchGeneration) {
+                filteredProducts.setAll(searchTask.getValue());
+            }
+        });
+        searchTask.setOnFailed(e -> searchTask.getException().printStackTrace());
+        dbExecutor.execute(searchTask);
+    }
 
-        filteredProducts.setAll(result);
+    /**
+     * Adds a product to the catalog or replaces the one with the same ID,
+     * updating the index in place instead of reloading everything.
+     */
+    public void upsertProduct(Product product) {
+        catalogCache.productUpdated(product);
     }
 
-    public ObservableList<Product> getFilteredProducts() {
-        return filteredProducts;
+    public void removeProduct(int productId) {
+        catalogCache.productDeleted(productId);
+    }
+
+    public Product findProductById(int productId) {
+        return catalogCache.findById(productId);
+    }
+
+    /** Cached lookup only; see {@link ProductCatalogCache#lookupBarcode(String)} for the scan path. */
+    public Product findProductByBarcode(String barcode) {
+        return catalogCache.findByBarcode(barcode);
+    }
+
+    /**
+     * The source to page the catalog from, or null when {@link #getFilteredProducts()}
+     * holds the results. Only set before the catalog cache has loaded, so the
+     * first page shows without waiting for every product.
+     */
+    public ProductPageSource getBrowseSource() {
+        return browseSource;
     }
 
-    public ObservableList<Product> getAllProducts() {
-        return allProducts;
+    /** Called on the FX thread when the browse source is replaced or its pages go stale. */
+    public void setOnBrowseChanged(Runnable onBrowseChanged) {
+        this.onBrowseChanged = onBrowseChanged;
+    }
+
+    /** Page size of browse sources created from now on; set to the grid's page size. */
+    public void setBrowsePageSize(int browsePageSize) {
+        this.browsePageSize = browsePageSize;
+    }
+
+    public ProductCatalogCache getCatalogCache() {
+        return catalogCache;
+    }
+
+    public ObservableList<Product> getFilteredProducts() {
+        return filteredProducts;
     }
 
     public ObjectProperty<Product> selectedProductProperty() {
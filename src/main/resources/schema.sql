@@ -25,13 +25,31 @@ CREATE TABLE IF NOT EXISTS products (
     selling_price REAL NOT NULL,
     stock INTEGER NOT NULL DEFAULT 0,
     image_path TEXT,
-    image_blob BLOB
+    image_blob BLOB,
+    image_hash TEXT,
+    version INTEGER NOT NULL DEFAULT 0,
+    updated_at DATETIME
 );
 -- Migration: Add image_path if missing (for existing databases)
 ALTER TABLE products
 ADD COLUMN image_path TEXT;
 ALTER TABLE products
 ADD COLUMN image_blob BLOB;
+-- Change tracking: every write to a product stamps the next catalog version
+ALTER TABLE products
+ADD COLUMN version INTEGER NOT NULL DEFAULT 0;
+ALTER TABLE products
+ADD COLUMN updated_at DATETIME;
+-- Images live in the content-addressed image store, image_hash names the file.
+-- image_blob is only read for rows not yet moved there at startup
+ALTER TABLE products
+ADD COLUMN image_hash TEXT;
+-- Deleted products, so readers catching up by version also see removals
+CREATE TABLE IF NOT EXISTS product_deletions (
+    product_id INTEGER PRIMARY KEY,
+    version INTEGER NOT NULL,
+    deleted_at DATETIME DEFAULT CURRENT_TIMESTAMP
+);
 -- Settings Table (New for Store config, tax rates, etc.)
 CREATE TABLE IF NOT EXISTS settings (
     setting_key TEXT PRIMARY KEY,
@@ -47,6 +65,7 @@ CREATE TABLE IF NOT EXISTS sales (
     total_amount REAL NOT NULL,
     total_profit REAL,
     sale_date DATETIME DEFAULT CURRENT_TIMESTAMP,
+    sale_key TEXT,
     FOREIGN KEY (user_id) REFERENCES users(id)
 );
 -- Migrations for existing databases
@@ -56,6 +75,9 @@ ALTER TABLE sales
 ADD COLUMN tax_amount REAL DEFAULT 0.0;
 ALTER TABLE sales
 ADD COLUMN discount_amount REAL DEFAULT 0.0;
+-- Idempotency key generated when the cart is opened, reused by every retry of that checkout
+ALTER TABLE sales
+ADD COLUMN sale_key TEXT;
 -- Sale Payments Table (New for Split Payments)
 CREATE TABLE IF NOT EXISTS sale_payments (
     id INTEGER PRIMARY KEY AUTOINCREMENT,
@@ -107,6 +129,16 @@ CREATE TABLE IF NOT EXISTS inventory_transactions (
     FOREIGN KEY(product_id) REFERENCES products(id) ON DELETE CASCADE,
     FOREIGN KEY(batch_id) REFERENCES batches(id)
 );
+-- Stock Snapshots (ledger checkpoints: balance of a product up to and including ledger_id)
+CREATE TABLE IF NOT EXISTS stock_snapshots (
+    id INTEGER PRIMARY KEY AUTOINCREMENT,
+    product_id INTEGER NOT NULL,
+    ledger_id INTEGER NOT NULL,
+    balance INTEGER NOT NULL,
+    as_of DATETIME NOT NULL,
+    created_at DATETIME DEFAULT CURRENT_TIMESTAMP,
+    FOREIGN KEY(product_id) REFERENCES products(id) ON DELETE CASCADE
+);
 -- Expenses Table
 CREATE TABLE IF NOT EXISTS expenses (
     id INTEGER PRIMARY KEY AUTOINCREMENT,
@@ -142,13 +174,101 @@ SET password = '$2a$10$I2jdGIOzwA6L9EjQCfovRu9H1YCns/sKPR6zqI4kLo1ce/yRFF5R6',
     force_password_change = 1
 WHERE username = 'admin';
 
+-- Full-text product search over name, barcode and category name, rowid = products.id
+-- Marks are token characters so Myanmar words are not split at vowel signs
+CREATE VIRTUAL TABLE IF NOT EXISTS products_fts USING fts5(
+    name,
+    barcode,
+    category,
+    tokenize = "unicode61 remove_diacritics 2 categories 'L* N* M* Co'",
+    prefix = '1 2 3'
+);
+CREATE TRIGGER IF NOT EXISTS products_fts_insert AFTER INSERT ON products BEGIN
+    INSERT INTO products_fts (rowid, name, barcode, category)
+    VALUES (NEW.id, NEW.name, NEW.barcode, (SELECT name FROM categories WHERE id = NEW.category_id));
+END;
+CREATE TRIGGER IF NOT EXISTS products_fts_update AFTER UPDATE OF name, barcode, category_id ON products BEGIN
+    DELETE FROM products_fts WHERE rowid = OLD.id;
+    INSERT INTO products_fts (rowid, name, barcode, category)
+    VALUES (NEW.id, NEW.name, NEW.barcode, (SELECT name FROM categories WHERE id = NEW.category_id));
+END;
+CREATE TRIGGER IF NOT EXISTS products_fts_delete AFTER DELETE ON products BEGIN
+    DELETE FROM products_fts WHERE rowid = OLD.id;
+END;
+CREATE TRIGGER IF NOT EXISTS products_fts_category_rename AFTER UPDATE OF name ON categories BEGIN
+    UPDATE products_fts SET category = NEW.name
+    WHERE rowid IN (SELECT id FROM products WHERE category_id = NEW.id);
+END;
+CREATE TRIGGER IF NOT EXISTS products_fts_category_delete AFTER DELETE ON categories BEGIN
+    UPDATE products_fts SET category = NULL
+    WHERE rowid IN (SELECT id FROM products WHERE category_id = OLD.id);
+END;
+-- Migration: index products that predate the search table (only while it is empty)
+INSERT INTO products_fts (rowid, name, barcode, category)
+SELECT p.id, p.name, p.barcode, c.name
+FROM products p
+    LEFT JOIN categories c ON p.category_id = c.id
+WHERE NOT EXISTS (SELECT 1 FROM products_fts);
+
+-- Product images pre-scaled for grids and lists, size = longest edge in pixels.
+-- An empty image marks an original that could not be decoded, so it is not retried.
+-- Thumbnails go when the original image changes or the product is deleted, and are made again
+CREATE TABLE IF NOT EXISTS product_thumbnails (
+    product_id INTEGER NOT NULL,
+    size INTEGER NOT NULL,
+    image BLOB NOT NULL,
+    created_at DATETIME DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (product_id, size)
+);
+CREATE TRIGGER IF NOT EXISTS product_thumbnails_image_change AFTER UPDATE OF image_blob, image_hash ON products
+WHEN OLD.image_blob IS NOT NEW.image_blob OR OLD.image_hash IS NOT NEW.image_hash BEGIN
+    DELETE FROM product_thumbnails WHERE product_id = OLD.id;
+END;
+CREATE TRIGGER IF NOT EXISTS product_thumbnails_delete AFTER DELETE ON products BEGIN
+    DELETE FROM product_thumbnails WHERE product_id = OLD.id;
+END;
+
+-- Sales summed per hour and per day, kept up to date by each checkout. Bucket is the
+-- start of the hour ('YYYY-MM-DD HH:00:00') or the day ('YYYY-MM-DD') of the sale date.
+-- Each bucket has one row over all sales (category_id -1, payment_method ''), one per
+-- category of the items sold (payment_method '', category_id 0 for items without one)
+-- and one per payment method (category_id -1). Revenue is the sale total on the first,
+-- price times quantity on category rows and the amount paid on payment method rows
+CREATE TABLE IF NOT EXISTS sales_rollup_hourly (
+    bucket TEXT NOT NULL,
+    category_id INTEGER NOT NULL,
+    payment_method TEXT NOT NULL,
+    sale_count INTEGER NOT NULL DEFAULT 0,
+    quantity INTEGER NOT NULL DEFAULT 0,
+    revenue REAL NOT NULL DEFAULT 0.0,
+    profit REAL NOT NULL DEFAULT 0.0,
+    PRIMARY KEY (bucket, category_id, payment_method)
+) WITHOUT ROWID;
+CREATE TABLE IF NOT EXISTS sales_rollup_daily (
+    bucket TEXT NOT NULL,
+    category_id INTEGER NOT NULL,
+    payment_method TEXT NOT NULL,
+    sale_count INTEGER NOT NULL DEFAULT 0,
+    quantity INTEGER NOT NULL DEFAULT 0,
+    revenue REAL NOT NULL DEFAULT 0.0,
+    profit REAL NOT NULL DEFAULT 0.0,
+    PRIMARY KEY (bucket, category_id, payment_method)
+) WITHOUT ROWID;
+
 -- Indexes for Performance Tuning
 CREATE INDEX IF NOT EXISTS idx_products_name ON products(name);
 CREATE INDEX IF NOT EXISTS idx_products_barcode ON products(barcode);
 CREATE INDEX IF NOT EXISTS idx_products_category ON products(category_id);
+CREATE INDEX IF NOT EXISTS idx_products_category_name ON products(category_id, name);
+CREATE INDEX IF NOT EXISTS idx_products_version ON products(version);
+CREATE INDEX IF NOT EXISTS idx_product_deletions_version ON product_deletions(version);
 CREATE INDEX IF NOT EXISTS idx_sales_date ON sales(sale_date);
 CREATE INDEX IF NOT EXISTS idx_sale_items_sale ON sale_items(sale_id);
 CREATE INDEX IF NOT EXISTS idx_sale_items_product ON sale_items(product_id);
 CREATE INDEX IF NOT EXISTS idx_audit_logs_date ON audit_logs(created_at);
 CREATE INDEX IF NOT EXISTS idx_sale_payments_sale ON sale_payments(sale_id);
-CREATE INDEX IF NOT EXISTS idx_expenses_date ON expenses(expense_date);
\ No newline at end of file
+CREATE INDEX IF NOT EXISTS idx_expenses_date ON expenses(expense_date);
+CREATE INDEX IF NOT EXISTS idx_inventory_tx_product ON inventory_transactions(product_id);
+CREATE INDEX IF NOT EXISTS idx_inventory_tx_date ON inventory_transactions(created_at);
+CREATE UNIQUE INDEX IF NOT EXISTS idx_stock_snapshots_product_ledger ON stock_snapshots(product_id, ledger_id);
+CREATE UNIQUE INDEX IF NOT EXISTS idx_sales_sale_key ON sales(sale_key);
\ No newline at end of file
@@ -2,8 +2,9 @@ package com.pos.system.controllers;
 
 import com.pos.system.App;
 import com.pos.system.dao.ExpenseDAO;
-import com.pos.system.dao.SaleDAO;
+import com.pos.system.dao.SalesRollupDAO;
 import com.pos.system.models.Expense;
+import com.pos.system.models.SalesRollup;
 import javafx.scene.Scene;
 import javafx.scene.control.TableView;
 import javafx.scene.control.TextField;
@@ -34,7 +35,7 @@ public class FinanceControllerTest {
     private ExpenseDAO mockExpenseDAO;
 
     @Mock
-    private SaleDAO mockSaleDAO;
+    private SalesRollupDAO mockRollupDAO;
 
     private AutoCloseable mocks;
     private FinanceController controller;
@@ -50,7 +51,7 @@ public class FinanceControllerTest {
         when(mockExpenseDAO.getPaginatedExpensesBetween(any(), any(), anyInt(), anyInt()))
                 .thenReturn(Arrays.asList(e1));
         when(mockExpenseDAO.getTotalExpensesBetween(any(), any())).thenReturn(50.0);
-        when(mockSaleDAO.getTotalSalesBetween(any(), any())).thenReturn(100.0);
+        when(mockRollupDAO.getTotals(any(), any())).thenReturn(new SalesRollup(null, null, null, 1, 1, 100.0, 0));
 
         // Set Session
         User admin = new User(1, "admin", "password", "ADMIN");
@@ -68,8 +69,8 @@ public class FinanceControllerTest {
                 }
 
                 @Override
-                protected SaleDAO createSaleDAO() {
-                    return mockSaleDAO;
+                protected SalesRollupDAO createRollupDAO() {
+                    return mockRollupDAO;
                 }
             };
             return controller;
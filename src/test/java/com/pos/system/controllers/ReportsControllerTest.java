@@ -3,7 +3,9 @@ package com.pos.system.controllers;
 import com.pos.system.App;
 import com.pos.system.dao.SaleDAO;
 import com.pos.system.dao.SalePaymentDAO;
+import com.pos.system.dao.SalesRollupDAO;
 import com.pos.system.models.Sale;
+import com.pos.system.models.SalesRollup;
 import javafx.scene.Scene;
 import javafx.scene.control.TableView;
 import javafx.scene.layout.VBox;
@@ -36,6 +38,9 @@ public class ReportsControllerTest {
     @Mock
     private SalePaymentDAO mockPaymentDAO;
 
+    @Mock
+    private SalesRollupDAO mockRollupDAO;
+
     private AutoCloseable mocks;
     private ReportsController controller;
 
@@ -46,8 +51,11 @@ public class ReportsControllerTest {
 
         // Mock DAO
         Sale s1 = new Sale(1, 1, 100.0, 10.0, LocalDateTime.now());
-        when(mockSaleDAO.getTotalSalesBetween(any(), any())).thenReturn(100.0);
-        when(mockSaleDAO.getTotalProfitBetween(any(), any())).thenReturn(20.0);
+        when(mockRollupDAO.getTotals(any(), any())).thenReturn(new SalesRollup(null, null, null, 1, 1, 100.0, 20.0));
+        when(mockRollupDAO.getHourlyTotals(any(), any())).thenReturn(Arrays.asList(
+                new SalesRollup(s1.getSaleDate().withMinute(0).withSecond(0).withNano(0), null, null, 1, 1, 100.0,
+                        20.0)));
+        when(mockRollupDAO.getTotalsByCategory(any(), any())).thenReturn(new java.util.ArrayList<>());
         when(mockSaleDAO.getSalesBetween(any(), any())).thenReturn(Arrays.asList(s1));
         when(mockPaymentDAO.findBySaleIds(any())).thenReturn(new java.util.ArrayList<>());
 
@@ -67,6 +75,11 @@ public class ReportsControllerTest {
                 protected SalePaymentDAO createPaymentDAO() {
                     return mockPaymentDAO;
                 }
+
+                @Override
+                protected SalesRollupDAO createRollupDAO() {
+                    return mockRollupDAO;
+                }
             };
             return controller;
         });
@@ -7,6 +7,7 @@ import org.junit.jupiter.api.Test;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -54,4 +55,21 @@ public class AuditLogDAOTest extends BaseDAOTest {
         assertEquals("LOGIN", recentLogs.get(1).getAction());
         assertEquals(1, recentLogs.get(1).getUserId());
     }
+
+    @Test
+    public void testCountProductChangesPerEntity() throws SQLException {
+        LocalDateTime at = LocalDateTime.of(2024, 3, 10, 9, 0);
+        auditLogDAO.create(new AuditLog(0, 1, "UPDATE_PRODUCT", "Product", "7", "", at));
+        auditLogDAO.create(new AuditLog(0, 1, "STOCK_ADJUSTMENT", "product", "7", "", at.plusHours(1)));
+        auditLogDAO.create(new AuditLog(0, 1, "Inventory Count", "Batch", null, "", at.plusHours(2)));
+        auditLogDAO.create(new AuditLog(0, 1, "LOGIN", "User", "1", "", at.plusHours(3)));
+        auditLogDAO.create(new AuditLog(0, 1, "UPDATE_PRODUCT", "Product", "8", "", at.plusDays(1)));
+
+        Map<String, Integer> counts = auditLogDAO.countProductChangesBetween(at.toLocalDate().atStartOfDay(),
+                at.toLocalDate().atTime(23, 59, 59));
+
+        assertEquals(2, counts.size());
+        assertEquals(2, counts.get("7"));
+        assertEquals(1, counts.get("Unknown"));
+    }
 }
@@ -0,0 +1,143 @@
+package com.pos.system.dao;
+
+import com.pos.system.database.DatabaseWriter;
+import com.pos.system.models.AuditLog;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AuditLogWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private String jdbcUrl;
+    private DatabaseWriter databaseWriter;
+    private AuditLogWriter writer;
+
+    @BeforeEach
+    public void setUp() throws SQLException {
+        jdbcUrl = "jdbc:sqlite:" + tempDir.resolve("audit.db");
+        try (Connection conn = DriverManager.getConnection(jdbcUrl);
+                Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE audit_logs (id INTEGER PRIMARY KEY AUTOINCREMENT, user_id INTEGER, "
+                    + "action TEXT NOT NULL, entity_name TEXT, entity_id TEXT, details TEXT, created_at DATETIME)");
+        }
+        databaseWriter = new DatabaseWriter(() -> DriverManager.getConnection(jdbcUrl), 32);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (writer != null) {
+            writer.shutdown();
+        }
+        databaseWriter.shutdown();
+    }
+
+    private AuditLog entry(int i) {
+        return new AuditLog(0, null, "UPDATE", "Batch", String.valueOf(i), "entry " + i, LocalDateTime.now());
+    }
+
+    private int countRows() throws SQLException {
+        try (AuditLogDAO dao = new AuditLogDAO(DriverManager.getConnection(jdbcUrl))) {
+            return dao.getTotalCount();
+        }
+    }
+
+    @Test
+    public void testEntriesAreFlushedInBatches() throws Exception {
+        writer = new AuditLogWriter(databaseWriter, 100, 10, 50);
+
+        for (int i = 0; i < 25; i++) {
+            assertTrue(writer.submit(entry(i)));
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (writer.getFlushedCount() < 25 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+
+        assertEquals(25, writer.getFlushedCount());
+        assertEquals(0, writer.getQueueDepth());
+        assertEquals(25, countRows());
+    }
+
+    @Test
+    public void testFullBufferHandsEntriesToTheDatabaseWriter() throws Exception {
+        // Database writer is busy, so the flusher takes the first entry and waits
+        CountDownLatch release = new CountDownLatch(1);
+        databaseWriter.submit(connection -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        });
+        writer = new AuditLogWriter(databaseWriter, 2, 1, 60_000);
+
+        assertTrue(writer.submit(entry(1)));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (writer.getQueueDepth() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, writer.getQueueDepth());
+
+        assertTrue(writer.submit(entry(2)));
+        assertTrue(writer.submit(entry(3)));
+        assertFalse(writer.submit(entry(4)));
+
+        assertEquals(2, writer.getQueueDepth());
+        assertEquals(1, writer.getBlockedCount());
+        assertEquals(1, writer.getSpilledCount());
+        release.countDown();
+
+        writer.shutdown();
+        writer = null;
+        assertEquals(4, countRows());
+    }
+
+    @Test
+    public void testEntriesInsideAWriterUnitCommitAndRollBackWithIt() throws Exception {
+        writer = new AuditLogWriter(databaseWriter, 100, 100, 60_000);
+
+        databaseWriter.execute(connection -> writer.submit(entry(1)));
+        assertThrows(SQLException.class, () -> databaseWriter.execute(connection -> {
+            writer.submit(entry(2));
+            throw new SQLException("unit failed");
+        }));
+
+        assertEquals(0, writer.getQueueDepth());
+        assertEquals(1, countRows());
+    }
+
+    @Test
+    public void testShutdownDrainsBuffer() throws Exception {
+        writer = new AuditLogWriter(databaseWriter, 100, 100, 60_000);
+        writer.submit(entry(1));
+        writer.submit(entry(2));
+
+        writer.shutdown();
+        writer = null;
+
+        assertEquals(2, countRows());
+    }
+
+    @Test
+    public void testSecurityCriticalEntities() {
+        assertTrue(AuditLogWriter.isSecurityCritical("User"));
+        assertTrue(AuditLogWriter.isSecurityCritical("Setting"));
+        assertFalse(AuditLogWriter.isSecurityCritical("Batch"));
+    }
+}
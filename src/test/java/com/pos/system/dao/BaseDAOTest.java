@@ -1,5 +1,6 @@
 package com.pos.system.dao;
 
+import com.pos.system.database.SqlScript;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.slf4j.Logger;
@@ -35,9 +36,7 @@ public abstract class BaseDAOTest {
             }
 
             String sql = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
-            String[] statements = sql.split(";");
-
-            for (String statement : statements) {
+            for (String statement : SqlScript.split(sql)) {
                 if (!statement.trim().isEmpty()) {
                     try {
                         stmt.execute(statement);
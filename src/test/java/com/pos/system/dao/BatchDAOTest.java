@@ -9,6 +9,7 @@ import org.junit.jupiter.api.Test;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -110,4 +111,35 @@ public class BatchDAOTest extends BaseDAOTest {
         assertEquals("LATER", availableBatches.get(1).getBatchNumber());
         assertEquals("NO-EXP", availableBatches.get(2).getBatchNumber());
     }
+
+    @Test
+    public void testGetAvailableBatchesForProductsAndBulkUpdate() throws SQLException {
+        // Arrange
+        int categoryId = categoryDAO.getAllCategories().get(0).getId();
+        productDAO.addProduct(new Product(0, "BPROD2", "Second Product", categoryId, "Cat1", 10.0, 20.0, 0, null));
+        int secondProductId = productDAO.getProductByBarcode("BPROD2").getId();
+
+        LocalDateTime now = LocalDateTime.now();
+        Batch later = new Batch(0, testProductId, "P1-LATER", now.plusMonths(2), 10.0, 10, null);
+        Batch sooner = new Batch(0, testProductId, "P1-SOONER", now.plusMonths(1), 10.0, 10, null);
+        Batch other = new Batch(0, secondProductId, "P2", null, 10.0, 5, null);
+        batchDAO.insertBatch(later);
+        batchDAO.insertBatch(sooner);
+        batchDAO.insertBatch(other);
+
+        // Act
+        Map<Integer, List<Batch>> batches = batchDAO
+                .getAvailableBatchesForProducts(List.of(testProductId, secondProductId));
+        batchDAO.updateRemainingQuantities(Map.of(sooner.getId(), 0, other.getId(), 3));
+
+        // Assert
+        assertEquals(2, batches.get(testProductId).size());
+        assertEquals("P1-SOONER", batches.get(testProductId).get(0).getBatchNumber());
+        assertEquals(1, batches.get(secondProductId).size());
+
+        List<Batch> remaining = batchDAO.getAvailableBatches(testProductId);
+        assertEquals(1, remaining.size());
+        assertEquals("P1-LATER", remaining.get(0).getBatchNumber());
+        assertEquals(3, batchDAO.getAvailableBatches(secondProductId).get(0).getRemainingQuantity());
+    }
 }
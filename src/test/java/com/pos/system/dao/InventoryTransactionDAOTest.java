@@ -3,6 +3,7 @@ package com.pos.system.dao;
 import com.pos.system.models.InventoryTransaction;
 import com.pos.system.models.Category;
 import com.pos.system.models.Product;
+import com.pos.system.models.StockDrift;
 import com.pos.system.models.TransactionType;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -100,4 +101,29 @@ public class InventoryTransactionDAOTest extends BaseDAOTest {
         // Assert
         assertEquals(0, stockLevel);
     }
+
+    @Test
+    public void testFindStockDrift() throws SQLException {
+        // Arrange: ledger says 40, cached counter still 0
+        InventoryTransaction tx = new InventoryTransaction();
+        tx.setProductId(testProductId);
+        tx.setQuantityChange(40);
+        tx.setTransactionType(TransactionType.PURCHASE);
+        transactionDAO.insertTransaction(tx);
+
+        // Act
+        List<StockDrift> drift = transactionDAO.findStockDrift();
+
+        // Assert
+        assertEquals(1, drift.size());
+        assertEquals(testProductId, drift.get(0).getProductId());
+        assertEquals(0, drift.get(0).getCachedStock());
+        assertEquals(40, drift.get(0).getLedgerStock());
+
+        // Once the counter matches, nothing is reported
+        try (java.sql.Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("UPDATE products SET stock = 40 WHERE id = " + testProductId);
+        }
+        assertTrue(transactionDAO.findStockDrift().isEmpty());
+    }
 }
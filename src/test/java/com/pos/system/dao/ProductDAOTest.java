@@ -1,10 +1,13 @@
 package com.pos.system.dao;
 
+import com.pos.system.database.ImageStore;
 import com.pos.system.models.Category;
 import com.pos.system.models.Product;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.nio.file.Path;
 import java.sql.SQLException;
 import java.util.List;
 
@@ -14,10 +17,15 @@ public class ProductDAOTest extends BaseDAOTest {
 
     private ProductDAO productDAO;
     private CategoryDAO categoryDAO;
+    private ImageStore imageStore;
+
+    @TempDir
+    Path imageDir;
 
     @BeforeEach
     public void setUp() throws SQLException {
-        productDAO = new ProductDAO(connection);
+        imageStore = new ImageStore(imageDir);
+        productDAO = new ProductDAO(connection, imageStore);
         categoryDAO = new CategoryDAO(connection);
     }
 
@@ -107,4 +115,173 @@ public class ProductDAOTest extends BaseDAOTest {
         // Assert
         assertTrue(products.isEmpty());
     }
+
+    @Test
+    public void testAddSetsIdAndSummaryLookupsSkipImage() throws SQLException {
+        Product product = new Product(0, "BC-SUM", "Scanner Item", 0, null, 1.0, 2.0, 7, new byte[] { 1, 2, 3 });
+        productDAO.addProduct(product);
+        assertTrue(product.getId() > 0);
+
+        Product byBarcode = productDAO.getProductSummaryByBarcode("BC-SUM");
+        assertEquals(product.getId(), byBarcode.getId());
+        assertEquals(7, byBarcode.getStock());
+        assertNull(byBarcode.getImageData());
+
+        Product byId = productDAO.getProductSummaryById(product.getId());
+        assertEquals("Scanner Item", byId.getName());
+        assertNull(byId.getImageData());
+
+        assertNull(productDAO.getProductSummaryByBarcode("NON_EXISTENT"));
+        assertNull(productDAO.getProductSummaryById(-1));
+    }
+
+    @Test
+    public void testImagesAreKeptInTheImageStore() throws SQLException {
+        byte[] image = { 1, 2, 3 };
+        Product product = new Product(0, "BC-IMG", "Pictured", 0, null, 1.0, 2.0, 0, image);
+        productDAO.addProduct(product);
+
+        String hash = ImageStore.hash(image);
+        assertTrue(imageStore.contains(hash));
+        assertArrayEquals(image, productDAO.getProductImage(product.getId()));
+        assertArrayEquals(image, productDAO.getProductByBarcode("BC-IMG").getImageData());
+
+        // A row not yet moved to the store still reads from the database
+        try (var stmt = connection.prepareStatement(
+                "UPDATE products SET image_blob = ?, image_hash = NULL WHERE id = ?")) {
+            stmt.setBytes(1, new byte[] { 7 });
+            stmt.setInt(2, product.getId());
+            stmt.executeUpdate();
+        }
+        assertArrayEquals(new byte[] { 7 }, productDAO.getProductImage(product.getId()));
+
+        // Saving it again moves it
+        Product legacy = productDAO.getProductByBarcode("BC-IMG");
+        productDAO.updateProduct(legacy);
+        try (var stmt = connection.createStatement();
+                var rs = stmt.executeQuery("SELECT image_blob, image_hash FROM products")) {
+            assertTrue(rs.next());
+            assertNull(rs.getBytes(1));
+            assertEquals(ImageStore.hash(new byte[] { 7 }), rs.getString(2));
+        }
+    }
+
+    @Test
+    public void testEveryChangeAdvancesTheCatalogVersion() throws SQLException {
+        Product tea = new Product(0, "BC-V1", "Tea", 0, null, 1.0, 2.0, 0, null);
+        Product coffee = new Product(0, "BC-V2", "Coffee", 0, null, 1.0, 3.0, 0, null);
+        productDAO.addProduct(tea);
+        productDAO.addProduct(coffee);
+        long loaded = productDAO.getCatalogVersion();
+        assertEquals(2, loaded);
+        assertTrue(productDAO.getProductsChangedSince(loaded).isEmpty());
+
+        tea.setSellingPrice(2.5);
+        productDAO.updateProduct(tea);
+        // Stock moves through the inventory ledger, which bumps the version too
+        new com.pos.system.services.InventoryService(null).addStock(connection, coffee.getId(), 5, 1.0, null,
+                "TEST", null);
+
+        List<Product> changed = productDAO.getProductsChangedSince(loaded);
+        assertEquals(2, changed.size());
+        assertEquals("Tea", changed.get(0).getName());
+        assertEquals(2.5, changed.get(0).getSellingPrice(), 0.001);
+        assertEquals("Coffee", changed.get(1).getName());
+        assertEquals(5, changed.get(1).getStock());
+        assertTrue(changed.get(1).getVersion() > changed.get(0).getVersion());
+
+        long beforeDelete = productDAO.getCatalogVersion();
+        productDAO.deleteProduct(tea.getId());
+        assertEquals(List.of(tea.getId()), productDAO.getProductIdsDeletedSince(beforeDelete));
+        assertTrue(productDAO.getProductsChangedSince(beforeDelete).isEmpty());
+
+        // Versions keep rising past the deletion
+        productDAO.addProduct(new Product(0, "BC-V3", "Juice", 0, null, 1.0, 2.0, 0, null));
+        assertEquals(beforeDelete + 2, productDAO.getCatalogVersion());
+    }
+
+    @Test
+    public void testSearchProductsMatchesWordPrefixesAndRanksNamesFirst() throws SQLException {
+        Category snacks = new Category(0, "Snacks", "");
+        categoryDAO.addCategory(snacks);
+        int snacksId = categoryDAO.getAllCategories().get(0).getId();
+        productDAO.addProduct(new Product(0, "8851001", "Chocolate Biscuits", snacksId, null, 1.0, 2.0, 0, null));
+        productDAO.addProduct(new Product(0, "8851002", "Rice Crackers", snacksId, null, 1.0, 2.0, 0, null));
+        productDAO.addProduct(new Product(0, "8851003", "Snack Mix", 0, null, 1.0, 2.0, 0, null));
+
+        List<com.pos.system.models.ProductSearchResult> hits = productDAO.searchProducts("choc BIS", 10, 0);
+        assertEquals(1, hits.size());
+        assertEquals("Chocolate Biscuits", hits.get(0).getProduct().getName());
+        assertEquals("Snacks", hits.get(0).getProduct().getCategory());
+        assertNull(hits.get(0).getProduct().getImageData());
+        assertEquals(List.of("", "Chocolate", " ", "Biscuits", ""), hits.get(0).getNameSegments());
+
+        // A name hit outranks products that only match on their category
+        hits = productDAO.searchProducts("snack", 10, 0);
+        assertEquals(3, hits.size());
+        assertEquals("Snack Mix", hits.get(0).getProduct().getName());
+        assertEquals(2, productDAO.searchProducts("snack", 10, 1).size());
+        assertEquals(2, productDAO.searchProducts("snack", snacksId, 10, 0).size());
+
+        // Barcodes match by prefix too
+        assertEquals(3, productDAO.searchProducts("885100", 10, 0).size());
+        assertEquals("Rice Crackers", productDAO.searchProducts("8851002", 10, 0).get(0).getProduct().getName());
+        assertTrue(productDAO.searchProducts("  \"*( ", 10, 0).isEmpty());
+        assertTrue(productDAO.searchProducts("biscuits OR rice", 10, 0).isEmpty(), "operators are literal words");
+    }
+
+    @Test
+    public void testSearchIndexFollowsProductAndCategoryChanges() throws SQLException {
+        Category drinks = new Category(0, "Drinks", "");
+        categoryDAO.addCategory(drinks);
+        int drinksId = categoryDAO.getAllCategories().get(0).getId();
+        Product product = new Product(0, "BC-FTS", "Green Tea", drinksId, null, 1.0, 2.0, 0, null);
+        productDAO.addProduct(product);
+
+        product.setName("Jasmine Tea");
+        productDAO.updateProduct(product);
+        assertTrue(productDAO.searchProducts("green", 10, 0).isEmpty());
+        assertEquals(1, productDAO.searchProducts("jasm", 10, 0).size());
+
+        try (java.sql.Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("UPDATE categories SET name = 'Beverages' WHERE id = " + drinksId);
+        }
+        assertEquals(1, productDAO.searchProducts("bever", 10, 0).size());
+
+        productDAO.deleteProduct(product.getId());
+        assertTrue(productDAO.searchProducts("tea", 10, 0).isEmpty());
+    }
+
+    @Test
+    public void testProductPagesFollowNameThenIdOrder() throws SQLException {
+        Category drinks = new Category(0, "Drinks", "");
+        categoryDAO.addCategory(drinks);
+        int drinksId = categoryDAO.getAllCategories().get(0).getId();
+        productDAO.addProduct(new Product(0, "P-1", "Tea", drinksId, null, 1.0, 2.0, 0, null));
+        productDAO.addProduct(new Product(0, "P-2", "Apple", 0, null, 1.0, 2.0, 0, null));
+        productDAO.addProduct(new Product(0, "P-3", "Tea", 0, null, 1.0, 2.0, 0, null));
+        productDAO.addProduct(new Product(0, "P-4", "Milk", drinksId, null, 1.0, 2.0, 0, null));
+        productDAO.addProduct(new Product(0, "P-5", "Bread", 0, null, 1.0, 2.0, 0, null));
+
+        List<Product> first = productDAO.getProductPage(null, 0, null, 2);
+        assertEquals(List.of("P-2", "P-5"), first.stream().map(Product::getBarcode).toList());
+        assertNull(first.get(0).getImageData());
+
+        // Equal names are split by ID, so nothing is skipped or repeated across pages
+        Product last = first.get(1);
+        List<Product> second = productDAO.getProductPage(last.getName(), last.getId(), null, 2);
+        assertEquals(List.of("P-4", "P-1"), second.stream().map(Product::getBarcode).toList());
+        last = second.get(1);
+        List<Product> third = productDAO.getProductPage(last.getName(), last.getId(), null, 2);
+        assertEquals(List.of("P-3"), third.stream().map(Product::getBarcode).toList());
+
+        assertEquals("P-1", productDAO.getProductAtPosition(3, null).getBarcode());
+        assertNull(productDAO.getProductAtPosition(5, null));
+
+        assertEquals(List.of("P-4", "P-1"), productDAO.getProductPage(null, 0, drinksId, 10).stream()
+                .map(Product::getBarcode).toList());
+        assertEquals("P-1", productDAO.getProductAtPosition(1, drinksId).getBarcode());
+        assertEquals(5, productDAO.countProducts(null));
+        assertEquals(2, productDAO.countProducts(drinksId));
+    }
 }
@@ -0,0 +1,101 @@
+package com.pos.system.dao;
+
+import com.pos.system.database.ImageStore;
+import com.pos.system.models.Product;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProductThumbnailDAOTest extends BaseDAOTest {
+
+    private ProductDAO productDAO;
+    private ProductThumbnailDAO thumbnailDAO;
+
+    @TempDir
+    Path imageDir;
+
+    @BeforeEach
+    public void setUp() {
+        productDAO = new ProductDAO(connection, new ImageStore(imageDir));
+        thumbnailDAO = new ProductThumbnailDAO(connection);
+    }
+
+    private Product addProduct(String barcode, byte[] image) throws SQLException {
+        Product product = new Product(0, barcode, "Product " + barcode, 0, null, 1.0, 2.0, 0, image);
+        productDAO.addProduct(product);
+        return product;
+    }
+
+    @Test
+    public void testThumbnailIsDroppedWhenTheOriginalChanges() throws SQLException {
+        Product product = addProduct("T-1", new byte[] { 1, 2, 3 });
+        ProductThumbnailDAO.Original original = thumbnailDAO.getOriginal(product.getId());
+        assertEquals(ImageStore.hash(new byte[] { 1, 2, 3 }), original.getImageHash());
+        assertNull(original.getImage(), "the image itself is in the image store");
+        assertNull(thumbnailDAO.getThumbnail(product.getId(), 80));
+
+        assertTrue(thumbnailDAO.saveThumbnail(original, 80, new byte[] { 9 }));
+        assertArrayEquals(new byte[] { 9 }, thumbnailDAO.getThumbnail(product.getId(), 80));
+
+        // Saving other fields with the same image keeps the thumbnail
+        product.setName("Renamed");
+        productDAO.updateProduct(product);
+        assertNotNull(thumbnailDAO.getThumbnail(product.getId(), 80));
+
+        product.setImageData(new byte[] { 4, 5 });
+        productDAO.updateProduct(product);
+        assertNull(thumbnailDAO.getThumbnail(product.getId(), 80));
+
+        // Made from the old original, read before the product was written again
+        assertFalse(thumbnailDAO.saveThumbnail(original, 80, new byte[] { 9 }));
+        assertNull(thumbnailDAO.getThumbnail(product.getId(), 80));
+
+        thumbnailDAO.saveThumbnail(thumbnailDAO.getOriginal(product.getId()), 80, new byte[] { 7 });
+        productDAO.deleteProduct(product.getId());
+        assertNull(thumbnailDAO.getThumbnail(product.getId(), 80));
+    }
+
+    @Test
+    public void testUndecodableOriginalIsRecordedAsEmpty() throws SQLException {
+        Product product = addProduct("T-2", new byte[] { 1 });
+        thumbnailDAO.saveThumbnail(thumbnailDAO.getOriginal(product.getId()), 80, new byte[0]);
+
+        assertArrayEquals(new byte[0], thumbnailDAO.getThumbnail(product.getId(), 80));
+    }
+
+    @Test
+    public void testOriginalStillInTheDatabaseIsRead() throws SQLException {
+        Product product = addProduct("T-8", null);
+        try (var stmt = connection.prepareStatement("UPDATE products SET image_blob = ? WHERE id = ?")) {
+            stmt.setBytes(1, new byte[] { 5, 6 });
+            stmt.setInt(2, product.getId());
+            stmt.executeUpdate();
+        }
+
+        ProductThumbnailDAO.Original original = thumbnailDAO.getOriginal(product.getId());
+        assertNull(original.getImageHash());
+        assertArrayEquals(new byte[] { 5, 6 }, original.getImage());
+        assertEquals(List.of(product.getId()), thumbnailDAO.getProductIdsMissingThumbnails(0, 1, 10));
+    }
+
+    @Test
+    public void testMissingThumbnailsArePagedById() throws SQLException {
+        Product first = addProduct("T-3", new byte[] { 1 });
+        addProduct("T-4", null);
+        Product done = addProduct("T-5", new byte[] { 2 });
+        Product partial = addProduct("T-6", new byte[] { 3 });
+        Product last = addProduct("T-7", new byte[] { 4 });
+        thumbnailDAO.saveThumbnail(thumbnailDAO.getOriginal(done.getId()), 80, new byte[] { 1 });
+        thumbnailDAO.saveThumbnail(thumbnailDAO.getOriginal(done.getId()), 160, new byte[] { 1 });
+        thumbnailDAO.saveThumbnail(thumbnailDAO.getOriginal(partial.getId()), 80, new byte[] { 1 });
+
+        assertEquals(List.of(first.getId(), partial.getId()), thumbnailDAO.getProductIdsMissingThumbnails(0, 2, 2));
+        assertEquals(List.of(last.getId()), thumbnailDAO.getProductIdsMissingThumbnails(partial.getId(), 2, 2));
+    }
+}
@@ -102,4 +102,44 @@ public class SaleDAOTest extends BaseDAOTest {
         assertEquals(330.0, totalSales, 0.001);
         assertEquals(150.0, totalProfit, 0.001);
     }
+
+    @Test
+    public void testInsertSaleWithPresetIdAdvancesSequence() throws SQLException {
+        Sale first = new Sale(0, 1, 10.0, 5.0, LocalDateTime.of(2026, 3, 1, 9, 0));
+        saleDAO.insertSale(first);
+        assertEquals(first.getId(), saleDAO.getMaxSaleId());
+
+        Sale preset = new Sale(first.getId() + 5, 1, 30.0, 12.0, LocalDateTime.of(2026, 3, 1, 9, 5));
+        saleDAO.insertSaleWithId(preset);
+
+        Sale stored = saleDAO.getSaleById(preset.getId());
+        assertNotNull(stored);
+        assertEquals(30.0, stored.getTotalAmount());
+        assertEquals(preset.getSaleDate(), stored.getSaleDate());
+        assertEquals(preset.getId(), saleDAO.getMaxSaleId());
+        assertNull(saleDAO.getSaleById(preset.getId() + 1));
+
+        // Regular inserts continue above the preset ID
+        Sale next = new Sale(0, 1, 5.0, 1.0, LocalDateTime.of(2026, 3, 1, 9, 10));
+        assertEquals(preset.getId() + 1, saleDAO.insertSale(next));
+    }
+
+    @Test
+    public void testSaleKeyIsUniqueAndFindable() throws SQLException {
+        Sale sale = new Sale(0, 1, 40.0, 10.0, LocalDateTime.of(2026, 3, 2, 14, 0));
+        sale.setSaleKey("cart-7f3a");
+        int id = saleDAO.insertSale(sale);
+
+        assertEquals(id, saleDAO.findSaleIdByKey("cart-7f3a"));
+        assertEquals("cart-7f3a", saleDAO.getSaleById(id).getSaleKey());
+        assertEquals(0, saleDAO.findSaleIdByKey("cart-other"));
+
+        Sale retry = new Sale(0, 1, 40.0, 10.0, LocalDateTime.of(2026, 3, 2, 14, 0));
+        retry.setSaleKey("cart-7f3a");
+        assertThrows(SQLException.class, () -> saleDAO.insertSale(retry));
+
+        // Sales without a key are not constrained
+        saleDAO.insertSale(new Sale(0, 1, 1.0, 0.5, LocalDateTime.of(2026, 3, 2, 14, 1)));
+        saleDAO.insertSale(new Sale(0, 1, 1.0, 0.5, LocalDateTime.of(2026, 3, 2, 14, 1)));
+    }
 }
@@ -0,0 +1,209 @@
+package com.pos.system.dao;
+
+import com.pos.system.models.Category;
+import com.pos.system.models.Product;
+import com.pos.system.models.Sale;
+import com.pos.system.models.SaleItem;
+import com.pos.system.models.SalePayment;
+import com.pos.system.models.SalesRollup;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SalesRollupDAOTest extends BaseDAOTest {
+    private static final LocalDate DAY = LocalDate.of(2024, 3, 10);
+
+    private SalesRollupDAO rollupDAO;
+    private int teaId;
+    private int looseId;
+
+    @BeforeEach
+    public void setUp() throws SQLException {
+        rollupDAO = new SalesRollupDAO(connection);
+        CategoryDAO categoryDAO = new CategoryDAO(connection);
+        categoryDAO.addCategory(new Category(0, "Drinks", ""));
+        int drinksId = categoryDAO.getAllCategories().get(0).getId();
+
+        ProductDAO productDAO = new ProductDAO(connection);
+        productDAO.addProduct(new Product(0, "T1", "Tea", drinksId, "Drinks", 5.0, 10.0, 100, null));
+        productDAO.addProduct(new Product(0, "L1", "Loose", 0, null, 1.0, 3.0, 100, null));
+        teaId = productDAO.getProductByBarcode("T1").getId();
+        looseId = productDAO.getProductByBarcode("L1").getId();
+    }
+
+    // Records a sale of teas and loose items paid with one method, without rolling it up
+    private int sell(LocalDateTime at, int teas, int loose, String method) throws SQLException {
+        double total = teas * 10.0 + loose * 3.0;
+        Sale sale = new Sale(0, 1, total, teas * 5.0 + loose * 2.0, at);
+        SaleDAO saleDAO = new SaleDAO(connection);
+        int saleId = saleDAO.insertSale(sale);
+        List<SaleItem> items = new ArrayList<>();
+        if (teas > 0) {
+            items.add(new SaleItem(0, 0, teaId, "Tea", teas, 10.0, 5.0));
+        }
+        if (loose > 0) {
+            items.add(new SaleItem(0, 0, looseId, "Loose", loose, 3.0, 1.0));
+        }
+        saleDAO.insertSaleItems(saleId, items);
+        new SalePaymentDAO(connection).create(new SalePayment(0, saleId, method, total, at));
+        return saleId;
+    }
+
+    private int sellAndAdd(LocalDateTime at, int teas, int loose, String method) throws SQLException {
+        int saleId = sell(at, teas, loose, method);
+        rollupDAO.addSale(saleId);
+        return saleId;
+    }
+
+    @Test
+    public void testAddSaleSumsTotalsCategoriesAndPayments() throws SQLException {
+        sellAndAdd(DAY.atTime(9, 15), 2, 1, "Cash");
+        sellAndAdd(DAY.atTime(9, 40), 1, 0, "Card");
+
+        SalesRollup totals = rollupDAO.getTotals(DAY.atStartOfDay(), DAY.atTime(23, 59, 59));
+        assertEquals(2, totals.getSaleCount());
+        assertEquals(4, totals.getQuantity());
+        assertEquals(33.0, totals.getRevenue(), 0.001);
+        assertEquals(17.0, totals.getProfit(), 0.001);
+
+        List<SalesRollup> categories = rollupDAO.getTotalsByCategory(DAY.atStartOfDay(), DAY.atTime(23, 59, 59));
+        assertEquals(2, categories.size());
+        assertNull(categories.get(0).getCategory());
+        assertEquals(1, categories.get(0).getQuantity());
+        assertEquals(2.0, categories.get(0).getProfit(), 0.001);
+        assertEquals("Drinks", categories.get(1).getCategory());
+        assertEquals(2, categories.get(1).getSaleCount());
+        assertEquals(30.0, categories.get(1).getRevenue(), 0.001);
+
+        List<SalesRollup> payments = rollupDAO.getTotalsByPaymentMethod(DAY.atStartOfDay(), DAY.atTime(23, 59, 59));
+        assertEquals(2, payments.size());
+        assertEquals("Card", payments.get(0).getPaymentMethod());
+        assertEquals(10.0, payments.get(0).getRevenue(), 0.001);
+        assertEquals(23.0, payments.get(1).getRevenue(), 0.001);
+
+        List<SalesRollup> hours = rollupDAO.getHourlyTotals(DAY.atStartOfDay(), DAY.atTime(23, 0));
+        assertEquals(1, hours.size());
+        assertEquals(DAY.atTime(9, 0), hours.get(0).getBucket());
+        assertEquals(2, hours.get(0).getSaleCount());
+    }
+
+    @Test
+    public void testRangesUseHoursAtTheEdgesAndDaysBetween() throws SQLException {
+        sellAndAdd(DAY.minusDays(1).atTime(22, 30), 1, 0, "Cash");
+        sellAndAdd(DAY.atTime(12, 0), 2, 0, "Cash");
+        sellAndAdd(DAY.plusDays(1).atTime(8, 10), 3, 0, "Cash");
+        sellAndAdd(DAY.plusDays(1).atTime(11, 5), 4, 0, "Cash");
+
+        LocalDateTime start = DAY.minusDays(1).atTime(22, 0);
+        LocalDateTime end = DAY.plusDays(1).atTime(10, 0);
+        assertEquals(6, rollupDAO.getTotals(start, end).getQuantity());
+        assertEquals(3, rollupDAO.getTotals(start, DAY.atTime(23, 59, 59)).getQuantity());
+        assertEquals(2, rollupDAO.getTotals(DAY.atTime(11, 30), DAY.atTime(12, 30)).getQuantity());
+        assertEquals(0, rollupDAO.getTotals(DAY.atTime(13, 0), DAY.plusDays(1).atTime(7, 59)).getSaleCount());
+
+        List<SalesRollup> days = rollupDAO.getDailyTotals(start, end);
+        assertEquals(3, days.size());
+        assertEquals(DAY.plusDays(1).atStartOfDay(), days.get(2).getBucket());
+        assertEquals(7, days.get(2).getQuantity());
+    }
+
+    @Test
+    public void testPartHoursAtTheEdgesAreReadFromTheSales() throws SQLException {
+        sellAndAdd(DAY.atTime(9, 10), 1, 0, "Cash");
+        sellAndAdd(DAY.atTime(9, 50), 2, 1, "Card");
+        sellAndAdd(DAY.atTime(10, 30), 16, 0, "Cash");
+        sellAndAdd(DAY.atTime(11, 15), 4, 0, "Card");
+        sellAndAdd(DAY.atTime(11, 45), 8, 0, "Cash");
+
+        LocalDateTime start = DAY.atTime(9, 30);
+        LocalDateTime end = DAY.atTime(11, 30);
+        SalesRollup totals = rollupDAO.getTotals(start, end);
+        assertEquals(3, totals.getSaleCount());
+        assertEquals(23, totals.getQuantity());
+        assertEquals(223.0, totals.getRevenue(), 0.001);
+
+        List<SalesRollup> categories = rollupDAO.getTotalsByCategory(start, end);
+        assertEquals(2, categories.size());
+        assertEquals(1, categories.get(0).getQuantity());
+        assertEquals(22, categories.get(1).getQuantity());
+
+        List<SalesRollup> payments = rollupDAO.getTotalsByPaymentMethod(start, end);
+        assertEquals("Card", payments.get(0).getPaymentMethod());
+        assertEquals(63.0, payments.get(0).getRevenue(), 0.001);
+        assertEquals(2, payments.get(0).getSaleCount());
+        assertEquals(160.0, payments.get(1).getRevenue(), 0.001);
+
+        // Within a single hour
+        assertEquals(3, rollupDAO.getTotals(DAY.atTime(9, 30), DAY.atTime(9, 55)).getQuantity());
+        // A sale at the very end is included
+        assertEquals(16, rollupDAO.getTotals(DAY.atTime(10, 0), DAY.atTime(10, 30)).getQuantity());
+    }
+
+    @Test
+    public void testRangeBoundsSplitWholeDaysHoursAndEdges() {
+        assertArrayEquals(new String[] { "2024-03-10", "2024-03-10", "2024-03-09 23:00:00", "2024-03-09 23:00:00",
+                "2024-03-11 00:00:00", "2024-03-11 09:00:00",
+                "2024-03-09 22:15", "2024-03-09 23:00", "2024-03-11 10:00", "2024-03-11 10:30:00" },
+                SalesRollupDAO.rangeBounds(DAY.minusDays(1).atTime(22, 15), DAY.plusDays(1).atTime(10, 30)));
+        assertArrayEquals(new String[] { "2024-03-10", "2024-03-10", "2024-03-10 00:00:00", "2024-03-09 23:00:00",
+                "2024-03-11 00:00:00", "2024-03-10 23:00:00",
+                "2024-03-10 00:00", "2024-03-10 00:00", "2024-03-11 00:00", "2024-03-10 23:59:59" },
+                SalesRollupDAO.rangeBounds(DAY.atStartOfDay(), DAY.atTime(23, 59, 59)));
+        assertArrayEquals(new String[] { "1", "0", "2024-03-10 08:00:00", "2024-03-10 16:00:00", "1", "0",
+                "2024-03-10 08:00", "2024-03-10 08:00", "2024-03-10 17:00", "2024-03-10 17:45:00" },
+                SalesRollupDAO.rangeBounds(DAY.atTime(8, 0), DAY.atTime(17, 45)));
+        assertArrayEquals(new String[] { "1", "0", "1", "0", "1", "0", "1", "0",
+                "2024-03-10 08:20", "2024-03-10 09:10:00" },
+                SalesRollupDAO.rangeBounds(DAY.atTime(8, 20), DAY.atTime(9, 10)));
+    }
+
+    @Test
+    public void testRebuildMatchesAddingEachSale() throws SQLException {
+        sellAndAdd(DAY.atTime(9, 0), 2, 1, "Cash");
+        sellAndAdd(DAY.atTime(17, 20), 0, 4, "Card");
+        sellAndAdd(DAY.plusDays(2).atTime(10, 0), 1, 0, "Cash");
+        List<String> added = rows();
+
+        rollupDAO.rebuild();
+
+        assertEquals(added, rows());
+    }
+
+    @Test
+    public void testOutOfDateUntilEverySaleIsRolledUp() throws SQLException {
+        assertFalse(rollupDAO.isOutOfDate());
+        sell(DAY.atTime(9, 0), 1, 0, "Cash");
+        sellAndAdd(DAY.atTime(10, 0), 1, 0, "Cash");
+        assertTrue(rollupDAO.isOutOfDate());
+
+        rollupDAO.rebuild();
+
+        assertFalse(rollupDAO.isOutOfDate());
+        assertEquals(2, rollupDAO.getTotals(DAY.atStartOfDay(), DAY.atTime(23, 59, 59)).getSaleCount());
+    }
+
+    private List<String> rows() throws SQLException {
+        List<String> rows = new ArrayList<>();
+        try (Statement stmt = connection.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT 'h', * FROM sales_rollup_hourly UNION ALL "
+                        + "SELECT 'd', * FROM sales_rollup_daily ORDER BY 1, 2, 3, 4")) {
+            while (rs.next()) {
+                StringBuilder row = new StringBuilder();
+                for (int i = 1; i <= 8; i++) {
+                    row.append(rs.getString(i)).append('|');
+                }
+                rows.add(row.toString());
+            }
+        }
+        return rows;
+    }
+}
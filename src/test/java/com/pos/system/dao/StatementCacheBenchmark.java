@@ -0,0 +1,131 @@
+package com.pos.system.dao;
+
+import com.pos.system.database.SqlScript;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Micro-benchmark for {@link StatementCache} on the statements a checkout
+ * issues per cart line: FEFO batch lookup, batch decrement, ledger insert,
+ * cached stock update and sale item insert. Not run by the test suite; run its
+ * {@code main} method on the test classpath after {@code mvn test-compile} and
+ * compare the per-statement cost of preparing on every call with reusing the
+ * cached statement.
+ */
+public class StatementCacheBenchmark {
+
+    private static final String[] CHECKOUT_SQL = {
+            "SELECT * FROM batches WHERE product_id = ? AND remaining_quantity > 0 "
+                    + "ORDER BY COALESCE(expiry_date, '9999-12-31') ASC, created_at ASC",
+            "UPDATE batches SET remaining_quantity = remaining_quantity - ? WHERE id = ?",
+            "INSERT INTO inventory_transactions (product_id, batch_id, quantity_change, transaction_type, "
+                    + "reference_id, created_by, created_at) VALUES (?, ?, ?, 'SALE', 'BENCH', 1, datetime('now'))",
+            "UPDATE products SET stock = stock + ? WHERE id = ?",
+            "INSERT INTO sale_items (sale_id, product_id, quantity, price_at_sale, cost_at_sale, discount_amount, "
+                    + "tax_amount) VALUES (1, ?, ?, 100, 50, 0, 0)"
+    };
+
+    private static final int WARMUP_LINES = 2_000;
+    private static final int MEASURED_LINES = 20_000;
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("stmt-cache-bench");
+        String url = "jdbc:sqlite:" + dir.resolve("bench.db");
+        try (Connection conn = DriverManager.getConnection(url)) {
+            initialize(conn);
+
+            StatementCache cache = new StatementCache(64);
+            runLines(conn, null, WARMUP_LINES);
+            runLines(conn, cache, WARMUP_LINES);
+
+            long uncached = runLines(conn, null, MEASURED_LINES);
+            long cached = runLines(conn, cache, MEASURED_LINES);
+
+            int statements = MEASURED_LINES * CHECKOUT_SQL.length;
+            double uncachedUs = uncached / 1000.0 / statements;
+            double cachedUs = cached / 1000.0 / statements;
+            System.out.printf("Checkout statements executed: %,d per run%n", statements);
+            System.out.printf("prepare per call : %.2f us/statement%n", uncachedUs);
+            System.out.printf("statement cache  : %.2f us/statement%n", cachedUs);
+            System.out.printf("saving           : %.2f us/statement (%.0f%%)%n", uncachedUs - cachedUs,
+                    100.0 * (uncachedUs - cachedUs) / uncachedUs);
+            System.out.printf("cache hits=%d misses=%d%n", cache.getHitCount(), cache.getMissCount());
+        }
+    }
+
+    private static long runLines(Connection conn, StatementCache cache, int lines) throws SQLException {
+        conn.setAutoCommit(false);
+        long start = System.nanoTime();
+        for (int line = 0; line < lines; line++) {
+            int productId = 1 + (line % 50);
+            int batchId = productId;
+            for (int i = 0; i < CHECKOUT_SQL.length; i++) {
+                try (PreparedStatement stmt = cache != null
+                        ? cache.prepare(conn, CHECKOUT_SQL[i])
+                        : conn.prepareStatement(CHECKOUT_SQL[i])) {
+                    switch (i) {
+                        case 0 -> {
+                            stmt.setInt(1, productId);
+                            try (ResultSet rs = stmt.executeQuery()) {
+                                rs.next();
+                            }
+                        }
+                        case 1, 3 -> {
+                            stmt.setInt(1, 0);
+                            stmt.setInt(2, i == 1 ? batchId : productId);
+                            stmt.executeUpdate();
+                        }
+                        case 2 -> {
+                            stmt.setInt(1, productId);
+                            stmt.setInt(2, batchId);
+                            stmt.setInt(3, -1);
+                            stmt.executeUpdate();
+                        }
+                        default -> {
+                            stmt.setInt(1, productId);
+                            stmt.setInt(2, 1);
+                            stmt.executeUpdate();
+                        }
+                    }
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        conn.rollback();
+        conn.setAutoCommit(true);
+        return elapsed;
+    }
+
+    private static void initialize(Connection conn) throws Exception {
+        try (Statement stmt = conn.createStatement();
+                InputStream in = StatementCacheBenchmark.class.getResourceAsStream("/schema.sql")) {
+            stmt.execute("PRAGMA journal_mode = WAL");
+            for (String sql : SqlScript.split(new String(in.readAllBytes(), StandardCharsets.UTF_8))) {
+                if (!sql.trim().isEmpty()) {
+                    try {
+                        stmt.execute(sql);
+                    } catch (SQLException ignored) {
+                        // ALTER migrations fail on a fresh schema
+                    }
+                }
+            }
+            stmt.execute("INSERT OR IGNORE INTO users (id, username, password, role) VALUES (1, 'bench', 'x', 'ADMIN')");
+            stmt.execute("INSERT INTO sales (id, user_id, total_amount) VALUES (1, 1, 0)");
+            for (int p = 1; p <= 50; p++) {
+                stmt.execute("INSERT INTO products (id, name, selling_price, stock) VALUES (" + p + ", 'P" + p
+                        + "', 100, 1000)");
+                stmt.execute("INSERT INTO batches (id, product_id, batch_number, cost_price, remaining_quantity) "
+                        + "VALUES (" + p + ", " + p + ", 'B" + p + "', 50, 1000)");
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.pos.system.dao;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class StatementCacheTest extends BaseDAOTest {
+
+    private StatementCache cache;
+
+    @BeforeEach
+    void setUpCache() {
+        cache = new StatementCache(2);
+    }
+
+    @Test
+    void testSameSqlReusesCompiledStatement() throws SQLException {
+        String sql = "SELECT name FROM categories WHERE id = ?";
+        try (PreparedStatement stmt = cache.prepare(connection, sql)) {
+            stmt.setInt(1, 1);
+            stmt.executeQuery().close();
+        }
+        try (PreparedStatement stmt = cache.prepare(connection, sql)) {
+            stmt.setInt(1, 2);
+            stmt.executeQuery().close();
+        }
+
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getCachedStatementCount());
+    }
+
+    @Test
+    void testCloseResetsParametersAndOpenResults() throws SQLException {
+        String insert = "INSERT INTO categories (name) VALUES (?)";
+        try (PreparedStatement stmt = cache.prepare(connection, insert)) {
+            stmt.setString(1, "Drinks");
+            stmt.executeUpdate();
+        }
+
+        String select = "SELECT name FROM categories WHERE name = ?";
+        PreparedStatement first = cache.prepare(connection, select);
+        first.setString(1, "Drinks");
+        ResultSet leftOpen = first.executeQuery();
+        assertTrue(leftOpen.next());
+        first.close();
+
+        assertTrue(leftOpen.isClosed());
+        assertTrue(first.isClosed());
+        assertThrows(SQLException.class, () -> first.setString(1, "x"));
+
+        try (PreparedStatement again = cache.prepare(connection, select)) {
+            // Parameters were cleared, so an unbound parameter matches nothing
+            try (ResultSet rs = again.executeQuery()) {
+                assertFalse(rs.next());
+            }
+        }
+    }
+
+    @Test
+    void testLeastRecentlyUsedStatementIsEvicted() throws SQLException {
+        cache.prepare(connection, "SELECT 1").close();
+        cache.prepare(connection, "SELECT 2").close();
+        cache.prepare(connection, "SELECT 1").close(); // touch
+        cache.prepare(connection, "SELECT 3").close(); // evicts SELECT 2
+
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(2, cache.getCachedStatementCount());
+
+        cache.prepare(connection, "SELECT 1").close();
+        assertEquals(2, cache.getHitCount());
+        cache.prepare(connection, "SELECT 2").close();
+        assertEquals(4, cache.getMissCount());
+    }
+
+    @Test
+    void testNestedUseOfSameSqlFallsBackToUncached() throws SQLException {
+        String sql = "SELECT 1";
+        try (PreparedStatement outer = cache.prepare(connection, sql);
+                PreparedStatement inner = cache.prepare(connection, sql)) {
+            assertNotSame(outer, inner);
+            try (ResultSet a = outer.executeQuery(); ResultSet b = inner.executeQuery()) {
+                assertTrue(a.next());
+                assertTrue(b.next());
+            }
+        }
+        assertEquals(1, cache.getBypassCount());
+    }
+
+    @Test
+    void testClosedConnectionIsInvalidated() throws SQLException {
+        Connection other = DriverManager.getConnection("jdbc:sqlite::memory:");
+        cache.prepare(other, "SELECT 1").close();
+        assertEquals(1, cache.getCachedStatementCount());
+        other.close();
+
+        // Registering a new connection sweeps the closed one
+        cache.prepare(connection, "SELECT 1").close();
+        assertEquals(1, cache.getCachedStatementCount());
+
+        cache.invalidate(connection);
+        assertEquals(0, cache.getCachedStatementCount());
+    }
+
+    @Test
+    void testGeneratedKeysVariantIsCachedSeparately() throws SQLException {
+        String insert = "INSERT INTO categories (name) VALUES (?)";
+        try (PreparedStatement stmt = cache.prepare(connection, insert, Statement.RETURN_GENERATED_KEYS)) {
+            stmt.setString(1, "Snacks");
+            stmt.executeUpdate();
+            try (ResultSet keys = stmt.getGeneratedKeys()) {
+                assertTrue(keys.next());
+                assertTrue(keys.getInt(1) > 0);
+            }
+        }
+        cache.prepare(connection, insert).close();
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    void testNonSqliteConnectionIsNotCached() throws SQLException {
+        Connection mockConnection = mock(Connection.class);
+        PreparedStatement mockStatement = mock(PreparedStatement.class);
+        when(mockConnection.prepareStatement("SELECT 1")).thenReturn(mockStatement);
+
+        assertSame(mockStatement, cache.prepare(mockConnection, "SELECT 1"));
+        assertEquals(0, cache.getCachedStatementCount());
+        assertEquals(1, cache.getBypassCount());
+    }
+}
@@ -0,0 +1,120 @@
+package com.pos.system.dao;
+
+import com.pos.system.models.Category;
+import com.pos.system.models.Product;
+import com.pos.system.models.StockDrift;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StockSnapshotDAOTest extends BaseDAOTest {
+
+    private StockSnapshotDAO snapshotDAO;
+    private InventoryTransactionDAO transactionDAO;
+    private int testProductId;
+
+    @BeforeEach
+    public void setUp() throws SQLException {
+        snapshotDAO = new StockSnapshotDAO(connection);
+        transactionDAO = new InventoryTransactionDAO(connection);
+        ProductDAO productDAO = new ProductDAO(connection);
+        CategoryDAO categoryDAO = new CategoryDAO(connection);
+
+        categoryDAO.addCategory(new Category(0, "Cat1", ""));
+        int catId = categoryDAO.getAllCategories().get(0).getId();
+
+        productDAO.addProduct(new Product(0, "SNAP-PROD", "Snap Product", catId, "Cat1", 5.0, 10.0, 0, null));
+        testProductId = productDAO.getProductByBarcode("SNAP-PROD").getId();
+    }
+
+    private void insertLedgerRow(int quantityChange, String createdAt) throws SQLException {
+        String sql = "INSERT INTO inventory_transactions (product_id, quantity_change, transaction_type, created_at) VALUES (?, ?, 'ADJUSTMENT', ?)";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setInt(1, testProductId);
+            stmt.setInt(2, quantityChange);
+            stmt.setString(3, createdAt);
+            stmt.executeUpdate();
+        }
+    }
+
+    @Test
+    public void testSnapshotPlusTail() throws SQLException {
+        // Arrange
+        insertLedgerRow(100, "2026-01-01 09:00:00");
+        insertLedgerRow(-30, "2026-01-02 09:00:00");
+
+        // Act
+        assertEquals(1, snapshotDAO.createSnapshots());
+        insertLedgerRow(-5, "2026-01-03 09:00:00");
+
+        // Assert: snapshot (70) + tail (-5)
+        assertEquals(65, transactionDAO.calculateStockLevel(testProductId));
+
+        // A second run only rolls forward the new row
+        assertEquals(1, snapshotDAO.createSnapshots());
+        assertEquals(0, snapshotDAO.createSnapshots());
+        assertEquals(65, transactionDAO.calculateStockLevel(testProductId));
+    }
+
+    @Test
+    public void testPointInTimeStockLevel() throws SQLException {
+        // Arrange
+        insertLedgerRow(100, "2026-01-01 09:00:00");
+        insertLedgerRow(-30, "2026-01-02 09:00:00");
+        snapshotDAO.createSnapshots();
+        insertLedgerRow(-5, "2026-01-03 09:00:00");
+
+        // Act & Assert
+        assertEquals(0, transactionDAO.calculateStockLevelAt(testProductId, LocalDateTime.of(2025, 12, 31, 0, 0)));
+        assertEquals(100, transactionDAO.calculateStockLevelAt(testProductId, LocalDateTime.of(2026, 1, 1, 12, 0)));
+        assertEquals(70, transactionDAO.calculateStockLevelAt(testProductId, LocalDateTime.of(2026, 1, 2, 12, 0)));
+        assertEquals(65, transactionDAO.calculateStockLevelAt(testProductId, LocalDateTime.of(2026, 1, 4, 0, 0)));
+    }
+
+    @Test
+    public void testInconsistentSnapshotIsDetectedAndRebuilt() throws SQLException {
+        // Arrange
+        insertLedgerRow(40, "2026-01-01 09:00:00");
+        snapshotDAO.createSnapshots();
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("UPDATE stock_snapshots SET balance = 999");
+        }
+
+        // Act
+        List<StockDrift> drift = snapshotDAO.findInconsistentSnapshots();
+
+        // Assert
+        assertEquals(1, drift.size());
+        assertEquals(999, drift.get(0).getCachedStock());
+        assertEquals(40, drift.get(0).getLedgerStock());
+
+        snapshotDAO.rebuildSnapshots(testProductId);
+        assertTrue(snapshotDAO.findInconsistentSnapshots().isEmpty());
+        assertEquals(40, transactionDAO.calculateStockLevel(testProductId));
+    }
+
+    @Test
+    public void testPruneKeepsNewestSnapshot() throws SQLException {
+        // Arrange: two snapshots on the same day, both created long ago
+        insertLedgerRow(10, "2026-01-01 09:00:00");
+        snapshotDAO.createSnapshots();
+        insertLedgerRow(10, "2026-01-01 10:00:00");
+        snapshotDAO.createSnapshots();
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("UPDATE stock_snapshots SET created_at = '2020-01-01 00:00:00'");
+        }
+
+        // Act
+        assertEquals(1, snapshotDAO.pruneSnapshots(30));
+
+        // Assert
+        assertEquals(20, transactionDAO.calculateStockLevel(testProductId));
+    }
+}
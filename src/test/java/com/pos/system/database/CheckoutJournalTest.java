@@ -0,0 +1,98 @@
+package com.pos.system.database;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CheckoutJournalTest {
+
+    private static final int CAPACITY = 4096;
+
+    @TempDir
+    Path tempDir;
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testPendingRecordsSurviveReopen() throws IOException {
+        Path file = tempDir.resolve("checkout.journal");
+        try (CheckoutJournal journal = new CheckoutJournal(file, CAPACITY)) {
+            assertEquals(1, journal.append(bytes("first")));
+            assertEquals(2, journal.append(bytes("second")));
+            journal.markApplied(journal.getPendingEntries().get(0));
+        }
+
+        try (CheckoutJournal reopened = new CheckoutJournal(file, CAPACITY)) {
+            List<CheckoutJournal.Entry> pending = reopened.getPendingEntries();
+            assertEquals(1, pending.size());
+            assertEquals(2, pending.get(0).getSeq());
+            assertArrayEquals(bytes("second"), pending.get(0).getPayload());
+            assertEquals(3, reopened.append(bytes("third")));
+        }
+    }
+
+    @Test
+    void testTornRecordIsDiscardedOnRecovery() throws IOException {
+        Path file = tempDir.resolve("checkout.journal");
+        int secondRecordPayloadOffset;
+        try (CheckoutJournal journal = new CheckoutJournal(file, CAPACITY)) {
+            journal.append(bytes("intact"));
+            int before = journal.getUsedBytes();
+            journal.append(bytes("torn"));
+            secondRecordPayloadOffset = before + 17;
+        }
+
+        // Simulate a crash that left the second record's body half written
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(secondRecordPayloadOffset);
+            raf.write('X');
+        }
+
+        try (CheckoutJournal reopened = new CheckoutJournal(file, CAPACITY)) {
+            List<CheckoutJournal.Entry> pending = reopened.getPendingEntries();
+            assertEquals(1, pending.size());
+            assertArrayEquals(bytes("intact"), pending.get(0).getPayload());
+            // The torn slot is reused by the next append
+            assertEquals(2, reopened.append(bytes("next")));
+        }
+    }
+
+    @Test
+    void testCompactionKeepsSequenceMonotonic() throws IOException {
+        Path file = tempDir.resolve("checkout.journal");
+        try (CheckoutJournal journal = new CheckoutJournal(file, CAPACITY)) {
+            journal.append(bytes("a"));
+            journal.append(bytes("b"));
+            assertFalse(journal.compactIfSettled(), "pending records block compaction");
+
+            for (CheckoutJournal.Entry entry : journal.getPendingEntries()) {
+                journal.markApplied(entry);
+            }
+            assertTrue(journal.compactIfSettled());
+            assertEquals(3, journal.append(bytes("c")));
+        }
+
+        try (CheckoutJournal reopened = new CheckoutJournal(file, CAPACITY)) {
+            assertEquals(1, reopened.getPendingCount());
+            assertEquals(3, reopened.getPendingEntries().get(0).getSeq());
+        }
+    }
+
+    @Test
+    void testFullJournalRejectsAppend() throws IOException {
+        try (CheckoutJournal journal = new CheckoutJournal(tempDir.resolve("small.journal"), 128)) {
+            assertTrue(journal.append(new byte[40]) > 0);
+            assertEquals(-1, journal.append(new byte[80]));
+            assertEquals(1, journal.getPendingCount());
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.pos.system.database;
+
+import com.pos.system.dao.BaseDAO;
+import com.pos.system.dao.ProductDAO;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DatabaseManagerReadPoolTest {
+
+    @Test
+    void testReadConnectionIsQueryOnly() throws SQLException {
+        try (Connection conn = DatabaseManager.getInstance().getReadConnection();
+                Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("PRAGMA query_only")) {
+                assertTrue(rs.next());
+                assertEquals(1, rs.getInt(1));
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM products")) {
+                assertTrue(rs.next());
+            }
+            assertThrows(SQLException.class,
+                    () -> stmt.executeUpdate("INSERT INTO categories (name) VALUES ('ReadPoolTest')"));
+        }
+    }
+
+    @Test
+    void testWriterConnectionIsNotQueryOnly() throws SQLException {
+        try (Connection conn = DatabaseManager.getInstance().getConnection();
+                Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("PRAGMA query_only")) {
+            assertTrue(rs.next());
+            assertEquals(0, rs.getInt(1));
+        }
+    }
+
+    @Test
+    void testForReadingReadsThroughReaderPool() throws SQLException {
+        try (ProductDAO dao = BaseDAO.forReading(ProductDAO::new)) {
+            assertNotNull(dao.getAllProducts());
+        }
+    }
+}
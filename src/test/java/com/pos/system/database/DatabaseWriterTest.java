@@ -0,0 +1,186 @@
+package com.pos.system.database;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DatabaseWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private String jdbcUrl;
+    private DatabaseWriter writer;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        jdbcUrl = "jdbc:sqlite:" + tempDir.resolve("writer.db");
+        try (Connection conn = DriverManager.getConnection(jdbcUrl);
+                Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE categories (id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT NOT NULL UNIQUE)");
+        }
+        writer = new DatabaseWriter(() -> DriverManager.getConnection(jdbcUrl), 32);
+    }
+
+    @AfterEach
+    void tearDown() {
+        writer.shutdown();
+    }
+
+    private static int insertCategory(Connection conn, String name) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO categories (name) VALUES (?)")) {
+            stmt.setString(1, name);
+            return stmt.executeUpdate();
+        }
+    }
+
+    private int countCategories() throws SQLException {
+        try (Connection conn = DriverManager.getConnection(jdbcUrl);
+                Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM categories")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    @Test
+    void testQueuedUnitsAreGroupCommitted() throws Exception {
+        // Hold the writer in a first unit so the next ones queue up behind it
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Integer> blocker = writer.submit(conn -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return insertCategory(conn, "first");
+        });
+
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            String name = "cat-" + i;
+            futures.add(writer.submit(conn -> insertCategory(conn, name)));
+        }
+        release.countDown();
+
+        assertEquals(1, blocker.get(5, TimeUnit.SECONDS));
+        for (CompletableFuture<Integer> f : futures) {
+            assertEquals(1, f.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(21, countCategories());
+    }
+
+    @Test
+    void testFailingUnitRollsBackAlone() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Object> blocker = writer.submit(conn -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        });
+
+        CompletableFuture<Integer> ok1 = writer.submit(conn -> insertCategory(conn, "a"));
+        CompletableFuture<Integer> bad = writer.submit(conn -> {
+            insertCategory(conn, "b");
+            return insertCategory(conn, "a"); // UNIQUE violation
+        });
+        CompletableFuture<Integer> ok2 = writer.submit(conn -> insertCategory(conn, "c"));
+        release.countDown();
+
+        blocker.get(5, TimeUnit.SECONDS);
+        assertEquals(1, ok1.get(5, TimeUnit.SECONDS));
+        assertEquals(1, ok2.get(5, TimeUnit.SECONDS));
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> bad.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(SQLException.class, failure.getCause());
+
+        // "b" was rolled back with its unit, the others committed
+        assertEquals(2, countCategories());
+    }
+
+    @Test
+    void testExecuteRethrowsSqlException() {
+        assertThrows(SQLException.class, () -> writer.execute(conn -> {
+            throw new SQLException("boom");
+        }));
+    }
+
+    @Test
+    void testUnitsSubmittedDuringShutdownAllComplete() throws Exception {
+        List<CompletableFuture<Integer>> futures = new CopyOnWriteArrayList<>();
+        CountDownLatch started = new CountDownLatch(4);
+        List<Thread> submitters = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            String prefix = "t" + t + "-";
+            Thread submitter = new Thread(() -> {
+                started.countDown();
+                for (int i = 0; i < 500; i++) {
+                    String name = prefix + i;
+                    futures.add(writer.submit(conn -> insertCategory(conn, name)));
+                }
+            });
+            submitters.add(submitter);
+            submitter.start();
+        }
+        started.await(5, TimeUnit.SECONDS);
+        writer.shutdown();
+        for (Thread submitter : submitters) {
+            submitter.join(5000);
+        }
+
+        // Each unit either ran or was refused; none is left waiting
+        int committed = 0;
+        for (CompletableFuture<Integer> f : futures) {
+            try {
+                committed += f.get(5, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                assertInstanceOf(SQLException.class, e.getCause());
+            } catch (TimeoutException e) {
+                fail("A unit submitted during shutdown never completed");
+            }
+        }
+        assertEquals(committed, countCategories());
+        assertThrows(SQLException.class, () -> writer.execute(conn -> insertCategory(conn, "late")));
+    }
+
+    @Test
+    void testUnitThrowingAnErrorFailsAloneAndTheWriterKeepsRunning() throws Exception {
+        CompletableFuture<Integer> broken = writer.submit(conn -> {
+            insertCategory(conn, "lost");
+            throw new StackOverflowError();
+        });
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> broken.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(StackOverflowError.class, failure.getCause());
+        assertEquals(1, writer.submit(conn -> insertCategory(conn, "next")).get(5, TimeUnit.SECONDS));
+        assertEquals(1, countCategories());
+    }
+
+    @Test
+    void testNestedSubmitRunsInline() throws Exception {
+        int inserted = writer.execute(conn -> insertCategory(conn, "outer")
+                + writer.execute(inner -> insertCategory(inner, "inner")));
+        assertEquals(2, inserted);
+        assertEquals(2, countCategories());
+    }
+}
@@ -0,0 +1,111 @@
+package com.pos.system.database;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageStoreTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void testSameContentIsStoredOnceAndReadBack() throws Exception {
+        ImageStore store = new ImageStore(root);
+        byte[] image = { 10, 20, 30 };
+
+        String hash = store.put(image);
+        assertEquals(hash, store.put(image.clone()));
+        assertTrue(ImageStore.isHash(hash));
+        assertEquals(root.resolve(hash.substring(0, 2)).resolve(hash), store.pathOf(hash));
+        assertArrayEquals(image, store.read(hash));
+        assertEquals(3, store.map(hash).remaining());
+        assertArrayEquals(image, ImageStore.asStream(store.map(hash)).readAllBytes());
+
+        assertNull(store.read(ImageStore.hash(new byte[] { 1 })));
+        assertNull(store.map("../store.db"), "only hashes name files");
+        assertFalse(ImageStore.isHash(hash.toUpperCase()));
+    }
+
+    @Test
+    void testBackupCopiesOnlyMissingImagesAndUnusedImagesAreRemoved() throws Exception {
+        ImageStore store = new ImageStore(root.resolve("live"));
+        String kept = store.put(new byte[] { 1 });
+        String unused = store.put(new byte[] { 2 });
+        Path backup = root.resolve("backup");
+
+        assertEquals(1, store.copyMissingTo(backup, Set.of(kept)));
+        assertEquals(0, store.copyMissingTo(backup, Set.of(kept)));
+        assertTrue(Files.exists(ImageStore.pathOf(backup, kept)));
+
+        // Too recent to be removed yet
+        assertEquals(0, store.removeUnreferenced(Set.of(kept), Duration.ofDays(1)));
+        assertEquals(1, store.removeUnreferenced(Set.of(kept), Duration.ZERO));
+        assertTrue(store.contains(kept));
+        assertFalse(store.contains(unused));
+    }
+
+    @Test
+    void testStoringAnOldImageAgainKeepsItFromRemoval() throws Exception {
+        ImageStore store = new ImageStore(root);
+        byte[] image = { 4, 5, 6 };
+        String hash = store.put(image);
+        Files.setLastModifiedTime(store.pathOf(hash), FileTime.from(Instant.now().minus(Duration.ofDays(2))));
+
+        // Saved again for a product whose row is not committed yet
+        assertEquals(hash, store.put(image));
+
+        assertEquals(0, store.removeUnreferenced(Set.of(), Duration.ofDays(1)));
+        assertTrue(store.contains(hash));
+    }
+
+    @Test
+    void testBlobsAreMovedIntoTheStore(@TempDir Path dbDir) throws Exception {
+        ImageStore store = new ImageStore(root);
+        String url = "jdbc:sqlite:" + dbDir.resolve("pos.db");
+        DatabaseWriter writer = new DatabaseWriter(() -> DriverManager.getConnection(url), 32);
+        try (Connection conn = DriverManager.getConnection(url)) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE products (id INTEGER PRIMARY KEY, image_blob BLOB, image_hash TEXT)");
+            }
+            try (PreparedStatement insert = conn.prepareStatement("INSERT INTO products (image_blob) VALUES (?)")) {
+                for (int i = 0; i < 45; i++) {
+                    insert.setBytes(1, i == 0 ? new byte[0] : new byte[] { (byte) (i % 30) });
+                    insert.executeUpdate();
+                }
+            }
+
+            assertEquals(45, ImageStoreMigration.moveBlobs(conn, writer, store));
+            assertEquals(0, ImageStoreMigration.moveBlobs(conn, writer, store));
+
+            try (Statement stmt = conn.createStatement();
+                    ResultSet rs = stmt.executeQuery("SELECT id, image_blob, image_hash FROM products ORDER BY id")) {
+                while (rs.next()) {
+                    assertNull(rs.getBytes(2));
+                    if (rs.getInt(1) == 1) {
+                        assertNull(rs.getString(3), "an empty blob is no image");
+                    } else {
+                        assertTrue(store.contains(rs.getString(3)));
+                    }
+                }
+            }
+            // 44 images, 30 distinct
+            assertEquals(30, ImageStoreMigration.referencedHashes(conn).size());
+        } finally {
+            writer.shutdown();
+        }
+    }
+}
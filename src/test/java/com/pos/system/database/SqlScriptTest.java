@@ -0,0 +1,30 @@
+package com.pos.system.database;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SqlScriptTest {
+
+    @Test
+    void testTriggerBodiesStayWhole() {
+        String script = "CREATE TABLE a (id INTEGER);\n"
+                + "CREATE TRIGGER IF NOT EXISTS a_ins AFTER INSERT ON a BEGIN\n"
+                + "    DELETE FROM b;\n"
+                + "    INSERT INTO b VALUES (NEW.id);\n"
+                + "END;\n"
+                + "-- trailing comment\n"
+                + "CREATE INDEX idx_a ON a(id);\n";
+
+        List<String> statements = SqlScript.split(script);
+
+        assertEquals(3, statements.size());
+        assertTrue(statements.get(1).trim().startsWith("CREATE TRIGGER"));
+        assertTrue(statements.get(1).contains("DELETE FROM b;"));
+        assertTrue(statements.get(1).trim().endsWith("END"));
+        assertTrue(statements.get(2).contains("CREATE INDEX"));
+    }
+}
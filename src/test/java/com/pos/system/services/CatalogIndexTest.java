@@ -0,0 +1,144 @@
+package com.pos.system.services;
+
+import com.pos.system.models.Product;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogIndexTest {
+
+    private CatalogIndex index;
+
+    private static Product product(int id, String barcode, String name, int categoryId) {
+        return new Product(id, barcode, name, categoryId, "Cat " + categoryId, 1.0, 2.0, 10, null);
+    }
+
+    private static List<Integer> ids(List<Product> products) {
+        return products.stream().map(Product::getId).toList();
+    }
+
+    @BeforeEach
+    void setUp() {
+        index = new CatalogIndex();
+        index.rebuild(List.of(
+                product(1, "8850001", "Green Tea 500ml", 1),
+                product(2, "8850002", "Milk Tea", 1),
+                product(3, "8850003", "Tea", 1),
+                product(4, "4801234", "Instant Noodles (Chicken)", 2),
+                product(5, "4805678", "Iced Tea-Lemon", 1),
+                product(6, "6901111", "可口可乐 330ml", 3),
+                product(7, "7701111", "ကော်ဖီ မစ်", 3)));
+    }
+
+    @Test
+    void testSearchRanksExactThenPrefixThenWordStartThenContains() {
+        assertEquals(List.of(3, 1, 2, 5), ids(index.search("tea", null)));
+        assertEquals(List.of(4), ids(index.search("oodle", null)));
+        assertEquals(List.of(5), ids(index.search("TEA lemon", null)));
+        assertEquals(List.of(1), ids(index.search("  500ML green ", null)));
+    }
+
+    @Test
+    void testShortQueriesMatchWordStarts() {
+        assertEquals(List.of(1), ids(index.search("gr", null)));
+        assertEquals(List.of(4), ids(index.search("ch", null)));
+        assertEquals(List.of(4, 5), ids(index.search("i", null)));
+        assertTrue(index.search("ea", null).isEmpty(), "two letters only match at a word start");
+    }
+
+    @Test
+    void testTrigramsOutOfOrderAreNotAMatch() {
+        index.put(product(9, null, "Eat Tea", 1));
+        // Both trigrams of "teat" are indexed for product 9, but not in that order
+        assertTrue(index.search("teat", null).isEmpty());
+        assertEquals(List.of(4), ids(index.search("nood chick", null)));
+    }
+
+    @Test
+    void testBarcodeLookupAndSearch() {
+        assertEquals(4, index.getByBarcode(" 4801234 ").getId());
+        assertNull(index.getByBarcode("0000000"));
+        // Exact barcode ranks first, partial barcodes still match
+        assertEquals(List.of(2), ids(index.search("8850002", null)));
+        assertEquals(List.of(4, 5), ids(index.search("480", null)));
+    }
+
+    @Test
+    void testCategoryFilter() {
+        assertEquals(List.of(1, 2, 3, 5), ids(index.search("", 1)));
+        assertEquals(List.of(3, 1, 2, 5), ids(index.search("tea", 1)));
+        assertTrue(index.search("tea", 2).isEmpty());
+        assertTrue(index.search("", 99).isEmpty());
+        assertEquals(7, index.search(null, null).size());
+    }
+
+    @Test
+    void testNonLatinNames() {
+        // Without spaces between words, any ideograph can start a short query
+        assertEquals(List.of(6), ids(index.search("可乐", null)));
+        assertEquals(List.of(6), ids(index.search("口可乐", null)));
+        assertEquals(List.of(7), ids(index.search("ကော်ဖီ", null)));
+    }
+
+    @Test
+    void testIncrementalUpdates() {
+        index.put(product(2, "8850002", "Oolong", 1));
+        assertEquals(List.of(3, 1, 5), ids(index.search("tea", null)));
+        assertEquals("Oolong", index.getById(2).getName());
+
+        index.put(product(8, "9990001", "Tea Bags", 4));
+        assertEquals(List.of(3, 8, 1, 5), ids(index.search("tea", null)));
+        assertEquals(List.of(8), ids(index.search("", 4)));
+
+        index.remove(3);
+        assertNull(index.getById(3));
+        assertNull(index.getByBarcode("8850003"));
+        assertEquals(List.of(8, 1, 5), ids(index.search("tea", null)));
+        assertEquals(7, index.size());
+
+        // Moving a product to another category updates the postings
+        index.put(product(8, "9990001", "Tea Bags", 1));
+        assertTrue(index.search("", 4).isEmpty());
+        assertTrue(ids(index.search("", 1)).contains(8));
+    }
+
+    @Test
+    void testResultsBuildProductsFromTheStoreOnRead() {
+        CatalogIndex.Results all = index.search(null, null);
+        Product first = all.get(0);
+        assertEquals("Green Tea 500ml", first.getName());
+        assertEquals("Cat 1", first.getCategory());
+        assertNotSame(first, all.get(0), "each read is a fresh view");
+
+        // A stock change shows through results taken before it, which keep their rows
+        index.put(new Product(1, "8850001", "Green Tea 500ml", 1, "Cat 1", 1.0, 2.0, 3, null));
+        assertEquals(3, all.get(0).getStock());
+        assertTrue(all.sameRows(index.search(null, null)));
+        assertEquals(4, all.indexOfId(5));
+        assertEquals(-1, all.indexOfId(42));
+
+        index.remove(2);
+        assertFalse(all.sameRows(index.search(null, null)));
+        assertEquals("Milk Tea", all.get(1).getName(), "removed rows keep their last fields");
+    }
+
+    @Test
+    void testRenamesKeepSearchingCorrectlyAcrossTextCompaction() {
+        // Every rename leaves dead text behind until the shared buffer is compacted
+        for (int i = 0; i < 2_000; i++) {
+            index.put(product(2, "8850002", "Renamed Product Number " + i, 1));
+        }
+        assertEquals(List.of(2), ids(index.search("number 1999", null)));
+        assertTrue(index.search("number 1998", null).isEmpty());
+        assertEquals(List.of(3, 1, 5), ids(index.search("tea", null)));
+        assertEquals("可口可乐 330ml", index.getById(6).getName());
+        assertEquals("8850002", index.getByBarcode("8850002").getBarcode());
+
+        index.put(new Product(9, null, "Loose Tea", 0, null, 1.0, 2.0, 10, null));
+        assertNull(index.getById(9).getBarcode());
+        assertNull(index.getById(9).getCategory());
+    }
+}
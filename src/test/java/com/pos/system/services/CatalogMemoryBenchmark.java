@@ -0,0 +1,86 @@
+package com.pos.system.services;
+
+import com.pos.system.models.Product;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the heap the resident POS catalog keeps at 50,000 and 200,000
+ * products: the products as plain {@link Product} objects, as the catalog
+ * used to hold them, the same fields in a columnar {@link ProductStore}, and
+ * the whole {@link CatalogIndex} (store, lookup tables and n-gram postings)
+ * once the loaded list has been dropped. Not run by the test suite; run its
+ * {@code main} method on the test classpath after {@code mvn test-compile},
+ * with a fixed heap such as {@code -Xmx2g} for steadier numbers.
+ */
+public class CatalogMemoryBenchmark {
+
+    private static final String[] WORDS = { "green", "tea", "milk", "rice", "noodle", "chicken", "beef", "soap",
+            "shampoo", "coffee", "sugar", "salt", "oil", "bread", "biscuit", "juice", "water", "soda", "lemon",
+            "orange", "mango", "chili", "sauce", "fish", "powder", "instant", "premium", "family", "mini", "large" };
+    private static final int[] SIZES = { 50_000, 200_000 };
+
+    public static void main(String[] args) {
+        System.out.printf("%9s %12s %12s %12s %14s%n", "products", "objects MB", "store MB", "index MB",
+                "page of 9 us");
+        for (int size : SIZES) {
+            long before = usedHeap();
+            List<Product> catalog = catalog(size);
+            long objects = usedHeap() - before;
+
+            ProductStore store = new ProductStore(size);
+            for (int slot = 0; slot < size; slot++) {
+                Product product = catalog.get(slot);
+                store.set(slot, product, CatalogIndex.normalize(product.getName()),
+                        CatalogIndex.normalize(product.getBarcode()));
+            }
+            store.trimToSize();
+            long stored = usedHeap() - before - objects;
+            store = null;
+
+            CatalogIndex index = new CatalogIndex();
+            index.rebuild(catalog);
+            catalog = null;
+            long indexed = usedHeap() - before;
+
+            // The POS materializes only the page it shows
+            long start = System.nanoTime();
+            int shown = 0;
+            for (int r = 0; r < 1_000; r++) {
+                List<Product> all = index.search(null, null);
+                shown += all.subList(size / 2, size / 2 + 9).stream().mapToInt(Product::getStock).sum();
+            }
+            double pageMicros = (System.nanoTime() - start) / 1e3 / 1_000;
+
+            System.out.printf("%,9d %12.1f %12.1f %12.1f %14.1f%n", size, objects / 1e6, stored / 1e6,
+                    indexed / 1e6, pageMicros);
+            if (index.size() != size || shown == 0) {
+                throw new IllegalStateException("unexpected catalog");
+            }
+        }
+    }
+
+    private static List<Product> catalog(int size) {
+        Random random = new Random(42);
+        List<Product> catalog = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            String name = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " "
+                    + (100 + random.nextInt(900)) + "g";
+            int categoryId = 1 + random.nextInt(20);
+            // A fresh category String per row, as the DAO reads it
+            catalog.add(new Product(i, String.valueOf(8850000000L + i), name, categoryId,
+                    new String(WORDS[categoryId].toCharArray()), 1.5, 2.5, 5, null));
+        }
+        return catalog;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
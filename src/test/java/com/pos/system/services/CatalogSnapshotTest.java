@@ -0,0 +1,77 @@
+package com.pos.system.services;
+
+import com.pos.system.models.Category;
+import com.pos.system.models.Product;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogSnapshotTest {
+
+    @TempDir
+    Path dir;
+
+    private static Product product(int id, String barcode, String name, int categoryId) {
+        return new Product(id, barcode, name, categoryId, "Cat " + categoryId, 1.0, 2.0, 10, null);
+    }
+
+    private static List<Integer> ids(List<Product> products) {
+        return products.stream().map(Product::getId).toList();
+    }
+
+    @Test
+    void testReadBackIndexAnswersLikeTheOriginal() throws Exception {
+        CatalogIndex index = new CatalogIndex();
+        index.rebuild(List.of(
+                product(1, "8850001", "Green Tea 500ml", 1),
+                product(2, " AB-12 ", "Milk Tea", 1),
+                product(3, null, "Instant Noodles", 2),
+                product(4, "6901111", "可口可乐 330ml", 3)));
+        index.put(product(1, "8850009", "Green Tea 1L", 1));
+        index.remove(3);
+        List<Category> categories = List.of(new Category(1, "Cat 1", null), new Category(2, "Cat 2", "Dry"));
+
+        Path path = dir.resolve("catalog.snapshot");
+        new CatalogSnapshot(42, categories, index).write(path);
+        CatalogSnapshot read = CatalogSnapshot.read(path);
+
+        assertNotNull(read);
+        assertEquals(42, read.getCatalogVersion());
+        assertEquals(categories, read.getCategories());
+        CatalogIndex restored = read.getIndex();
+        assertEquals(3, restored.size());
+        assertEquals(ids(index.search("tea", null)), ids(restored.search("tea", null)));
+        assertEquals(List.of(4), ids(restored.search("可乐", 3)));
+        assertEquals(2, restored.getByBarcode("ab-12").getId());
+        assertNull(restored.getByBarcode("8850001"));
+        assertNull(restored.getById(3));
+        assertEquals("Green Tea 1L", restored.getById(1).getName());
+
+        // The restored index keeps taking updates
+        restored.put(product(5, "4801234", "Lemon Tea", 2));
+        assertEquals(5, restored.getByBarcode("4801234").getId());
+        assertEquals(List.of(5), ids(restored.search("lemon", null)));
+    }
+
+    @Test
+    void testMissingOrDamagedFileReadsAsNoSnapshot() throws Exception {
+        Path path = dir.resolve("catalog.snapshot");
+        assertNull(CatalogSnapshot.read(path));
+
+        CatalogIndex index = new CatalogIndex();
+        index.rebuild(List.of(product(1, "8850001", "Green Tea", 1)));
+        new CatalogSnapshot(1, List.of(), index).write(path);
+        byte[] bytes = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(bytes, bytes.length / 2));
+        assertNull(CatalogSnapshot.read(path));
+
+        Files.write(path, new byte[] { 1, 2, 3 });
+        assertNull(CatalogSnapshot.read(path));
+    }
+}
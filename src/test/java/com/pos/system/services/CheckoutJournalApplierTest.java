@@ -0,0 +1,315 @@
+package com.pos.system.services;
+
+import com.pos.system.dao.AuditLogDAO;
+import com.pos.system.dao.InventoryTransactionDAO;
+import com.pos.system.dao.SaleDAO;
+import com.pos.system.database.CheckoutJournal;
+import com.pos.system.database.SqlScript;
+import com.pos.system.models.Sale;
+import com.pos.system.models.SaleItem;
+import com.pos.system.models.SalePayment;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CheckoutJournalApplierTest {
+
+    @TempDir
+    Path tempDir;
+
+    private CheckoutJournalApplier applier;
+
+    @AfterEach
+    void tearDown() {
+        if (applier != null) {
+            applier.shutdown(1000);
+        }
+    }
+
+    private Path journalFile() {
+        return tempDir.resolve("checkout.journal");
+    }
+
+    private CheckoutJournalApplier newApplier(CheckoutJournalApplier.SaleWriter writer, int maxSaleId)
+            throws Exception {
+        return new CheckoutJournalApplier(new CheckoutJournal(journalFile(), 64 * 1024), writer,
+                () -> maxSaleId, tempDir.resolve("failed.log"));
+    }
+
+    private static Sale newSale(double total) {
+        return new Sale(0, 1, total, 0.0, 0.0, total, total / 2, LocalDateTime.of(2026, 3, 1, 10, 15, 30));
+    }
+
+    @Test
+    void testSubmittedSalesGetIdsAndAreAppliedInOrder() throws Exception {
+        List<Sale> written = new CopyOnWriteArrayList<>();
+        applier = newApplier((sale, items, payments) -> written.add(sale), 41);
+
+        Sale first = newSale(100);
+        Sale second = newSale(250);
+        applier.submit(first, List.of(new SaleItem(0, 0, 7, "Tea", 2, 50, 25)), List.of());
+        applier.submit(second, List.of(), List.of(new SalePayment(0, 0, "CASH", 250, null)));
+
+        assertEquals(42, first.getId());
+        assertEquals(43, second.getId());
+        assertTrue(applier.awaitIdle(5000));
+        assertEquals(List.of(42, 43), written.stream().map(Sale::getId).toList());
+        assertEquals(2, applier.getAppliedCount());
+    }
+
+    @Test
+    void testPendingSalesAreReplayedAfterRestart() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        applier = newApplier((sale, items, payments) -> {
+            blocked.countDown();
+            throw new SQLException("database is locked");
+        }, 0);
+        Sale sale = newSale(75);
+        applier.submit(sale, List.of(new SaleItem(0, 0, 3, "Rice", 1, 75, 60)), List.of());
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        applier.shutdown(0);
+
+        List<CheckoutJournalApplier.JournaledSale> replayed = new CopyOnWriteArrayList<>();
+        applier = newApplier((s, items, payments) -> replayed.add(
+                new CheckoutJournalApplier.JournaledSale(s, items, payments)), 0);
+        assertTrue(applier.awaitIdle(5000));
+
+        assertEquals(1, replayed.size());
+        Sale replayedSale = replayed.get(0).getSale();
+        assertEquals(sale.getId(), replayedSale.getId());
+        assertEquals(75.0, replayedSale.getTotalAmount());
+        assertEquals(sale.getSaleDate(), replayedSale.getSaleDate());
+        assertEquals("Rice", replayed.get(0).getItems().get(0).getProductName());
+    }
+
+    @Test
+    void testNewIdsStayAboveSalesStillInJournal() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        applier = newApplier((sale, items, payments) -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new SQLException("stopped");
+        }, 10);
+        applier.submit(newSale(1), List.of(), List.of());
+        release.countDown();
+        applier.shutdown(0);
+
+        // Database still reports 10, but sale 11 is waiting in the journal
+        applier = newApplier((sale, items, payments) -> {
+        }, 10);
+        Sale next = newSale(2);
+        applier.submit(next, List.of(), List.of());
+        assertEquals(12, next.getId());
+    }
+
+    @Test
+    void testPersistentFailureIsDeadLettered() throws Exception {
+        List<Sale> written = new CopyOnWriteArrayList<>();
+        applier = newApplier((sale, items, payments) -> {
+            if (sale.getTotalAmount() == 13) {
+                throw new SQLException("FOREIGN KEY constraint failed");
+            }
+            written.add(sale);
+        }, 0);
+
+        applier.submit(newSale(13), List.of(), List.of());
+        applier.submit(newSale(20), List.of(), List.of());
+
+        assertTrue(applier.awaitIdle(10_000));
+        assertEquals(1, applier.getFailedCount());
+        assertEquals(1, written.size());
+        String deadLetters = Files.readString(tempDir.resolve("failed.log"));
+        assertTrue(deadLetters.contains("FOREIGN KEY constraint failed"));
+    }
+
+    @Test
+    void testReplayedSaleBeyondStockIsRecordedWithShortfall() throws Exception {
+        String url = "jdbc:sqlite:" + tempDir.resolve("store.db");
+        try (Connection conn = DriverManager.getConnection(url)) {
+            try (Statement stmt = conn.createStatement();
+                    InputStream schema = getClass().getResourceAsStream("/schema.sql")) {
+                for (String sql : SqlScript.split(new String(schema.readAllBytes(), StandardCharsets.UTF_8))) {
+                    try {
+                        stmt.execute(sql);
+                    } catch (SQLException e) {
+                        // ALTER TABLE migrations fail on a fresh schema
+                    }
+                }
+                stmt.execute("INSERT INTO products (barcode, name, selling_price) VALUES ('R1', 'Rice', 10.0)");
+            }
+            InventoryService inventoryService = new InventoryService(new SecurityService(new AuditLogDAO(conn)));
+            inventoryService.addStock(conn, 1, 2, 6.0, null, "PO-1", 1);
+            CheckoutService checkoutService = new CheckoutService(inventoryService, null);
+            applier = newApplier((sale, items, payments) -> CheckoutJournalApplier.writeIfAbsent(checkoutService,
+                    conn, sale, items, payments), 0);
+
+            // Paid for five while the batches only hold two
+            Sale sale = newSale(50);
+            applier.submit(sale, List.of(new SaleItem(0, 0, 1, "Rice", 5, 10, 6)),
+                    List.of(new SalePayment(0, 0, "CASH", 50, null)));
+
+            assertTrue(applier.awaitIdle(10_000));
+            assertEquals(0, applier.getFailedCount());
+            assertFalse(Files.exists(tempDir.resolve("failed.log")));
+            try (Statement stmt = conn.createStatement()) {
+                try (ResultSet rs = stmt.executeQuery("SELECT total_amount FROM sales WHERE id = " + sale.getId())) {
+                    assertTrue(rs.next());
+                    assertEquals(50.0, rs.getDouble(1));
+                }
+                try (ResultSet rs = stmt.executeQuery("SELECT stock FROM products WHERE id = 1")) {
+                    assertTrue(rs.next());
+                    assertEquals(-3, rs.getInt(1));
+                }
+                try (ResultSet rs = stmt.executeQuery("SELECT sale_count FROM sales_rollup_daily")) {
+                    assertTrue(rs.next());
+                    assertEquals(1, rs.getInt(1));
+                }
+                try (ResultSet rs = stmt.executeQuery(
+                        "SELECT details FROM audit_logs WHERE action = 'STOCK_SHORTFALL' AND entity_id = '1'")) {
+                    assertTrue(rs.next());
+                    assertEquals("Short by: 3, Ref: SALE-" + sale.getId(), rs.getString(1));
+                }
+            }
+            // The stock counter still matches the ledger
+            assertTrue(new InventoryTransactionDAO(conn).findStockDrift().isEmpty());
+        }
+    }
+
+    @Test
+    void testDirectSaleStaysClearOfReservedIds() throws Exception {
+        String url = "jdbc:sqlite:" + tempDir.resolve("store.db");
+        try (Connection conn = DriverManager.getConnection(url)) {
+            try (Statement stmt = conn.createStatement();
+                    InputStream schema = getClass().getResourceAsStream("/schema.sql")) {
+                for (String sql : SqlScript.split(new String(schema.readAllBytes(), StandardCharsets.UTF_8))) {
+                    try {
+                        stmt.execute(sql);
+                    } catch (SQLException e) {
+                        // ALTER TABLE migrations fail on a fresh schema
+                    }
+                }
+            }
+            CheckoutService checkoutService = new CheckoutService(new InventoryService(), null);
+            CountDownLatch release = new CountDownLatch(1);
+            applier = newApplier((sale, items, payments) -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                CheckoutJournalApplier.writeIfAbsent(checkoutService, conn, sale, items, payments);
+            }, 0);
+
+            Sale journaled = newSale(30);
+            applier.submit(journaled, List.of(), List.of());
+
+            // Checked out directly while the journaled sale still holds its ID
+            Sale direct = newSale(40);
+            try (SaleDAO saleDAO = new SaleDAO(conn)) {
+                applier.insertOutsideJournal(saleDAO, direct);
+            }
+            assertEquals(journaled.getId() + 1, direct.getId());
+
+            release.countDown();
+            assertTrue(applier.awaitIdle(10_000));
+            assertEquals(0, applier.getFailedCount());
+
+            Sale next = newSale(50);
+            applier.submit(next, List.of(), List.of());
+            assertEquals(direct.getId() + 1, next.getId());
+        }
+    }
+
+    @Test
+    void testRepeatedSaleKeyIsNotJournaledTwice() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Sale> written = new CopyOnWriteArrayList<>();
+        applier = new CheckoutJournalApplier(new CheckoutJournal(journalFile(), 64 * 1024),
+                (sale, items, payments) -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    written.add(sale);
+                },
+                new CheckoutJournalApplier.SaleIdSource() {
+                    @Override
+                    public int getMaxSaleId() {
+                        return 0;
+                    }
+
+                    @Override
+                    public int findSaleIdByKey(String saleKey) {
+                        // Stands in for the database once the first sale is applied
+                        return written.stream().filter(s -> saleKey.equals(s.getSaleKey()))
+                                .mapToInt(Sale::getId).findFirst().orElse(0);
+                    }
+                }, tempDir.resolve("failed.log"));
+
+        Sale first = newSale(60);
+        first.setSaleKey("cart-1");
+        assertTrue(applier.submit(first, List.of(), List.of()));
+
+        // Retried while the first attempt is still in the journal
+        Sale retry = newSale(60);
+        retry.setSaleKey("cart-1");
+        assertFalse(applier.submit(retry, List.of(), List.of()));
+        assertEquals(first.getId(), retry.getId());
+
+        release.countDown();
+        assertTrue(applier.awaitIdle(5000));
+
+        // Retried after the first attempt reached the database
+        Sale late = newSale(60);
+        late.setSaleKey("cart-1");
+        assertFalse(applier.submit(late, List.of(), List.of()));
+        assertEquals(first.getId(), late.getId());
+        assertEquals(1, written.size());
+    }
+
+    @Test
+    void testEncodeDecodeRoundTrip() throws Exception {
+        Sale sale = newSale(120);
+        sale.setId(5);
+        sale.setSaleKey("cart-5");
+        SaleItem item = new SaleItem(0, 0, 8, null, 3, 40, 30);
+        item.setDiscountAmount(1.5);
+        item.setTaxAmount(2.5);
+        SalePayment payment = new SalePayment(0, 0, "KBZPAY", 120, LocalDateTime.of(2026, 3, 1, 10, 16));
+
+        CheckoutJournalApplier.JournaledSale decoded = CheckoutJournalApplier
+                .decode(CheckoutJournalApplier.encode(sale, List.of(item), List.of(payment)));
+
+        assertEquals(5, decoded.getSale().getId());
+        assertEquals("cart-5", decoded.getSale().getSaleKey());
+        assertEquals(60.0, decoded.getSale().getTotalProfit());
+        SaleItem decodedItem = decoded.getItems().get(0);
+        assertNull(decodedItem.getProductName());
+        assertEquals(3, decodedItem.getQuantity());
+        assertEquals(1.5, decodedItem.getDiscountAmount());
+        assertEquals(2.5, decodedItem.getTaxAmount());
+        assertEquals("KBZPAY", decoded.getPayments().get(0).getPaymentMethod());
+        assertEquals(payment.getPaymentDate(), decoded.getPayments().get(0).getPaymentDate());
+    }
+}
@@ -0,0 +1,107 @@
+package com.pos.system.services;
+
+import com.pos.system.utils.LatencyHistogram;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CheckoutMetricsTest {
+
+    private static final long MINUTE = TimeUnit.MINUTES.toNanos(1);
+
+    @TempDir
+    Path tempDir;
+
+    private static CheckoutMetrics.PhaseStats stats(CheckoutMetrics metrics, CheckoutMetrics.Window window,
+            CheckoutMetrics.Phase phase) {
+        List<CheckoutMetrics.PhaseStats> all = metrics.snapshot(window);
+        return all.get(phase.ordinal());
+    }
+
+    @Test
+    void testHistogramPercentilesStayWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int ms = 1; ms <= 100; ms++) {
+            histogram.record(ms, TimeUnit.MILLISECONDS);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(100_000, histogram.getMax());
+        assertEquals(50_000, histogram.getValueAtPercentile(50), 50_000 * 0.07);
+        assertEquals(95_000, histogram.getValueAtPercentile(95), 95_000 * 0.07);
+        assertEquals(99_000, histogram.getValueAtPercentile(99), 99_000 * 0.07);
+        assertEquals(100_000, histogram.getValueAtPercentile(100));
+        assertEquals(0, new LatencyHistogram().getValueAtPercentile(99));
+    }
+
+    @Test
+    void testRollingWindowsDropOldMinutes() {
+        AtomicLong clock = new AtomicLong(10 * MINUTE);
+        CheckoutMetrics metrics = new CheckoutMetrics(clock::get);
+
+        metrics.record(CheckoutMetrics.Phase.COMMIT, TimeUnit.MILLISECONDS.toNanos(200));
+        clock.addAndGet(3 * MINUTE);
+        metrics.record(CheckoutMetrics.Phase.COMMIT, TimeUnit.MILLISECONDS.toNanos(4));
+
+        CheckoutMetrics.PhaseStats lastMinute = stats(metrics, CheckoutMetrics.Window.LAST_MINUTE,
+                CheckoutMetrics.Phase.COMMIT);
+        assertEquals(1, lastMinute.getCount());
+        assertEquals(4.0, lastMinute.getMax(), 0.001);
+
+        CheckoutMetrics.PhaseStats quarterHour = stats(metrics, CheckoutMetrics.Window.LAST_15_MINUTES,
+                CheckoutMetrics.Phase.COMMIT);
+        assertEquals(2, quarterHour.getCount());
+        assertEquals(200.0, quarterHour.getMax(), 0.001);
+
+        // Once the ring wraps, the 200 ms sample leaves the window but not the run total
+        clock.addAndGet(CheckoutMetrics.WINDOW_SLOTS * MINUTE);
+        metrics.record(CheckoutMetrics.Phase.COMMIT, TimeUnit.MILLISECONDS.toNanos(5));
+        assertEquals(1, stats(metrics, CheckoutMetrics.Window.LAST_15_MINUTES, CheckoutMetrics.Phase.COMMIT)
+                .getCount());
+        CheckoutMetrics.PhaseStats sinceStart = stats(metrics, CheckoutMetrics.Window.SINCE_START,
+                CheckoutMetrics.Phase.COMMIT);
+        assertEquals(3, sinceStart.getCount());
+        assertEquals(200.0, sinceStart.getMax(), 0.001);
+    }
+
+    @Test
+    void testConcurrentRecordingLosesNoSamples() throws InterruptedException {
+        CheckoutMetrics metrics = new CheckoutMetrics(System::nanoTime);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    metrics.record(CheckoutMetrics.Phase.INSERT_SALE, 1_000 + i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40_000, stats(metrics, CheckoutMetrics.Window.SINCE_START,
+                CheckoutMetrics.Phase.INSERT_SALE).getCount());
+    }
+
+    @Test
+    void testDumpAppendsReadableTable() throws Exception {
+        CheckoutMetrics metrics = new CheckoutMetrics(System::nanoTime);
+        metrics.record(CheckoutMetrics.Phase.TOTAL, TimeUnit.MILLISECONDS.toNanos(12));
+        Path file = tempDir.resolve("checkout-latency.log");
+
+        metrics.dumpTo(file);
+        metrics.dumpTo(file);
+
+        String text = Files.readString(file);
+        assertEquals(2, text.split("=== Checkout latency at").length - 1);
+        assertTrue(text.contains("SINCE_START"));
+        assertTrue(text.lines().anyMatch(line -> line.startsWith("TOTAL") && line.contains("12.")));
+    }
+}
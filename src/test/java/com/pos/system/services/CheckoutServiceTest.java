@@ -3,8 +3,11 @@ package com.pos.system.services;
 import com.pos.system.dao.ProductDAO;
 import com.pos.system.dao.SaleDAO;
 import com.pos.system.dao.SalePaymentDAO;
+import com.pos.system.dao.SalesRollupDAO;
+import com.pos.system.database.DatabaseWriter;
 import com.pos.system.models.Sale;
 import com.pos.system.models.SaleItem;
+import com.pos.system.models.SalePayment;
 import com.pos.system.models.TransactionType;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -17,11 +20,15 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -39,19 +46,35 @@ public class CheckoutServiceTest {
     @Mock
     private SalePaymentDAO mockSalePaymentDAO;
 
+    @Mock
+    private SalesRollupDAO mockSalesRollupDAO;
+
     @Mock
     private InventoryService mockInventoryService;
 
+    @Mock
+    private CheckoutJournalApplier mockJournalApplier;
+
     private CheckoutService checkoutService;
+    private boolean fastCheckout;
+    private int busyWrites;
+    private int writeAttempts;
+    private final CheckoutMetrics metrics = new CheckoutMetrics(System::nanoTime);
 
     @BeforeEach
     void setUp() {
         // We create a testable subclass of CheckoutService to inject our mocked
-        // Connection and DAOs
+        // Connection and DAOs, bypassing the DatabaseWriter
         checkoutService = new CheckoutService(mockInventoryService) {
             @Override
-            protected Connection getConnection() {
-                return mockConnection;
+            protected <T> T executeWrite(DatabaseWriter.WriteUnit<T> unit) throws SQLException {
+                writeAttempts++;
+                if (busyWrites > 0) {
+                    busyWrites--;
+                    throw new SQLException("[SQLITE_BUSY] The database file is locked", null, 5);
+                }
+                // Run the unit directly; transaction handling is the writer's job
+                return unit.execute(mockConnection);
             }
 
             @Override
@@ -68,6 +91,26 @@ public class CheckoutServiceTest {
             protected SalePaymentDAO getSalePaymentDAO(Connection connection) {
                 return mockSalePaymentDAO;
             }
+
+            @Override
+            protected SalesRollupDAO getSalesRollupDAO(Connection connection) {
+                return mockSalesRollupDAO;
+            }
+
+            @Override
+            protected boolean isFastCheckoutEnabled() {
+                return fastCheckout;
+            }
+
+            @Override
+            protected CheckoutJournalApplier getJournalApplier() {
+                return mockJournalApplier;
+            }
+
+            @Override
+            protected CheckoutMetrics getMetrics() {
+                return metrics;
+            }
         };
     }
 
@@ -87,21 +130,21 @@ public class CheckoutServiceTest {
         checkoutService.processCheckout(sale, items);
 
         // Assert
-        verify(mockConnection).setAutoCommit(false); // transaction started
         verify(mockSaleDAO).insertSale(sale); // header inserted
         verify(mockSaleDAO).insertSaleItems(expectedSaleId, items); // items inserted
 
         // inventory updated
-        verify(mockInventoryService).deductStock(
+        verify(mockInventoryService).deductStockForItems(
                 eq(mockConnection),
-                eq(101),
-                eq(2),
+                eq(items),
                 eq(TransactionType.SALE),
                 eq("SALE-" + expectedSaleId),
                 eq(1));
+        verify(mockSalesRollupDAO).addSale(expectedSaleId);
 
-        verify(mockConnection).commit(); // transaction committed
-        verify(mockConnection).setAutoCommit(true); // reset auto-commit
+        // transaction control is left to the DatabaseWriter
+        verify(mockConnection, never()).commit();
+        verify(mockConnection, never()).setAutoCommit(false);
     }
 
     @Test
@@ -118,9 +161,120 @@ public class CheckoutServiceTest {
             checkoutService.processCheckout(sale, items);
         });
 
-        // verify rollback occurred
-        verify(mockConnection).rollback();
+        // the failure reaches the caller and nothing further is written
+        verify(mockSaleDAO, never()).insertSaleItems(any(Integer.class), any());
         verify(mockConnection, never()).commit();
-        verify(mockConnection).setAutoCommit(true);
+    }
+
+    @Test
+    void testProcessCheckoutWithPayments_WritesSalePaymentsAndStock() throws SQLException {
+        Sale sale = new Sale(0, 1, 100.0, 20.0, java.time.LocalDateTime.now());
+        List<SaleItem> items = List.of(new SaleItem(0, 0, 101, "Test Product", 2, 50.0, 40.0));
+        SalePayment payment = new SalePayment(0, 0, "CASH", 100.0, null);
+
+        when(mockSaleDAO.insertSale(sale)).thenReturn(42);
+
+        checkoutService.processCheckoutWithPayments(sale, items, List.of(payment));
+
+        verify(mockSaleDAO).insertSaleItems(42, items);
+        verify(mockSalePaymentDAO).create(payment);
+        assertEquals(42, payment.getSaleId());
+        verify(mockInventoryService).deductStockForItems(mockConnection, items, TransactionType.SALE, "SALE-42", 1);
+        verify(mockSalesRollupDAO).addSale(42);
+        verifyNoInteractions(mockJournalApplier);
+    }
+
+    @Test
+    void testProcessCheckoutWithPayments_FastModeJournalsWithoutTouchingDatabase() throws Exception {
+        fastCheckout = true;
+        Sale sale = new Sale(0, 1, 100.0, 20.0, java.time.LocalDateTime.now());
+        List<SaleItem> items = List.of(new SaleItem(0, 0, 101, "Test Product", 2, 50.0, 40.0));
+        List<SalePayment> payments = List.of(new SalePayment(0, 0, "CASH", 100.0, null));
+
+        checkoutService.processCheckoutWithPayments(sale, items, payments);
+
+        verify(mockJournalApplier).submit(sale, items, payments);
+        verifyNoInteractions(mockSaleDAO, mockSalePaymentDAO, mockInventoryService, mockConnection);
+    }
+
+    @Test
+    void testProcessCheckoutWithPayments_FastModeJournalFailureReachesCaller() throws Exception {
+        fastCheckout = true;
+        Sale sale = new Sale(0, 1, 100.0, 20.0, java.time.LocalDateTime.now());
+        doThrow(new java.io.IOException("Checkout journal is full")).when(mockJournalApplier)
+                .submit(any(), any(), any());
+
+        assertThrows(SQLException.class,
+                () -> checkoutService.processCheckoutWithPayments(sale, List.of(), List.of()));
+        verifyNoInteractions(mockSaleDAO);
+    }
+
+    @Test
+    void testProcessCheckoutWithPayments_RepeatedSaleKeyReturnsExistingSale() throws SQLException {
+        Sale sale = new Sale(0, 1, 100.0, 20.0, java.time.LocalDateTime.now());
+        sale.setSaleKey("cart-1");
+        List<SaleItem> items = List.of(new SaleItem(0, 0, 101, "Test Product", 2, 50.0, 40.0));
+        SalePayment payment = new SalePayment(0, 0, "CASH", 100.0, null);
+        when(mockSaleDAO.findSaleIdByKey("cart-1")).thenReturn(42);
+
+        checkoutService.processCheckoutWithPayments(sale, items, List.of(payment));
+
+        assertEquals(42, sale.getId());
+        verify(mockSaleDAO, never()).insertSale(any());
+        verifyNoInteractions(mockSalePaymentDAO, mockInventoryService);
+    }
+
+    @Test
+    void testProcessCheckoutWithPayments_RetriesBusyDatabase() throws SQLException {
+        busyWrites = 2;
+        Sale sale = new Sale(0, 1, 100.0, 20.0, java.time.LocalDateTime.now());
+        sale.setSaleKey("cart-2");
+        List<SaleItem> items = List.of(new SaleItem(0, 0, 101, "Test Product", 2, 50.0, 40.0));
+        when(mockSaleDAO.insertSale(sale)).thenReturn(43);
+
+        checkoutService.processCheckoutWithPayments(sale, items, List.of());
+
+        assertEquals(3, writeAttempts);
+        assertEquals(43, sale.getId());
+        verify(mockSaleDAO).insertSaleItems(43, items);
+    }
+
+    @Test
+    void testProcessCheckoutWithPayments_BusyRetriesAreBounded() {
+        busyWrites = Integer.MAX_VALUE;
+        Sale sale = new Sale(0, 1, 100.0, 20.0, java.time.LocalDateTime.now());
+
+        SQLException e = assertThrows(SQLException.class,
+                () -> checkoutService.processCheckoutWithPayments(sale, List.of(), List.of()));
+        assertTrue(DatabaseWriter.isBusy(e));
+        assertEquals(CheckoutService.MAX_WRITE_ATTEMPTS, writeAttempts);
+    }
+
+    @Test
+    void testProcessCheckoutWithPayments_OtherFailuresAreNotRetried() throws SQLException {
+        Sale sale = new Sale(0, 1, 100.0, 20.0, java.time.LocalDateTime.now());
+        when(mockSaleDAO.insertSale(sale)).thenThrow(new SQLException("Insufficient stock"));
+
+        assertThrows(SQLException.class,
+                () -> checkoutService.processCheckoutWithPayments(sale, List.of(), List.of()));
+        assertEquals(1, writeAttempts);
+    }
+
+    @Test
+    void testProcessCheckoutWithPayments_RecordsPhaseLatencies() throws SQLException {
+        Sale sale = new Sale(0, 1, 100.0, 20.0, java.time.LocalDateTime.now());
+        List<SaleItem> items = List.of(new SaleItem(0, 0, 101, "Test Product", 2, 50.0, 40.0));
+        when(mockSaleDAO.insertSale(sale)).thenReturn(44);
+
+        checkoutService.processCheckoutWithPayments(sale, items, List.of(new SalePayment(0, 0, "CASH", 100.0, null)));
+
+        List<CheckoutMetrics.PhaseStats> stats = metrics.snapshot(CheckoutMetrics.Window.SINCE_START);
+        for (CheckoutMetrics.Phase phase : List.of(CheckoutMetrics.Phase.CONNECTION_ACQUIRE,
+                CheckoutMetrics.Phase.INSERT_SALE, CheckoutMetrics.Phase.INSERT_SALE_ITEMS,
+                CheckoutMetrics.Phase.PAYMENTS, CheckoutMetrics.Phase.DEDUCT_STOCK,
+                CheckoutMetrics.Phase.SALES_ROLLUP, CheckoutMetrics.Phase.COMMIT, CheckoutMetrics.Phase.TOTAL)) {
+            assertEquals(1, stats.get(phase.ordinal()).getCount(), phase.name());
+        }
+        assertEquals(0, stats.get(CheckoutMetrics.Phase.JOURNAL_APPEND.ordinal()).getCount());
     }
 }
@@ -0,0 +1,76 @@
+package com.pos.system.services;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ColumnWidthsTest {
+
+    @BeforeAll
+    static void noDisplay() {
+        // SXSSF loads AWT font classes
+        System.setProperty("java.awt.headless", "true");
+    }
+
+    @Test
+    public void testWidthsFollowTheLongestText() throws Exception {
+        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+            Sheet sheet = workbook.createSheet("s");
+            ColumnWidths widths = new ColumnWidths(sheet);
+            Row title = sheet.createRow(0);
+            title.createCell(0).setCellValue("A long report title");
+            for (int i = 1; i <= 3; i++) {
+                widths.beforeRow();
+                Row row = sheet.createRow(i);
+                row.createCell(0).setCellValue("x");
+                row.createCell(2).setCellValue(12345.5);
+            }
+            widths.apply();
+
+            assertEquals(19, widths.chars(0));
+            assertEquals(0, widths.chars(1));
+            assertEquals(7, widths.chars(2));
+            assertEquals((19 + 2) * 256, sheet.getColumnWidth(0));
+            assertEquals((7 + 2) * 256, sheet.getColumnWidth(2));
+        }
+    }
+
+    @Test
+    public void testStreamedRowsAreMeasuredBeforeTheyAreFlushed() throws Exception {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(new XSSFWorkbook(), ColumnWidths.FLUSH_EVERY * 2);
+        try {
+            SXSSFSheet sheet = workbook.createSheet("s");
+            ColumnWidths widths = new ColumnWidths(sheet);
+            int rows = ColumnWidths.FLUSH_EVERY * 10;
+            for (int i = 0; i < rows; i++) {
+                widths.beforeRow();
+                // The longest text is in the first row, long gone from memory at the end
+                sheet.createRow(i).createCell(0).setCellValue(i == 0 ? "the longest text of all" : "short");
+                assertTrue(rowsInMemory(sheet) <= ColumnWidths.FLUSH_EVERY);
+            }
+            widths.apply();
+
+            assertEquals(23, widths.chars(0));
+            assertEquals((23 + 2) * 256, sheet.getColumnWidth(0));
+            assertEquals(0, rowsInMemory(sheet));
+        } finally {
+            workbook.dispose();
+            workbook.close();
+        }
+    }
+
+    private static int rowsInMemory(Sheet sheet) {
+        // A streamed sheet iterates only the rows not yet flushed
+        int rows = 0;
+        for (Row ignored : sheet) {
+            rows++;
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,166 @@
+package com.pos.system.services;
+
+import javafx.scene.image.Image;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ImageCacheServiceTest {
+
+    // Loads wait here, in priority order as in the application, until the test runs them; callbacks run inline
+    private final Queue<Runnable> loads = new PriorityQueue<>();
+    private final AtomicInteger loaderCalls = new AtomicInteger();
+    private final List<Integer> loaded = new ArrayList<>();
+
+    private static Image image(int pixels) {
+        Image image = mock(Image.class);
+        when(image.getWidth()).thenReturn((double) pixels);
+        when(image.getHeight()).thenReturn((double) pixels);
+        return image;
+    }
+
+    private ImageCacheService cache(long maxWeight, ImageCacheService.Loader loader) {
+        return new ImageCacheService((productId, size) -> {
+            loaderCalls.incrementAndGet();
+            loaded.add(productId);
+            return loader.load(productId, size);
+        }, data -> image(data[0]), maxWeight, loads::add, Runnable::run);
+    }
+
+    private void runLoads() {
+        while (!loads.isEmpty()) {
+            loads.poll().run();
+        }
+    }
+
+    private ImageCacheService cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = cache(1L << 30, (productId, size) -> productId == 0 ? null : new byte[] { 10 });
+    }
+
+    @Test
+    void testConcurrentRequestsShareOneLoadAndAllGetTheImage() {
+        List<Image> delivered = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            cache.loadImage(7, ThumbnailService.Size.GRID, delivered::add);
+        }
+        assertEquals(1, loads.size());
+        runLoads();
+
+        assertEquals(3, delivered.size());
+        assertSame(delivered.get(0), delivered.get(2));
+        assertSame(delivered.get(0), cache.getCachedImage(7, ThumbnailService.Size.GRID));
+        assertNull(cache.getCachedImage(7, ThumbnailService.Size.LIST), "sizes are cached apart");
+        assertEquals(1, loaderCalls.get());
+
+        ImageCacheService.Stats stats = cache.getStats();
+        assertEquals(3, stats.getMisses());
+        assertEquals(2, stats.getCoalesced());
+        assertEquals(1, stats.getHits());
+    }
+
+    @Test
+    void testCacheIsBoundedByDecodedSize() {
+        // Room for about two 10x10 thumbnails per segment
+        long perImage = 10 * 10 * 4 + 128;
+        cache = cache(ImageCacheService.SEGMENTS * perImage * 2, (productId, size) -> new byte[] { 10 });
+        for (int id = 1; id <= 200; id++) {
+            cache.loadImage(id, ThumbnailService.Size.GRID, null);
+            runLoads();
+        }
+
+        ImageCacheService.Stats stats = cache.getStats();
+        assertTrue(stats.getWeight() <= ImageCacheService.SEGMENTS * perImage * 2, stats.toString());
+        assertEquals(200 - stats.getEntries(), stats.getEvictions());
+        assertNotNull(cache.getCachedImage(200, ThumbnailService.Size.GRID), "the latest image is kept");
+        assertNull(cache.getCachedImage(1, ThumbnailService.Size.GRID));
+    }
+
+    @Test
+    void testMissingImagesAreRememberedButFailuresAreRetried() {
+        cache.loadImage(0, ThumbnailService.Size.GRID, image -> fail("no image to show"));
+        runLoads();
+        cache.loadImage(0, ThumbnailService.Size.GRID, image -> fail("no image to show"));
+        assertTrue(loads.isEmpty());
+
+        cache = cache(1L << 30, (productId, size) -> {
+            throw new IllegalStateException("database unavailable");
+        });
+        cache.loadImage(5, ThumbnailService.Size.LIST, image -> fail("nothing loaded"));
+        runLoads();
+        cache.loadImage(5, ThumbnailService.Size.LIST, null);
+        assertEquals(1, loads.size(), "a failed load is not cached");
+    }
+
+    @Test
+    void testInvalidateDropsTheImageAndALoadInProgress() {
+        cache.loadImage(3, ThumbnailService.Size.GRID, null);
+        runLoads();
+        assertNotNull(cache.getCachedImage(3, ThumbnailService.Size.GRID));
+
+        cache.invalidate(3);
+        assertNull(cache.getCachedImage(3, ThumbnailService.Size.GRID));
+
+        // A load of the old image still completes, but is not cached
+        cache.loadImage(3, ThumbnailService.Size.GRID, null);
+        cache.invalidate(3);
+        runLoads();
+        assertNull(cache.getCachedImage(3, ThumbnailService.Size.GRID));
+    }
+
+    @Test
+    void testPrefetchesRunAfterVisibleLoadsAndCanBeCancelled() {
+        ImageCacheService.Prefetch next = cache.prefetch(List.of(11, 12), ThumbnailService.Size.GRID);
+        ImageCacheService.Prefetch previous = cache.prefetch(List.of(13, 14), ThumbnailService.Size.GRID);
+        cache.loadImage(1, ThumbnailService.Size.GRID, null);
+        // A visible cell asks for a thumbnail that is queued as a prefetch
+        List<Image> delivered = new ArrayList<>();
+        cache.loadImage(12, ThumbnailService.Size.GRID, delivered::add);
+        previous.cancel();
+        runLoads();
+
+        assertEquals(List.of(1, 12, 11), loaded, "visible first, then prefetches; cancelled ones never load");
+        assertEquals(1, delivered.size());
+        assertNotNull(cache.getCachedImage(11, ThumbnailService.Size.GRID));
+        assertNull(cache.getCachedImage(13, ThumbnailService.Size.GRID));
+
+        ImageCacheService.Stats stats = cache.getStats();
+        assertEquals(4, stats.getPrefetched());
+        assertEquals(2, stats.getPrefetchesCancelled());
+        next.cancel();
+
+        // Cached thumbnails are not prefetched again
+        cache.prefetch(List.of(11, 13), ThumbnailService.Size.GRID);
+        runLoads();
+        assertEquals(List.of(1, 12, 11, 13), loaded);
+    }
+
+    @Test
+    void testCancelledPrefetchStillLoadsForAnotherWaiter() {
+        ImageCacheService.Prefetch first = cache.prefetch(List.of(21), ThumbnailService.Size.LIST);
+        cache.prefetch(List.of(21), ThumbnailService.Size.LIST);
+        first.cancel();
+        runLoads();
+        assertNotNull(cache.getCachedImage(21, ThumbnailService.Size.LIST), "the second prefetch still wants it");
+
+        ImageCacheService.Prefetch dropped = cache.prefetch(List.of(22), ThumbnailService.Size.LIST);
+        dropped.cancel();
+        runLoads();
+        // Requested again after the dropped load left the queue
+        List<Image> delivered = new ArrayList<>();
+        cache.loadImage(22, ThumbnailService.Size.LIST, delivered::add);
+        runLoads();
+        assertEquals(1, delivered.size());
+    }
+}
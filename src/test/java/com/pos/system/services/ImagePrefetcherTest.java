@@ -0,0 +1,89 @@
+package com.pos.system.services;
+
+import com.pos.system.models.Product;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ImagePrefetcherTest {
+
+    @Mock
+    private ImageCacheService cache;
+    @Mock
+    private ImageCacheService.Prefetch nextPage;
+    @Mock
+    private ImageCacheService.Prefetch previousPage;
+
+    private ImagePrefetcher prefetcher;
+    private final List<Integer> pagesRead = new ArrayList<>();
+
+    // Page n holds products n * 10 and n * 10 + 1
+    private final IntFunction<CompletableFuture<List<Product>>> pages = pageIndex -> {
+        pagesRead.add(pageIndex);
+        return CompletableFuture.completedFuture(List.of(product(pageIndex * 10), product(pageIndex * 10 + 1)));
+    };
+
+    private static Product product(int id) {
+        return new Product(id, "BC-" + id, "P" + id, 1, "Drinks", 1.0, 2.0, 5, null);
+    }
+
+    @BeforeEach
+    void setUp() {
+        prefetcher = new ImagePrefetcher(cache, ThumbnailService.Size.GRID);
+    }
+
+    @Test
+    void testNeighboursArePrefetchedAndLeftPagesCancelled() {
+        when(cache.prefetch(List.of(40, 41), ThumbnailService.Size.GRID)).thenReturn(nextPage);
+        when(cache.prefetch(List.of(20, 21), ThumbnailService.Size.GRID)).thenReturn(previousPage);
+
+        prefetcher.pageShown(3);
+        prefetcher.prefetchAround(3, 10, pages);
+        assertEquals(List.of(4, 2), pagesRead, "the next page first");
+
+        // Forward a page: page 2 is no longer next to it, page 4 is now shown
+        prefetcher.pageShown(4);
+        verify(previousPage).cancel();
+        verify(nextPage, never()).cancel();
+    }
+
+    @Test
+    void testPageLeftBeforeItSettledPrefetchesNothing() {
+        prefetcher.pageShown(0);
+        prefetcher.pageShown(5);
+        prefetcher.prefetchAround(0, 10, pages);
+        assertTrue(pagesRead.isEmpty());
+
+        // Nothing before the first page or after the last
+        when(cache.prefetch(List.of(40, 41), ThumbnailService.Size.GRID)).thenReturn(nextPage);
+        prefetcher.pageShown(5);
+        prefetcher.prefetchAround(5, 6, pages);
+        assertEquals(List.of(4), pagesRead);
+    }
+
+    @Test
+    void testPageReadAfterResetIsNotPrefetched() {
+        CompletableFuture<List<Product>> slowPage = new CompletableFuture<>();
+        prefetcher.pageShown(0);
+        prefetcher.prefetchAround(0, 2, pageIndex -> slowPage);
+
+        prefetcher.reset();
+        prefetcher.pageShown(0);
+        slowPage.complete(List.of(product(10)));
+        verify(cache, never()).prefetch(any(), any());
+    }
+}
@@ -4,6 +4,7 @@ import com.pos.system.dao.BatchDAO;
 import com.pos.system.dao.InventoryTransactionDAO;
 import com.pos.system.models.Batch;
 import com.pos.system.models.InventoryTransaction;
+import com.pos.system.models.SaleItem;
 import com.pos.system.models.TransactionType;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -17,10 +18,14 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyCollection;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -67,7 +72,6 @@ public class InventoryServiceTest {
         String reference = "PO-123";
         Integer createdBy = 1;
 
-        when(mockTransactionDAO.calculateStockLevel(productId)).thenReturn(100);
         when(mockConnection.prepareStatement(anyString())).thenReturn(mockPreparedStatement);
 
         // Act
@@ -84,8 +88,9 @@ public class InventoryServiceTest {
         assertEquals(quantity, txCaptor.getValue().getQuantityChange());
         assertEquals(TransactionType.PURCHASE, txCaptor.getValue().getTransactionType());
 
-        // verify cache updated
-        verify(mockTransactionDAO).calculateStockLevel(productId);
+        // verify cache updated by delta without replaying the ledger
+        verify(mockTransactionDAO, never()).calculateStockLevel(productId);
+        verify(mockPreparedStatement).setInt(1, quantity);
         verify(mockPreparedStatement).executeUpdate();
     }
 
@@ -108,7 +113,6 @@ public class InventoryServiceTest {
 
         // Return a list of available batches
         when(mockBatchDAO.getAvailableBatches(productId)).thenReturn(Arrays.asList(batch1, batch2));
-        when(mockTransactionDAO.calculateStockLevel(productId)).thenReturn(5);
         when(mockConnection.prepareStatement(anyString())).thenReturn(mockPreparedStatement);
 
         // Act
@@ -126,6 +130,9 @@ public class InventoryServiceTest {
 
         assertEquals(-10, txCaptor.getAllValues().get(0).getQuantityChange());
         assertEquals(-5, txCaptor.getAllValues().get(1).getQuantityChange());
+
+        // cached counter decremented by the full deduction
+        verify(mockPreparedStatement).setInt(1, -quantityToDeduct);
     }
 
     @Test
@@ -144,4 +151,56 @@ public class InventoryServiceTest {
             inventoryService.deductStock(mockConnection, productId, 15, TransactionType.SALE, "SALE-999", 1);
         });
     }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testDeductStockForItems_AllocatesWholeCartInOnePass() throws SQLException {
+        // Arrange: two lines for product 1 (merged), one line for product 2
+        Batch p1Batch1 = new Batch(1, 1, "P1-A", null, 1.0, 4, null);
+        Batch p1Batch2 = new Batch(2, 1, "P1-B", null, 1.0, 10, null);
+        Batch p2Batch1 = new Batch(3, 2, "P2-A", null, 1.0, 7, null);
+
+        List<SaleItem> items = Arrays.asList(
+                new SaleItem(0, 0, 1, "P1", 3, 5.0, 1.0),
+                new SaleItem(0, 0, 2, "P2", 2, 5.0, 1.0),
+                new SaleItem(0, 0, 1, "P1", 3, 5.0, 1.0));
+
+        when(mockBatchDAO.getAvailableBatchesForProducts(anyCollection()))
+                .thenReturn(Map.of(1, Arrays.asList(p1Batch1, p1Batch2), 2, Arrays.asList(p2Batch1)));
+        when(mockConnection.prepareStatement(anyString())).thenReturn(mockPreparedStatement);
+
+        // Act
+        inventoryService.deductStockForItems(mockConnection, items, TransactionType.SALE, "SALE-1", 1);
+
+        // Assert
+        ArgumentCaptor<Map<Integer, Integer>> remainingCaptor = ArgumentCaptor.forClass(Map.class);
+        verify(mockBatchDAO).updateRemainingQuantities(remainingCaptor.capture());
+        assertEquals(Map.of(1, 0, 2, 8, 3, 5), remainingCaptor.getValue());
+
+        ArgumentCaptor<List<InventoryTransaction>> txCaptor = ArgumentCaptor.forClass(List.class);
+        verify(mockTransactionDAO).insertTransactions(txCaptor.capture());
+        List<InventoryTransaction> rows = txCaptor.getValue();
+        assertEquals(3, rows.size());
+        assertEquals(-4, rows.get(0).getQuantityChange());
+        assertEquals(-2, rows.get(1).getQuantityChange());
+        assertEquals(-2, rows.get(2).getQuantityChange());
+
+        verify(mockBatchDAO, never()).getAvailableBatches(org.mockito.ArgumentMatchers.anyInt());
+        verify(mockPreparedStatement).executeBatch();
+    }
+
+    @Test
+    void testDeductStockForItems_InsufficientStock_WritesNothing() throws SQLException {
+        // Arrange
+        Batch batch = new Batch(1, 1, "P1-A", null, 1.0, 2, null);
+        when(mockBatchDAO.getAvailableBatchesForProducts(anyCollection())).thenReturn(Map.of(1, Arrays.asList(batch)));
+
+        List<SaleItem> items = Arrays.asList(new SaleItem(0, 0, 1, "P1", 5, 5.0, 1.0));
+
+        // Act & Assert
+        assertThrows(SQLException.class, () -> inventoryService.deductStockForItems(mockConnection, items,
+                TransactionType.SALE, "SALE-2", 1));
+        verify(mockBatchDAO, never()).updateRemainingQuantities(org.mockito.ArgumentMatchers.anyMap());
+        verify(mockTransactionDAO, never()).insertTransactions(org.mockito.ArgumentMatchers.anyList());
+    }
 }
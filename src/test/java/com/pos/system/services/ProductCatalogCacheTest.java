@@ -0,0 +1,170 @@
+package com.pos.system.services;
+
+import com.pos.system.dao.ProductDAO;
+import com.pos.system.models.Category;
+import com.pos.system.models.Product;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ProductCatalogCacheTest {
+
+    @Mock
+    private ProductDAO productDAO;
+
+    @TempDir
+    Path dir;
+
+    private ProductCatalogCache cache;
+    private final List<String> events = new ArrayList<>();
+    private final ProductCatalogCache.Listener listener = new ProductCatalogCache.Listener() {
+        @Override
+        public void catalogReloaded() {
+            events.add("reloaded");
+        }
+
+        @Override
+        public void productChanged(int productId, Product product) {
+            events.add((product == null ? "deleted " : "changed ") + productId);
+        }
+    };
+
+    private static Product product(int id, String barcode, String name, int stock) {
+        return new Product(id, barcode, name, 1, "Drinks", 1.0, 2.0, stock, null);
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        // Updates run inline so each call has finished when it returns
+        cache = new ProductCatalogCache(() -> productDAO, Runnable::run);
+        cache.addListener(listener);
+        when(productDAO.getAllProductsSummary()).thenReturn(List.of(
+                product(1, "8850001", "Green Tea", 10),
+                product(2, "8850002", "Milk Tea", 5)));
+        cache.reload().join();
+    }
+
+    @Test
+    void testScanHitNeverQueriesTheDatabase() throws Exception {
+        assertTrue(cache.isLoaded());
+        assertEquals(List.of("reloaded"), events);
+
+        var scan = cache.lookupBarcode("8850002");
+        assertTrue(scan.isDone());
+        assertEquals(2, scan.join().getId());
+        verify(productDAO, never()).getProductSummaryByBarcode("8850002");
+    }
+
+    @Test
+    void testScanMissFallsBackOnceAndIsCached() throws Exception {
+        when(productDAO.getProductSummaryByBarcode("9990001")).thenReturn(product(3, "9990001", "Coffee", 4));
+
+        assertEquals(3, cache.lookupBarcode("9990001").join().getId());
+        assertEquals(3, cache.lookupBarcode("9990001").join().getId());
+        verify(productDAO, times(1)).getProductSummaryByBarcode("9990001");
+        assertEquals(List.of("reloaded", "changed 3"), events);
+
+        when(productDAO.getProductSummaryByBarcode("0000000")).thenReturn(null);
+        assertNull(cache.lookupBarcode("0000000").join());
+    }
+
+    @Test
+    void testChangeEventsKeepCacheCurrent() throws Exception {
+        when(productDAO.getProductSummaryById(1)).thenReturn(product(1, "8850009", "Green Tea", 3));
+        cache.productSaved(1).join();
+        assertNull(cache.findByBarcode("8850001"), "old barcode no longer resolves");
+        assertEquals(3, cache.findByBarcode("8850009").getStock());
+
+        cache.productUpdated(product(2, "8850002", "Milk Tea", 4)).join();
+        assertEquals(4, cache.findById(2).getStock());
+
+        cache.productDeleted(2).join();
+        assertNull(cache.findByBarcode("8850002"));
+        // Deleting something that is not cached tells nobody
+        cache.productDeleted(2).join();
+
+        assertEquals(List.of("reloaded", "changed 1", "changed 2", "deleted 2"), events);
+    }
+
+    @Test
+    void testRefreshChangedAppliesOnlyWhatMoved() throws Exception {
+        when(productDAO.getCatalogVersion()).thenReturn(7L);
+        when(productDAO.getProductsChangedSince(0)).thenReturn(List.of(product(2, "8850002", "Milk Tea", 3)));
+        when(productDAO.getProductIdsDeletedSince(0)).thenReturn(List.of(1));
+
+        assertEquals(2, cache.refreshChanged().join());
+        assertEquals(3, cache.findById(2).getStock());
+        assertNull(cache.findById(1));
+        assertEquals(List.of("reloaded", "changed 2", "deleted 1"), events);
+
+        // Caught up: nothing more is read until the version moves again
+        assertEquals(0, cache.refreshChanged().join());
+        verify(productDAO, times(1)).getProductsChangedSince(0);
+        verify(productDAO, times(1)).getAllProductsSummary();
+    }
+
+    @Test
+    void testWarmStartShowsTheSnapshotThenAppliesOnlyNewerChanges() throws Exception {
+        Path path = dir.resolve("catalog.snapshot");
+        List<Category> categories = List.of(new Category(1, "Drinks", null));
+        new CatalogSnapshot(5, categories, cache.getIndex()).write(path);
+        when(productDAO.getCatalogVersion()).thenReturn(7L);
+        when(productDAO.getProductsChangedSince(5)).thenReturn(List.of(product(2, "8850002", "Milk Tea", 1)));
+        when(productDAO.getProductIdsDeletedSince(5)).thenReturn(List.of());
+        when(productDAO.countProducts(null)).thenReturn(2);
+
+        ProductCatalogCache warm = new ProductCatalogCache(() -> productDAO, () -> categories, path, Runnable::run);
+        assertTrue(warm.warmStart().join());
+
+        assertTrue(warm.isLoaded());
+        assertEquals(categories, warm.getCategories());
+        assertEquals(1, warm.findByBarcode("8850002").getStock());
+        // Only the full load in setUp read every product
+        verify(productDAO, times(1)).getAllProductsSummary();
+        assertEquals(7, CatalogSnapshot.read(path).getCatalogVersion(), "caught-up catalog is saved again");
+    }
+
+    @Test
+    void testSnapshotOfAnotherDatabaseIsReplacedByAFullLoad() throws Exception {
+        Path path = dir.resolve("catalog.snapshot");
+        cache.productDeleted(2).join();
+        new CatalogSnapshot(9, List.of(), cache.getIndex()).write(path);
+        // Behind the snapshot, e.g. a backup restored since it was taken
+        when(productDAO.getCatalogVersion()).thenReturn(3L);
+
+        ProductCatalogCache warm = new ProductCatalogCache(() -> productDAO, List::of, path, Runnable::run);
+        assertTrue(warm.warmStart().join());
+
+        assertNotNull(warm.findById(2));
+        verify(productDAO, times(2)).getAllProductsSummary();
+        verify(productDAO, never()).getProductsChangedSince(anyLong());
+        assertEquals(3, CatalogSnapshot.read(path).getCatalogVersion());
+    }
+
+    @Test
+    void testWarmStartWithoutSnapshotLoadsAndSavesOne() throws Exception {
+        Path path = dir.resolve("catalog.snapshot");
+        when(productDAO.getCatalogVersion()).thenReturn(4L);
+
+        ProductCatalogCache warm = new ProductCatalogCache(() -> productDAO, List::of, path, Runnable::run);
+        assertFalse(warm.warmStart().join());
+
+        assertEquals(2, warm.getIndex().size());
+        assertEquals(2, CatalogSnapshot.read(path).getIndex().size());
+    }
+}
@@ -0,0 +1,89 @@
+package com.pos.system.services;
+
+import com.pos.system.dao.ProductDAO;
+import com.pos.system.models.Product;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ProductPageSourceTest {
+
+    @Mock
+    private ProductDAO productDAO;
+
+    private ProductPageSource source;
+
+    private static Product product(int id, String name) {
+        return new Product(id, "BC-" + id, name, 1, "Drinks", 1.0, 2.0, 5, null);
+    }
+
+    @BeforeEach
+    void setUp() {
+        // Reads run inline so each page has been fetched, and prefetched, when getPage returns
+        source = new ProductPageSource(() -> productDAO, null, 2, Runnable::run);
+    }
+
+    @Test
+    void testServingAPagePrefetchesTheNextFromItsLastKey() throws Exception {
+        when(productDAO.getProductPage(null, 0, null, 2)).thenReturn(List.of(product(1, "Apple"), product(2, "Bread")));
+        when(productDAO.getProductPage("Bread", 2, null, 2)).thenReturn(List.of(product(3, "Milk"), product(4, "Tea")));
+        when(productDAO.getProductPage("Tea", 4, null, 2)).thenReturn(List.of(product(5, "Water")));
+
+        assertEquals(2, source.getPage(0).join().size());
+        assertTrue(source.isCached(1), "next page is read ahead");
+
+        assertEquals("Milk", source.getPage(1).join().get(0).getName());
+        assertEquals("Water", source.getPage(2).join().get(0).getName());
+        // A short page is the last one, so nothing further is read
+        assertFalse(source.isCached(3));
+        verify(productDAO, times(1)).getProductPage("Bread", 2, null, 2);
+        verify(productDAO, never()).getProductAtPosition(anyInt(), any());
+    }
+
+    @Test
+    void testJumpAheadFindsTheStartKeyThenPagesByKey() throws Exception {
+        when(productDAO.getProductAtPosition(9, null)).thenReturn(product(10, "Milk"));
+        when(productDAO.getProductPage("Milk", 10, null, 2)).thenReturn(List.of(product(11, "Rice"), product(12, "Soap")));
+        when(productDAO.getProductPage("Soap", 12, null, 2)).thenReturn(List.of());
+
+        assertEquals("Rice", source.getPage(5).join().get(0).getName());
+        assertTrue(source.getPage(6).join().isEmpty());
+        verify(productDAO, times(1)).getProductAtPosition(anyInt(), isNull());
+    }
+
+    @Test
+    void testOnlyRecentPagesAreKeptAndInvalidateDropsThem() throws Exception {
+        when(productDAO.getProductPage(any(), anyInt(), isNull(), anyInt()))
+                .thenAnswer(call -> {
+                    int afterId = call.getArgument(1);
+                    return List.of(product(afterId + 1, "P" + (afterId + 1)), product(afterId + 2, "P" + (afterId + 2)));
+                });
+        when(productDAO.countProducts(null)).thenReturn(40);
+
+        for (int page = 0; page < 10; page++) {
+            source.getPage(page).join();
+        }
+        assertFalse(source.isCached(0));
+        assertTrue(source.isCached(9));
+        assertEquals(20, source.getPageCount(source.getTotalCount().join()));
+
+        source.invalidate();
+        assertFalse(source.isCached(9));
+        source.getTotalCount().join();
+        verify(productDAO, times(2)).countProducts(null);
+    }
+}
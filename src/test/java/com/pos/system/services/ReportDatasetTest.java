@@ -0,0 +1,133 @@
+package com.pos.system.services;
+
+import com.pos.system.dao.BaseDAOTest;
+import com.pos.system.dao.CategoryDAO;
+import com.pos.system.dao.ProductDAO;
+import com.pos.system.dao.SaleDAO;
+import com.pos.system.dao.SalePaymentDAO;
+import com.pos.system.models.Category;
+import com.pos.system.models.Product;
+import com.pos.system.models.Sale;
+import com.pos.system.models.SaleItem;
+import com.pos.system.models.SalePayment;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReportDatasetTest extends BaseDAOTest {
+    private static final LocalDate DAY = LocalDate.of(2024, 3, 10);
+
+    private int productId1;
+    private int productId2;
+    private int oldSaleId;
+    private int firstSaleId;
+    private int secondSaleId;
+
+    @BeforeEach
+    public void setUp() throws SQLException {
+        CategoryDAO categoryDAO = new CategoryDAO(connection);
+        ProductDAO productDAO = new ProductDAO(connection);
+        categoryDAO.addCategory(new Category(0, "Drinks", ""));
+        int catId = categoryDAO.getAllCategories().get(0).getId();
+        productDAO.addProduct(new Product(0, "R1", "Tea", catId, "Drinks", 5.0, 10.0, 100, null));
+        productDAO.addProduct(new Product(0, "R2", "Cake", 0, null, 10.0, 20.0, 100, null));
+        productId1 = productDAO.getProductByBarcode("R1").getId();
+        productId2 = productDAO.getProductByBarcode("R2").getId();
+
+        oldSaleId = sell(DAY.minusDays(5).atTime(9, 0), 2, 0, "Cash");
+        firstSaleId = sell(DAY.atTime(9, 0), 1, 1, "Cash");
+        secondSaleId = sell(DAY.atTime(17, 0), 3, 0, "Card");
+        sell(DAY.plusDays(1).atTime(9, 0), 1, 0, "Cash");
+
+        // ExpenseDAO.addExpense() stamps the current time
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("INSERT INTO expenses (category, amount, description, expense_date) "
+                    + "VALUES ('Rent', 50.0, '', '2024-03-10 08:00:00'), ('Power', 7.0, '', '2024-03-05 08:00:00')");
+        }
+    }
+
+    private int sell(LocalDateTime at, int tea, int cake, String method) throws SQLException {
+        double total = tea * 10.0 + cake * 20.0;
+        double profit = tea * 5.0 + cake * 10.0;
+        Sale sale = new Sale(0, 1, total, profit, at);
+        List<SaleItem> items = new java.util.ArrayList<>();
+        items.add(new SaleItem(0, 0, productId1, "Tea", tea, 10.0, 5.0));
+        if (cake > 0) {
+            items.add(new SaleItem(0, 0, productId2, "Cake", cake, 20.0, 10.0));
+        }
+        SaleDAO saleDAO = new SaleDAO(connection);
+        saleDAO.insertSaleItems(saleDAO.insertSale(sale), items);
+        new SalePaymentDAO(connection).create(new SalePayment(0, sale.getId(), method, total, at));
+        return sale.getId();
+    }
+
+    @Test
+    public void testDaySumsMatchTheSalesOfEachDay() throws SQLException {
+        ReportDataset data = ReportDataset.load(connection, DAY.minusDays(30), DAY, DAY);
+
+        List<Sale> sales = data.getSales(DAY, DAY);
+        assertEquals(List.of(secondSaleId, firstSaleId), sales.stream().map(Sale::getId).toList());
+        assertEquals(60.0, data.getRevenue(DAY, DAY), 0.001);
+        assertEquals(30.0, data.getProfit(DAY, DAY), 0.001);
+        assertEquals(50.0, data.getExpenseTotal(DAY, DAY), 0.001);
+
+        assertEquals(80.0, data.getRevenue(DAY.minusDays(30), DAY), 0.001);
+        assertEquals(57.0, data.getExpenseTotal(DAY.minusDays(30), DAY), 0.001);
+        assertEquals(3, data.getSaleCount(DAY.minusDays(30), DAY));
+        assertEquals(2, data.getSales(DAY.minusDays(30), DAY).size());
+        assertEquals(List.of("Power", "Rent"),
+                List.copyOf(data.getExpensesByCategory(DAY.minusDays(30), DAY).keySet()));
+        assertEquals(1, data.getExpenses(DAY.minusDays(30), DAY).size());
+    }
+
+    @Test
+    public void testItemAndPaymentTotalsPerDay() throws SQLException {
+        ReportDataset data = ReportDataset.load(connection, DAY.minusDays(30), DAY, DAY);
+
+        assertEquals(4, data.getQuantityByProduct(DAY, DAY).get("Tea"));
+        assertEquals(1, data.getQuantityByProduct(DAY, DAY).get("Cake"));
+        assertEquals(6, data.getQuantityByProduct(DAY.minusDays(30), DAY).get("Tea"));
+        assertEquals(40.0, data.getRevenueByCategory(DAY, DAY).get("Drinks"), 0.001);
+        assertEquals(20.0, data.getRevenueByCategory(DAY, DAY).get("Unknown"), 0.001);
+        assertEquals(20.0, data.getRevenueByProduct(DAY, DAY).get("Cake"), 0.001);
+        assertEquals(30.0, data.getPaidByMethod(DAY, DAY).get("Cash"), 0.001);
+        assertEquals(30.0, data.getPaidByMethod(DAY, DAY).get("Card"), 0.001);
+        assertEquals(50.0, data.getPaidByMethod(DAY.minusDays(30), DAY).get("Cash"), 0.001);
+    }
+
+    @Test
+    public void testDetailsAreKeptForListedDaysOnly() throws SQLException {
+        ReportDataset data = ReportDataset.load(connection, DAY.minusDays(30), DAY, DAY);
+
+        assertEquals(2, data.getItems(firstSaleId).size());
+        assertEquals(1, data.getPayments(secondSaleId).size());
+        assertEquals("Card", data.getPayments(secondSaleId).get(0).getPaymentMethod());
+        assertTrue(data.getItems(oldSaleId).isEmpty());
+        assertTrue(data.getPayments(oldSaleId).isEmpty());
+        assertTrue(data.getSales(DAY.plusDays(1), DAY.plusDays(1)).isEmpty());
+    }
+
+    @Test
+    public void testTotalsOnlyKeepNoDetails() throws SQLException {
+        ReportDataset data = ReportDataset.loadTotals(connection, DAY.minusDays(30), DAY);
+
+        assertEquals(80.0, data.getRevenue(DAY.minusDays(30), DAY), 0.001);
+        assertEquals(2, data.getSaleCount(DAY, DAY));
+        assertEquals(List.of(DAY.minusDays(5), DAY),
+                List.copyOf(data.getRevenueByDay(DAY.minusDays(30), DAY).keySet()));
+        assertEquals(30.0, data.getPaidByMethod(DAY, DAY).get("Card"), 0.001);
+        assertEquals(50.0, data.getExpensesByCategory(DAY, DAY).get("Rent"), 0.001);
+        assertTrue(data.getSales(DAY, DAY).isEmpty());
+        assertTrue(data.getExpenses(DAY, DAY).isEmpty());
+        assertTrue(data.getItems(firstSaleId).isEmpty());
+        assertTrue(data.getPayments(secondSaleId).isEmpty());
+        assertTrue(data.getLogs(DAY, DAY).isEmpty());
+    }
+}
@@ -0,0 +1,110 @@
+package com.pos.system.services;
+
+import com.pos.system.dao.BaseDAOTest;
+import com.pos.system.dao.ProductDAO;
+import com.pos.system.dao.SaleDAO;
+import com.pos.system.dao.SalePaymentDAO;
+import com.pos.system.models.Product;
+import com.pos.system.models.Sale;
+import com.pos.system.models.SaleItem;
+import com.pos.system.models.SalePayment;
+import com.pos.system.services.ReportSections.AggregationLevel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReportSectionsTest extends BaseDAOTest {
+    private static final LocalDate DAY = LocalDate.of(2024, 3, 10);
+
+    private int productId;
+
+    @BeforeEach
+    public void setUp() throws SQLException {
+        ProductDAO productDAO = new ProductDAO(connection);
+        productDAO.addProduct(new Product(0, "S1", "Tea", 0, null, 5.0, 10.0, 100, null));
+        productId = productDAO.getProductByBarcode("S1").getId();
+
+        sell(DAY.minusMonths(1).atTime(9, 0), 2, "Cash");
+        sell(DAY.atTime(9, 0), 1, "Cash");
+        sell(DAY.atTime(17, 0), 3, "Card");
+
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("INSERT INTO expenses (category, amount, description, expense_date) "
+                    + "VALUES ('Rent', 50.0, '', '2024-03-01 08:00:00'), ('Power', 7.0, '', '2024-03-05 08:00:00'), "
+                    + "('Rent', 3.0, '', '2024-03-06 08:00:00')");
+        }
+    }
+
+    private void sell(LocalDateTime at, int quantity, String method) throws SQLException {
+        Sale sale = new Sale(0, 1, quantity * 10.0, quantity * 5.0, at);
+        SaleDAO saleDAO = new SaleDAO(connection);
+        saleDAO.insertSaleItems(saleDAO.insertSale(sale),
+                List.of(new SaleItem(0, 0, productId, "Tea", quantity, 10.0, 5.0)));
+        new SalePaymentDAO(connection).create(new SalePayment(0, sale.getId(), method, quantity * 10.0, at));
+    }
+
+    @Test
+    public void testMonthsSplitTheRangeByCalendarMonth() throws SQLException {
+        ReportDataset data = ReportDataset.load(connection, DAY.withDayOfYear(1), DAY, DAY);
+
+        List<ReportSections.Month> months = ReportSections.months(data, DAY.withDayOfYear(1).atStartOfDay(),
+                DAY.atTime(LocalTime.MAX));
+
+        assertEquals(3, months.size());
+        assertEquals(LocalDate.of(2024, 2, 1), months.get(1).start.toLocalDate());
+        assertEquals(20.0, months.get(1).revenue, 0.001);
+        ReportSections.Month march = months.get(2);
+        assertEquals(40.0, march.revenue, 0.001);
+        assertEquals(20.0, march.profit, 0.001);
+        assertEquals(60.0, march.expenseTotal, 0.001);
+        assertEquals(List.of("Power", "Rent"), List.copyOf(march.expensesByCategory.keySet()));
+        assertEquals(53.0, march.expensesByCategory.get("Rent"), 0.001);
+        assertEquals(30.0, march.paidByMethod.get("Card"), 0.001);
+    }
+
+    @Test
+    public void testChartsFillEveryPeriodOfTheRange() throws SQLException {
+        ReportDataset data = ReportDataset.load(connection, DAY.withDayOfYear(1), DAY, DAY);
+        LocalDateTime start = DAY.withDayOfYear(1).atStartOfDay();
+        LocalDateTime end = DAY.atTime(LocalTime.MAX);
+
+        ReportSections.Charts charts = ReportSections.charts(data, AggregationLevel.MONTHLY, start, end);
+
+        assertArrayEquals(new String[] { "2024-01", "2024-02", "2024-03" }, charts.timeLabels);
+        assertArrayEquals(new Double[] { 0.0, 20.0, 40.0 }, charts.timeValues);
+        assertEquals(6, charts.productCounts.get("Tea"));
+        assertNull(ReportSections.charts(data, DAY.plusDays(1), DAY.plusDays(5)));
+    }
+
+    @Test
+    public void testChartsOfOneDayAreByTime() throws SQLException {
+        ReportDataset data = ReportDataset.load(connection, DAY, DAY, DAY);
+
+        ReportSections.Charts charts = ReportSections.charts(data, DAY, DAY);
+
+        assertArrayEquals(new String[] { "17:00", "09:00" }, charts.timeLabels);
+        assertArrayEquals(new Double[] { 30.0, 10.0 }, charts.timeValues);
+        assertEquals(4, charts.productCounts.get("Tea"));
+    }
+
+    @Test
+    public void testChartsOfUnlistedSalesAreByDay() throws SQLException {
+        ReportDataset data = ReportDataset.loadTotals(connection, DAY.withDayOfYear(1), DAY);
+
+        ReportSections.Charts charts = ReportSections.charts(data, DAY, DAY);
+
+        assertArrayEquals(new String[] { "2024-03-10" }, charts.timeLabels);
+        assertArrayEquals(new Double[] { 40.0 }, charts.timeValues);
+        assertEquals(4, charts.productCounts.get("Tea"));
+        assertEquals(20.0, ReportSections.months(data, DAY.withDayOfYear(1).atStartOfDay(),
+                DAY.atTime(LocalTime.MAX)).get(1).revenue, 0.001);
+    }
+}
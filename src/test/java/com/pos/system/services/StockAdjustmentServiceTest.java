@@ -1,14 +1,28 @@
 package com.pos.system.services;
 
+import com.pos.system.dao.AuditLogDAO;
+import com.pos.system.database.DatabaseWriter;
+import com.pos.system.database.SqlScript;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import static org.mockito.Mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 @ExtendWith(MockitoExtension.class)
 public class StockAdjustmentServiceTest {
@@ -43,4 +57,50 @@ public class StockAdjustmentServiceTest {
                 eq(reason),
                 isNull());
     }
+
+    @Test
+    void testAdjustmentThroughWriterWritesAuditRowsWithoutWaiting(@TempDir Path tempDir) throws Exception {
+        String url = "jdbc:sqlite:" + tempDir.resolve("stock.db");
+        try (Connection conn = DriverManager.getConnection(url);
+                Statement stmt = conn.createStatement();
+                InputStream schema = getClass().getResourceAsStream("/schema.sql")) {
+            for (String sql : SqlScript.split(new String(schema.readAllBytes(), StandardCharsets.UTF_8))) {
+                try {
+                    stmt.execute(sql);
+                } catch (SQLException e) {
+                    // ALTER TABLE migrations fail on a fresh schema
+                }
+            }
+            stmt.execute("INSERT INTO products (barcode, name, selling_price) VALUES ('ADJ1', 'Tea', 10.0)");
+        }
+
+        // As in the app, the security service holds a connection of its own
+        DatabaseWriter writer = new DatabaseWriter(() -> DriverManager.getConnection(url), 32);
+        try (Connection auditConn = DriverManager.getConnection(url)) {
+            try (Statement stmt = auditConn.createStatement()) {
+                stmt.execute("PRAGMA busy_timeout = 5000");
+            }
+            InventoryService inventoryService = new InventoryService(new SecurityService(new AuditLogDAO(auditConn)));
+            StockAdjustmentService service = new StockAdjustmentService(inventoryService, writer);
+
+            long started = System.nanoTime();
+            service.adjustStock(1, 5, "Found Stock", 1);
+            long elapsedMs = (System.nanoTime() - started) / 1_000_000;
+
+            assertTrue(elapsedMs < 2000, "Adjustment took " + elapsedMs + " ms");
+        } finally {
+            writer.shutdown();
+        }
+
+        List<String> actions = new ArrayList<>();
+        try (Connection conn = DriverManager.getConnection(url);
+                Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery(
+                        "SELECT action FROM audit_logs WHERE entity_id = '1' AND action LIKE 'STOCK_%' ORDER BY id")) {
+            while (rs.next()) {
+                actions.add(rs.getString(1));
+            }
+        }
+        assertEquals(List.of("STOCK_PURCHASE", "STOCK_ADJUSTMENT"), actions);
+    }
 }
@@ -0,0 +1,57 @@
+package com.pos.system.services;
+
+import com.pos.system.dao.AuditLogDAO;
+import com.pos.system.dao.InventoryTransactionDAO;
+import com.pos.system.models.AuditLog;
+import com.pos.system.models.StockDrift;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.MockedConstruction;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mockConstruction;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class StockReconciliationServiceTest {
+
+    private MockedConstruction<InventoryTransactionDAO> mockedTxDAO;
+    private MockedConstruction<AuditLogDAO> mockedAuditLogDAO;
+
+    @AfterEach
+    public void tearDown() {
+        if (mockedTxDAO != null)
+            mockedTxDAO.close();
+        if (mockedAuditLogDAO != null)
+            mockedAuditLogDAO.close();
+    }
+
+    @Test
+    public void testDriftIsReportedToAuditLog() throws Exception {
+        mockedTxDAO = mockConstruction(InventoryTransactionDAO.class, (mock, context) -> when(mock.findStockDrift())
+                .thenReturn(List.of(new StockDrift(7, "Milk", 12, 10))));
+        mockedAuditLogDAO = mockConstruction(AuditLogDAO.class);
+
+        List<StockDrift> drift = new StockReconciliationService().reconcile();
+
+        assertEquals(1, drift.size());
+        ArgumentCaptor<AuditLog> logCaptor = ArgumentCaptor.forClass(AuditLog.class);
+        verify(mockedAuditLogDAO.constructed().get(0)).create(logCaptor.capture());
+        assertEquals("STOCK_DRIFT", logCaptor.getValue().getAction());
+        assertEquals("7", logCaptor.getValue().getEntityId());
+    }
+
+    @Test
+    public void testNoDriftWritesNothing() throws Exception {
+        mockedTxDAO = mockConstruction(InventoryTransactionDAO.class,
+                (mock, context) -> when(mock.findStockDrift()).thenReturn(List.of()));
+        mockedAuditLogDAO = mockConstruction(AuditLogDAO.class);
+
+        assertTrue(new StockReconciliationService().reconcile().isEmpty());
+        assertTrue(mockedAuditLogDAO.constructed().isEmpty());
+    }
+}
@@ -0,0 +1,94 @@
+package com.pos.system.services;
+
+import com.pos.system.dao.ProductThumbnailDAO;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ThumbnailServiceTest {
+
+    @Mock
+    private ProductThumbnailDAO dao;
+
+    private ThumbnailService service;
+
+    private static byte[] png(int width, int height) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", out);
+        return out.toByteArray();
+    }
+
+    private static BufferedImage read(byte[] image) throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(image));
+    }
+
+    @BeforeAll
+    static void drawOffScreen() {
+        // Thumbnails are drawn into off-screen images, so no display is needed
+        System.setProperty("java.awt.headless", "true");
+    }
+
+    @BeforeEach
+    void setUp() {
+        // Work runs inline so each call has finished when it returns
+        service = new ThumbnailService(() -> dao, null, Runnable::run);
+    }
+
+    @Test
+    void testThumbnailFitsTheSizeAndKeepsTheShape() throws Exception {
+        BufferedImage wide = read(ThumbnailService.createThumbnail(png(1200, 600), 160));
+        assertEquals(160, wide.getWidth());
+        assertEquals(80, wide.getHeight());
+
+        // Small images are not scaled up
+        BufferedImage small = read(ThumbnailService.createThumbnail(png(50, 40), 160));
+        assertEquals(50, small.getWidth());
+
+        assertNull(ThumbnailService.createThumbnail(new byte[] { 1, 2, 3 }, 160));
+    }
+
+    @Test
+    void testMissingThumbnailIsMadeOnDemandAndStored() throws Exception {
+        ProductThumbnailDAO.Original original = new ProductThumbnailDAO.Original(7, 3, null, png(800, 800));
+        when(dao.getThumbnail(7, 80)).thenReturn(null);
+        when(dao.getOriginal(7)).thenReturn(original);
+
+        byte[] thumbnail = service.getThumbnail(7, ThumbnailService.Size.LIST);
+
+        assertEquals(80, read(thumbnail).getWidth());
+        verify(dao).saveThumbnail(eq(original), eq(80), any());
+        verify(dao).saveThumbnail(eq(original), eq(160), any());
+    }
+
+    @Test
+    void testBackfillRecordsUndecodableImagesSoTheyAreNotRetried() throws Exception {
+        ProductThumbnailDAO.Original broken = new ProductThumbnailDAO.Original(4, 1, null, new byte[] { 1, 2, 3 });
+        when(dao.getProductIdsMissingThumbnails(0, 2, 50)).thenReturn(List.of(4));
+        when(dao.getOriginal(4)).thenReturn(broken);
+
+        assertEquals(1, service.backfill().join());
+
+        verify(dao).saveThumbnail(broken, 160, new byte[0]);
+        verify(dao).saveThumbnail(broken, 80, new byte[0]);
+        // A short batch is the last one
+        verify(dao, never()).getProductIdsMissingThumbnails(eq(4), eq(2), eq(50));
+    }
+}